@@ -21,6 +21,7 @@ import com.pamirs.attach.plugin.alibaba.druid.listener.DruidShadowActiveEventLis
 import com.pamirs.attach.plugin.alibaba.druid.listener.DruidShadowDisableEventListener;
 import com.pamirs.attach.plugin.alibaba.druid.obj.DbDruidMediatorDataSource;
 import com.pamirs.attach.plugin.alibaba.druid.util.DataSourceWrapUtil;
+import com.pamirs.attach.plugin.common.datasource.warmup.ShadowDataSourceWarmUp;
 import com.pamirs.attach.plugin.dynamic.Attachment;
 import com.pamirs.attach.plugin.dynamic.ResourceManager;
 import com.pamirs.attach.plugin.dynamic.Type;
@@ -100,6 +101,12 @@ public class DruidInjectGetConnectionInterceptor extends CutoffInterceptorAdapto
         addAttachment(advice);
         DataSourceMeta<DruidDataSource> dataSourceMeta = new DataSourceMeta<DruidDataSource>(target1.getUrl(), target1.getUsername(), target1);
         ClusterTestUtils.validateClusterTest();
+        /**
+         * 压测流量等待影子连接池在后台预热完成，超时后走原有的初始化逻辑
+         */
+        if (Pradar.isClusterTest()) {
+            ShadowDataSourceWarmUp.getInstance().awaitReady(dataSourceMeta);
+        }
         DbDruidMediatorDataSource mediatorDataSource = DataSourceWrapUtil.doWrap(dataSourceMeta);
         //判断带有压测标示，是否初始化
         //初始化
@@ -16,6 +16,8 @@ package com.pamirs.attach.plugin.alibaba.druid.util;
 
 import com.alibaba.druid.pool.DruidDataSource;
 import com.pamirs.attach.plugin.alibaba.druid.obj.DbDruidMediatorDataSource;
+import com.pamirs.attach.plugin.common.datasource.warmup.ShadowDataSourceWarmUp;
+import com.pamirs.attach.plugin.common.datasource.warmup.ShadowDataSourceWarmer;
 import com.pamirs.pradar.ConfigNames;
 import com.pamirs.pradar.ErrorTypeEnum;
 import com.pamirs.pradar.pressurement.agent.shared.service.DataSourceMeta;
@@ -26,6 +28,7 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
@@ -38,7 +41,32 @@ import java.util.concurrent.ConcurrentHashMap;
 public class DataSourceWrapUtil {
     private final static Logger LOGGER = LoggerFactory.getLogger(DataSourceWrapUtil.class.getName());
     private static Set<Object> pressureDatasourceSet = new HashSet<Object>();
-    private final static Object lock = new Object();
+    private final static ShadowDataSourceWarmer<DruidDataSource> WARMER = new ShadowDataSourceWarmer<DruidDataSource>() {
+        @Override
+        public String getMiddlewareName() {
+            return "druid";
+        }
+
+        @Override
+        public void build(DataSourceMeta<DruidDataSource> dataSourceMeta) {
+            doWrap(dataSourceMeta);
+        }
+
+        @Override
+        public DataSource getShadowDataSource(DataSourceMeta<DruidDataSource> dataSourceMeta) {
+            DbDruidMediatorDataSource mediatorDataSource = pressureDataSources.get(dataSourceMeta);
+            return mediatorDataSource == null ? null : mediatorDataSource.getDataSourcePerformanceTest();
+        }
+
+        @Override
+        public int getMinIdle(DataSourceMeta<DruidDataSource> dataSourceMeta) {
+            DbDruidMediatorDataSource mediatorDataSource = pressureDataSources.get(dataSourceMeta);
+            if (mediatorDataSource == null || mediatorDataSource.getDataSourcePerformanceTest() == null) {
+                return 0;
+            }
+            return mediatorDataSource.getDataSourcePerformanceTest().getMinIdle();
+        }
+    };
 
     public static final ConcurrentHashMap<DataSourceMeta, DbDruidMediatorDataSource> pressureDataSources = new ConcurrentHashMap<DataSourceMeta, DbDruidMediatorDataSource>();
 
@@ -63,7 +91,8 @@ public class DataSourceWrapUtil {
             LOGGER.warn("[druid] current datasource is performance datasource. ignore it. url={}, username={}", target.getUrl(), target.getUsername());
             return null;
         }
-        synchronized (lock) {
+        ShadowDataSourceWarmUp.getInstance().register(dataSourceMeta, WARMER);
+        synchronized (ShadowDataSourceWarmUp.getInstance().lock(dataSourceMeta)) {
             if (pressureDataSources.get(dataSourceMeta) != null) {
                 return pressureDataSources.get(dataSourceMeta);
             }
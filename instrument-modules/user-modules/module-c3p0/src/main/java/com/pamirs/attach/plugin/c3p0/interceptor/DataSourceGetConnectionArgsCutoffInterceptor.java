@@ -19,6 +19,7 @@ import com.pamirs.attach.plugin.c3p0.ListenerRegisterStatus;
 import com.pamirs.attach.plugin.c3p0.destroy.C3p0Destroy;
 import com.pamirs.attach.plugin.c3p0.utils.C3p0MediaDataSource;
 import com.pamirs.attach.plugin.c3p0.utils.DataSourceWrapUtil;
+import com.pamirs.attach.plugin.common.datasource.warmup.ShadowDataSourceWarmUp;
 import com.pamirs.attach.plugin.dynamic.Attachment;
 import com.pamirs.attach.plugin.dynamic.ResourceManager;
 import com.pamirs.attach.plugin.dynamic.Type;
@@ -94,6 +95,12 @@ public class DataSourceGetConnectionArgsCutoffInterceptor extends CutoffIntercep
         DataSourceMeta<ComboPooledDataSource> dataSourceMeta = new DataSourceMeta<ComboPooledDataSource>(dataSource.getJdbcUrl(), dataSource.getUser(), dataSource);
         ClusterTestUtils.validateClusterTest();
 
+        /**
+         * 压测流量等待影子连接池在后台预热完成，超时后走原有的初始化逻辑
+         */
+        if (Pradar.isClusterTest()) {
+            ShadowDataSourceWarmUp.getInstance().awaitReady(dataSourceMeta);
+        }
         DataSourceWrapUtil.init(dataSourceMeta);
         Connection connection = null;
 
@@ -15,6 +15,8 @@
 package com.pamirs.attach.plugin.c3p0.utils;
 
 import com.mchange.v2.c3p0.ComboPooledDataSource;
+import com.pamirs.attach.plugin.common.datasource.warmup.ShadowDataSourceWarmUp;
+import com.pamirs.attach.plugin.common.datasource.warmup.ShadowDataSourceWarmer;
 import com.pamirs.pradar.*;
 import com.pamirs.pradar.internal.config.ShadowDatabaseConfig;
 import com.pamirs.pradar.pressurement.agent.shared.service.DataSourceMeta;
@@ -27,6 +29,7 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
 import java.beans.PropertyVetoException;
 import java.util.Iterator;
 import java.util.Map;
@@ -40,7 +43,32 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class DataSourceWrapUtil {
     private static Logger logger = LoggerFactory.getLogger(DataSourceWrapUtil.class.getName());
-    private final static Object lock = new Object();
+    private final static ShadowDataSourceWarmer<ComboPooledDataSource> WARMER = new ShadowDataSourceWarmer<ComboPooledDataSource>() {
+        @Override
+        public String getMiddlewareName() {
+            return "c3p0";
+        }
+
+        @Override
+        public void build(DataSourceMeta<ComboPooledDataSource> dataSourceMeta) {
+            init(dataSourceMeta);
+        }
+
+        @Override
+        public DataSource getShadowDataSource(DataSourceMeta<ComboPooledDataSource> dataSourceMeta) {
+            C3p0MediaDataSource mediaDataSource = pressureDataSources.get(dataSourceMeta);
+            return mediaDataSource == null ? null : mediaDataSource.getDataSourcePerformanceTest();
+        }
+
+        @Override
+        public int getMinIdle(DataSourceMeta<ComboPooledDataSource> dataSourceMeta) {
+            C3p0MediaDataSource mediaDataSource = pressureDataSources.get(dataSourceMeta);
+            if (mediaDataSource == null || mediaDataSource.getDataSourcePerformanceTest() == null) {
+                return 0;
+            }
+            return mediaDataSource.getDataSourcePerformanceTest().getMinPoolSize();
+        }
+    };
 
     public static final ConcurrentHashMap<DataSourceMeta, C3p0MediaDataSource> pressureDataSources = new ConcurrentHashMap<DataSourceMeta, C3p0MediaDataSource>();
 
@@ -108,7 +136,8 @@ public class DataSourceWrapUtil {
         if (isPerformanceDataSource(target)) {
             return;
         }
-        synchronized (lock) {
+        ShadowDataSourceWarmUp.getInstance().register(dataSourceMeta, WARMER);
+        synchronized (ShadowDataSourceWarmUp.getInstance().lock(dataSourceMeta)) {
             if (pressureDataSources.containsKey(dataSourceMeta) && pressureDataSources.get(dataSourceMeta) != null) {
                 return;
             }
@@ -504,7 +533,7 @@ public class DataSourceWrapUtil {
     }
 
     public static void retryInitPerformanceTest(C3p0MediaDataSource mediaDataSource) {
-        synchronized (DataSourceWrapUtil.class) {
+        synchronized (mediaDataSource) {
             if (mediaDataSource.getDataSourcePerformanceTest() != null) {
                 return;
             }
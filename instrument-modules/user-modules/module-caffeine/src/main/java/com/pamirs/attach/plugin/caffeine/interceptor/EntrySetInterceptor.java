@@ -14,15 +14,12 @@
  */
 package com.pamirs.attach.plugin.caffeine.interceptor;
 
-import com.pamirs.attach.plugin.caffeine.utils.WrapEntry;
 import com.pamirs.pradar.Pradar;
-import com.pamirs.pradar.cache.ClusterTestCacheWrapperKey;
+import com.pamirs.pradar.cache.ClusterTestCacheViews;
 import com.pamirs.pradar.interceptor.ModificationInterceptorAdaptor;
 import com.shulie.instrument.simulator.api.listener.ext.Advice;
 
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 /**
@@ -37,22 +34,9 @@ public class EntrySetInterceptor extends ModificationInterceptorAdaptor {
         if (!(returnObj instanceof Set)) {
             return new Object[0];
         }
-        Set<Map.Entry> returnSet = (Set<Entry>)returnObj;
-        if (returnSet.size() == 0) {
-            return new HashSet(0);
-        }
-        Set<Map.Entry> resultSet = new HashSet();
-        for (Entry entry : returnSet) {
-            if (Pradar.isClusterTest()) {
-                if (entry.getKey() instanceof ClusterTestCacheWrapperKey) {
-                    resultSet.add(new WrapEntry(entry));
-                }
-            } else {
-                if (!(entry.getKey() instanceof ClusterTestCacheWrapperKey)) {
-                    resultSet.add(entry);
-                }
-            }
-        }
-        return resultSet;
+        /**
+         * 返回过滤后的延迟视图，不再复制整个 entrySet
+         */
+        return ClusterTestCacheViews.entrySet((Set<Map.Entry>) returnObj, Pradar.isClusterTest());
     }
 }
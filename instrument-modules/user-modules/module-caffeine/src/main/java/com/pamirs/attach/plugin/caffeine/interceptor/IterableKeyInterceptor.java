@@ -14,10 +14,7 @@
  */
 package com.pamirs.attach.plugin.caffeine.interceptor;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import com.pamirs.pradar.cache.ClusterTestCacheWrapperKey;
+import com.pamirs.pradar.cache.ClusterTestCacheViews;
 import com.shulie.instrument.simulator.api.annotation.ListenerBehavior;
 import com.shulie.instrument.simulator.api.listener.ext.Advice;
 
@@ -29,22 +26,16 @@ import com.shulie.instrument.simulator.api.listener.ext.Advice;
 public class IterableKeyInterceptor extends AbstractFilterInterceptor {
 
     @Override
-    @SuppressWarnings({"unchecked", "rawtypes"})
     protected Object[] doGetParameter(Advice advice) {
         Object[] args = advice.getParameterArray();
         Object object = args[0];
         if (!(object instanceof Iterable)) {
             return args;
         }
-        List list = new ArrayList();
-        for (Object o : (Iterable)object) {
-            if (o instanceof ClusterTestCacheWrapperKey) {
-                list.add(o);
-            } else {
-                list.add(new ClusterTestCacheWrapperKey(o));
-            }
-        }
-        args[0] = list;
+        /**
+         * 遍历时才包装 key，不再复制到新的列表中
+         */
+        args[0] = ClusterTestCacheViews.wrapKeys((Iterable) object);
         return args;
     }
 }
@@ -14,11 +14,10 @@
  */
 package com.pamirs.attach.plugin.caffeine.interceptor;
 
-import java.util.HashSet;
 import java.util.Set;
 
 import com.pamirs.pradar.Pradar;
-import com.pamirs.pradar.cache.ClusterTestCacheWrapperKey;
+import com.pamirs.pradar.cache.ClusterTestCacheViews;
 import com.pamirs.pradar.interceptor.ResultInterceptorAdaptor;
 import com.shulie.instrument.simulator.api.listener.ext.Advice;
 
@@ -35,23 +34,10 @@ public class KeySetInterceptor extends ResultInterceptorAdaptor {
         if (!(returnObj instanceof Set)) {
             return returnObj;
         }
-        Set returnSet = (Set)returnObj;
-        if (returnSet.size() == 0) {
-            return returnObj;
-        }
-        Set resultSet = new HashSet();
-        for (Object obj : returnSet.toArray()) {
-            if (Pradar.isClusterTest()) {
-                if (obj instanceof ClusterTestCacheWrapperKey) {
-                    resultSet.add(((ClusterTestCacheWrapperKey)obj).getKey());
-                }
-            } else {
-                if (!(obj instanceof ClusterTestCacheWrapperKey)) {
-                    resultSet.add(obj);
-                }
-            }
-        }
-        return resultSet;
+        /**
+         * 返回过滤后的延迟视图，不再复制整个 keySet
+         */
+        return ClusterTestCacheViews.keySet((Set) returnObj, Pradar.isClusterTest());
     }
 
 }
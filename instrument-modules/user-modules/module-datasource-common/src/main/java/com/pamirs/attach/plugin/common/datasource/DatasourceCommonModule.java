@@ -14,8 +14,14 @@
  */
 package com.pamirs.attach.plugin.common.datasource;
 
+import java.util.Map;
+
+import com.pamirs.attach.plugin.common.datasource.warmup.ShadowDataSourceWarmUp;
+import com.shulie.instrument.simulator.api.CommandResponse;
 import com.shulie.instrument.simulator.api.ExtensionModule;
 import com.shulie.instrument.simulator.api.ModuleInfo;
+import com.shulie.instrument.simulator.api.ModuleLifecycleAdapter;
+import com.shulie.instrument.simulator.api.annotation.Command;
 import org.kohsuke.MetaInfServices;
 
 /**
@@ -24,6 +30,24 @@ import org.kohsuke.MetaInfServices;
  */
 @MetaInfServices(ExtensionModule.class)
 @ModuleInfo(id = "datasource-common", version = "1.0.0", author = "xiaobin@shulie.io",description = "数据源通用依赖模块,提供给各个数据源模块依赖")
-public class DatasourceCommonModule implements ExtensionModule {
+public class DatasourceCommonModule extends ModuleLifecycleAdapter implements ExtensionModule {
+
+    /**
+     * 获取各个业务数据源影子连接池的预热就绪状态
+     *
+     * @param args
+     * @return
+     */
+    @Command("getShadowDataSourceReadiness")
+    public CommandResponse<Object> getShadowDataSourceReadiness(Map<String, String> args) {
+        CommandResponse<Object> commandResponse = new CommandResponse<Object>();
+        commandResponse.setSuccess(true);
+        commandResponse.setResult(ShadowDataSourceWarmUp.getInstance().getReadiness());
+        return commandResponse;
+    }
 
+    @Override
+    public void onUnload() throws Throwable {
+        ShadowDataSourceWarmUp.getInstance().release();
+    }
 }
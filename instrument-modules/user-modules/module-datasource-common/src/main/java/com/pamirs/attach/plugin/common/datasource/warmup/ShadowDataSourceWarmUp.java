@@ -0,0 +1,415 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.attach.plugin.common.datasource.warmup;
+
+import com.pamirs.pradar.internal.config.ShadowDatabaseConfig;
+import com.pamirs.pradar.pressurement.agent.event.IEvent;
+import com.pamirs.pradar.pressurement.agent.event.impl.ShadowDataSourceConfigModifyEvent;
+import com.pamirs.pradar.pressurement.agent.listener.EventResult;
+import com.pamirs.pradar.pressurement.agent.listener.PradarEventListener;
+import com.pamirs.pradar.pressurement.agent.shared.service.DataSourceMeta;
+import com.pamirs.pradar.pressurement.agent.shared.service.EventRouter;
+import com.pamirs.pradar.pressurement.datasource.util.DbUrlUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 影子连接池预热服务
+ * <p>
+ * 业务数据源第一次获取连接时登记到预热服务，影子库配置下发(ShadowDataSourceConfigModifyEvent)后，
+ * 在后台线程中构建受影响的影子连接池，并预先建立 minIdle 个连接，压测流量在连接池预热完成前等待一段时间，
+ * 避免压测开始时在业务线程上创建连接池
+ * <p>
+ * 每个业务数据源使用独立的锁，不同数据源的影子连接池构建互不阻塞
+ */
+public final class ShadowDataSourceWarmUp {
+
+    private final static Logger logger = LoggerFactory.getLogger(ShadowDataSourceWarmUp.class);
+
+    /**
+     * 预热的最大连接数
+     */
+    private final static int MAX_WARM_UP_CONNECTIONS = 32;
+
+    private final static ShadowDataSourceWarmUp INSTANCE = new ShadowDataSourceWarmUp();
+
+    private final boolean enabled = Boolean.parseBoolean(System.getProperty("pradar.shadow.datasource.warmup.enabled", "true"));
+
+    /**
+     * 压测流量等待连接池预热完成的最长时间
+     */
+    private final long waitMillis = Long.getLong("pradar.shadow.datasource.warmup.wait.millis", 3000L);
+
+    private final int threads = Integer.getInteger("pradar.shadow.datasource.warmup.threads", 2);
+
+    private final ConcurrentHashMap<DataSourceMeta, WarmUpEntry> entries = new ConcurrentHashMap<DataSourceMeta, WarmUpEntry>();
+
+    private volatile ThreadPoolExecutor executor;
+    private volatile PradarEventListener listener;
+
+    private ShadowDataSourceWarmUp() {
+    }
+
+    public static ShadowDataSourceWarmUp getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 获取业务数据源的锁，用于构建影子数据源
+     *
+     * @param dataSourceMeta 业务数据源
+     * @return 锁对象
+     */
+    public Object lock(DataSourceMeta dataSourceMeta) {
+        return getOrCreate(dataSourceMeta).lock;
+    }
+
+    /**
+     * 登记业务数据源，第一次登记时在后台预热影子连接池
+     *
+     * @param dataSourceMeta 业务数据源
+     * @param warmer         连接池预热实现
+     * @param <T>            业务数据源类型
+     */
+    public <T> void register(DataSourceMeta<T> dataSourceMeta, ShadowDataSourceWarmer<T> warmer) {
+        if (!enabled) {
+            return;
+        }
+        WarmUpEntry entry = entries.get(dataSourceMeta);
+        if (entry != null && entry.warmer != null) {
+            return;
+        }
+        entry = getOrCreate(dataSourceMeta);
+        synchronized (entry) {
+            if (entry.warmer != null) {
+                return;
+            }
+            entry.warmer = warmer;
+        }
+        addListenerIfNecessary();
+        warmUp(dataSourceMeta, entry);
+    }
+
+    /**
+     * 等待影子连接池预热完成，未登记或者预热已结束时立即返回
+     *
+     * @param dataSourceMeta 业务数据源
+     * @return 是否已经就绪
+     */
+    public boolean awaitReady(DataSourceMeta dataSourceMeta) {
+        final WarmUpEntry entry = entries.get(dataSourceMeta);
+        if (entry == null || entry.state != WarmUpState.WARMING) {
+            return true;
+        }
+        try {
+            return entry.latch.await(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 各个业务数据源影子连接池的就绪状态
+     *
+     * @return key 为 url|username, value 为就绪状态
+     */
+    public Map<String, String> getReadiness() {
+        final Map<String, String> readiness = new LinkedHashMap<String, String>();
+        for (Map.Entry<DataSourceMeta, WarmUpEntry> entry : entries.entrySet()) {
+            if (entry.getValue().warmer == null) {
+                continue;
+            }
+            readiness.put(entry.getKey().getUrl() + '|' + entry.getKey().getUsername(), entry.getValue().state.name());
+        }
+        return readiness;
+    }
+
+    /**
+     * 释放资源，模块卸载时调用
+     * <p>
+     * 登记的数据源只标记为未登记，不从 entries 中移除，保证同一个业务数据源前后拿到的始终是同一把锁，
+     * 进行中的预热在结束时也不会再修改状态
+     */
+    public void release() {
+        final PradarEventListener listener = this.listener;
+        if (listener != null) {
+            EventRouter.router().removeListener(listener);
+            this.listener = null;
+        }
+        final ThreadPoolExecutor executor = this.executor;
+        if (executor != null) {
+            executor.shutdownNow();
+            this.executor = null;
+        }
+        for (WarmUpEntry entry : entries.values()) {
+            final CountDownLatch latch;
+            synchronized (entry) {
+                latch = entry.latch;
+                entry.warmer = null;
+                entry.state = WarmUpState.READY;
+                entry.rewarm = false;
+                entry.latch = new CountDownLatch(0);
+            }
+            latch.countDown();
+        }
+    }
+
+    private WarmUpEntry getOrCreate(DataSourceMeta dataSourceMeta) {
+        WarmUpEntry entry = entries.get(dataSourceMeta);
+        if (entry == null) {
+            entry = new WarmUpEntry();
+            WarmUpEntry old = entries.putIfAbsent(dataSourceMeta, entry);
+            if (old != null) {
+                entry = old;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * 同一个业务数据源同时只有一个预热任务，预热中再次触发时只记录下来，当前任务结束后重新预热一次
+     */
+    private void warmUp(final DataSourceMeta dataSourceMeta, final WarmUpEntry entry) {
+        final CountDownLatch latch;
+        synchronized (entry) {
+            if (entry.state == WarmUpState.WARMING) {
+                entry.rewarm = true;
+                return;
+            }
+            entry.latch = new CountDownLatch(1);
+            entry.state = WarmUpState.WARMING;
+            entry.rewarm = false;
+            latch = entry.latch;
+        }
+        try {
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    doWarmUp(dataSourceMeta, entry, latch);
+                }
+            });
+        } catch (Throwable e) {
+            logger.warn("[datasource-common] submit shadow datasource warm-up task failed. url:{}, username:{}",
+                    new Object[]{dataSourceMeta.getUrl(), dataSourceMeta.getUsername(), e});
+            finish(entry, latch, WarmUpState.FAILED);
+        }
+    }
+
+    private void doWarmUp(DataSourceMeta dataSourceMeta, WarmUpEntry entry, CountDownLatch latch) {
+        while (true) {
+            final WarmUpState state = warmUpOnce(dataSourceMeta, entry);
+            synchronized (entry) {
+                if (entry.latch == latch) {
+                    if (entry.rewarm) {
+                        entry.rewarm = false;
+                        continue;
+                    }
+                    entry.state = state;
+                }
+            }
+            latch.countDown();
+            return;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private WarmUpState warmUpOnce(DataSourceMeta dataSourceMeta, WarmUpEntry entry) {
+        final ShadowDataSourceWarmer warmer = entry.warmer;
+        if (warmer == null) {
+            return WarmUpState.READY;
+        }
+        final long beginTime = System.currentTimeMillis();
+        int connections = 0;
+        try {
+            warmer.build(dataSourceMeta);
+            final DataSource shadowDataSource = warmer.getShadowDataSource(dataSourceMeta);
+            if (shadowDataSource != null) {
+                connections = Math.max(1, Math.min(warmer.getMinIdle(dataSourceMeta), MAX_WARM_UP_CONNECTIONS));
+                fill(shadowDataSource, connections);
+            }
+            if (logger.isInfoEnabled()) {
+                logger.info("[datasource-common] shadow datasource is ready. middleware:{}, url:{}, username:{}, connections:{}, cost:{}ms",
+                        new Object[]{warmer.getMiddlewareName(), dataSourceMeta.getUrl(), dataSourceMeta.getUsername(),
+                                connections, System.currentTimeMillis() - beginTime});
+            }
+            return WarmUpState.READY;
+        } catch (Throwable e) {
+            logger.warn("[datasource-common] shadow datasource warm-up failed. middleware:{}, url:{}, username:{}",
+                    new Object[]{warmer.getMiddlewareName(), dataSourceMeta.getUrl(), dataSourceMeta.getUsername(), e});
+            return WarmUpState.FAILED;
+        }
+    }
+
+    /**
+     * 同时借出多个连接，迫使连接池建立对应数量的物理连接，归还后保留在连接池中
+     */
+    private void fill(DataSource dataSource, int connections) throws Exception {
+        final List<Connection> borrowed = new ArrayList<Connection>(connections);
+        try {
+            for (int i = 0; i < connections; i++) {
+                borrowed.add(dataSource.getConnection());
+            }
+        } finally {
+            for (Connection connection : borrowed) {
+                try {
+                    connection.close();
+                } catch (Throwable e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private void finish(WarmUpEntry entry, CountDownLatch latch, WarmUpState state) {
+        synchronized (entry) {
+            if (entry.latch == latch) {
+                entry.state = state;
+            }
+        }
+        latch.countDown();
+    }
+
+    void onConfigModify(Set<ShadowDatabaseConfig> configs) {
+        final Set<String> keys = new HashSet<String>();
+        for (ShadowDatabaseConfig config : configs) {
+            keys.add(DbUrlUtils.getKey(config.getUrl(), config.getUsername()));
+            keys.add(DbUrlUtils.getKey(config.getUrl(), null));
+        }
+        for (Map.Entry<DataSourceMeta, WarmUpEntry> entry : entries.entrySet()) {
+            if (entry.getValue().warmer == null) {
+                continue;
+            }
+            final DataSourceMeta dataSourceMeta = entry.getKey();
+            if (containsIgnoreCase(keys, DbUrlUtils.getKey(dataSourceMeta.getUrl(), dataSourceMeta.getUsername()))
+                    || containsIgnoreCase(keys, DbUrlUtils.getKey(dataSourceMeta.getUrl(), null))) {
+                warmUp(dataSourceMeta, entry.getValue());
+            }
+        }
+    }
+
+    private static boolean containsIgnoreCase(Set<String> keys, String key) {
+        for (String k : keys) {
+            if (StringUtils.equalsIgnoreCase(k, key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addListenerIfNecessary() {
+        if (listener != null) {
+            return;
+        }
+        synchronized (this) {
+            if (listener != null) {
+                return;
+            }
+            /**
+             * 在各个连接池模块关闭旧的影子数据源之后执行
+             */
+            listener = new PradarEventListener() {
+                @Override
+                public EventResult onEvent(IEvent event) {
+                    if (!(event instanceof ShadowDataSourceConfigModifyEvent)) {
+                        return EventResult.IGNORE;
+                    }
+                    final Set<ShadowDatabaseConfig> configs = ((ShadowDataSourceConfigModifyEvent) event).getTarget();
+                    if (configs == null || configs.isEmpty()) {
+                        return EventResult.IGNORE;
+                    }
+                    onConfigModify(configs);
+                    return EventResult.success("datasource-common: submit shadow datasource warm-up success.");
+                }
+
+                @Override
+                public int order() {
+                    return 29;
+                }
+            };
+            EventRouter.router().addListener(listener);
+        }
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+        ThreadPoolExecutor executor = this.executor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (this) {
+            if (this.executor == null) {
+                final AtomicInteger threadId = new AtomicInteger();
+                executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "Pradar-Shadow-DataSource-WarmUp-" + threadId.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+                executor.allowCoreThreadTimeOut(true);
+                this.executor = executor;
+            }
+            return this.executor;
+        }
+    }
+
+    private enum WarmUpState {
+        /**
+         * 预热中
+         */
+        WARMING,
+        /**
+         * 已就绪
+         */
+        READY,
+        /**
+         * 预热失败，压测流量走原有的懒加载
+         */
+        FAILED
+    }
+
+    private final static class WarmUpEntry {
+        /**
+         * 构建影子数据源使用的锁
+         */
+        private final Object lock = new Object();
+        private volatile ShadowDataSourceWarmer warmer;
+        private volatile WarmUpState state = WarmUpState.READY;
+        private volatile CountDownLatch latch = new CountDownLatch(0);
+        /**
+         * 预热过程中是否再次触发了预热
+         */
+        private boolean rewarm;
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.attach.plugin.common.datasource.warmup;
+
+import com.pamirs.pradar.pressurement.agent.shared.service.DataSourceMeta;
+
+import javax.sql.DataSource;
+
+/**
+ * 影子连接池预热，由各个连接池模块实现
+ *
+ * @param <T> 业务数据源类型
+ */
+public interface ShadowDataSourceWarmer<T> {
+
+    /**
+     * 中间件名称，用于日志和就绪状态
+     *
+     * @return 中间件名称
+     */
+    String getMiddlewareName();
+
+    /**
+     * 构建影子数据源，已经构建过时直接返回
+     *
+     * @param dataSourceMeta 业务数据源
+     */
+    void build(DataSourceMeta<T> dataSourceMeta);
+
+    /**
+     * 获取已经构建的影子库连接池
+     *
+     * @param dataSourceMeta 业务数据源
+     * @return 影子库连接池，影子表模式或者没有构建时返回 null
+     */
+    DataSource getShadowDataSource(DataSourceMeta<T> dataSourceMeta);
+
+    /**
+     * 影子库连接池需要预先建立的连接数
+     *
+     * @param dataSourceMeta 业务数据源
+     * @return 连接数
+     */
+    int getMinIdle(DataSourceMeta<T> dataSourceMeta);
+}
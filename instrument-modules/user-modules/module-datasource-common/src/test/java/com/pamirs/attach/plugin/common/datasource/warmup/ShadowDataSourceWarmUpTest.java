@@ -0,0 +1,206 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.attach.plugin.common.datasource.warmup;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import com.pamirs.pradar.internal.config.ShadowDatabaseConfig;
+import com.pamirs.pradar.pressurement.agent.shared.service.DataSourceMeta;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 校验 {@link ShadowDataSourceWarmUp} 每个业务数据源只有一个预热任务、失败后可以重新预热，以及预热过程中释放资源
+ */
+public class ShadowDataSourceWarmUpTest {
+
+    static {
+        System.setProperty("pradar.shadow.datasource.warmup.wait.millis", "100");
+    }
+
+    private final ShadowDataSourceWarmUp warmUp = ShadowDataSourceWarmUp.getInstance();
+
+    @After
+    public void after() {
+        warmUp.release();
+    }
+
+    @Test(timeout = 10000L)
+    public void testSingleFlight() throws Exception {
+        final DataSourceMeta<Object> meta = meta("single");
+        final RecordingWarmer warmer = new RecordingWarmer();
+        warmUp.register(meta, warmer);
+        Assert.assertTrue(warmer.started.await(5, TimeUnit.SECONDS));
+
+        /**
+         * 预热中重复登记、多次配置下发都不会并发预热，只在当前任务结束后再预热一次
+         */
+        warmUp.register(meta, new RecordingWarmer());
+        for (int i = 0; i < 3; i++) {
+            warmUp.onConfigModify(Collections.singleton(config(meta)));
+        }
+        Assert.assertFalse(warmUp.awaitReady(meta));
+        Assert.assertEquals("WARMING", warmUp.getReadiness().get(key(meta)));
+
+        warmer.gate.countDown();
+        awaitState(meta, "READY");
+        Assert.assertTrue(warmUp.awaitReady(meta));
+        Assert.assertEquals(2, warmer.builds.get());
+        Assert.assertEquals(1, warmer.maxConcurrent.get());
+        Assert.assertEquals(2 * 3, warmer.connections.get());
+    }
+
+    @Test(timeout = 10000L)
+    public void testRetryAfterFailure() throws Exception {
+        final DataSourceMeta<Object> meta = meta("retry");
+        final RecordingWarmer warmer = new RecordingWarmer();
+        warmer.failures.set(1);
+        warmer.gate.countDown();
+        warmUp.register(meta, warmer);
+        awaitState(meta, "FAILED");
+        Assert.assertTrue(warmUp.awaitReady(meta));
+        Assert.assertEquals(0, warmer.connections.get());
+
+        warmUp.onConfigModify(Collections.singleton(config(meta)));
+        awaitState(meta, "READY");
+        Assert.assertEquals(2, warmer.builds.get());
+        Assert.assertEquals(3, warmer.connections.get());
+    }
+
+    @Test(timeout = 10000L)
+    public void testReleaseWhileWarming() throws Exception {
+        final DataSourceMeta<Object> meta = meta("release");
+        final Object lock = warmUp.lock(meta);
+        final RecordingWarmer warmer = new RecordingWarmer();
+        warmUp.register(meta, warmer);
+        Assert.assertTrue(warmer.started.await(5, TimeUnit.SECONDS));
+
+        warmUp.release();
+        Assert.assertSame(lock, warmUp.lock(meta));
+        Assert.assertTrue(warmUp.awaitReady(meta));
+        Assert.assertNull(warmUp.getReadiness().get(key(meta)));
+
+        /**
+         * 被中断的预热任务结束后不会再修改状态
+         */
+        Assert.assertTrue(warmer.finished.await(5, TimeUnit.SECONDS));
+        Assert.assertNull(warmUp.getReadiness().get(key(meta)));
+        Assert.assertTrue(warmUp.awaitReady(meta));
+
+        final RecordingWarmer again = new RecordingWarmer();
+        again.gate.countDown();
+        warmUp.register(meta, again);
+        awaitState(meta, "READY");
+        Assert.assertEquals(1, again.builds.get());
+        Assert.assertSame(lock, warmUp.lock(meta));
+    }
+
+    private void awaitState(DataSourceMeta<?> meta, String state) throws InterruptedException {
+        while (!state.equals(warmUp.getReadiness().get(key(meta)))) {
+            Thread.sleep(5L);
+        }
+    }
+
+    private static DataSourceMeta<Object> meta(String name) {
+        return new DataSourceMeta<Object>("jdbc:mysql://127.0.0.1:3306/" + name, "root", new Object());
+    }
+
+    private static String key(DataSourceMeta<?> meta) {
+        return meta.getUrl() + '|' + meta.getUsername();
+    }
+
+    private static ShadowDatabaseConfig config(DataSourceMeta<?> meta) {
+        final ShadowDatabaseConfig config = new ShadowDatabaseConfig();
+        config.setUrl(meta.getUrl());
+        config.setUsername(meta.getUsername());
+        return config;
+    }
+
+    /**
+     * 在 gate 打开前阻塞构建，记录构建次数、最大并发数和预热建立的连接数
+     */
+    private static class RecordingWarmer implements ShadowDataSourceWarmer<Object> {
+        private final CountDownLatch gate = new CountDownLatch(1);
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final AtomicInteger builds = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger connections = new AtomicInteger();
+
+        @Override
+        public String getMiddlewareName() {
+            return "test";
+        }
+
+        @Override
+        public void build(DataSourceMeta<Object> dataSourceMeta) {
+            final int current = active.incrementAndGet();
+            maxConcurrent.set(Math.max(maxConcurrent.get(), current));
+            builds.incrementAndGet();
+            started.countDown();
+            try {
+                if (!gate.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("gate not opened");
+                }
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("build failed");
+                }
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("interrupted", e);
+            } finally {
+                active.decrementAndGet();
+                finished.countDown();
+            }
+        }
+
+        @Override
+        public DataSource getShadowDataSource(DataSourceMeta<Object> dataSourceMeta) {
+            return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class},
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            if (!"getConnection".equals(method.getName())) {
+                                throw new UnsupportedOperationException(method.getName());
+                            }
+                            connections.incrementAndGet();
+                            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                                    new InvocationHandler() {
+                                        @Override
+                                        public Object invoke(Object proxy, Method method, Object[] args) {
+                                            return null;
+                                        }
+                                    });
+                        }
+                    });
+        }
+
+        @Override
+        public int getMinIdle(DataSourceMeta<Object> dataSourceMeta) {
+            return 3;
+        }
+    }
+}
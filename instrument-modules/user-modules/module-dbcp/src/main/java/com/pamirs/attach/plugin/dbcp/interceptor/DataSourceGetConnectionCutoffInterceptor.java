@@ -14,6 +14,7 @@
  */
 package com.pamirs.attach.plugin.dbcp.interceptor;
 
+import com.pamirs.attach.plugin.common.datasource.warmup.ShadowDataSourceWarmUp;
 import com.pamirs.attach.plugin.dbcp.ListenerRegisterStatus;
 import com.pamirs.attach.plugin.dbcp.destroy.DbcpDestroy;
 import com.pamirs.attach.plugin.dbcp.utils.DataSourceWrapUtil;
@@ -68,6 +69,12 @@ public class DataSourceGetConnectionCutoffInterceptor extends CutoffInterceptorA
         DataSourceMeta<BasicDataSource> dataSourceMeta = new DataSourceMeta<BasicDataSource>(dataSource.getUrl(), dataSource.getUsername(), dataSource);
         ClusterTestUtils.validateClusterTest();
 
+        /**
+         * 压测流量等待影子连接池在后台预热完成，超时后走原有的初始化逻辑
+         */
+        if (Pradar.isClusterTest()) {
+            ShadowDataSourceWarmUp.getInstance().awaitReady(dataSourceMeta);
+        }
         DataSourceWrapUtil.init(dataSourceMeta);
         Connection connection = null;
 
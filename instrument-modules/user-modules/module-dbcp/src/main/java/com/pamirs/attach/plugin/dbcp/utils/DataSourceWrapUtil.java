@@ -14,6 +14,8 @@
  */
 package com.pamirs.attach.plugin.dbcp.utils;
 
+import com.pamirs.attach.plugin.common.datasource.warmup.ShadowDataSourceWarmUp;
+import com.pamirs.attach.plugin.common.datasource.warmup.ShadowDataSourceWarmer;
 import com.pamirs.attach.plugin.dynamic.Attachment;
 import com.pamirs.attach.plugin.dynamic.ResourceManager;
 import com.pamirs.attach.plugin.dynamic.Type;
@@ -34,6 +36,7 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
@@ -41,7 +44,32 @@ import java.util.concurrent.ConcurrentHashMap;
 
 public class DataSourceWrapUtil {
     private static Logger logger = LoggerFactory.getLogger(DataSourceWrapUtil.class.getName());
-    private final static Object lock = new Object();
+    private final static ShadowDataSourceWarmer<BasicDataSource> WARMER = new ShadowDataSourceWarmer<BasicDataSource>() {
+        @Override
+        public String getMiddlewareName() {
+            return "dbcp";
+        }
+
+        @Override
+        public void build(DataSourceMeta<BasicDataSource> dataSourceMeta) {
+            init(dataSourceMeta);
+        }
+
+        @Override
+        public DataSource getShadowDataSource(DataSourceMeta<BasicDataSource> dataSourceMeta) {
+            DbcpMediaDataSource mediaDataSource = pressureDataSources.get(dataSourceMeta);
+            return mediaDataSource == null ? null : mediaDataSource.getDataSourcePerformanceTest();
+        }
+
+        @Override
+        public int getMinIdle(DataSourceMeta<BasicDataSource> dataSourceMeta) {
+            DbcpMediaDataSource mediaDataSource = pressureDataSources.get(dataSourceMeta);
+            if (mediaDataSource == null || mediaDataSource.getDataSourcePerformanceTest() == null) {
+                return 0;
+            }
+            return mediaDataSource.getDataSourcePerformanceTest().getMinIdle();
+        }
+    };
 
     public static final ConcurrentHashMap<DataSourceMeta, DbcpMediaDataSource> pressureDataSources = new ConcurrentHashMap<DataSourceMeta, DbcpMediaDataSource>();
 
@@ -124,7 +152,8 @@ public class DataSourceWrapUtil {
         if (isPerformanceDataSource(target)) {
             return;
         }
-        synchronized (lock) {
+        ShadowDataSourceWarmUp.getInstance().register(dataSourceMeta, WARMER);
+        synchronized (ShadowDataSourceWarmUp.getInstance().lock(dataSourceMeta)) {
             if (pressureDataSources.containsKey(dataSourceMeta) && pressureDataSources.get(dataSourceMeta) != null) {
                 return;
             }
@@ -415,7 +444,7 @@ public class DataSourceWrapUtil {
     }
 
     public static void retryInitPerformanceTest(DbcpMediaDataSource mediaDataSource) {
-        synchronized (DataSourceWrapUtil.class) {
+        synchronized (mediaDataSource) {
             if (mediaDataSource.getDataSourcePerformanceTest() != null) {
                 return;
             }
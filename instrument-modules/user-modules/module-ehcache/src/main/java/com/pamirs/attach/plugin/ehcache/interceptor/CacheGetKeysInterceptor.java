@@ -14,11 +14,11 @@
  */
 package com.pamirs.attach.plugin.ehcache.interceptor;
 
+import com.pamirs.pradar.cache.ClusterTestCacheViews;
 import com.pamirs.pradar.cache.ClusterTestCacheWrapperKey;
 import com.pamirs.pradar.interceptor.ResultInterceptorAdaptor;
 import com.shulie.instrument.simulator.api.listener.ext.Advice;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -33,21 +33,15 @@ public class CacheGetKeysInterceptor extends ResultInterceptorAdaptor {
             return result;
         }
 
+        /**
+         * 存在压测 key 时返回去掉包装的延迟视图，不再复制整个 key 列表
+         */
         List keys = (List) result;
-        List list = new ArrayList();
-        boolean replace = false;
         for (Object key : keys) {
             if (key instanceof ClusterTestCacheWrapperKey) {
-                list.add(((ClusterTestCacheWrapperKey) key).getKey());
-                replace = true;
-            } else {
-                list.add(key);
+                return ClusterTestCacheViews.unwrapKeys(keys);
             }
         }
-
-        if (replace) {
-            return list;
-        }
         return result;
     }
 }
@@ -0,0 +1,199 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.attach.plugin.es.common;
+
+import com.pamirs.pradar.Pradar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Rest 请求 endpoint 的索引模板
+ * <p>
+ * endpoint 的第一段为索引部分，如 /orders/_search、/a,b/_search、/orders/_doc/1，以 _ 开头时
+ * 如 /_bulk、/_search 则不带索引。同一个索引部分只会解析一次，解析后缓存原索引、压测索引以及
+ * 替换后的索引部分，后续请求只需要拼接 endpoint 的剩余部分
+ */
+public final class EndpointTemplate {
+
+    /**
+     * 最多缓存的索引部分个数，超过之后不再缓存，避免按时间滚动的索引无限增长
+     */
+    private static final int MAX_CACHED_TEMPLATES = 1024;
+
+    private static final ConcurrentMap<String, EndpointTemplate> TEMPLATES
+        = new ConcurrentHashMap<String, EndpointTemplate>();
+
+    private static final EndpointTemplate NO_INDEX = new EndpointTemplate("", Collections.<String>emptyList(),
+        Collections.<String>emptyList(), "");
+
+    /**
+     * 原索引部分
+     */
+    private final String indexPart;
+
+    private final List<String> indexes;
+
+    private final List<String> clusterTestIndexes;
+
+    /**
+     * 替换成压测索引后的索引部分
+     */
+    private final String clusterTestIndexPart;
+
+    private EndpointTemplate(String indexPart, List<String> indexes, List<String> clusterTestIndexes,
+        String clusterTestIndexPart) {
+        this.indexPart = indexPart;
+        this.indexes = indexes;
+        this.clusterTestIndexes = clusterTestIndexes;
+        this.clusterTestIndexPart = clusterTestIndexPart;
+    }
+
+    /**
+     * 获取 endpoint 对应的模板
+     *
+     * @param endpoint endpoint
+     * @return 模板
+     */
+    public static EndpointTemplate of(String endpoint) {
+        if (endpoint == null) {
+            return NO_INDEX;
+        }
+        final int start = indexPartStart(endpoint);
+        final int end = indexPartEnd(endpoint, start);
+        if (start == end || endpoint.charAt(start) == '_') {
+            return NO_INDEX;
+        }
+        final String indexPart = endpoint.substring(start, end);
+        EndpointTemplate template = TEMPLATES.get(indexPart);
+        if (template == null) {
+            template = compile(indexPart);
+            if (TEMPLATES.size() < MAX_CACHED_TEMPLATES) {
+                TEMPLATES.put(indexPart, template);
+            }
+        }
+        return template;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public static void release() {
+        TEMPLATES.clear();
+    }
+
+    /**
+     * 是否带有索引
+     *
+     * @return 是否带有索引
+     */
+    public boolean hasIndex() {
+        return !indexes.isEmpty();
+    }
+
+    /**
+     * 原索引
+     *
+     * @return 原索引
+     */
+    public List<String> getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * 压测索引
+     *
+     * @return 压测索引
+     */
+    public List<String> getClusterTestIndexes() {
+        return clusterTestIndexes;
+    }
+
+    /**
+     * 索引部分是否需要替换
+     *
+     * @return 是否需要替换
+     */
+    public boolean needRewrite() {
+        return indexPart != clusterTestIndexPart;
+    }
+
+    /**
+     * 将 endpoint 的索引部分替换成压测索引，endpoint 必须与获取模板时的索引部分一致
+     *
+     * @param endpoint endpoint
+     * @return 替换后的 endpoint，不需要替换时返回原 endpoint
+     */
+    public String rewrite(String endpoint) {
+        if (!needRewrite()) {
+            return endpoint;
+        }
+        final int start = indexPartStart(endpoint);
+        final int end = start + indexPart.length();
+        final StringBuilder builder = new StringBuilder(endpoint.length() + clusterTestIndexPart.length()
+            - indexPart.length());
+        builder.append(endpoint, 0, start).append(clusterTestIndexPart).append(endpoint, end, endpoint.length());
+        return builder.toString();
+    }
+
+    private static int indexPartStart(String endpoint) {
+        return endpoint.length() > 0 && endpoint.charAt(0) == '/' ? 1 : 0;
+    }
+
+    private static int indexPartEnd(String endpoint, int start) {
+        final int end = endpoint.indexOf('/', start);
+        return end == -1 ? endpoint.length() : end;
+    }
+
+    /**
+     * 解析索引部分，多个索引以逗号分隔，以 - 开头的排除索引同样需要加上压测前缀
+     */
+    private static EndpointTemplate compile(String indexPart) {
+        final List<String> indexes = new ArrayList<String>(2);
+        final List<String> clusterTestIndexes = new ArrayList<String>(2);
+        final StringBuilder builder = new StringBuilder(indexPart.length() + 8);
+        boolean rewritten = false;
+        int from = 0;
+        while (from <= indexPart.length()) {
+            int to = indexPart.indexOf(',', from);
+            if (to == -1) {
+                to = indexPart.length();
+            }
+            if (from > 0) {
+                builder.append(',');
+            }
+            String index = indexPart.substring(from, to);
+            if (index.length() > 0) {
+                String exclude = "";
+                if (index.charAt(0) == '-') {
+                    exclude = "-";
+                    index = index.substring(1);
+                }
+                final String clusterTestIndex = Pradar.isClusterTestPrefix(index) ? index
+                    : Pradar.addClusterTestPrefixLower(index);
+                rewritten |= clusterTestIndex != index;
+                indexes.add(index);
+                clusterTestIndexes.add(clusterTestIndex);
+                builder.append(exclude).append(clusterTestIndex);
+            }
+            from = to + 1;
+        }
+        return new EndpointTemplate(indexPart, Collections.unmodifiableList(indexes),
+            Collections.unmodifiableList(clusterTestIndexes), rewritten ? builder.toString() : indexPart);
+    }
+}
@@ -14,13 +14,12 @@
  */
 package com.pamirs.attach.plugin.es.common.impl;
 
-import com.pamirs.pradar.Pradar;
-import com.shulie.instrument.simulator.api.reflect.Reflect;
+import com.pamirs.attach.plugin.es.common.EndpointTemplate;
+import com.shulie.instrument.simulator.api.reflect.FieldAccessor;
+import com.shulie.instrument.simulator.api.reflect.FieldAccessors;
 import com.shulie.instrument.simulator.api.reflect.ReflectException;
-import org.apache.commons.lang.StringUtils;
 import org.elasticsearch.client.Request;
 
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -32,6 +31,11 @@ import java.util.List;
  */
 public class RestRequestIndexRename extends AbstractWriteRequestIndexRename {
 
+    /**
+     * 请求类对应的 endpoint 字段，请求类基本只有 {@link Request} 一个，只缓存最近一次的
+     */
+    private volatile EndpointField endpointField;
+
     @Override
     public String getName() {
         return "restRequest";
@@ -41,52 +45,43 @@ public class RestRequestIndexRename extends AbstractWriteRequestIndexRename {
     public List<String> reindex0(Object target) {
         Request req = (Request) target;
         String endpoint = req.getEndpoint();
-        String start = "";
-        if (StringUtils.startsWith(endpoint, "/")) {
-            start += '/';
-            endpoint = endpoint.substring(1);
-        }
-        String end = "";
-        String index = "";
-        final int indexOfSlash = StringUtils.indexOf(endpoint, '/');
-        if (indexOfSlash != -1) {
-            index = StringUtils.substring(endpoint, 0, indexOfSlash);
-            end = StringUtils.substring(endpoint, indexOfSlash);
-        } else {
-            index = endpoint;
-        }
-
-        if (StringUtils.startsWith(index, "_")) {
+        EndpointTemplate template = EndpointTemplate.of(endpoint);
+        if (!template.hasIndex()) {
             return Collections.EMPTY_LIST;
         }
 
-        if (!Pradar.isClusterTestPrefix(index)) {
-            index = Pradar.addClusterTestPrefixLower(index);
-            String newEndpoint = start + index + end;
+        if (template.needRewrite()) {
             try {
-                Reflect.on(req).set("endpoint", newEndpoint);
+                endpointField(req.getClass()).set(req, template.rewrite(endpoint));
             } catch (ReflectException e) {
             }
         }
 
-        return Arrays.asList(index);
+        return template.getClusterTestIndexes();
     }
 
     @Override
     public List<String> getIndex0(Object target) {
         Request req = (Request) target;
-        String endpoint = req.getEndpoint();
-        if (StringUtils.startsWith(endpoint, "/")) {
-            endpoint = endpoint.substring(1);
-        }
-        String index = endpoint;
-        final int indexOfSlash = StringUtils.indexOf(endpoint, '/');
-        if (indexOfSlash != -1) {
-            index = StringUtils.substring(endpoint, 0, indexOfSlash);
+        return EndpointTemplate.of(req.getEndpoint()).getIndexes();
+    }
+
+    private FieldAccessor endpointField(Class<?> type) {
+        EndpointField field = endpointField;
+        if (field == null || field.type != type) {
+            field = new EndpointField(type, FieldAccessors.get(type, "endpoint"));
+            endpointField = field;
         }
-        if (StringUtils.startsWith(index, "_")) {
-            return Collections.EMPTY_LIST;
+        return field.accessor;
+    }
+
+    private static class EndpointField {
+        private final Class<?> type;
+        private final FieldAccessor accessor;
+
+        EndpointField(Class<?> type, FieldAccessor accessor) {
+            this.type = type;
+            this.accessor = accessor;
         }
-        return Arrays.asList(index);
     }
 }
@@ -15,6 +15,7 @@
 package com.pamirs.attach.plugin.es.destroy;
 
 import com.pamirs.attach.plugin.es.common.ElasticSearchParser;
+import com.pamirs.attach.plugin.es.common.EndpointTemplate;
 import com.pamirs.attach.plugin.es.common.RequestIndexRenameProvider;
 import com.pamirs.attach.plugin.es.shadowserver.ShadowEsClientHolder;
 import com.pamirs.attach.plugin.es.shadowserver.rest.RestClientDefinitionStrategy;
@@ -30,6 +31,7 @@ public class ElasticSearchDestroy implements Destroyed {
     public void destroy() {
         ElasticSearchParser.release();
         RequestIndexRenameProvider.release();
+        EndpointTemplate.release();
         ShadowEsClientHolder.release();
         RestClientDefinitionStrategy.release();
         TransportClientDefinitionStrategy.release();
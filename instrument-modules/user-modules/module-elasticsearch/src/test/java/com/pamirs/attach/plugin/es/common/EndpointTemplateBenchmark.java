@@ -0,0 +1,142 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.attach.plugin.es.common;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.pamirs.attach.plugin.es.common.impl.RestRequestIndexRename;
+import com.pamirs.pradar.Pradar;
+import com.shulie.instrument.simulator.api.reflect.Reflect;
+import com.shulie.instrument.simulator.api.reflect.ReflectException;
+import org.apache.commons.lang.StringUtils;
+import org.elasticsearch.client.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 压测流量经过 RestClient 时改写 endpoint 中索引的开销，每种 endpoint 形态单独一组结果
+ * <p>
+ * legacyReindex 与 legacyGetIndex 还原了改造前的逐次解析：拆分 endpoint、拼接压测前缀再写回请求。
+ * 写回用的 Reflect.on(req).set 现在已经走字段访问器缓存，所以这一组结果只反映字符串解析与拼接的差距，
+ * 不包含原先每次查找字段的开销。templateReindex 与 templateGetIndex 从 {@link EndpointTemplate} 取出
+ * 按索引部分缓存的模板，只需要把剩余部分拼接到替换后的索引之后。
+ * <p>
+ * /orders,users/_search 这一组 legacy 实现会把 orders,users 当成一个索引，只在最前面加前缀，
+ * 结果与模板并不相同，只用于对比开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndpointTemplateBenchmark {
+
+    @Param({"/_bulk", "/orders/_search", "/orders/_bulk", "/orders,users/_search", "/orders/_doc/10086"})
+    private String endpoint;
+
+    private RestRequestIndexRename rename;
+
+    @Setup
+    public void setup() {
+        rename = new RestRequestIndexRename();
+    }
+
+    @Benchmark
+    public Object legacyReindex() {
+        return legacyReindex(new Request("POST", endpoint));
+    }
+
+    @Benchmark
+    public Object templateReindex() {
+        return rename.reindex0(new Request("POST", endpoint));
+    }
+
+    @Benchmark
+    public Object legacyGetIndex() {
+        return legacyGetIndex(endpoint);
+    }
+
+    @Benchmark
+    public Object templateGetIndex() {
+        return EndpointTemplate.of(endpoint).getIndexes();
+    }
+
+    /**
+     * 原先 RestRequestIndexRename.reindex0 的实现
+     */
+    private static List<String> legacyReindex(Request req) {
+        String endpoint = req.getEndpoint();
+        String start = "";
+        if (StringUtils.startsWith(endpoint, "/")) {
+            start += '/';
+            endpoint = endpoint.substring(1);
+        }
+        String end = "";
+        String index = "";
+        final int indexOfSlash = StringUtils.indexOf(endpoint, '/');
+        if (indexOfSlash != -1) {
+            index = StringUtils.substring(endpoint, 0, indexOfSlash);
+            end = StringUtils.substring(endpoint, indexOfSlash);
+        } else {
+            index = endpoint;
+        }
+
+        if (StringUtils.startsWith(index, "_")) {
+            return Collections.EMPTY_LIST;
+        }
+
+        if (!Pradar.isClusterTestPrefix(index)) {
+            index = Pradar.addClusterTestPrefixLower(index);
+            String newEndpoint = start + index + end;
+            try {
+                Reflect.on(req).set("endpoint", newEndpoint);
+            } catch (ReflectException e) {
+            }
+        }
+
+        return Arrays.asList(index);
+    }
+
+    /**
+     * 原先 RestRequestIndexRename.getIndex0 的实现
+     */
+    private static List<String> legacyGetIndex(String endpoint) {
+        if (StringUtils.startsWith(endpoint, "/")) {
+            endpoint = endpoint.substring(1);
+        }
+        String index = endpoint;
+        final int indexOfSlash = StringUtils.indexOf(endpoint, '/');
+        if (indexOfSlash != -1) {
+            index = StringUtils.substring(endpoint, 0, indexOfSlash);
+        }
+        if (StringUtils.startsWith(index, "_")) {
+            return Collections.EMPTY_LIST;
+        }
+        return Arrays.asList(index);
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.attach.plugin.es.common;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * 校验 {@link EndpointTemplate} 对各种 endpoint 的索引解析与压测索引替换
+ */
+public class EndpointTemplateTest {
+
+    /**
+     * 未指定日志目录时 Pradar 会在工作目录下创建 ~/pradarlogs，测试日志写到临时目录
+     */
+    @BeforeClass
+    public static void redirectPradarLogs() {
+        System.setProperty("SIMULATOR_LOG_PATH",
+            new File(System.getProperty("java.io.tmpdir"), "pradarlogs-test").getAbsolutePath());
+    }
+
+    @Before
+    public void before() {
+        EndpointTemplate.release();
+    }
+
+    @After
+    public void after() {
+        EndpointTemplate.release();
+    }
+
+    @Test
+    public void testNoIndex() {
+        for (String endpoint : new String[] {"/_bulk", "_search", "/_search", "/", "", null}) {
+            final EndpointTemplate template = EndpointTemplate.of(endpoint);
+            Assert.assertFalse(endpoint, template.hasIndex());
+            Assert.assertFalse(endpoint, template.needRewrite());
+            Assert.assertEquals(Collections.<String>emptyList(), template.getIndexes());
+            Assert.assertSame(endpoint, template.rewrite(endpoint));
+        }
+    }
+
+    @Test
+    public void testSingleIndex() {
+        final EndpointTemplate template = EndpointTemplate.of("/idx/_search");
+        Assert.assertTrue(template.needRewrite());
+        Assert.assertEquals(Collections.singletonList("idx"), template.getIndexes());
+        Assert.assertEquals(Collections.singletonList("pt_idx"), template.getClusterTestIndexes());
+        Assert.assertEquals("/pt_idx/_search", template.rewrite("/idx/_search"));
+        Assert.assertEquals("/pt_idx", EndpointTemplate.of("/idx").rewrite("/idx"));
+    }
+
+    @Test
+    public void testWithoutLeadingSlash() {
+        final EndpointTemplate template = EndpointTemplate.of("idx/_doc/1");
+        Assert.assertEquals(Collections.singletonList("idx"), template.getIndexes());
+        Assert.assertEquals("pt_idx/_doc/1", template.rewrite("idx/_doc/1"));
+        Assert.assertSame(template, EndpointTemplate.of("/idx/_search"));
+    }
+
+    @Test
+    public void testMultiIndex() {
+        final EndpointTemplate template = EndpointTemplate.of("/a,b,c/_search");
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), template.getIndexes());
+        Assert.assertEquals(Arrays.asList("pt_a", "pt_b", "pt_c"), template.getClusterTestIndexes());
+        Assert.assertEquals("/pt_a,pt_b,pt_c/_search", template.rewrite("/a,b,c/_search"));
+    }
+
+    @Test
+    public void testExcludeIndex() {
+        final EndpointTemplate template = EndpointTemplate.of("/a,-b/_search");
+        Assert.assertEquals(Arrays.asList("a", "b"), template.getIndexes());
+        Assert.assertEquals(Arrays.asList("pt_a", "pt_b"), template.getClusterTestIndexes());
+        Assert.assertEquals("/pt_a,-pt_b/_search", template.rewrite("/a,-b/_search"));
+    }
+
+    @Test
+    public void testAlreadyPrefixed() {
+        final String endpoint = "/pt_idx/_search";
+        final EndpointTemplate template = EndpointTemplate.of(endpoint);
+        Assert.assertTrue(template.hasIndex());
+        Assert.assertFalse(template.needRewrite());
+        Assert.assertSame(endpoint, template.rewrite(endpoint));
+        Assert.assertSame(template, EndpointTemplate.of(endpoint));
+
+        final EndpointTemplate mixed = EndpointTemplate.of("/pt_a,b/_search");
+        Assert.assertTrue(mixed.needRewrite());
+        Assert.assertEquals("/pt_a,pt_b/_search", mixed.rewrite("/pt_a,b/_search"));
+    }
+
+    @Test
+    public void testCacheFull() {
+        final EndpointTemplate cached = EndpointTemplate.of("/first/_search");
+        for (int i = 1; i < 1024; i++) {
+            EndpointTemplate.of("/index-" + i + "/_search");
+        }
+        Assert.assertSame(cached, EndpointTemplate.of("/first/_search"));
+
+        /**
+         * 缓存满后新的索引部分每次重新解析，结果不变
+         */
+        final EndpointTemplate uncached = EndpointTemplate.of("/overflow/_search");
+        Assert.assertNotSame(uncached, EndpointTemplate.of("/overflow/_search"));
+        Assert.assertEquals("/pt_overflow/_search", EndpointTemplate.of("/overflow/_search")
+            .rewrite("/overflow/_search"));
+
+        EndpointTemplate.release();
+        Assert.assertSame(EndpointTemplate.of("/overflow/_search"), EndpointTemplate.of("/overflow/_search"));
+    }
+}
@@ -16,14 +16,14 @@ package com.pamirs.attach.plugin.hessian.interceptor;
 
 import com.caucho.hessian.client.HessianConnection;
 import com.pamirs.attach.plugin.hessian.HessianConstants;
-import com.pamirs.pradar.Pradar;
+import com.pamirs.pradar.PropagationCodec;
+import com.pamirs.pradar.interceptor.ContextTransfer;
 import com.pamirs.pradar.interceptor.TraceInterceptorAdaptor;
 import com.shulie.instrument.simulator.api.listener.ext.Advice;
 import com.shulie.instrument.simulator.api.resource.DynamicFieldManager;
 
 import javax.annotation.Resource;
 import java.lang.reflect.Method;
-import java.util.Map;
 
 /**
  * @Description 解决上下文传输问题
@@ -52,11 +52,13 @@ public class HessianProxyAddRequestHeadersInterceptor extends TraceInterceptorAd
         if (args == null || args.length == 0) {
             return;
         }
-        HessianConnection connection = (HessianConnection) args[0];
-        Map<String, String> context = Pradar.getInvokeContextTransformMap();
-        for (Map.Entry<String, String> entry : context.entrySet()) {
-            connection.addHeader(entry.getKey(), entry.getValue());
-        }
+        final HessianConnection connection = (HessianConnection) args[0];
+        PropagationCodec.inject(new ContextTransfer() {
+            @Override
+            public void transfer(String key, String value) {
+                connection.addHeader(key, value);
+            }
+        });
 
         Method method = manager.getDynamicField(target, HessianConstants.DYNAMIC_FIELD_METHOD);
         if (method != null) {
@@ -14,6 +14,7 @@
  */
 package com.pamirs.attach.plugin.hikariCP.interceptor;
 
+import com.pamirs.attach.plugin.common.datasource.warmup.ShadowDataSourceWarmUp;
 import com.pamirs.attach.plugin.dynamic.Attachment;
 import com.pamirs.attach.plugin.dynamic.ResourceManager;
 import com.pamirs.attach.plugin.dynamic.Type;
@@ -101,6 +102,12 @@ public class DataSourceConnectionInterceptor extends CutoffInterceptorAdaptor {
         HikariDataSource dataSource = (HikariDataSource) target;
 
         DataSourceMeta<HikariDataSource> dataSourceMeta = new DataSourceMeta<HikariDataSource>(dataSource.getJdbcUrl(), dataSource.getUsername(), dataSource);
+        /**
+         * 压测流量等待影子连接池在后台预热完成，超时后走原有的初始化逻辑
+         */
+        if (Pradar.isClusterTest()) {
+            ShadowDataSourceWarmUp.getInstance().awaitReady(dataSourceMeta);
+        }
         DataSourceWrapUtil.init(dataSourceMeta);
 
         Connection connection = null;
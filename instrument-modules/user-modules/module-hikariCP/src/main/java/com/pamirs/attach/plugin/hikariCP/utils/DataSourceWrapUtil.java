@@ -14,6 +14,8 @@
  */
 package com.pamirs.attach.plugin.hikariCP.utils;
 
+import com.pamirs.attach.plugin.common.datasource.warmup.ShadowDataSourceWarmUp;
+import com.pamirs.attach.plugin.common.datasource.warmup.ShadowDataSourceWarmer;
 import com.pamirs.pradar.ConfigNames;
 import com.pamirs.pradar.ErrorTypeEnum;
 import com.pamirs.pradar.Throwables;
@@ -29,6 +31,7 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -45,7 +48,32 @@ public class DataSourceWrapUtil {
 
     public static final ConcurrentHashMap<DataSourceMeta, HikariMediaDataSource> pressureDataSources = new ConcurrentHashMap<DataSourceMeta, HikariMediaDataSource>();
 
-    private final static Object lock = new Object();
+    private final static ShadowDataSourceWarmer<HikariDataSource> WARMER = new ShadowDataSourceWarmer<HikariDataSource>() {
+        @Override
+        public String getMiddlewareName() {
+            return "hikari";
+        }
+
+        @Override
+        public void build(DataSourceMeta<HikariDataSource> dataSourceMeta) {
+            init(dataSourceMeta);
+        }
+
+        @Override
+        public DataSource getShadowDataSource(DataSourceMeta<HikariDataSource> dataSourceMeta) {
+            HikariMediaDataSource mediaDataSource = pressureDataSources.get(dataSourceMeta);
+            return mediaDataSource == null ? null : mediaDataSource.getDataSourcePerformanceTest();
+        }
+
+        @Override
+        public int getMinIdle(DataSourceMeta<HikariDataSource> dataSourceMeta) {
+            HikariMediaDataSource mediaDataSource = pressureDataSources.get(dataSourceMeta);
+            if (mediaDataSource == null || mediaDataSource.getDataSourcePerformanceTest() == null) {
+                return 0;
+            }
+            return mediaDataSource.getDataSourcePerformanceTest().getMinimumIdle();
+        }
+    };
 
     public static void destroy() {
         Iterator<Map.Entry<DataSourceMeta, HikariMediaDataSource>> it = pressureDataSources.entrySet().iterator();
@@ -110,8 +138,9 @@ public class DataSourceWrapUtil {
         if (isPerformanceDataSource(target)) {
             return;
         }
-        // 解决高并发情况下获取到 close 的连接
-        synchronized (lock) {
+        ShadowDataSourceWarmUp.getInstance().register(dataSourceMeta, WARMER);
+        // 解决高并发情况下获取到 close 的连接, 每个业务数据源使用独立的锁
+        synchronized (ShadowDataSourceWarmUp.getInstance().lock(dataSourceMeta)) {
             if (pressureDataSources.get(dataSourceMeta) != null) {
                 return;
             }
@@ -192,7 +221,7 @@ public class DataSourceWrapUtil {
     }
 
     public static void retryInitPerformanceTest(HikariMediaDataSource mediaDataSource) {
-        synchronized (DataSourceWrapUtil.class) {
+        synchronized (mediaDataSource) {
             if (mediaDataSource.getDataSourcePerformanceTest() != null) {
                 return;
             }
@@ -20,8 +20,8 @@ import io.shulie.instrument.module.isolation.exception.IsolationRuntimeException
 import io.shulie.instrument.module.isolation.resource.ShadowResourceLifecycle;
 
 import java.lang.reflect.Method;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @Description
@@ -31,54 +31,66 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ShadowResourceLifecycleModule {
 
     private final ShadowResourceLifecycle shadowResourceLifecycle;
-    private final Map<String, Method> methodMap;
+
+    /**
+     * 影子对象所属类的方法表，只在影子对象的类变化时重新解析
+     */
+    private volatile MethodTable methodTable;
 
     public ShadowResourceLifecycleModule(ShadowResourceLifecycle shadowResourceLifecycle) {
         this.shadowResourceLifecycle = shadowResourceLifecycle;
-        methodMap = new ConcurrentHashMap<String, Method>();
     }
 
     public Method fetchMethod(String method, String methodDesc) {
-        //todo@langyi 优化性能和内存.
         Object ptTarget = shadowResourceLifecycle.getTarget();
-        String key = toString(ptTarget);
-        String keyTemp = keyOfMethod(method, methodDesc);
-        String methodKey = key + keyTemp;
-        Method m = methodMap.get(methodKey);
-        if (m == null) {
-            prepareMethodMap(key, ptTarget.getClass());
-            m = methodMap.get(methodKey);
+        MethodTable table = methodTable;
+        if (table == null || table.targetClass != ptTarget.getClass()) {
+            table = new MethodTable(ptTarget.getClass());
+            methodTable = table;
         }
+        Method m = table.get(method, methodDesc);
         if (m == null) {
-            throw new IsolationRuntimeException("[isolation]can not found method {}" + methodKey + " in " + ptTarget);
+            throw new IsolationRuntimeException("[isolation]can not found method {}" + method + methodDesc + " in " + ptTarget);
         }
         return m;
     }
 
-    private void prepareMethodMap(String key, Class c) {
-        if (c == null) {
-            return;
-        }
-        for (final Method temp : c.getDeclaredMethods()) {
-            temp.setAccessible(true);
-            methodMap.put(key + keyOfMethod(temp.getName(), new BehaviorDescriptor(temp).getDescriptor()), temp);
-        }
-        prepareMethodMap(key, c.getSuperclass());
-    }
-
-    private String keyOfMethod(String method, String methodDesc) {
-        return ":" + method + methodDesc;
-    }
-
     public ShadowResourceLifecycle getShadowResourceLifecycle() {
         return shadowResourceLifecycle;
     }
 
-    public Map<String, Method> getMethodMap() {
-        return methodMap;
-    }
+    /**
+     * 一个类及其父类声明的所有方法，按 方法名 -> 方法描述 -> 方法 存放，
+     * 查找时不需要拼接字符串。构建完成后只读
+     */
+    private static final class MethodTable {
+        private final Class targetClass;
+        private final Map<String, Map<String, Method>> methods = new HashMap<String, Map<String, Method>>();
 
-    public String toString(Object obj) {
-        return obj.getClass().getName() + "@" + Integer.toHexString(obj.hashCode());
+        MethodTable(Class targetClass) {
+            this.targetClass = targetClass;
+            Class c = targetClass;
+            while (c != null) {
+                for (final Method temp : c.getDeclaredMethods()) {
+                    Map<String, Method> descMethods = methods.get(temp.getName());
+                    if (descMethods == null) {
+                        descMethods = new HashMap<String, Method>(4);
+                        methods.put(temp.getName(), descMethods);
+                    }
+                    String desc = new BehaviorDescriptor(temp).getDescriptor();
+                    // 子类的方法优先
+                    if (!descMethods.containsKey(desc)) {
+                        temp.setAccessible(true);
+                        descMethods.put(desc, temp);
+                    }
+                }
+                c = c.getSuperclass();
+            }
+        }
+
+        Method get(String method, String methodDesc) {
+            Map<String, Method> descMethods = methods.get(method);
+            return descMethods == null ? null : descMethods.get(methodDesc);
+        }
     }
 }
@@ -1,6 +1,7 @@
 package io.shulie.instrument.module.isolation.proxy.impl;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
 
 /**
  * @author Licey
@@ -10,7 +11,8 @@ public abstract class ModifyParamShadowMethodProxy extends RouteShadowMethodProx
 
     @Override
     public Object executeMethod(Object shadowTarget, Method method, Object... args) throws Exception {
-        return super.executeMethod(shadowTarget, method, fetchParam(shadowTarget, method, args));
+        // 修改的是参数的副本，不影响业务方法的原始参数
+        return super.executeMethod(shadowTarget, method, fetchParam(shadowTarget, method, args == null ? null : Arrays.copyOf(args, args.length)));
     }
 
     public abstract Object[] fetchParam(Object shadowTarget, Method method, Object... args);
@@ -10,7 +10,6 @@ import io.shulie.instrument.module.isolation.proxy.ShadowProxy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Arrays;
 
 /**
  * @author Licey
@@ -29,12 +28,11 @@ public class RouteInterceptor extends CutoffInterceptorAdaptor {
     public CutOffResult cutoff0(Advice advice) throws Throwable {
         if (Pradar.isClusterTest() && shadowProxy.needRoute(advice.getTarget())) {
             try {
-                Object[] parameterArray = advice.getParameterArray();
                 Object res = shadowProxy.executeMethod(
                         advice.getTarget()
                         , advice.getBehaviorName()
                         , advice.getBehaviorNameDesc()
-                        , parameterArray == null ? null : Arrays.copyOf(parameterArray, parameterArray.length));
+                        , advice.getParameterArray());
                 return CutOffResult.cutoff(res);
             } catch (Throwable t) {
                 logger.error("execute shadow proxy fail: {}", JSON.toJSONString(this.shadowProxy), t);
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.shulie.instrument.module.isolation.common;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.shulie.instrument.simulator.api.util.BehaviorDescriptor;
+import io.shulie.instrument.module.isolation.resource.ShadowResourceLifecycle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ShadowProxy 把一次调用路由到影子对象时，查找影子方法并反射调用的开销
+ * <p>
+ * stringKey 还原了改造前 fetchMethod 的做法：每次调用都用 类名@hashCode:方法名方法描述 拼出 key 去查 Map，
+ * 再复制一份参数数组；methodTable 走 {@link ShadowResourceLifecycleModule#fetchMethod}，按影子对象的类解析好的方法表
+ * 按方法名、方法描述两级查找。两者最终 invoke 的是同一个 Method，差值全部来自 key 的拼接与哈希以及参数数组的复制，
+ * 影子客户端的方法越多、类名越长，差距越明显
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShadowRouteBenchmark {
+
+    private static final String METHOD_NAME = "get";
+    private static final String METHOD_DESC = "(Ljava/lang/String;)Ljava/lang/String;";
+
+    private ShadowResourceLifecycleModule module;
+    private Map<String, Method> legacyMethodMap;
+    private Object[] args;
+
+    @Setup
+    public void setup() {
+        final ShadowClient shadowClient = new ShadowClient();
+        module = new ShadowResourceLifecycleModule(new ShadowResourceLifecycle() {
+            @Override
+            public Object getTarget() {
+                return shadowClient;
+            }
+
+            @Override
+            public boolean isRunning() {
+                return true;
+            }
+
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void destroy(long timeout) {
+            }
+        });
+        legacyMethodMap = new ConcurrentHashMap<String, Method>();
+        String key = legacyKey(shadowClient);
+        for (Method method : ShadowClient.class.getDeclaredMethods()) {
+            method.setAccessible(true);
+            legacyMethodMap.put(key + ":" + method.getName() + new BehaviorDescriptor(method).getDescriptor(), method);
+        }
+        args = new Object[] {"key"};
+    }
+
+    @Benchmark
+    public Object stringKey() throws Exception {
+        Object target = module.getShadowResourceLifecycle().getTarget();
+        Object[] copied = Arrays.copyOf(args, args.length);
+        Method method = legacyMethodMap.get(legacyKey(target) + ":" + METHOD_NAME + METHOD_DESC);
+        return method.invoke(target, copied);
+    }
+
+    @Benchmark
+    public Object methodTable() throws Exception {
+        Object target = module.getShadowResourceLifecycle().getTarget();
+        return module.fetchMethod(METHOD_NAME, METHOD_DESC).invoke(target, args);
+    }
+
+    private static String legacyKey(Object obj) {
+        return obj.getClass().getName() + "@" + Integer.toHexString(obj.hashCode());
+    }
+
+    public static class ShadowClient {
+        public String get(String key) {
+            return key;
+        }
+
+        public String set(String key, String value) {
+            return value;
+        }
+    }
+}
@@ -17,6 +17,7 @@ package com.pamirs.attach.plugin.jdk.http.interceptor;
 import com.pamirs.attach.plugin.dynamic.reflect.ReflectionUtils;
 import com.pamirs.attach.plugin.jdk.http.JdkHttpConstants;
 import com.pamirs.pradar.Pradar;
+import com.pamirs.pradar.PropagationCodec;
 import com.pamirs.pradar.ResultCode;
 import com.pamirs.pradar.interceptor.ContextTransfer;
 import com.pamirs.pradar.interceptor.SpanRecord;
@@ -32,7 +33,6 @@ import sun.net.www.http.PosterOutputStream;
 
 import java.lang.reflect.Field;
 import java.net.SocketTimeoutException;
-import java.util.Map;
 
 /**
  * @Auther: vernon
@@ -64,10 +64,13 @@ public class HttpClientInterceptor extends TraceInterceptorAdaptor {
         if (header == null) {
             header = new MessageHeader();
         }
-        Map<String, String> ctx = Pradar.getInvokeContextTransformMap();
-        for (Map.Entry<String, String> entry : ctx.entrySet()) {
-            header.set(entry.getKey(), entry.getValue());
-        }
+        final MessageHeader requests = header;
+        PropagationCodec.inject(new ContextTransfer() {
+            @Override
+            public void transfer(String key, String value) {
+                requests.set(key, value);
+            }
+        });
         ReflectionUtils.set(client, JdkHttpConstants.DYNAMIC_FIELD_REQUESTS, header);
     }
 
@@ -15,11 +15,11 @@
 package com.pamirs.attach.plugin.okhttp.v2.interceptor;
 
 import java.net.URL;
-import java.util.Map;
 
 import com.pamirs.attach.plugin.okhttp.OKHttpConstants;
-import com.pamirs.pradar.Pradar;
 import com.pamirs.pradar.PradarService;
+import com.pamirs.pradar.PropagationCodec;
+import com.pamirs.pradar.interceptor.ContextTransfer;
 import com.pamirs.pradar.interceptor.SpanRecord;
 import com.pamirs.pradar.interceptor.TraceInterceptorAdaptor;
 import com.pamirs.pradar.internal.config.MatchConfig;
@@ -94,12 +94,14 @@ public class RequestBuilderBuildMethodV2Interceptor extends TraceInterceptorAdap
     @Override
     public SpanRecord beforeTrace(Advice advice) {
         Object target = advice.getTarget();
-        Request.Builder builder = (Request.Builder) target;
-        Map<String, String> contextMap = Pradar.getInvokeContextTransformMap();
-        for (Map.Entry<String, String> entry : contextMap.entrySet()) {
-            builder.removeHeader(entry.getKey());
-            builder.addHeader(entry.getKey(), entry.getValue());
-        }
+        final Request.Builder builder = (Request.Builder) target;
+        PropagationCodec.inject(new ContextTransfer() {
+            @Override
+            public void transfer(String key, String value) {
+                builder.removeHeader(key);
+                builder.addHeader(key, value);
+            }
+        });
         return null;
     }
 }
@@ -73,6 +73,26 @@ public class ConfigFetcherModule extends ModuleLifecycleAdapter implements Exten
         return commandResponse;
     }
 
+    /**
+     * 获取应用配置各个分段的同步统计信息，包括拉取耗时、拉取次数、变更次数和失败次数
+     *
+     * @param args
+     * @return
+     */
+    @Command("getConfigSyncStatistics")
+    public CommandResponse<Object> getConfigSyncStatistics(Map<String, String> args) {
+        CommandResponse<Object> commandResponse = new CommandResponse<Object>();
+        ConfigManager manager = configManager;
+        if (manager == null) {
+            commandResponse.setSuccess(false);
+            commandResponse.setMessage("config fetcher is not active");
+            return commandResponse;
+        }
+        commandResponse.setSuccess(true);
+        commandResponse.setResult(manager.getConfigSyncStatistics());
+        return commandResponse;
+    }
+
     private ZookeeperOptions buildZookeeperOptions() {
         ZookeeperOptions zookeeperOptions = new ZookeeperOptions();
         zookeeperOptions.setName("zookeeper");
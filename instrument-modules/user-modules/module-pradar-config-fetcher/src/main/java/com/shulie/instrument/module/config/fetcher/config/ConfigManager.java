@@ -22,11 +22,13 @@ import com.shulie.instrument.module.config.fetcher.config.impl.ClusterTestConfig
 import com.shulie.instrument.module.config.fetcher.config.resolver.ConfigResolver;
 import com.shulie.instrument.module.config.fetcher.config.resolver.http.ApplicationConfigHttpResolver;
 import com.shulie.instrument.module.config.fetcher.config.resolver.http.ClusterTestConfigHttpResolver;
+import com.shulie.instrument.module.config.fetcher.config.resolver.http.ConfigSyncEngine;
 import com.shulie.instrument.simulator.api.guard.SimulatorGuard;
 import com.shulie.instrument.simulator.api.resource.SwitcherManager;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
@@ -38,6 +40,7 @@ public final class ConfigManager {
 
     private final ApplicationConfig applicationConfig;
     private final ClusterTestConfig clusterTestConfig;
+    private final ApplicationConfigHttpResolver applicationConfigResolver;
 
     private final ConcurrentHashMap<String, List<ConfigListener>> listenerHolder = new ConcurrentHashMap<String, List<ConfigListener>>();
     private static ConfigManager INSTANCE;
@@ -46,7 +49,8 @@ public final class ConfigManager {
         /**
          * 只需要你保护 ConfigResolver 下所有的操作不被其他插件增强即可
          */
-        this.applicationConfig = new ApplicationConfig(SimulatorGuard.getInstance().doGuard(ConfigResolver.class, new ApplicationConfigHttpResolver(switcherManager, interval, timeUnit)));
+        this.applicationConfigResolver = new ApplicationConfigHttpResolver(switcherManager, interval, timeUnit);
+        this.applicationConfig = new ApplicationConfig(SimulatorGuard.getInstance().doGuard(ConfigResolver.class, applicationConfigResolver));
         this.clusterTestConfig = new ClusterTestConfig(SimulatorGuard.getInstance().doGuard(ConfigResolver.class, new ClusterTestConfigHttpResolver(interval, timeUnit)));
         initAll();
     }
@@ -103,6 +107,15 @@ public final class ConfigManager {
         listenerHolder.put(listenerKey, configListeners);
     }
 
+    /**
+     * 获取应用配置各个分段的同步统计信息
+     *
+     * @return 分段名称 -> 统计信息
+     */
+    public Map<String, ConfigSyncEngine.SectionStatistics> getConfigSyncStatistics() {
+        return applicationConfigResolver.getSyncStatistics();
+    }
+
     public static String getListenerKey(String typeName, String fieldName, String eventName) {
         return typeName + "@" + fieldName + "#" + eventName;
     }
@@ -20,6 +20,7 @@ import com.pamirs.pradar.pressurement.agent.event.impl.MockConfigModifyEvent;
 import com.pamirs.pradar.pressurement.agent.event.impl.MockConfigRemoveEvent;
 import com.pamirs.pradar.pressurement.agent.shared.service.EventRouter;
 import com.pamirs.pradar.pressurement.agent.shared.service.GlobalConfig;
+import com.pamirs.pradar.script.ScriptManager;
 import com.shulie.instrument.module.config.fetcher.config.impl.ApplicationConfig;
 import com.shulie.instrument.module.config.fetcher.config.utils.ObjectUtils;
 import com.shulie.instrument.simulator.api.util.CollectionUtils;
@@ -94,6 +95,10 @@ public class MockConfigChanger implements IChange<Set<MockConfig>, ApplicationCo
             EventRouter.router().publish(modifyEvent);
         }
         GlobalConfig.getInstance().setMockConfigs(newValue);
+        /**
+         * mock 脚本变更后丢弃已编译的旧脚本
+         */
+        ScriptManager.getInstance().invalidate();
         if (LOGGER.isInfoEnabled()) {
             LOGGER.info("publish mock config successful. config={}", newValue);
         }
@@ -168,6 +168,19 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
     private static final String INTERFACE_NAME = "INTERFACE_NAME";
     private static final String PLUGIN_MAX_REDIS_EXPIRE_TIME = "maxRedisExpireTime";
 
+    /**
+     * 增量同步的配置分段，白名单和影子消费者都会写入 mq 名单，所以放在同一个分段
+     */
+    private static final String SECTION_PLUGIN = "plugin";
+    private static final String SECTION_WHITE_LIST = "whiteList";
+    private static final String SECTION_SHADOW_DATABASE = "shadowDatabase";
+    private static final String SECTION_SHADOW_JOB = "shadowJob";
+    private static final String SECTION_MOCK = "mock";
+    private static final String SECTION_SHADOW_REDIS_SERVER = "shadowRedisServer";
+    private static final String SECTION_SHADOW_ES_SERVER = "shadowEsServer";
+    private static final String SECTION_SHADOW_HBASE_SERVER = "shadowHbaseServer";
+    private static final String SECTION_TRACE_REGULAR_RULE = "traceRegularRule";
+
     private final ExecutionStrategy forwardStrategy = new ForwardStrategy();
     private final ExecutionStrategy mockStrategy = new MockStrategy();
     private final ExecutionStrategy whiteListStrategy = new WhiteListStrategy();
@@ -203,6 +216,12 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
     private AtomicBoolean shadowConfigPullSwitch = new AtomicBoolean(Boolean.TRUE);
     protected SwitcherManager switcherManager;
 
+    private final ConfigSyncEngine syncEngine = new ConfigSyncEngine(4);
+    /**
+     * 当前线程正在应用的同步结果，分段解析时优先使用预先并行拉取的接口结果
+     */
+    private final ThreadLocal<ConfigSyncEngine.SyncResult> currentSync = new ThreadLocal<ConfigSyncEngine.SyncResult>();
+
     public ApplicationConfigHttpResolver(SwitcherManager switcherManager, int interval, TimeUnit timeUnit) {
         super("application-config-fetch-scheduled", interval, timeUnit);
         this.switcherManager = switcherManager;
@@ -217,6 +236,7 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
                 } else {
                     return EventResult.IGNORE;
                 }
+                syncEngine.invalidateAll();
                 return EventResult.success("ApplicationConfigHttpResolver update config pull switch");
             }
 
@@ -234,6 +254,7 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
                 } else {
                     return EventResult.IGNORE;
                 }
+                syncEngine.invalidateAll();
                 return EventResult.success("ApplicationConfigHttpResolver update config pull switch");
             }
 
@@ -273,59 +294,128 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
 
         ApplicationConfig applicationConfig = new ApplicationConfig(this);
 
+        /**
+         * 并行拉取所有配置分段，内容没有变化的分段不再解析，对应的配置项置为 null 不会下发变更事件
+         */
+        ConfigSyncEngine.SyncResult syncResult = syncEngine.sync(buildSections(troControlWebUrl));
+        currentSync.set(syncResult);
+        try {
+            applySections(troControlWebUrl, applicationConfig, syncResult);
+        } finally {
+            currentSync.remove();
+        }
+
+        if (PradarSwitcher.configSyncSwitchOn()
+                || (ApplicationConfig.getWhiteList && ApplicationConfig.getPressureTable4AccessSimple
+                && ApplicationConfig.getShadowJobConfig)) {
+            // 配置拉取过程中，配置无异常
+            // 或者历史配置有完成拉取的记录
+            if (isInfoEnabled) {
+                logger.info("SIMULATOR: successful to fetched config.");
+            }
+            PradarSwitcher.clusterTestReady();
+            switcherManager.switchOn(ConfigFetcherConstants.MODULE_NAME);
+        } else {
+            // 本次配置没有成功拉取 并且 历史无成功拉取配置
+            // 中断压测,配置如果从未成功过，会导致module模块无法加载，所有模块无法生效
+            if (isInfoEnabled) {
+                logger.info("SIMULATOR: failed to fetched config.");
+            }
+            PradarSwitcher.clusterTestPrepare();
+            switcherManager.switchOff(ConfigFetcherConstants.MODULE_NAME);
+        }
+        return applicationConfig;
+    }
+
+    /**
+     * 按分段应用本次同步的配置，分段应用成功后提交摘要
+     *
+     * @param troControlWebUrl  控制台地址
+     * @param applicationConfig 本次拉取的配置
+     * @param syncResult        同步结果
+     */
+    private void applySections(String troControlWebUrl, ApplicationConfig applicationConfig,
+                               ConfigSyncEngine.SyncResult syncResult) {
         /**
          * 拉取插件配置
          */
-        if (getPluginConfig(troControlWebUrl, applicationConfig)) {
-            ApplicationConfig.getPlugin = Boolean.TRUE;
+        if (syncResult.isChanged(SECTION_PLUGIN)) {
+            if (getPluginConfig(troControlWebUrl, applicationConfig)) {
+                ApplicationConfig.getPlugin = Boolean.TRUE;
+                syncEngine.commit(syncResult, SECTION_PLUGIN);
+            }
+        } else {
+            applicationConfig.setPluginMaxRedisExpireTime(null);
         }
 
         boolean isSuccess;
+        final boolean whiteListChanged = syncResult.isChanged(SECTION_WHITE_LIST);
+        boolean whiteListApplied = true;
         if (whiteListPullSwitch.get()) {
-            /**
-             * 从服务端获取白名单列表,如果失败则启动失败
-             */
-            isSuccess = getWhiteList(troControlWebUrl, applicationConfig);
-            if (!isSuccess) {
-                PradarSwitcher.turnConfigSyncSwitchOff();
-                if (ApplicationConfig.getWhiteList) {
-                    // 存在成功获取配置
-                    applicationConfig.setUrlWhiteList(GlobalConfig.getInstance().getUrlWhiteList());
-                    applicationConfig.setRpcNameWhiteList(GlobalConfig.getInstance().getRpcNameWhiteList());
-                    applicationConfig.setCacheKeyAllowList(GlobalConfig.getInstance().getCacheKeyWhiteList());
-                    applicationConfig.setContextPathBlockList(GlobalConfig.getInstance().getContextPathBlockList());
-                    applicationConfig.setMqList(GlobalConfig.getInstance().getMqWhiteList());
-                    applicationConfig.setSearchWhiteList(GlobalConfig.getInstance().getSearchWhiteList());
+            if (whiteListChanged) {
+                /**
+                 * 从服务端获取白名单列表,如果失败则启动失败
+                 */
+                isSuccess = getWhiteList(troControlWebUrl, applicationConfig);
+                if (!isSuccess) {
+                    whiteListApplied = false;
+                    PradarSwitcher.turnConfigSyncSwitchOff();
+                    if (ApplicationConfig.getWhiteList) {
+                        // 存在成功获取配置
+                        applicationConfig.setUrlWhiteList(GlobalConfig.getInstance().getUrlWhiteList());
+                        applicationConfig.setRpcNameWhiteList(GlobalConfig.getInstance().getRpcNameWhiteList());
+                        applicationConfig.setCacheKeyAllowList(GlobalConfig.getInstance().getCacheKeyWhiteList());
+                        applicationConfig.setContextPathBlockList(GlobalConfig.getInstance().getContextPathBlockList());
+                        applicationConfig.setMqList(GlobalConfig.getInstance().getMqWhiteList());
+                        applicationConfig.setSearchWhiteList(GlobalConfig.getInstance().getSearchWhiteList());
+                    }
+                    logger.error("SIMULATOR: get white list from server failed");
+                } else {
+                    ApplicationConfig.getWhiteList = Boolean.TRUE;
                 }
-                logger.error("SIMULATOR: get white list from server failed");
             } else {
-                ApplicationConfig.getWhiteList = Boolean.TRUE;
+                applicationConfig.setUrlWhiteList(null);
+                applicationConfig.setRpcNameWhiteList(null);
+                applicationConfig.setCacheKeyAllowList(null);
+                applicationConfig.setContextPathBlockList(null);
+                applicationConfig.setMqList(null);
+                applicationConfig.setSearchWhiteList(null);
             }
         }
         if (shadowConfigPullSwitch.get()) {
-            /**
-             * 读取压测的影子数据源配置
-             */
-            isSuccess = getPressureTable4AccessSimple(troControlWebUrl, applicationConfig);
-            if (!isSuccess) {
-                PradarSwitcher.turnConfigSyncSwitchOff();
-                if (ApplicationConfig.getPressureTable4AccessSimple) {
-                    applicationConfig.setShadowDatabaseConfigs(GlobalConfig.getInstance().getShadowDatasourceConfigs());
+            if (syncResult.isChanged(SECTION_SHADOW_DATABASE)) {
+                /**
+                 * 读取压测的影子数据源配置
+                 */
+                isSuccess = getPressureTable4AccessSimple(troControlWebUrl, applicationConfig);
+                if (!isSuccess) {
+                    PradarSwitcher.turnConfigSyncSwitchOff();
+                    if (ApplicationConfig.getPressureTable4AccessSimple) {
+                        applicationConfig.setShadowDatabaseConfigs(GlobalConfig.getInstance().getShadowDatasourceConfigs());
+                    }
+                    logger.error("SIMULATOR: get shadow db config from server failed");
+                } else {
+                    ApplicationConfig.getPressureTable4AccessSimple = Boolean.TRUE;
+                    syncEngine.commit(syncResult, SECTION_SHADOW_DATABASE);
                 }
-                logger.error("SIMULATOR: get shadow db config from server failed");
             } else {
-                ApplicationConfig.getPressureTable4AccessSimple = Boolean.TRUE;
+                applicationConfig.setShadowDatabaseConfigs(null);
             }
         }
         /**
          * 获取影子job配置
          */
-        isSuccess = getShadowJobConfig(troControlWebUrl, applicationConfig);
-        if (!isSuccess) {
-            PradarSwitcher.turnConfigSyncSwitchOff();
-            logger.error("SIMULATOR: get shadow job config from server failed");
+        if (syncResult.isChanged(SECTION_SHADOW_JOB)) {
+            isSuccess = getShadowJobConfig(troControlWebUrl, applicationConfig);
+            if (!isSuccess) {
+                PradarSwitcher.turnConfigSyncSwitchOff();
+                logger.error("SIMULATOR: get shadow job config from server failed");
+            } else {
+                ApplicationConfig.getShadowJobConfig = Boolean.TRUE;
+                syncEngine.commit(syncResult, SECTION_SHADOW_JOB);
+            }
         } else {
-            ApplicationConfig.getShadowJobConfig = Boolean.TRUE;
+            applicationConfig.setShadowJobs(null);
         }
 
         /**
@@ -333,24 +423,46 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
          */
         reportErrorShadowJobConfig(troControlWebUrl);
 
-
-        Set<MockConfig> mockConfigs = getMockSet(troControlWebUrl);
-        applicationConfig.setMockConfigs(mockConfigs);
+        if (syncResult.isChanged(SECTION_MOCK)) {
+            Set<MockConfig> mockConfigs = getMockSet(troControlWebUrl);
+            applicationConfig.setMockConfigs(mockConfigs);
+            syncEngine.commit(syncResult, SECTION_MOCK);
+        } else {
+            applicationConfig.setMockConfigs(null);
+        }
 
         /**
          * 抓取影子server的配置
          */
-        getShadowRedisServerConfig(troControlWebUrl, applicationConfig);
+        if (syncResult.isChanged(SECTION_SHADOW_REDIS_SERVER)) {
+            getShadowRedisServerConfig(troControlWebUrl, applicationConfig);
+            syncEngine.commit(syncResult, SECTION_SHADOW_REDIS_SERVER);
+        } else {
+            applicationConfig.setShadowRedisConfigs(null);
+        }
 
 //        if(!ConfigFetcherModule.shadowPreparationEnabled){
-        getShadowEsServerConfig(troControlWebUrl, applicationConfig);
-        getHbaseShadowConfig(troControlWebUrl, applicationConfig);
+        if (syncResult.isChanged(SECTION_SHADOW_ES_SERVER)) {
+            getShadowEsServerConfig(troControlWebUrl, applicationConfig);
+            syncEngine.commit(syncResult, SECTION_SHADOW_ES_SERVER);
+        } else {
+            applicationConfig.setShadowEsServerConfigs(null);
+        }
+        if (syncResult.isChanged(SECTION_SHADOW_HBASE_SERVER)) {
+            if (getHbaseShadowConfig(troControlWebUrl, applicationConfig)) {
+                syncEngine.commit(syncResult, SECTION_SHADOW_HBASE_SERVER);
+            }
+        } else {
+            applicationConfig.setShadowHbaseConfigs(null);
+        }
 //        }
 
         /**
          * 获取 trace 规则入口配置
          */
-        getTraceRegularRules(troControlWebUrl);
+        if (syncResult.isChanged(SECTION_TRACE_REGULAR_RULE) && getTraceRegularRules(troControlWebUrl)) {
+            syncEngine.commit(syncResult, SECTION_TRACE_REGULAR_RULE);
+        }
 
         /**
          * 拉取探针动态配置参数
@@ -361,33 +473,92 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
          * 拉取mq影子消费者信息
          */
 //        if(!ConfigFetcherModule.shadowPreparationEnabled ){
-        isSuccess = fetchMqShadowConsumer(troControlWebUrl, applicationConfig);
-        if (!isSuccess) {
-            PradarSwitcher.turnConfigSyncSwitchOff();
-            logger.error("[pradar] get shadow consumer from server failed");
+        if (whiteListChanged) {
+            isSuccess = fetchMqShadowConsumer(troControlWebUrl, applicationConfig);
+            if (!isSuccess) {
+                PradarSwitcher.turnConfigSyncSwitchOff();
+                logger.error("[pradar] get shadow consumer from server failed");
+            } else if (whiteListApplied) {
+                syncEngine.commit(syncResult, SECTION_WHITE_LIST);
+            }
         }
 //        }
+    }
 
-        if (PradarSwitcher.configSyncSwitchOn()
-                || (ApplicationConfig.getWhiteList && ApplicationConfig.getPressureTable4AccessSimple
-                && ApplicationConfig.getShadowJobConfig)) {
-            // 配置拉取过程中，配置无异常
-            // 或者历史配置有完成拉取的记录
-            if (isInfoEnabled) {
-                logger.info("SIMULATOR: successful to fetched config.");
-            }
-            PradarSwitcher.clusterTestReady();
-            switcherManager.switchOn(ConfigFetcherConstants.MODULE_NAME);
+    /**
+     * 构建需要增量同步的配置分段，接口地址需要与各个分段解析时使用的地址保持一致
+     *
+     * @param troControlWebUrl 控制台地址
+     * @return 配置分段
+     */
+    private List<ConfigSyncEngine.Section> buildSections(String troControlWebUrl) {
+        String appName = AppNameUtils.appName();
+        List<ConfigSyncEngine.Section> sections = new ArrayList<ConfigSyncEngine.Section>();
+        sections.add(new ConfigSyncEngine.Section(SECTION_PLUGIN, troControlWebUrl + TRO_PLUGIN_CONIFG
+                + "?applicationName=" + appName + "&configKey=redis_expire"));
+        String mqConsumerUrl = troControlWebUrl + TRO_SHADOW_MQ_CONSUMER_URL + "?appName=" + appName;
+        if (whiteListPullSwitch.get()) {
+            sections.add(new ConfigSyncEngine.Section(SECTION_WHITE_LIST,
+                    troControlWebUrl + WHITELIST_FILE_URL + "?appName=" + appName, mqConsumerUrl));
         } else {
-            // 本次配置没有成功拉取 并且 历史无成功拉取配置
-            // 中断压测,配置如果从未成功过，会导致module模块无法加载，所有模块无法生效
-            if (isInfoEnabled) {
-                logger.info("SIMULATOR: failed to fetched config.");
+            sections.add(new ConfigSyncEngine.Section(SECTION_WHITE_LIST, mqConsumerUrl));
+        }
+        if (shadowConfigPullSwitch.get()) {
+            sections.add(new ConfigSyncEngine.Section(SECTION_SHADOW_DATABASE,
+                    troControlWebUrl + SHADOW_DB_TABLE_URL + "?appName=" + appName));
+        }
+        sections.add(new ConfigSyncEngine.Section(SECTION_SHADOW_JOB,
+                troControlWebUrl + TRO_SHADOW_JOB_URL + "?appName=" + appName));
+        sections.add(new ConfigSyncEngine.Section(SECTION_MOCK,
+                troControlWebUrl + String.format(MOCK_URL, appName)));
+        sections.add(new ConfigSyncEngine.Section(SECTION_SHADOW_REDIS_SERVER,
+                troControlWebUrl + REDIS_SHADOW_SERVER_URL + "?appName=" + appName));
+        /**
+         * 通过启动参数指定的影子 es 配置不需要拉取，每次都重新应用
+         */
+        if (StringUtils.isBlank(System.getProperty("shadow.es.config"))) {
+            sections.add(new ConfigSyncEngine.Section(SECTION_SHADOW_ES_SERVER,
+                    String.format("%s%s?appName=%s", troControlWebUrl, ES_SHADOW_SERVER_URL, appName)));
+        } else {
+            sections.add(new ConfigSyncEngine.Section(SECTION_SHADOW_ES_SERVER));
+        }
+        sections.add(new ConfigSyncEngine.Section(SECTION_SHADOW_HBASE_SERVER,
+                troControlWebUrl + SHADOW_HBASE_SERVER_URL + "?appName=" + appName));
+        sections.add(new ConfigSyncEngine.Section(SECTION_TRACE_REGULAR_RULE,
+                troControlWebUrl + TRACE_REGULAR_RULE_URL + "?appName=" + appName));
+        return sections;
+    }
+
+    /**
+     * 优先使用本次同步预先拉取的结果，没有则直接请求
+     *
+     * @param url 接口地址
+     * @return 请求结果
+     */
+    private HttpUtils.HttpResult doGet(String url) {
+        ConfigSyncEngine.SyncResult syncResult = currentSync.get();
+        if (syncResult != null) {
+            HttpUtils.HttpResult httpResult = syncResult.take(url);
+            if (httpResult != null) {
+                return httpResult;
             }
-            PradarSwitcher.clusterTestPrepare();
-            switcherManager.switchOff(ConfigFetcherConstants.MODULE_NAME);
         }
-        return applicationConfig;
+        return HttpUtils.doGet(url);
+    }
+
+    /**
+     * 获取各个配置分段的同步统计信息
+     *
+     * @return 分段名称 -> 统计信息
+     */
+    public Map<String, ConfigSyncEngine.SectionStatistics> getSyncStatistics() {
+        return syncEngine.getStatistics();
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        syncEngine.destroy();
     }
 
     private Set<MockConfig> getMockSet(String troControlWebUrl) {
@@ -395,7 +566,7 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
             String projectName = AppNameUtils.appName();
             String linkGuardUrl = String.format(MOCK_URL, projectName);
             final StringBuilder url = new StringBuilder(troControlWebUrl).append(linkGuardUrl);
-            final HttpUtils.HttpResult httpResult = HttpUtils.doGet(url.toString());
+            final HttpUtils.HttpResult httpResult = doGet(url.toString());
             if (!httpResult.isSuccess()) {
                 logger.warn("SIMULATOR: [FetchConfig] get mock config error. status: {}, result: {}",
                         httpResult.getStatus(), httpResult.getResult());
@@ -480,7 +651,7 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
 
             StringBuilder url = new StringBuilder(troControlWebUrl)
                     .append(TRO_SHADOW_MQ_CONSUMER_URL).append("?appName=").append(AppNameUtils.appName());
-            final HttpUtils.HttpResult httpResult = HttpUtils.doGet(url.toString());
+            final HttpUtils.HttpResult httpResult = doGet(url.toString());
             if (!httpResult.isSuccess()) {
                 logger.warn("SIMULATOR: [FetchConfig] get shadow consumer config error. status: {}, result: {}",
                         httpResult.getStatus(), httpResult.getResult());
@@ -558,6 +729,10 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
         if (fields == null || fields.length == 0) {
             return applicationConfig;
         }
+        /**
+         * 单独触发的拉取不经过增量比对，下次定时同步需要重新比对所有分段
+         */
+        syncEngine.invalidateAll();
         String troControlWebUrl = PropertyUtil.getTroControlWebUrl();
         for (FIELDS field : fields) {
             switch (field) {
@@ -671,7 +846,7 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
 
     private boolean loadPluginConfig(final StringBuilder url,
                                      ApplicationConfig applicationConfig) {
-        final HttpUtils.HttpResult httpResult = HttpUtils.doGet(url.toString());
+        final HttpUtils.HttpResult httpResult = doGet(url.toString());
         if (!httpResult.isSuccess() || !JSON.parseObject(httpResult.getResult()).getBoolean("success")) {
             logger.error("[pradar] pull plugin configs error,url:{},httpResult:{}", url, JSON.toJSONString(httpResult));
             ErrorReporter.buildError()
@@ -706,7 +881,7 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
         try {
             String response = System.getProperty("shadow.es.config");
             if (StringUtils.isBlank(response)) {
-                HttpUtils.HttpResult httpResult = HttpUtils.doGet(accessUrl);
+                HttpUtils.HttpResult httpResult = doGet(accessUrl);
                 if (!httpResult.isSuccess()) {
                     GlobalConfig.getInstance().setShadowEsServer(Boolean.FALSE);
                     return;
@@ -771,7 +946,7 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
                 .append("?appName=")
                 .append(appName);
         try {
-            HttpUtils.HttpResult httpResult = HttpUtils.doGet(builder.toString());
+            HttpUtils.HttpResult httpResult = doGet(builder.toString());
             if (!httpResult.isSuccess()) {
                 logger.warn(
                         "SIMULATOR: [FetchConfig] get shadow redis server config error. url={}, status={}, result={}",
@@ -1061,7 +1236,7 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
         StringBuilder url = new StringBuilder(troControlWebUrl)
                 .append(TRACE_REGULAR_RULE_URL).append("?appName=").append(AppNameUtils.appName());
         try {
-            HttpUtils.HttpResult httpResult = HttpUtils.doGet(url.toString());
+            HttpUtils.HttpResult httpResult = doGet(url.toString());
             if (!httpResult.isSuccess()) {
                 logger.error(
                         "SIMULATOR: [FetchConfig] get trace regular rules config from server with error response. url={},"
@@ -1127,7 +1302,7 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
                 .append(TRO_SHADOW_JOB_URL).append("?appName=").append(AppNameUtils.appName());
         try {
             Set<ShadowJob> shadowJobs = new HashSet<ShadowJob>();
-            HttpUtils.HttpResult httpResult = HttpUtils.doGet(url.toString());
+            HttpUtils.HttpResult httpResult = doGet(url.toString());
             if (!httpResult.isSuccess()) {
                 logger.error(
                         "SIMULATOR: [FetchConfig] get shadow job config from server with error response. url={}, "
@@ -1222,7 +1397,7 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
     private boolean getPressureTable4AccessSimple(String troWebUrl, ApplicationConfig applicationConfig) {
         final String getShadowDatasourceUrl = troWebUrl + SHADOW_DB_TABLE_URL + "?appName=" + AppNameUtils.appName();
         try {
-            HttpUtils.HttpResult httpResult = HttpUtils.doGet(getShadowDatasourceUrl);
+            HttpUtils.HttpResult httpResult = doGet(getShadowDatasourceUrl);
             if (!httpResult.isSuccess()) {
                 logger.warn("SIMULATOR: [FetchConfig] get datasource config error. url={}, status={}, result={}"
                         , getShadowDatasourceUrl, httpResult.getStatus(), httpResult.getResult());
@@ -1353,7 +1528,7 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
      */
     private boolean loadList(final StringBuilder url,
                              ApplicationConfig applicationConfig) {
-        final HttpUtils.HttpResult httpResult = HttpUtils.doGet(url.toString());
+        final HttpUtils.HttpResult httpResult = doGet(url.toString());
         if (!httpResult.isSuccess()) {
             logger.warn("SIMULATOR: [FetchConfig] get whitelist config error. status: {}, result: {}",
                     httpResult.getStatus(), httpResult.getResult());
@@ -1489,7 +1664,7 @@ public class ApplicationConfigHttpResolver extends AbstractHttpResolver<Applicat
     private boolean getHbaseShadowConfig(String troWebUrl, ApplicationConfig applicationConfig) {
         final String url = troWebUrl + SHADOW_HBASE_SERVER_URL + "?appName=" + AppNameUtils.appName();
         try {
-            HttpUtils.HttpResult result = HttpUtils.doGet(url);
+            HttpUtils.HttpResult result = doGet(url);
 
             if (!result.isSuccess()) {
                 logger.error("pull shadow hbase config error {}, url={}", result.getResult(),
@@ -0,0 +1,356 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.module.config.fetcher.config.resolver.http;
+
+import com.pamirs.pradar.common.HttpUtils;
+import com.pamirs.pradar.utils.MD5Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 配置增量同步引擎
+ * <p>
+ * 每次同步并行拉取所有配置分段的接口，按分段计算返回内容的摘要，与上一次成功应用的摘要比对，
+ * 只有内容发生变化或者拉取失败的分段才需要重新解析并下发变更事件。
+ * <p>
+ * 分段应用成功后需要调用 {@link #commit(SyncResult, String)} 记录摘要，应用失败不提交，下次同步会重新应用。
+ * 每隔 fullSyncInterval 次同步会忽略摘要做一次全量同步，防止本地配置被其他途径修改后无法恢复
+ */
+public class ConfigSyncEngine {
+    private final static Logger LOGGER = LoggerFactory.getLogger(ConfigSyncEngine.class);
+
+    /**
+     * 默认每 10 次同步做一次全量同步
+     */
+    public final static int DEFAULT_FULL_SYNC_INTERVAL = 10;
+
+    /**
+     * 单个接口的最大等待时间
+     */
+    private final static long FETCH_TIMEOUT_MILLIS = 30000L;
+
+    /**
+     * 接口拉取方式，默认使用 {@link HttpUtils#doGet(String)}，测试时可以替换为其他实现
+     */
+    public interface Fetcher {
+        /**
+         * 拉取接口内容
+         *
+         * @param url 接口地址
+         * @return 拉取结果
+         */
+        HttpUtils.HttpResult fetch(String url);
+    }
+
+    private final static Fetcher HTTP_FETCHER = new Fetcher() {
+        @Override
+        public HttpUtils.HttpResult fetch(String url) {
+            return HttpUtils.doGet(url);
+        }
+    };
+
+    private final Fetcher fetcher;
+    private final int fullSyncInterval;
+    private final ExecutorService executor;
+
+    /**
+     * 分段名称 -> 上一次成功应用的内容摘要
+     */
+    private final ConcurrentMap<String, String> digests = new ConcurrentHashMap<String, String>();
+
+    /**
+     * 分段名称 -> 分段统计信息
+     */
+    private final ConcurrentMap<String, SectionStatistics> statistics = new ConcurrentHashMap<String, SectionStatistics>();
+
+    private final AtomicLong syncCount = new AtomicLong();
+
+    /**
+     * 下一次同步是否需要全量同步
+     */
+    private final AtomicBoolean invalidated = new AtomicBoolean(false);
+
+    public ConfigSyncEngine(int threads) {
+        this(threads, DEFAULT_FULL_SYNC_INTERVAL, HTTP_FETCHER);
+    }
+
+    public ConfigSyncEngine(int threads, int fullSyncInterval, Fetcher fetcher) {
+        this.fetcher = fetcher == null ? HTTP_FETCHER : fetcher;
+        this.fullSyncInterval = fullSyncInterval;
+        final AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads > 0 ? threads : 1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Pradar-Fetch-Config-Sync-" + threadIndex.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * 并行拉取所有分段并与上一次成功应用的摘要比对
+     *
+     * @param sections 需要同步的分段
+     * @return 同步结果
+     */
+    public SyncResult sync(List<Section> sections) {
+        final long count = syncCount.getAndIncrement();
+        final boolean invalid = invalidated.getAndSet(false);
+        final boolean fullSync = invalid || fullSyncInterval <= 1 || count % fullSyncInterval == 0;
+        final Map<String, Future<HttpUtils.HttpResult>> futures = new LinkedHashMap<String, Future<HttpUtils.HttpResult>>();
+        final Map<String, Long> latencies = new ConcurrentHashMap<String, Long>();
+        for (Section section : sections) {
+            for (final String url : section.getUrls()) {
+                if (futures.containsKey(url)) {
+                    continue;
+                }
+                futures.put(url, executor.submit(new Callable<HttpUtils.HttpResult>() {
+                    @Override
+                    public HttpUtils.HttpResult call() throws Exception {
+                        long start = System.currentTimeMillis();
+                        try {
+                            return fetcher.fetch(url);
+                        } finally {
+                            latencies.put(url, System.currentTimeMillis() - start);
+                        }
+                    }
+                }));
+            }
+        }
+
+        final Map<String, HttpUtils.HttpResult> results = new HashMap<String, HttpUtils.HttpResult>();
+        for (Map.Entry<String, Future<HttpUtils.HttpResult>> entry : futures.entrySet()) {
+            try {
+                HttpUtils.HttpResult result = entry.getValue().get(FETCH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (result != null) {
+                    results.put(entry.getKey(), result);
+                }
+            } catch (Throwable e) {
+                entry.getValue().cancel(true);
+                LOGGER.warn("SIMULATOR: [FetchConfig] sync config failed. url={}", entry.getKey(), e);
+            }
+        }
+
+        final SyncResult syncResult = new SyncResult(fullSync);
+        for (Section section : sections) {
+            if (section.getUrls().isEmpty()) {
+                syncResult.changed.add(section.getName());
+                continue;
+            }
+            SectionStatistics stat = getOrCreateStatistics(section.getName());
+            long latency = 0L;
+            boolean failed = false;
+            StringBuilder content = new StringBuilder();
+            for (String url : section.getUrls()) {
+                Long cost = latencies.get(url);
+                if (cost != null && cost > latency) {
+                    latency = cost;
+                }
+                HttpUtils.HttpResult result = results.get(url);
+                if (result == null || !result.isSuccess()) {
+                    failed = true;
+                    continue;
+                }
+                syncResult.results.put(url, result);
+                content.append(url).append('\n').append(result.getResult()).append('\n');
+            }
+            stat.fetchCount.incrementAndGet();
+            stat.lastLatencyMillis = latency;
+            if (failed) {
+                /**
+                 * 拉取失败时分段会走失败的处理逻辑，恢复后即使内容与之前相同也需要重新应用
+                 */
+                digests.remove(section.getName());
+                stat.failureCount.incrementAndGet();
+                syncResult.changed.add(section.getName());
+                continue;
+            }
+            String digest = MD5Util.MD5_32(content.toString(), "UTF-8");
+            syncResult.digests.put(section.getName(), digest);
+            if (fullSync || !digest.equals(digests.get(section.getName()))) {
+                syncResult.changed.add(section.getName());
+            }
+        }
+        if (LOGGER.isInfoEnabled() && !syncResult.changed.isEmpty()) {
+            LOGGER.info("SIMULATOR: [FetchConfig] sync config finished. fullSync={}, changed sections={}",
+                    fullSync, syncResult.changed);
+        }
+        return syncResult;
+    }
+
+    /**
+     * 分段应用成功后提交摘要，拉取失败的分段不会提交
+     *
+     * @param syncResult 同步结果
+     * @param section    分段名称
+     */
+    public void commit(SyncResult syncResult, String section) {
+        String digest = syncResult.digests.get(section);
+        if (digest == null) {
+            return;
+        }
+        String previous = digests.put(section, digest);
+        if (!digest.equals(previous)) {
+            SectionStatistics stat = getOrCreateStatistics(section);
+            stat.changeCount.incrementAndGet();
+            stat.lastChangeTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 下次同步忽略摘要，所有分段都重新应用
+     */
+    public void invalidateAll() {
+        invalidated.set(true);
+    }
+
+    /**
+     * 获取各个分段的统计信息
+     *
+     * @return 分段名称 -> 统计信息
+     */
+    public Map<String, SectionStatistics> getStatistics() {
+        return new TreeMap<String, SectionStatistics>(statistics);
+    }
+
+    public void destroy() {
+        executor.shutdownNow();
+        digests.clear();
+    }
+
+    private SectionStatistics getOrCreateStatistics(String section) {
+        SectionStatistics stat = statistics.get(section);
+        if (stat == null) {
+            stat = new SectionStatistics();
+            SectionStatistics old = statistics.putIfAbsent(section, stat);
+            if (old != null) {
+                stat = old;
+            }
+        }
+        return stat;
+    }
+
+    /**
+     * 配置分段，一个分段可以由多个接口组成，任意一个接口的内容变化都认为分段发生了变化。
+     * 没有接口的分段不做比对，每次同步都需要重新应用
+     */
+    public static class Section {
+        private final String name;
+        private final List<String> urls;
+
+        public Section(String name, String... urls) {
+            this.name = name;
+            this.urls = Arrays.asList(urls);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getUrls() {
+            return urls;
+        }
+    }
+
+    /**
+     * 一次同步的结果
+     */
+    public static class SyncResult {
+        private final boolean fullSync;
+        private final Set<String> changed = new HashSet<String>();
+        private final Map<String, String> digests = new HashMap<String, String>();
+        private final Map<String, HttpUtils.HttpResult> results = new ConcurrentHashMap<String, HttpUtils.HttpResult>();
+
+        SyncResult(boolean fullSync) {
+            this.fullSync = fullSync;
+        }
+
+        public boolean isFullSync() {
+            return fullSync;
+        }
+
+        /**
+         * 分段是否需要重新应用，内容发生变化或者拉取失败都需要重新应用
+         *
+         * @param section 分段名称
+         * @return 是否需要重新应用
+         */
+        public boolean isChanged(String section) {
+            return changed.contains(section);
+        }
+
+        public Set<String> getChangedSections() {
+            return Collections.unmodifiableSet(changed);
+        }
+
+        /**
+         * 取出预先拉取的接口结果，每个结果只能取出一次
+         *
+         * @param url 接口地址
+         * @return 接口结果，没有拉取成功则返回 null
+         */
+        public HttpUtils.HttpResult take(String url) {
+            return results.remove(url);
+        }
+    }
+
+    /**
+     * 分段统计信息
+     */
+    public static class SectionStatistics {
+        private final AtomicLong fetchCount = new AtomicLong();
+        private final AtomicLong changeCount = new AtomicLong();
+        private final AtomicLong failureCount = new AtomicLong();
+        private volatile long lastLatencyMillis;
+        private volatile long lastChangeTime;
+
+        public long getFetchCount() {
+            return fetchCount.get();
+        }
+
+        public long getChangeCount() {
+            return changeCount.get();
+        }
+
+        public long getFailureCount() {
+            return failureCount.get();
+        }
+
+        public long getLastLatencyMillis() {
+            return lastLatencyMillis;
+        }
+
+        public long getLastChangeTime() {
+            return lastChangeTime;
+        }
+
+        @Override
+        public String toString() {
+            return "{fetchCount=" + getFetchCount() +
+                    ", changeCount=" + getChangeCount() +
+                    ", failureCount=" + getFailureCount() +
+                    ", lastLatencyMillis=" + lastLatencyMillis +
+                    ", lastChangeTime=" + lastChangeTime +
+                    '}';
+        }
+    }
+}
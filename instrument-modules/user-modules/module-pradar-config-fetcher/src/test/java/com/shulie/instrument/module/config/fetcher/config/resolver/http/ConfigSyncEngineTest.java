@@ -0,0 +1,382 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.module.config.fetcher.config.resolver.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.pamirs.pradar.common.HttpUtils;
+import com.pamirs.pradar.internal.config.ShadowDatabaseConfig;
+import com.shulie.instrument.module.config.fetcher.config.ConfigManager;
+import com.shulie.instrument.module.config.fetcher.config.event.ConfigEvent;
+import com.shulie.instrument.module.config.fetcher.config.event.ConfigEventEnum;
+import com.shulie.instrument.module.config.fetcher.config.event.ConfigListener;
+import com.shulie.instrument.module.config.fetcher.config.event.FIELDS;
+import com.shulie.instrument.module.config.fetcher.config.impl.ApplicationConfig;
+import com.shulie.instrument.simulator.api.resource.SwitcherManager;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * 通过 {@link ConfigSyncEngine.Fetcher} 替换接口拉取，验证并行拉取、跳过未变化的分段、失败后重新应用以及定期全量同步；
+ * 再由本地 {@link HttpServer} 返回固定的分段内容，验证 {@link ApplicationConfigHttpResolver} 解析分段以及未变化的分段不下发变更事件
+ */
+public class ConfigSyncEngineTest {
+
+    private final static String SHADOW_DB_PATH = "/api/link/ds/configs/pull";
+    private final static String SHADOW_DB_RESPONSE = "{\"success\":true,\"data\":[{\"dsType\":1,"
+            + "\"applicationName\":\"sync-test\",\"url\":\"jdbc:mysql://127.0.0.1:3306/biz\","
+            + "\"username\":\"biz\",\"shadowTableConfig\":\"t_user\"}]}";
+
+    private final StubFetcher fetcher = new StubFetcher();
+
+    private final List<ConfigSyncEngine.Section> sections = Arrays.asList(
+            new ConfigSyncEngine.Section("whitelist", "/whitelist", "/whitelist/extra"),
+            new ConfigSyncEngine.Section("shadowDb", "/shadowDb"),
+            new ConfigSyncEngine.Section("switch", "/switch"),
+            new ConfigSyncEngine.Section("local"));
+
+    private ConfigSyncEngine engine;
+    private HttpServer server;
+    private ApplicationConfigHttpResolver resolver;
+
+    /**
+     * 解析分段时会用到 Pradar，日志目录指向临时目录
+     */
+    @BeforeClass
+    public static void redirectPradarLogs() {
+        System.setProperty("SIMULATOR_LOG_PATH",
+                new File(System.getProperty("java.io.tmpdir"), "pradarlogs-test").getAbsolutePath());
+    }
+
+    @After
+    public void after() {
+        if (engine != null) {
+            engine.destroy();
+        }
+        if (resolver != null) {
+            resolver.destroy();
+        }
+        if (server != null) {
+            server.stop(0);
+            System.clearProperty("tro.web.url");
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void testFetchInParallel() throws InterruptedException {
+        engine = new ConfigSyncEngine(4, 100, fetcher);
+        /**
+         * 每个接口都要等到 4 个接口同时在拉取时才返回，串行拉取会在这里超时
+         */
+        fetcher.barrier = new CountDownLatch(4);
+        ConfigSyncEngine.SyncResult result = engine.sync(sections);
+        Assert.assertEquals(4, fetcher.maxConcurrency.get());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("whitelist", "shadowDb", "switch", "local")),
+                result.getChangedSections());
+        Assert.assertEquals(1, fetcher.count("/shadowDb"));
+        Assert.assertEquals("content of /shadowDb", result.take("/shadowDb").getResult());
+        Assert.assertNull("a prefetched result can only be taken once", result.take("/shadowDb"));
+    }
+
+    @Test
+    public void testSkipUnchangedSections() {
+        engine = new ConfigSyncEngine(2, 100, fetcher);
+        ConfigSyncEngine.SyncResult first = engine.sync(sections);
+        Assert.assertTrue(first.isFullSync());
+        commitAll(first);
+
+        ConfigSyncEngine.SyncResult second = engine.sync(sections);
+        Assert.assertFalse(second.isFullSync());
+        Assert.assertEquals("sections without url are always applied", Collections.singleton("local"),
+                second.getChangedSections());
+
+        fetcher.contents.put("/whitelist/extra", "changed");
+        ConfigSyncEngine.SyncResult third = engine.sync(sections);
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("whitelist", "local")), third.getChangedSections());
+        Assert.assertEquals("changed", third.take("/whitelist/extra").getResult());
+
+        /**
+         * 应用失败没有提交摘要，下次同步仍然需要重新应用
+         */
+        ConfigSyncEngine.SyncResult fourth = engine.sync(sections);
+        Assert.assertTrue(fourth.isChanged("whitelist"));
+        commitAll(fourth);
+        Assert.assertFalse(engine.sync(sections).isChanged("whitelist"));
+
+        Map<String, ConfigSyncEngine.SectionStatistics> statistics = engine.getStatistics();
+        Assert.assertEquals(5, statistics.get("whitelist").getFetchCount());
+        Assert.assertEquals(2, statistics.get("whitelist").getChangeCount());
+        Assert.assertEquals(1, statistics.get("shadowDb").getChangeCount());
+        Assert.assertEquals(0, statistics.get("shadowDb").getFailureCount());
+    }
+
+    @Test
+    public void testReapplyAfterFailure() {
+        engine = new ConfigSyncEngine(2, 100, fetcher);
+        commitAll(engine.sync(sections));
+
+        fetcher.failing.add("/switch");
+        ConfigSyncEngine.SyncResult failed = engine.sync(sections);
+        Assert.assertTrue(failed.isChanged("switch"));
+        Assert.assertFalse(failed.isChanged("shadowDb"));
+        Assert.assertNull(failed.take("/switch"));
+        commitAll(failed);
+        Assert.assertEquals(1, engine.getStatistics().get("switch").getFailureCount());
+
+        /**
+         * 恢复后内容与失败前相同，也需要重新应用一次
+         */
+        fetcher.failing.clear();
+        ConfigSyncEngine.SyncResult recovered = engine.sync(sections);
+        Assert.assertTrue(recovered.isChanged("switch"));
+        Assert.assertEquals("content of /switch", recovered.take("/switch").getResult());
+        commitAll(recovered);
+        Assert.assertFalse(engine.sync(sections).isChanged("switch"));
+
+        fetcher.throwing.add("/shadowDb");
+        Assert.assertTrue("an exception counts as a failure", engine.sync(sections).isChanged("shadowDb"));
+        Assert.assertEquals(1, engine.getStatistics().get("shadowDb").getFailureCount());
+    }
+
+    @Test
+    public void testFullSyncEveryNthPoll() {
+        engine = new ConfigSyncEngine(2, 3, fetcher);
+        boolean[] expected = new boolean[]{true, false, false, true, false, false, true};
+        for (int i = 0; i < expected.length; i++) {
+            ConfigSyncEngine.SyncResult result = engine.sync(sections);
+            Assert.assertEquals("poll " + i, expected[i], result.isFullSync());
+            Assert.assertEquals("poll " + i, expected[i], result.isChanged("shadowDb"));
+            commitAll(result);
+        }
+
+        engine.invalidateAll();
+        ConfigSyncEngine.SyncResult invalidated = engine.sync(sections);
+        Assert.assertTrue(invalidated.isFullSync());
+        Assert.assertEquals(4, invalidated.getChangedSections().size());
+        commitAll(invalidated);
+        Assert.assertFalse(engine.sync(sections).isFullSync());
+    }
+
+    @Test(timeout = 60000L)
+    public void testResolverSkipsUnchangedSectionOverHttp() throws IOException {
+        final ControlServer control = new ControlServer();
+        control.responses.put(SHADOW_DB_PATH, SHADOW_DB_RESPONSE);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", control);
+        server.start();
+        System.setProperty("tro.web.url", "http://127.0.0.1:" + server.getAddress().getPort());
+
+        final AtomicInteger changeEvents = new AtomicInteger();
+        final ConfigEvent<ApplicationConfig> event = new ConfigEvent<ApplicationConfig>(FIELDS.SHADOW_DATABASE_CONFIGS,
+                ConfigEventEnum.CHANGE);
+        event.setType(ApplicationConfig.class);
+        final ConfigManager configManager = ConfigManager.getInstance(new NoOpSwitcherManager(), 1, TimeUnit.HOURS);
+        try {
+            configManager.subscribeConfigEvent(event, new ConfigListener<Map<String, ShadowDatabaseConfig>>() {
+                @Override
+                public void onEvent(Map<String, ShadowDatabaseConfig> config) {
+                    changeEvents.incrementAndGet();
+                }
+            });
+            resolver = new ApplicationConfigHttpResolver(new NoOpSwitcherManager(), 1, TimeUnit.HOURS);
+            final ApplicationConfig current = new ApplicationConfig(resolver);
+
+            /**
+             * 第一次同步解析影子库分段并下发变更事件，分段接口只请求一次，解析时直接使用预先拉取的结果
+             */
+            final ApplicationConfig first = resolver.fetch();
+            final Map<String, ShadowDatabaseConfig> shadowDatabaseConfigs = first.getShadowDatabaseConfigs();
+            Assert.assertEquals(1, shadowDatabaseConfigs.size());
+            final ShadowDatabaseConfig shadowDatabaseConfig = shadowDatabaseConfigs.values().iterator().next();
+            Assert.assertEquals("jdbc:mysql://127.0.0.1:3306/biz", shadowDatabaseConfig.getUrl());
+            Assert.assertEquals("biz", shadowDatabaseConfig.getUsername());
+            Assert.assertTrue(shadowDatabaseConfig.getBusinessShadowTables().containsKey("t_user"));
+            Assert.assertEquals(1, control.count(SHADOW_DB_PATH));
+            current.refresh(first);
+            Assert.assertEquals(1, changeEvents.get());
+
+            /**
+             * 内容没有变化的分段不再解析，配置项为 null，不会下发变更事件
+             */
+            final ApplicationConfig second = resolver.fetch();
+            Assert.assertNull(second.getShadowDatabaseConfigs());
+            Assert.assertEquals(2, control.count(SHADOW_DB_PATH));
+            current.refresh(second);
+            Assert.assertEquals(1, changeEvents.get());
+            Assert.assertEquals(1, resolver.getSyncStatistics().get("shadowDatabase").getChangeCount());
+
+            /**
+             * 分段内容变化后重新解析
+             */
+            control.responses.put(SHADOW_DB_PATH, SHADOW_DB_RESPONSE.replace("t_user", "t_order"));
+            final ApplicationConfig third = resolver.fetch();
+            Assert.assertTrue(third.getShadowDatabaseConfigs().values().iterator().next()
+                    .getBusinessShadowTables().containsKey("t_order"));
+            current.refresh(third);
+            Assert.assertEquals(2, changeEvents.get());
+        } finally {
+            configManager.destroy();
+        }
+    }
+
+    private void commitAll(ConfigSyncEngine.SyncResult result) {
+        for (ConfigSyncEngine.Section section : sections) {
+            engine.commit(result, section.getName());
+        }
+    }
+
+    /**
+     * 模拟控制台，按请求路径返回固定内容，未配置的路径返回成功的空数据
+     */
+    private static class ControlServer implements HttpHandler {
+        private final Map<String, String> responses = new ConcurrentHashMap<String, String>();
+        private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<String, AtomicInteger>();
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            final String path = exchange.getRequestURI().getPath();
+            synchronized (counts) {
+                AtomicInteger count = counts.get(path);
+                if (count == null) {
+                    counts.put(path, count = new AtomicInteger());
+                }
+                count.incrementAndGet();
+            }
+            final String response = responses.get(path);
+            final byte[] body = (response == null ? "{\"success\":true,\"data\":null}" : response).getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            final OutputStream out = exchange.getResponseBody();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+        }
+
+        int count(String path) {
+            AtomicInteger count = counts.get(path);
+            return count == null ? 0 : count.get();
+        }
+    }
+
+    private static class NoOpSwitcherManager implements SwitcherManager {
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public boolean isSwitchOn(String switcherName) {
+            return true;
+        }
+
+        @Override
+        public boolean isAllSwitchOn(Set<String> switcherNames) {
+            return true;
+        }
+
+        @Override
+        public void switchOn(String switcherName) {
+        }
+
+        @Override
+        public void switchOff(String switcherName) {
+        }
+
+        @Override
+        public void registerMultiSwitchOnCallback(String switcherName, Runnable callback) {
+        }
+
+        @Override
+        public void registerMultiSwitchOnCallback(Set<String> switcherName, Runnable callback) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class StubFetcher implements ConfigSyncEngine.Fetcher {
+        private final Map<String, String> contents = new ConcurrentHashMap<String, String>();
+        private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<String, AtomicInteger>();
+        private final Set<String> failing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        private final Set<String> throwing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxConcurrency = new AtomicInteger();
+        private volatile CountDownLatch barrier;
+
+        @Override
+        public HttpUtils.HttpResult fetch(String url) {
+            int current = running.incrementAndGet();
+            try {
+                while (true) {
+                    int max = maxConcurrency.get();
+                    if (current <= max || maxConcurrency.compareAndSet(max, current)) {
+                        break;
+                    }
+                }
+                CountDownLatch latch = barrier;
+                if (latch != null) {
+                    latch.countDown();
+                    try {
+                        if (!latch.await(5, TimeUnit.SECONDS)) {
+                            return HttpUtils.HttpResult.result(504, null);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                AtomicInteger count = counts.get(url);
+                if (count == null) {
+                    counts.put(url, count = new AtomicInteger());
+                }
+                count.incrementAndGet();
+                if (throwing.contains(url)) {
+                    throw new IllegalStateException("connect failed: " + url);
+                }
+                if (failing.contains(url)) {
+                    return HttpUtils.HttpResult.result(500, null);
+                }
+                String content = contents.get(url);
+                return HttpUtils.HttpResult.result(200, content == null ? "content of " + url : content);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        int count(String url) {
+            AtomicInteger count = counts.get(url);
+            return count == null ? 0 : count.get();
+        }
+    }
+}
@@ -52,7 +52,18 @@ abstract class AbstractContext extends BaseContext {
      */
     Map<String, String> localAttributes = null;
 
-    private Boolean isUseTraceIdSample = "true".equals(System.getProperty("use.traceid.sample"));
+    private final static boolean USE_TRACE_ID_SAMPLE = "true".equals(System.getProperty("use.traceid.sample"));
+
+    final static byte SAMPLE_UNDECIDED = 0;
+    final static byte SAMPLED = 1;
+    final static byte UNSAMPLED = -1;
+
+    /**
+     * 头部采样结果，调用链开始时按 traceId 计算一次，子上下文直接继承，同一条调用链内不再重复计算，
+     * 也不会因为中途修改采样率导致只采样了调用链的一部分。业务流量与压测流量的采样率不同，分开记录
+     */
+    byte sampleDecision = SAMPLE_UNDECIDED;
+    byte clusterTestSampleDecision = SAMPLE_UNDECIDED;
 
     /**
      * 是否有错误
@@ -64,6 +75,10 @@ abstract class AbstractContext extends BaseContext {
         super(_traceId, _traceAppName, _invokeId);
     }
 
+    AbstractContext(String _traceId, String _traceAppName, InvokeId _invokeId) {
+        super(_traceId, _traceAppName, _invokeId);
+    }
+
     AbstractContext(String _traceId, String _traceAppName, String _invokeId,
         String traceMethod, String traceServiceName) {
         super(_traceId, _traceAppName, _invokeId, traceMethod, traceServiceName);
@@ -151,14 +166,45 @@ abstract class AbstractContext extends BaseContext {
         boolean clusterTest = Pradar.isClusterTest();
 
         if (clusterTest) {
-            return isTraceSampled(PradarSwitcher.getClusterTestSamplingInterval());
+            if (clusterTestSampleDecision == SAMPLE_UNDECIDED) {
+                clusterTestSampleDecision = isTraceSampled(PradarSwitcher.getClusterTestSamplingInterval()) ? SAMPLED : UNSAMPLED;
+            }
+            return clusterTestSampleDecision == SAMPLED;
+        }
+        if (sampleDecision == SAMPLE_UNDECIDED) {
+            sampleDecision = isTraceSampled(PradarSwitcher.getSamplingInterval()) ? SAMPLED : UNSAMPLED;
         }
-        return isTraceSampled(PradarSwitcher.getSamplingInterval());
+        return sampleDecision == SAMPLED;
+    }
+
+    /**
+     * 继承父上下文的头部采样结果
+     *
+     * @param parent 父上下文
+     */
+    void inheritSampleDecision(AbstractContext parent) {
+        this.sampleDecision = parent.sampleDecision;
+        this.clusterTestSampleDecision = parent.clusterTestSampleDecision;
     }
 
     private boolean isTraceSampled(int si) {
+        return isSampledByTraceId(traceId, si);
+    }
+
+    /**
+     * 按照 traceId 中的序号判断是否采样，头部采样与尾部采样({@link TraceTailSampler})共用，
+     * 保证两种模式下同一个 traceId 在各个进程中的采样结果一致
+     *
+     * @param traceId traceId
+     * @param si      采样频率 1/x
+     * @return 是否采样
+     */
+    static boolean isSampledByTraceId(String traceId, int si) {
+        if (traceId == null) {
+            return false;
+        }
         // 如果traceId里有采用率则优先于traceId里的采用率为准
-        int samplingInterval = getTraceIdSamplingInterval();
+        int samplingInterval = getTraceIdSamplingInterval(traceId);
         if (samplingInterval == 0) {
             samplingInterval = si;
         }
@@ -183,8 +229,8 @@ abstract class AbstractContext extends BaseContext {
      *
      * @return 采样率，如果返回0则表示traceId里未配置采样率
      */
-    private int getTraceIdSamplingInterval() {
-        if (!isUseTraceIdSample || traceId.length() < 34) {
+    private static int getTraceIdSamplingInterval(String traceId) {
+        if (!USE_TRACE_ID_SAMPLE || traceId.length() < 34) {
             return 0;
         }
         int samplingInterval = traceId.charAt(30) - '0';
@@ -14,15 +14,37 @@
  */
 package com.pamirs.pradar;
 
+import org.apache.commons.lang.StringUtils;
+
 public class AppNameUtils {
 
     private static final String DEFAULT = "default";
 
+    /**
+     * 读取到的应用名，每次传递上下文都会用到，避免每次都读取系统属性；
+     * 只缓存非空且不是默认值的应用名，应用名还没有设置时仍然每次读取系统属性
+     */
+    private static volatile String cachedAppName;
+
     public static final String appName() {
-        String appName = System.getProperty("simulator.app.name", "default");
+        String appName = cachedAppName;
+        if (appName != null) {
+            return appName;
+        }
+        appName = System.getProperty("simulator.app.name", "default");
         if (DEFAULT.equals(appName)) {
             appName = System.getProperty("app.name", "default");
         }
+        if (StringUtils.isNotBlank(appName) && !DEFAULT.equals(appName)) {
+            cachedAppName = appName;
+        }
         return appName;
     }
+
+    /**
+     * 清除缓存的应用名，仅用于测试
+     */
+    static void reset() {
+        cachedAppName = null;
+    }
 }
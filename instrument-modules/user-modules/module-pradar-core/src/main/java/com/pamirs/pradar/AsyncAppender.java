@@ -20,18 +20,15 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.LockSupport;
-import java.util.concurrent.locks.ReentrantLock;
 
-import com.shulie.instrument.simulator.api.executors.ExecutorServiceFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * 异步提交日志，避免影响主线程
+ * <p>
+ * 日志通过 {@link LogRingBuffer} 交给单个消费者线程批量写出，队列满时直接丢弃日志，
+ * 业务线程不会因为写日志而阻塞或自旋等待
  */
 class AsyncAppender extends PradarAppender {
 
@@ -54,26 +51,25 @@ class AsyncAppender extends PradarAppender {
      * 用于内部控制日志重载的命令
      */
     static final Object EVENT_LOG_RELOAD = new Object();
+    /**
+     * monitor 日志中丢弃计数的日志类型
+     */
+    static final String DISCARD_LOG_TYPE = "logDiscard";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AsyncAppender.class);
 
-    // RingBuffer 实现，size 必须为 2 的 n 次方
-    private final Object[] entries;
-    private final int queueSize;
-    private final int indexMask;
-    private final int consumerThreshold;
-    // 在队列满的时候，业务线程最长尝试时间
-    private final int maxWaitMillis;
-
-    private final ReentrantLock lock;
-    private final Condition notEmpty;
+    private final LogRingBuffer ringBuffer;
+    /**
+     * 每批最多消费的日志条数，每批消费完成后刷新一次
+     */
+    private final int batchSize;
 
-    // 下一个写的位置，一直递增
-    private AtomicLong putIndex;
-    // 最近丢弃的日志条数
-    private AtomicLong discardCount;
-    // 下一个读的位置，一直递增，不能大于 putIndex
-    private AtomicLong takeIndex;
+    /**
+     * 各类生产者最近丢弃的日志条数，按线程分段累加，由消费者线程汇总后写入 monitor 日志
+     */
+    private final DiscardCounter discardContextCount = new DiscardCounter();
+    private final DiscardCounter discardLogCount = new DiscardCounter();
+    private final DiscardCounter discardCommandCount = new DiscardCounter();
 
     private PradarAppender appender;
     private TraceEncoder encoder;
@@ -82,26 +78,20 @@ class AsyncAppender extends PradarAppender {
     private Future future;
     private ExecutorService asyncAppenderService;
     private AsyncRunnable task;
-    private AtomicBoolean running;
 
-    public AsyncAppender(int queueSize, int maxWaitMillis) {
-        // queueSize 取大于或等于 value 的 2 的 n 次方数
-        queueSize = 1 << (32 - Integer.numberOfLeadingZeros(queueSize - 1));
-
-        this.queueSize = queueSize;
-        this.maxWaitMillis = maxWaitMillis;
-        this.entries = new Object[queueSize];
-        this.indexMask = queueSize - 1;
-        this.consumerThreshold = queueSize >= DEFAULT_CONSUMER_THRESHOLD ? DEFAULT_CONSUMER_THRESHOLD : queueSize;
-
-        this.putIndex = new AtomicLong(0L);
-        this.discardCount = new AtomicLong(0L);
-        this.takeIndex = new AtomicLong(0L);
+    public AsyncAppender(int queueSize) {
+        this(queueSize, Integer.MAX_VALUE);
+    }
 
-        this.running = new AtomicBoolean(false);
+    AsyncAppender(int queueSize, int batchSize) {
+        this(queueSize, batchSize, Pradar.getLogWaitStrategy());
+    }
 
-        this.lock = new ReentrantLock(false);
-        this.notEmpty = lock.newCondition();
+    AsyncAppender(int queueSize, int batchSize, String waitStrategy) {
+        int consumerThreshold = queueSize >= DEFAULT_CONSUMER_THRESHOLD ? DEFAULT_CONSUMER_THRESHOLD : queueSize;
+        this.ringBuffer = new LogRingBuffer(queueSize,
+            LogRingBuffer.newWaitStrategy(waitStrategy, consumerThreshold));
+        this.batchSize = Math.max(1, Math.min(batchSize, ringBuffer.capacity()));
     }
 
     void start(PradarAppender appender, TraceEncoder encoder, String workerName) {
@@ -125,130 +115,32 @@ class AsyncAppender extends PradarAppender {
     }
 
     int size() {
-        return (int)(putIndex.get() - takeIndex.get());
+        return ringBuffer.size();
     }
 
     public boolean append(Object ctx) {
-        final long qsize = queueSize;
-        long startTime = 0;
-        for (; ; ) {
-            final long put = putIndex.get();
-            final long size = put - takeIndex.get();
-            if (size >= qsize) {
-                if (maxWaitMillis <= 0) {
-                    discardCount.incrementAndGet();
-                    return false;
-                } else {
-                    long now = System.currentTimeMillis();
-                    if (startTime == 0) {
-                        startTime = now;
-                    } else if (now - startTime >= maxWaitMillis) {
-                        discardCount.incrementAndGet();
-                        return false;
-                    }
-                    LockSupport.parkNanos(1000);
-                    continue;
-                }
-            }
-            if (putIndex.compareAndSet(put, put + 1)) {
-                entries[(int)put & indexMask] = ctx;
-                // 仅仅在队列的日志数超过阈值，且消费者不在运行，且获得锁，才唤醒消费者
-                // 这个做法能保证只有必要时才立即通知消费者，减少上下文切换的开销
-                if (size >= consumerThreshold && !running.get() && lock.tryLock()) {
-                    try {
-                        notEmpty.signal();
-                    } catch (Throwable e) {
-                        LOGGER.error("fail to signal notEmpty: {}", workerName, e);
-                    } finally {
-                        lock.unlock();
-                    }
-                }
-                return true;
-            }
+        if (ringBuffer.tryPublish(ctx)) {
+            return true;
         }
+        discardCommandCount.increment();
+        return false;
     }
 
     /**
      * 队列满时直接丢弃日志，不阻塞业务线程，返回日志是否被接受
      */
     public boolean append(BaseContext ctx) {
-        final long qsize = queueSize;
-        long startTime = 0;
-        for (; ; ) {
-            final long put = putIndex.get();
-            final long size = put - takeIndex.get();
-            if (size >= qsize) {
-                if (maxWaitMillis <= 0) {
-                    discardCount.incrementAndGet();
-                    return false;
-                } else {
-                    long now = System.currentTimeMillis();
-                    if (startTime == 0) {
-                        startTime = now;
-                    } else if (now - startTime >= maxWaitMillis) {
-                        discardCount.incrementAndGet();
-                        return false;
-                    }
-                    LockSupport.parkNanos(1000);
-                    continue;
-                }
-            }
-            if (putIndex.compareAndSet(put, put + 1)) {
-                entries[(int)put & indexMask] = ctx;
-                // 仅仅在队列的日志数超过阈值，且消费者不在运行，且获得锁，才唤醒消费者
-                // 这个做法能保证只有必要时才立即通知消费者，减少上下文切换的开销
-                if (size >= consumerThreshold && !running.get() && lock.tryLock()) {
-                    try {
-                        notEmpty.signal();
-                    } catch (Throwable e) {
-                        LOGGER.error("fail to signal notEmpty: {}", workerName, e);
-                    } finally {
-                        lock.unlock();
-                    }
-                }
-                return true;
-            }
+        if (ringBuffer.tryPublish(ctx)) {
+            return true;
         }
+        discardContextCount.increment();
+        return false;
     }
 
     @Override
     public void append(String log) {
-        final long qsize = queueSize;
-        long startTime = 0;
-        for (; ; ) {
-            final long put = putIndex.get();
-            final long size = put - takeIndex.get();
-            if (size >= qsize) {
-                if (maxWaitMillis <= 0) {
-                    discardCount.incrementAndGet();
-                    return;
-                } else {
-                    long now = System.currentTimeMillis();
-                    if (startTime == 0) {
-                        startTime = now;
-                    } else if (now - startTime >= maxWaitMillis) {
-                        discardCount.incrementAndGet();
-                        return;
-                    }
-                    LockSupport.parkNanos(1000);
-                    continue;
-                }
-            }
-            if (putIndex.compareAndSet(put, put + 1)) {
-                entries[(int)put & indexMask] = log;
-                // 仅仅在队列的日志数超过阈值，且消费者不在运行，且获得锁，才唤醒消费者
-                // 这个做法能保证只有必要时才立即通知消费者，减少上下文切换的开销
-                if (size >= consumerThreshold && !running.get() && lock.tryLock()) {
-                    try {
-                        notEmpty.signal();
-                    } catch (Throwable e) {
-                        LOGGER.error("fail to signal notEmpty: {}", workerName, e);
-                    } finally {
-                        lock.unlock();
-                    }
-                }
-                return;
-            }
+        if (!ringBuffer.tryPublish(log)) {
+            discardLogCount.increment();
         }
     }
 
@@ -291,22 +183,15 @@ class AsyncAppender extends PradarAppender {
         // 最多等待刷新的时间，避免数据一直在写导致无法返回
         long end = System.currentTimeMillis() + 500;
         while (size() > 0 && System.currentTimeMillis() <= end) {
-            if (running.get()) {
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e) {
-                    break;
-                }
-            } else {
-                if (lock.tryLock()) {
-                    try {
-                        notEmpty.signal();
-                    } catch (Throwable e) {
-                        LOGGER.error("fail to signal notEmpty: {}", workerName, e);
-                    } finally {
-                        lock.unlock();
-                    }
-                }
+            if (ringBuffer.isConsumerWaiting()) {
+                ringBuffer.signalAll();
+            }
+            // 唤醒后也要让出 CPU 等待消费者写出，不能空转检查
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
         }
     }
@@ -319,76 +204,36 @@ class AsyncAppender extends PradarAppender {
         this.appender = PradarCoreUtils.checkNotNull(appender, "appender");
     }
 
-    class AsyncRunnable implements Runnable {
+    class AsyncRunnable implements Runnable, LogRingBuffer.EventHandler {
         private volatile boolean isRunning = true;
 
+        // 输出丢弃的日志数
+        private final long outputSpan = TimeUnit.MINUTES.toMillis(1);
+        private long lastOutputTime = System.currentTimeMillis();
+
         public void shutdown() {
             isRunning = false;
         }
 
         @Override
         public void run() {
-            final AsyncAppender parent = AsyncAppender.this;
-            final int indexMask = parent.indexMask;
-            final int queueSize = parent.queueSize;
-            final TraceEncoder encoder = parent.encoder;
-            final String workerName = parent.workerName;
-            final Object[] entries = parent.entries;
-            final AtomicLong putIndex = parent.putIndex;
-            final AtomicLong takeIndex = parent.takeIndex;
-            final AtomicLong discardCount = parent.discardCount;
-            final AtomicBoolean running = parent.running;
-            final ReentrantLock lock = parent.lock;
-            final Condition notEmpty = parent.notEmpty;
-
-            // 输出丢弃的日志数
-            final long outputSpan = TimeUnit.MINUTES.toMillis(1);
-            long lastOutputTime = System.currentTimeMillis();
-            long now;
+            final LogRingBuffer ringBuffer = AsyncAppender.this.ringBuffer;
+            final int batchSize = AsyncAppender.this.batchSize;
+            int idleRounds = 0;
 
             while (isRunning) {
                 try {
-                    running.set(true);
-                    long take = takeIndex.get();
-                    long size = putIndex.get() - take;
-                    if (size > 0) {
-                        // 直接批量处理掉 size 个日志对象
-                        do {
-                            final int idx = (int)take & indexMask;
-                            Object ctx = entries[idx];
-                            // 从生产者 claim 到 putIndex 位置，到生产者把日志对象放入队列之间，有可能存在间隙
-                            while (ctx == null) {
-                                Thread.yield();
-                                ctx = entries[idx];
-                            }
-                            entries[idx] = null;
-                            takeIndex.set(++take); // 单个消费者，无需用 CAS
-                            --size;
-                            processContext(ctx, parent.appender, encoder);
-                        } while (size > 0);
-
-                        long discardNum = discardCount.get();
-                        if (discardNum > 0 &&
-                            (now = System.currentTimeMillis()) - lastOutputTime > outputSpan) {
-                            discardNum = discardCount.get();
-                            discardCount.lazySet(0); // 无需内存屏障，统计的数量稍微丢失一点
-                            LOGGER.warn("{} discarded {} logs, queueSize={}" + queueSize, workerName, discardNum,
-                                queueSize);
-                            lastOutputTime = now;
-                        }
-
+                    if (ringBuffer.drain(this, batchSize) > 0) {
+                        idleRounds = 0;
                         // 写完一批日志之后，做一次刷新
-                        parent.appender.flush();
+                        appender.flush();
                     } else {
-                        if (lock.tryLock()) {
-                            try {
-                                running.set(false);
-                                notEmpty.await(1, TimeUnit.SECONDS);
-                            } finally {
-                                lock.unlock();
-                            }
+                        ringBuffer.waitFor(idleRounds);
+                        if (idleRounds < Integer.MAX_VALUE) {
+                            idleRounds++;
                         }
                     }
+                    reportDiscard();
                 } catch (InterruptedException e) {
                     LOGGER.warn("{} async thread is iterrupted", workerName);
                     break;
@@ -396,11 +241,11 @@ class AsyncAppender extends PradarAppender {
                     LOGGER.error("Fail to async write log {}", workerName, e);
                 }
             }
-            running.set(false);
         }
 
-        private final void processContext(final Object ctx,
-            final PradarAppender appender, final TraceEncoder encoder) throws IOException {
+        @Override
+        public void onEvent(Object ctx) throws IOException {
+            final PradarAppender appender = AsyncAppender.this.appender;
             if (ctx == EVENT_LOG_FLUSH) {
                 appender.flush();
             } else if (ctx == EVENT_LOG_RELOAD) {
@@ -408,11 +253,57 @@ class AsyncAppender extends PradarAppender {
             } else if (ctx == EVENT_LOG_ROLLOVER) {
                 appender.reload();
             } else if (ctx instanceof BaseContext) {
-                encoder.encode((BaseContext)ctx, appender);
+                encoder.encode((BaseContext) ctx, appender);
             } else if (ctx instanceof String) {
-                appender.append((String)ctx);
+                appender.append((String) ctx);
+            }
+        }
+
+        /**
+         * 每隔一段时间把最近丢弃的日志条数写入 monitor 日志
+         */
+        private void reportDiscard() {
+            long now = System.currentTimeMillis();
+            if (now - lastOutputTime <= outputSpan) {
+                return;
             }
+            final String discardLog = drainDiscardLog(now - lastOutputTime);
+            lastOutputTime = now;
+            if (discardLog != null) {
+                Pradar.commitMonitorLog(discardLog);
+            }
+        }
+    }
+
+    /**
+     * 汇总并清零各类生产者丢弃的日志条数，生成一条 monitor 日志
+     * <p>
+     * 格式: appName|timestamp|agentId|logDiscard|workerName|interval|context|log|command|queueSize|version
+     *
+     * @param interval 统计的时间跨度，毫秒
+     * @return monitor 日志，没有丢弃时返回 null
+     */
+    String drainDiscardLog(long interval) {
+        final long context = discardContextCount.sumThenReset();
+        final long log = discardLogCount.sumThenReset();
+        final long command = discardCommandCount.sumThenReset();
+        if (context == 0L && log == 0L && command == 0L) {
+            return null;
         }
+        return new StringBuilder(128)
+            .append(AppNameUtils.appName()).append('|')
+            .append(System.currentTimeMillis()).append('|')
+            .append(Pradar.AGENT_ID_NOT_CONTAIN_USER_INFO).append('|')
+            .append(DISCARD_LOG_TYPE).append('|')
+            .append(workerName).append('|')
+            .append(interval).append('|')
+            .append(context).append('|')
+            .append(log).append('|')
+            .append(command).append('|')
+            .append(ringBuffer.capacity()).append('|')
+            .append(Pradar.PRADAR_MONITOR_LOG_VERSION)
+            .append(PradarCoreUtils.NEWLINE)
+            .toString();
     }
 
     @Override
@@ -35,7 +35,7 @@ abstract class BaseContext {
     /**
      * 调用 ID
      */
-    final String invokeId;
+    final InvokeId invokeId;
 
     String traceName = PradarCoreUtils.EMPTY_STRING;
 
@@ -121,6 +121,10 @@ abstract class BaseContext {
     int invokeType = 0;
 
     BaseContext(String _traceId, String _traceAppName, String _invokeId) {
+        this(_traceId, _traceAppName, InvokeId.of(_invokeId));
+    }
+
+    BaseContext(String _traceId, String _traceAppName, InvokeId _invokeId) {
         this.traceId = _traceId;
         this.invokeId = _invokeId;
         this.traceAppName = _traceAppName;
@@ -129,7 +133,7 @@ abstract class BaseContext {
     BaseContext(String _traceId, String _traceAppName, String _invokeId
             , String traceMethod, String traceServiceName) {
         this.traceId = _traceId;
-        this.invokeId = _invokeId;
+        this.invokeId = InvokeId.of(_invokeId);
         this.traceAppName = _traceAppName;
         this.traceMethod = traceMethod;
         this.traceServiceName = traceServiceName;
@@ -216,7 +220,7 @@ abstract class BaseContext {
      * 获取上下文的 invokeId
      */
     public String getInvokeId() {
-        return invokeId;
+        return invokeId == null ? null : invokeId.toString();
     }
 
     public String getTraceAppName() {
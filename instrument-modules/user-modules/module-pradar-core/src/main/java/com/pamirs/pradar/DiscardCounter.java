@@ -0,0 +1,71 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分段累加的丢弃计数
+ * <p>
+ * 队列满时所有业务线程都会去累加丢弃数，单个 AtomicLong 会成为新的竞争点；
+ * 这里按照线程ID把累加分散到多个独立缓存行的分段上，只有消费者线程在汇总时才读取全部分段
+ */
+final class DiscardCounter {
+
+    private static final int MAX_STRIPES = 16;
+    /**
+     * 每个分段占用的 long 数，保证相邻分段不在同一个缓存行
+     */
+    private static final int STRIDE = 8;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    DiscardCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    DiscardCounter(int expectStripes) {
+        int size = 1;
+        int expect = Math.min(MAX_STRIPES, expectStripes);
+        while (size < expect) {
+            size <<= 1;
+        }
+        this.cells = new AtomicLongArray(size * STRIDE);
+        this.mask = size - 1;
+    }
+
+    /**
+     * 丢弃数加一
+     */
+    void increment() {
+        cells.incrementAndGet((int) (Thread.currentThread().getId() & mask) * STRIDE);
+    }
+
+    /**
+     * 汇总所有分段的丢弃数并清零，汇总期间新增的丢弃数不会丢失，会计入下一次汇总
+     *
+     * @return 丢弃数
+     */
+    long sumThenReset() {
+        long sum = 0L;
+        for (int i = 0; i < cells.length(); i += STRIDE) {
+            if (cells.get(i) != 0L) {
+                sum += cells.getAndSet(i, 0L);
+            }
+        }
+        return sum;
+    }
+}
@@ -101,6 +101,10 @@ public final class InvokeContext extends AbstractContext implements Cloneable {
      * 是否需要线程兜底 commit
      */
     private boolean isThreadCommit;
+    /**
+     * 尾部采样时调用链在当前进程内的片段，只在进程内的根上下文上设置
+     */
+    volatile TraceTailSampler.Segment tailSegment;
 
     // log control event ctx
     InvokeContext(int logType) {
@@ -116,11 +120,15 @@ public final class InvokeContext extends AbstractContext implements Cloneable {
 
     // when call other service
     InvokeContext(String _traceId, String _traceAppName, String _invokeId, InvokeContext _parentInvokeContext) {
+        this(_traceId, _traceAppName, InvokeId.of(_invokeId), _parentInvokeContext);
+    }
+
+    InvokeContext(String _traceId, String _traceAppName, InvokeId _invokeId, InvokeContext _parentInvokeContext) {
         this(_traceId, _traceAppName, _invokeId, _parentInvokeContext, new AtomicInteger(0));
     }
 
     // childRpcIdx for clone
-    InvokeContext(String _traceId, String _traceAppName, String _invokeId, InvokeContext _parentInvokeContext,
+    InvokeContext(String _traceId, String _traceAppName, InvokeId _invokeId, InvokeContext _parentInvokeContext,
                   AtomicInteger _childRpcIdx) {
         super(_traceId, _traceAppName, _invokeId);
         parentInvokeContext = _parentInvokeContext;
@@ -138,7 +146,7 @@ public final class InvokeContext extends AbstractContext implements Cloneable {
     }
 
     // for clone
-    InvokeContext(String _traceId, String _traceAppName, String _invokeId, InvokeContext _parentInvokeContext,
+    InvokeContext(String _traceId, String _traceAppName, InvokeId _invokeId, InvokeContext _parentInvokeContext,
                   AtomicInteger _childRpcIdx, long _id) {
         super(_traceId, _traceAppName, _invokeId);
         parentInvokeContext = _parentInvokeContext;
@@ -418,12 +426,19 @@ public final class InvokeContext extends AbstractContext implements Cloneable {
     }
 
     String nextChildInvokeId() {
-        String childInvokeId = invokeId + "." + childInvokeIdx.incrementAndGet();
+        return nextChildInvokeIdValue().toString();
+    }
+
+    /**
+     * 分配子调用 ID，只记录父调用 ID 和序号，需要时才转换成字符串
+     */
+    private InvokeId nextChildInvokeIdValue() {
+        InvokeId childInvokeId = invokeId.child(childInvokeIdx.incrementAndGet());
         /**
          * 检查rpcId是否超出
          */
-        if (checkInvokeIdOverLoad(childInvokeId)) {
-            return Pradar.ADJUST_ROOT_INVOKE_ID;
+        if (childInvokeId.length() > INVOKE_ID_LENGTH_LIMIT) {
+            return InvokeId.of(Pradar.ADJUST_ROOT_INVOKE_ID);
         }
         return childInvokeId;
     }
@@ -434,8 +449,7 @@ public final class InvokeContext extends AbstractContext implements Cloneable {
      * @return
      */
     public boolean isRoot() {
-        return StringUtils.equals(invokeId, Pradar.ROOT_INVOKE_ID) || StringUtils.equals(invokeId,
-                Pradar.MAL_ROOT_INVOKE_ID);
+        return invokeId != null && (invokeId.is(Pradar.ROOT_INVOKE_ID) || invokeId.is(Pradar.MAL_ROOT_INVOKE_ID));
     }
 
     @Override
@@ -452,7 +466,7 @@ public final class InvokeContext extends AbstractContext implements Cloneable {
     }
 
     protected InvokeContext cloneInstance() {
-        InvokeContext clone = new InvokeContext(traceId, traceAppName, getInvokeId(), parentInvokeContext,
+        InvokeContext clone = new InvokeContext(traceId, traceAppName, invokeId, parentInvokeContext,
                 childInvokeIdx);
         clone.attributes = this.attributes;
         clone.localAttributes = this.localAttributes;
@@ -474,6 +488,7 @@ public final class InvokeContext extends AbstractContext implements Cloneable {
         clone.response = this.response;
         clone.isClusterTest = this.isClusterTest();
         clone.isDebug = this.isDebug();
+        clone.inheritSampleDecision(this);
         return clone;
     }
 
@@ -482,7 +497,7 @@ public final class InvokeContext extends AbstractContext implements Cloneable {
      */
     public InvokeContext createChildInvoke() {
         final InvokeContext parent;
-        if (checkInvokeIdOverLoad(this.invokeId) && this.parentInvokeContext != null
+        if (this.invokeId != null && this.invokeId.length() > INVOKE_ID_LENGTH_LIMIT && this.parentInvokeContext != null
                 && this.parentInvokeContext.parentInvokeContext != null) {
             // 当前 InvokeContext 创建子 InvokeContext，一般当前 Context 就是服务端或者入口端，
             // 正常情况不应该再有 parent。如果 invokeId 过长，而且又存在 parent，
@@ -494,10 +509,11 @@ public final class InvokeContext extends AbstractContext implements Cloneable {
         } else {
             parent = this;
         }
-        InvokeContext ctx = new InvokeContext(traceId, traceAppName, nextChildInvokeId(), parent);
+        InvokeContext ctx = new InvokeContext(traceId, traceAppName, nextChildInvokeIdValue(), parent);
         ctx.attributes = this.attributes;
         ctx.setClusterTest(this.isClusterTest());
         ctx.setDebug(this.isDebug());
+        ctx.inheritSampleDecision(this);
         return ctx;
     }
 
@@ -675,8 +691,9 @@ public final class InvokeContext extends AbstractContext implements Cloneable {
             context.put(PradarService.PRADAR_TRACE_ID_KEY, traceId);
         }
         context.put(PradarService.PRADAR_TRACE_APPNAME_KEY, traceAppName == null ? appName() : traceAppName);
-        if (StringUtils.isNotBlank(invokeId)) {
-            context.put(PradarService.PRADAR_INVOKE_ID_KEY, invokeId);
+        final String invokeIdValue = invokeId == null ? null : invokeId.toString();
+        if (StringUtils.isNotBlank(invokeIdValue)) {
+            context.put(PradarService.PRADAR_INVOKE_ID_KEY, invokeIdValue);
         }
         String userData = exportUserData();
         if (StringUtils.isNotBlank(userData)) {
@@ -794,6 +811,13 @@ public final class InvokeContext extends AbstractContext implements Cloneable {
         invokeContext.invokeType = this.invokeType;
         invokeContext.isClusterTest = this.isClusterTest;
         invokeContext.isDebug = this.isDebug;
+        invokeContext.inheritSampleDecision(this);
+        if (PradarSwitcher.isTraceTailSamplingEnabled()) {
+            /**
+             * 不传递父上下文，异步调用需要归属到原调用链的片段中
+             */
+            invokeContext.tailSegment = TraceTailSampler.getInstance().segmentOf(this);
+        }
         invokeContext.logTime = this.logTime;
         invokeContext.passCheck = this.passCheck;
         invokeContext.port = this.port;
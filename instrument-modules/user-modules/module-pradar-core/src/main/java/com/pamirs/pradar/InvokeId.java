@@ -0,0 +1,131 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+/**
+ * 调用 ID
+ * <p>
+ * 子调用 ID 只保存父调用 ID 和自己的序号，不再每次拼接字符串，
+ * 只有在透传或者打印日志时才会转换成字符串(如 0.1.2)，转换结果会被缓存
+ */
+final class InvokeId {
+
+    /**
+     * 父调用 ID，为 null 时表示由字符串直接构建
+     */
+    private final InvokeId parent;
+    /**
+     * 在父调用下的序号
+     */
+    private final int index;
+    /**
+     * 字符串形式的长度
+     */
+    private final int length;
+    /**
+     * 字符串形式，String 本身不可变，并发时最多重复构建一次，所以不需要 volatile
+     */
+    private String value;
+
+    private InvokeId(String value) {
+        this.parent = null;
+        this.index = 0;
+        this.length = value.length();
+        this.value = value;
+    }
+
+    private InvokeId(InvokeId parent, int index) {
+        this.parent = parent;
+        this.index = index;
+        this.length = parent.length + 1 + stringSize(index);
+    }
+
+    /**
+     * 由字符串构建调用 ID
+     *
+     * @param invokeId 调用 ID 字符串
+     * @return 调用 ID，参数为 null 时返回 null
+     */
+    static InvokeId of(String invokeId) {
+        return invokeId == null ? null : new InvokeId(invokeId);
+    }
+
+    /**
+     * 创建子调用 ID
+     *
+     * @param index 子调用序号
+     * @return 子调用 ID
+     */
+    InvokeId child(int index) {
+        if (index < 0) {
+            return new InvokeId(toString() + '.' + index);
+        }
+        return new InvokeId(this, index);
+    }
+
+    /**
+     * 字符串形式的长度，不需要转换成字符串
+     *
+     * @return 长度
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * 是否与字符串形式的调用 ID 相同
+     *
+     * @param invokeId 调用 ID 字符串
+     * @return 是否相同
+     */
+    boolean is(String invokeId) {
+        if (invokeId == null || invokeId.length() != length) {
+            return false;
+        }
+        return invokeId.equals(toString());
+    }
+
+    @Override
+    public String toString() {
+        String value = this.value;
+        if (value == null) {
+            final char[] chars = new char[length];
+            int pos = length;
+            InvokeId node = this;
+            while (node.parent != null && node.value == null) {
+                int i = node.index;
+                do {
+                    chars[--pos] = (char) ('0' + i % 10);
+                    i /= 10;
+                } while (i != 0);
+                chars[--pos] = '.';
+                node = node.parent;
+            }
+            node.value.getChars(0, pos, chars, 0);
+            value = new String(chars);
+            this.value = value;
+        }
+        return value;
+    }
+
+    private static int stringSize(int i) {
+        int size = 1;
+        while (i >= 10) {
+            i /= 10;
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,319 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * jar包信息索引
+ * <p>
+ * 以 jar 包路径为 key 记录 jar 包的大小、修改时间以及扫描出的 pom 信息，并持久化到本地文件。
+ * 扫描时只有新增或者大小、修改时间发生变化的 jar 包才会重新打开读取 pom 信息，
+ * 其他 jar 包直接复用索引中的结果，应用重启后同样可以复用。
+ * <p>
+ * 索引文件默认为 ${user.home}/.simulator/jar-inventory/${appName}.idx，
+ * 可以通过 -Dsimulator.jar.inventory.file 指定
+ */
+public class JarInventory {
+    private final static Logger LOGGER = LoggerFactory.getLogger(JarInventory.class);
+
+    public final static String INVENTORY_FILE_PROPERTY = "simulator.jar.inventory.file";
+
+    private final static String HEADER = "# simulator jar inventory v1";
+    private final static String SEPARATOR = "\t";
+
+    private static volatile JarInventory DEFAULT;
+
+    private final File indexFile;
+
+    /**
+     * jar包路径 -> 索引项
+     */
+    private Map<String, Entry> entries;
+
+    /**
+     * 最近一次扫描的统计
+     */
+    private volatile long lastScanMillis;
+    private volatile int lastTotalCount;
+    private volatile int lastRescanCount;
+    private volatile int lastReuseCount;
+
+    public JarInventory(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * 获取默认的 jar 包索引
+     *
+     * @return jar包索引
+     */
+    public static JarInventory getDefault() {
+        if (DEFAULT == null) {
+            synchronized (JarInventory.class) {
+                if (DEFAULT == null) {
+                    DEFAULT = new JarInventory(locateIndexFile());
+                }
+            }
+        }
+        return DEFAULT;
+    }
+
+    private static File locateIndexFile() {
+        String file = System.getProperty(INVENTORY_FILE_PROPERTY);
+        if (StringUtils.isNotBlank(file)) {
+            return new File(file);
+        }
+        String userHome = System.getProperty("user.home");
+        if (StringUtils.isBlank(userHome)) {
+            userHome = System.getProperty("java.io.tmpdir");
+        }
+        return new File(userHome + File.separator + ".simulator" + File.separator + "jar-inventory",
+            AppNameUtils.appName() + ".idx");
+    }
+
+    /**
+     * 扫描 jar 包的 pom 信息，结果与 {@link ScanJarPomUtils#scanByJarPaths(Set)} 一致
+     * 不在本次扫描中的 jar 包会从索引中移除，索引有变化时会写回本地文件
+     *
+     * @param jarPaths jar包路径
+     * @return "groupId:artifactId:version" 格式的 pom 信息
+     */
+    public synchronized Set<String> scan(Set<String> jarPaths) {
+        final long start = System.currentTimeMillis();
+        if (entries == null) {
+            entries = load(indexFile);
+        }
+        final Set<String> result = new HashSet<String>(jarPaths.size());
+        final Set<String> scannedPaths = new HashSet<String>(jarPaths.size());
+        boolean dirty = false;
+        int total = 0;
+        int rescan = 0;
+        for (String jarPath : jarPaths) {
+            if (!ScanJarPomUtils.isVersionedJar(jarPath)) {
+                continue;
+            }
+            final File file = new File(jarPath);
+            if (!file.isFile()) {
+                continue;
+            }
+            total++;
+            scannedPaths.add(jarPath);
+            final long size = file.length();
+            final long lastModified = file.lastModified();
+            Entry entry = entries.get(jarPath);
+            if (entry == null || entry.size != size || entry.lastModified != lastModified) {
+                entry = new Entry(size, lastModified, ScanJarPomUtils.scanJar(jarPath));
+                entries.put(jarPath, entry);
+                dirty = true;
+                rescan++;
+            }
+            if (entry.pomInfo != null) {
+                result.add(entry.pomInfo);
+            }
+        }
+        for (Iterator<String> it = entries.keySet().iterator(); it.hasNext(); ) {
+            if (!scannedPaths.contains(it.next())) {
+                it.remove();
+                dirty = true;
+            }
+        }
+        if (dirty) {
+            save(indexFile, entries);
+        }
+        lastScanMillis = System.currentTimeMillis() - start;
+        lastTotalCount = total;
+        lastRescanCount = rescan;
+        lastReuseCount = total - rescan;
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("[pradar] scan jar inventory finished. jars={}, rescan={}, reuse={}, cost={}ms",
+                new Object[] {total, rescan, total - rescan, lastScanMillis});
+        }
+        return result;
+    }
+
+    /**
+     * 最近一次扫描的耗时
+     *
+     * @return 毫秒
+     */
+    public long getLastScanMillis() {
+        return lastScanMillis;
+    }
+
+    /**
+     * 最近一次扫描的 jar 包数量
+     *
+     * @return jar包数量
+     */
+    public int getLastTotalCount() {
+        return lastTotalCount;
+    }
+
+    /**
+     * 最近一次扫描中重新读取的 jar 包数量
+     *
+     * @return jar包数量
+     */
+    public int getLastRescanCount() {
+        return lastRescanCount;
+    }
+
+    /**
+     * 最近一次扫描中复用索引的 jar 包数量
+     *
+     * @return jar包数量
+     */
+    public int getLastReuseCount() {
+        return lastReuseCount;
+    }
+
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    private static Map<String, Entry> load(File indexFile) {
+        final Map<String, Entry> entries = new HashMap<String, Entry>();
+        if (indexFile == null || !indexFile.isFile()) {
+            return entries;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                return entries;
+            }
+            while ((line = reader.readLine()) != null) {
+                /**
+                 * size \t lastModified \t pomInfo \t path，路径放在最后，允许路径中包含分隔符
+                 */
+                final String[] parts = line.split(SEPARATOR, 4);
+                if (parts.length != 4) {
+                    continue;
+                }
+                try {
+                    entries.put(parts[3], new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                        parts[2].length() == 0 ? null : parts[2]));
+                } catch (NumberFormatException e) {
+                    // 忽略损坏的索引项，下次扫描会重新读取
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("[pradar] load jar inventory failed, all jars will be rescanned. file={}", indexFile, e);
+            entries.clear();
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static void save(File indexFile, Map<String, Entry> entries) {
+        if (indexFile == null) {
+            return;
+        }
+        final File dir = indexFile.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            LOGGER.warn("[pradar] create jar inventory dir failed. dir={}", dir);
+            return;
+        }
+        /**
+         * 先在同一目录下写唯一的临时文件再替换，避免进程退出时留下不完整的索引，
+         * 同一台机器上同一应用的多个进程同时保存时也不会互相覆盖对方的临时文件
+         */
+        File tmpFile = null;
+        BufferedWriter writer = null;
+        try {
+            tmpFile = File.createTempFile(indexFile.getName() + ".save", ".tmp", dir);
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8"));
+            writer.write(HEADER);
+            writer.newLine();
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                final Entry entry = e.getValue();
+                if (!isStorable(e.getKey()) || (entry.pomInfo != null && !isStorable(entry.pomInfo))) {
+                    continue;
+                }
+                writer.write(String.valueOf(entry.size));
+                writer.write(SEPARATOR);
+                writer.write(String.valueOf(entry.lastModified));
+                writer.write(SEPARATOR);
+                writer.write(entry.pomInfo == null ? "" : entry.pomInfo);
+                writer.write(SEPARATOR);
+                writer.write(e.getKey());
+                writer.newLine();
+            }
+            writer.close();
+            writer = null;
+            if (!tmpFile.renameTo(indexFile)) {
+                indexFile.delete();
+                if (!tmpFile.renameTo(indexFile)) {
+                    LOGGER.warn("[pradar] save jar inventory failed. file={}", indexFile);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("[pradar] save jar inventory failed. file={}", indexFile, e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                }
+            }
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    private static boolean isStorable(String value) {
+        return value.indexOf('\t') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0;
+    }
+
+    private final static class Entry {
+        private final long size;
+        private final long lastModified;
+        /**
+         * 扫描出的 pom 信息，无法识别时为 null，同样会缓存
+         */
+        private final String pomInfo;
+
+        Entry(long size, long lastModified, String pomInfo) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.pomInfo = pomInfo;
+        }
+    }
+}
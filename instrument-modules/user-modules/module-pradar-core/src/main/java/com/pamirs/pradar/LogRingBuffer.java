@@ -0,0 +1,310 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 多生产者单消费者的日志 RingBuffer
+ * <p>
+ * 每个槽位都有自己的发布序号，生产者 CAS 抢占写入位置后写入日志对象，再以有序写发布该槽位的序号；
+ * 消费者只消费序号已发布的连续槽位，不会读到未写完的槽位，也无需像以前一样在空槽位上自旋等待
+ * <p>
+ * 队列满时生产者直接返回失败，不会阻塞业务线程；消费者空闲时的等待方式由 {@link WaitStrategy} 决定
+ */
+final class LogRingBuffer {
+
+    /**
+     * 阻塞等待，积压超过阈值时由生产者唤醒，CPU 占用最低，默认策略
+     */
+    static final String WAIT_STRATEGY_BLOCKING = "blocking";
+    /**
+     * 短暂让出 CPU 后 park 等待，生产者不需要唤醒消费者
+     */
+    static final String WAIT_STRATEGY_SLEEPING = "sleeping";
+    /**
+     * 自旋后让出 CPU，延迟最低，但会占用一个 CPU
+     */
+    static final String WAIT_STRATEGY_YIELDING = "yielding";
+
+    private final Object[] entries;
+    /**
+     * 每个槽位已发布的序号，值为写入位置 + 1，消费者读到 take + 1 时表示该槽位可读
+     */
+    private final AtomicLongArray published;
+    private final int capacity;
+    private final int indexMask;
+
+    // 下一个写的位置，一直递增
+    private final AtomicLong putIndex = new AtomicLong(0L);
+    // 下一个读的位置，一直递增，不能大于 putIndex，只由消费者修改
+    private final AtomicLong takeIndex = new AtomicLong(0L);
+
+    private final WaitStrategy waitStrategy;
+
+    LogRingBuffer(int capacity, WaitStrategy waitStrategy) {
+        // capacity 取大于或等于 value 的 2 的 n 次方数
+        capacity = 1 << (32 - Integer.numberOfLeadingZeros(capacity - 1));
+        this.capacity = capacity;
+        this.indexMask = capacity - 1;
+        this.entries = new Object[capacity];
+        this.published = new AtomicLongArray(capacity);
+        this.waitStrategy = waitStrategy;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int size() {
+        return (int) (putIndex.get() - takeIndex.get());
+    }
+
+    /**
+     * 发布一条日志，队列满时直接返回 false，不会阻塞
+     *
+     * @param event 日志对象
+     * @return 是否发布成功
+     */
+    boolean tryPublish(Object event) {
+        for (; ; ) {
+            final long put = putIndex.get();
+            final long size = put - takeIndex.get();
+            if (size >= capacity) {
+                return false;
+            }
+            if (putIndex.compareAndSet(put, put + 1)) {
+                final int idx = (int) put & indexMask;
+                entries[idx] = event;
+                // 有序写，保证消费者看到序号时一定能看到写入的日志对象
+                published.lazySet(idx, put + 1);
+                waitStrategy.signal(size + 1);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 批量消费已发布的日志，只能由消费者线程调用
+     *
+     * @param handler  日志处理器
+     * @param maxBatch 本批次最多消费的条数
+     * @return 消费的条数
+     * @throws IOException 处理日志失败，抛出异常前已消费的日志以及处理失败的日志都不会重复消费
+     */
+    int drain(EventHandler handler, int maxBatch) throws IOException {
+        long take = takeIndex.get();
+        int count = 0;
+        while (count < maxBatch) {
+            final int idx = (int) take & indexMask;
+            if (published.get(idx) != take + 1) {
+                break;
+            }
+            final Object event = entries[idx];
+            entries[idx] = null;
+            count++;
+            try {
+                handler.onEvent(event);
+            } finally {
+                // 处理完成后才推进读位置，size() 为 0 时所有日志都已经交给处理器
+                takeIndex.lazySet(++take);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 没有可消费的日志时等待
+     *
+     * @param idleRounds 连续空闲的轮数
+     * @throws InterruptedException 消费者线程被中断
+     */
+    void waitFor(int idleRounds) throws InterruptedException {
+        waitStrategy.waitFor(this, idleRounds);
+    }
+
+    /**
+     * 立即唤醒正在等待的消费者
+     */
+    void signalAll() {
+        waitStrategy.signalAll();
+    }
+
+    boolean isConsumerWaiting() {
+        return waitStrategy.isWaiting();
+    }
+
+    static WaitStrategy newWaitStrategy(String name, int signalThreshold) {
+        if (WAIT_STRATEGY_SLEEPING.equals(name)) {
+            return new SleepingWaitStrategy();
+        } else if (WAIT_STRATEGY_YIELDING.equals(name)) {
+            return new YieldingWaitStrategy();
+        }
+        return new BlockingWaitStrategy(signalThreshold);
+    }
+
+    interface EventHandler {
+        void onEvent(Object event) throws IOException;
+    }
+
+    /**
+     * 消费者空闲时的等待策略，生产者一侧的方法不允许阻塞
+     */
+    interface WaitStrategy {
+        /**
+         * 消费者没有可消费的日志时等待
+         */
+        void waitFor(LogRingBuffer ringBuffer, int idleRounds) throws InterruptedException;
+
+        /**
+         * 生产者发布日志后调用，根据积压的日志数决定是否唤醒消费者
+         */
+        void signal(long size);
+
+        /**
+         * 唤醒正在等待的消费者
+         */
+        void signalAll();
+
+        /**
+         * 消费者是否正在等待
+         */
+        boolean isWaiting();
+    }
+
+    static final class BlockingWaitStrategy implements WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock(false);
+        private final Condition notEmpty = lock.newCondition();
+        private final int signalThreshold;
+        private volatile boolean waiting;
+
+        BlockingWaitStrategy(int signalThreshold) {
+            this.signalThreshold = signalThreshold;
+        }
+
+        @Override
+        public void waitFor(LogRingBuffer ringBuffer, int idleRounds) throws InterruptedException {
+            lock.lock();
+            try {
+                waiting = true;
+                if (ringBuffer.size() == 0) {
+                    notEmpty.await(1, TimeUnit.SECONDS);
+                }
+            } finally {
+                waiting = false;
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void signal(long size) {
+            // 仅仅在队列的日志数超过阈值，且消费者在等待，且获得锁，才唤醒消费者
+            // 这个做法能保证只有必要时才立即通知消费者，减少上下文切换的开销
+            if (size >= signalThreshold && waiting) {
+                signalAll();
+            }
+        }
+
+        @Override
+        public void signalAll() {
+            if (waiting && lock.tryLock()) {
+                try {
+                    notEmpty.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        @Override
+        public boolean isWaiting() {
+            return waiting;
+        }
+    }
+
+    static final class SleepingWaitStrategy implements WaitStrategy {
+        private static final int YIELD_ROUNDS = 100;
+        private static final long SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+        /**
+         * 正在休眠的消费者线程
+         */
+        private volatile Thread waiter;
+
+        @Override
+        public void waitFor(LogRingBuffer ringBuffer, int idleRounds) throws InterruptedException {
+            if (idleRounds < YIELD_ROUNDS) {
+                Thread.yield();
+            } else {
+                waiter = Thread.currentThread();
+                LockSupport.parkNanos(SLEEP_NANOS);
+                waiter = null;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        @Override
+        public void signal(long size) {
+        }
+
+        @Override
+        public void signalAll() {
+            final Thread waiter = this.waiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+
+        @Override
+        public boolean isWaiting() {
+            return waiter != null;
+        }
+    }
+
+    static final class YieldingWaitStrategy implements WaitStrategy {
+        private static final int SPIN_ROUNDS = 100;
+
+        @Override
+        public void waitFor(LogRingBuffer ringBuffer, int idleRounds) throws InterruptedException {
+            if (idleRounds >= SPIN_ROUNDS) {
+                Thread.yield();
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        @Override
+        public void signal(long size) {
+        }
+
+        @Override
+        public void signalAll() {
+        }
+
+        @Override
+        public boolean isWaiting() {
+            return false;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import com.pamirs.pradar.common.PropertyPlaceholderHelper;
 import com.pamirs.pradar.common.RuntimeUtils;
 import com.pamirs.pradar.debug.DebugHelper;
 import com.pamirs.pradar.exception.PressureMeasureError;
+import com.pamirs.pradar.interceptor.ContextTransfer;
 import com.pamirs.pradar.pressurement.ClusterTestUtils;
 import com.pamirs.pradar.pressurement.agent.shared.service.GlobalConfig;
 import org.apache.commons.lang.StringUtils;
@@ -227,6 +228,10 @@ public final class Pradar {
      * monitor 日志的队列长度大小
      */
     static public final String MONITOR_QUEUE_SIZE = "pradar.monitor.queue.size";
+    /**
+     * 异步日志消费者空闲时的等待策略，可选 blocking、sleeping、yielding
+     */
+    static public final String LOG_WAIT_STRATEGY = "pradar.log.wait.strategy";
     /**
      * 是否影子库里用影子表模式
      */
@@ -452,6 +457,19 @@ public final class Pradar {
         return DEFAULT_MONITOR_QUEUE_SIZE;
     }
 
+    /**
+     * 获取异步日志消费者空闲时的等待策略
+     *
+     * @return 默认返回 blocking
+     */
+    public static String getLogWaitStrategy() {
+        String value = System.getProperty(LOG_WAIT_STRATEGY);
+        if (StringUtils.isNotBlank(value)) {
+            return value.trim();
+        }
+        return LogRingBuffer.WAIT_STRATEGY_BLOCKING;
+    }
+
     /**
      * 是否影子库里用影子表模式
      *
@@ -1090,7 +1108,7 @@ public final class Pradar {
 
     static private PradarRollingCollectorAppender createPradarCollectorLoggers() {
         // 配置日志输出
-        collectorAppender = new AsyncCollectorAppender(getTraceQueueSize(), 0, TRACE_CHUNK_SIZE);
+        collectorAppender = new AsyncCollectorAppender(getTraceQueueSize(), TRACE_CHUNK_SIZE);
         PradarRollingCollectorAppender rpcLogger = new PradarRollingCollectorAppender((byte) 1, Pradar.PRADAR_TARCE_LOG_VERSION);
         collectorAppender.start(rpcLogger, new TraceCollectorInvokeEncoder(), "RpcLog");
         PradarLogDaemon.watch(collectorAppender);
@@ -1100,7 +1118,7 @@ public final class Pradar {
 
     static private PradarRollingCollectorAppender createMonitorCollectorLoggers() {
         // 配置日志输出
-        collectorMonitorAppender = new AsyncCollectorAppender(getMonitorQueueSize(), 0, TRACE_CHUNK_SIZE);
+        collectorMonitorAppender = new AsyncCollectorAppender(getMonitorQueueSize(), TRACE_CHUNK_SIZE);
 
         PradarRollingCollectorAppender rpcLogger = new PradarRollingCollectorAppender((byte) 3, Pradar.PRADAR_MONITOR_LOG_VERSION);
         collectorMonitorAppender.start(rpcLogger, new TraceInvokeContextEncoder(), "MonitorLog");
@@ -1111,7 +1129,7 @@ public final class Pradar {
 
     static private final PradarRollingFileAppender createPradarLoggers() {
         // 配置日志输出
-        rpcAppender = new AsyncAppender(getTraceQueueSize(), 0);
+        rpcAppender = new AsyncAppender(getTraceQueueSize());
 
         PradarRollingFileAppender rpcLogger = new PradarRollingFileAppender(
             PRADAR_INVOKE_LOG_FILE, Pradar.MAX_RPC_LOG_FILE_SIZE, false);
@@ -1124,7 +1142,7 @@ public final class Pradar {
     static private final PradarRollingFileAppender createMonitorLoggers() {
 
         // 配置日志输出
-        serverMonitorAppender = new AsyncAppender(getMonitorQueueSize(), 0);
+        serverMonitorAppender = new AsyncAppender(getMonitorQueueSize());
 
         PradarRollingFileAppender rpcLogger = new PradarRollingFileAppender(
             PRADAR_MONITOR_LOG_FILE, Pradar.MAX_MONITOR_LOG_FILE_SIZE, false);
@@ -1213,6 +1231,10 @@ public final class Pradar {
             if (isDebug) {
                 Pradar.setDebug(true);
             }
+            /**
+             * 调用链开始时即确定是否采样，子调用直接继承该结果
+             */
+            ctx.isTraceSampled();
 
         } catch (Throwable re) {
             LOGGER.error("startTrace", re);
@@ -1562,17 +1584,19 @@ public final class Pradar {
      * 这个范围内定义的字段，则会被强行移除，因为{@link #getInvokeContextMap()} 方法会返回一些用于
      * 内部上下文传输时需要的冗余字段，而这些字段不在远程传输字段列表内
      *
+     * <p>
+     * 直接写入载体时请使用 {@link PropagationCodec#inject(ContextTransfer)}，可以省去构造 Map 的开销
+     *
      * @return
      */
     static public Map<String, String> getInvokeContextTransformMap() {
-        Map<String, String> ctx = getInvokeContextMap();
-        Iterator<Map.Entry<String, String>> it = ctx.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<String, String> entry = it.next();
-            if (!getInvokeContextTransformKeys().contains(entry.getKey())) {
-                it.remove();
+        final Map<String, String> ctx = new HashMap<String, String>(16);
+        PropagationCodec.inject(new ContextTransfer() {
+            @Override
+            public void transfer(String key, String value) {
+                ctx.put(key, value);
             }
-        }
+        });
         return ctx;
     }
 
@@ -2029,6 +2053,12 @@ public final class Pradar {
             if (isDebug) {
                 Pradar.setDebug(true);
             }
+            /**
+             * 当前进程内的根调用，在此确定是否采样，子调用直接继承该结果
+             */
+            if (ctx.getParentInvokeContext() == null) {
+                ctx.isTraceSampled();
+            }
             if (PradarService.isSilence() && Pradar.isClusterTest()) {
                 LOGGER.error("[pradar]silence module ! can not handle cluster test data in startInvoke: {}",
                     JSON.toJSONString(ctx));
@@ -2221,7 +2251,7 @@ public final class Pradar {
      */
     static public String getInvokeId() {
         InvokeContext ctx = InvokeContext.get();
-        return null == ctx ? null : ctx.invokeId;
+        return null == ctx ? null : ctx.getInvokeId();
     }
 
     static public String getChildInvokeId() {
@@ -2534,19 +2564,32 @@ public final class Pradar {
             return false;
         }
 
-        if (!ctx.isClusterTest() && !PradarSwitcher.isSwitchSaveBusinessTrace()) {
+        if (isFilterBySwitch(ctx)) {
             return true;
         }
 
-        if (PradarSwitcher.isRpcOff()) {
+        if (!ctx.isTraceSampled()) {
             return true;
         }
+        return false;
+    }
 
-        if (!PradarSwitcher.isTraceEnabled()) {
+    /**
+     * 按照开关与日志类型判断是否过滤当前上下文，不包含采样
+     *
+     * @param ctx
+     * @return
+     */
+    static private boolean isFilterBySwitch(InvokeContext ctx) {
+        if (!ctx.isClusterTest() && !PradarSwitcher.isSwitchSaveBusinessTrace()) {
             return true;
         }
 
-        if (!ctx.isTraceSampled()) {
+        if (PradarSwitcher.isRpcOff()) {
+            return true;
+        }
+
+        if (!PradarSwitcher.isTraceEnabled()) {
             return true;
         }
 
@@ -2556,6 +2599,57 @@ public final class Pradar {
         return false;
     }
 
+    /**
+     * 判断当前调用链是否未被采样，即业务流量、非调试流量并且头部采样结果为不采样，
+     * 这类调用链的日志在提交时一定会被过滤，拦截器可以跳过请求、响应等调用信息的采集，
+     * 调用上下文仍然需要正常创建与传递，保证 invokeId 的连续
+     *
+     * @return true 表示未被采样
+     */
+    static public boolean isTraceUnsampled() {
+        return isTraceUnsampled(InvokeContext.get());
+    }
+
+    /**
+     * 判断指定的调用上下文所在的调用链是否未被采样
+     *
+     * @param ctx 调用上下文
+     * @return true 表示未被采样
+     * @see #isTraceUnsampled()
+     */
+    static public boolean isTraceUnsampled(InvokeContext ctx) {
+        if (ctx == null || ctx.isEmpty() || ctx.getTraceId() == null) {
+            return false;
+        }
+        if (ctx.isDebug() || ctx.isClusterTest()) {
+            return false;
+        }
+        /**
+         * 尾部采样时调用结束后才能决定是否输出，必须完整采集
+         */
+        if (PradarSwitcher.isTraceTailSamplingEnabled()) {
+            return false;
+        }
+        if (TraceIdGenerator.getNextId(ctx.getTraceId()) == 0) {
+            return false;
+        }
+        return !ctx.isTraceSampled();
+    }
+
+    /**
+     * 获取 trace 采样统计，包括当前业务流量、压测流量的采样频率，以及尾部采样保留、丢弃的片段与日志数量
+     *
+     * @return 采样统计
+     */
+    static public Map<String, Object> getTraceSamplingStatistics() {
+        Map<String, Object> statistics = new HashMap<String, Object>();
+        statistics.put("samplingInterval", PradarSwitcher.getSamplingInterval());
+        statistics.put("clusterTestSamplingInterval", PradarSwitcher.getClusterTestSamplingInterval());
+        statistics.put("tailSamplingEnabled", PradarSwitcher.isTraceTailSamplingEnabled());
+        statistics.put("tailSampling", TraceTailSampler.getInstance().getStatistics());
+        return statistics;
+    }
+
     /**
      * 提交调用上下文，生成日志。这是一个为了提高中间件埋点性能而特别设置的内部方法， 在不依赖 ThreadLocal 的场景使用。
      */
@@ -2569,12 +2663,15 @@ public final class Pradar {
             parent = parent.getParentInvokeContext();
         }
 
-        if (!isFilterContext(ctx)) {
-            if (COLLECTOR_PUSH) {
-                collectorAppender.append(ctx);
-            } else {
-                rpcAppender.append(ctx);
-            }
+        if (PradarSwitcher.isTraceTailSamplingEnabled()) {
+            /**
+             * 尾部采样，调用链在当前进程内结束之后再决定是否输出
+             */
+            boolean filtered = !ctx.isDebug() && TraceIdGenerator.getNextId(ctx.getTraceId()) != 0
+                && isFilterBySwitch(ctx);
+            TraceTailSampler.getInstance().commit(ctx, filtered);
+        } else if (!isFilterContext(ctx)) {
+            appendInvokeContext(ctx);
         }
         /**
          * 如果是压测流量，则设置有压测流量
@@ -2584,6 +2681,19 @@ public final class Pradar {
         }
     }
 
+    /**
+     * 输出调用上下文的日志
+     *
+     * @param ctx
+     */
+    static void appendInvokeContext(InvokeContext ctx) {
+        if (COLLECTOR_PUSH) {
+            collectorAppender.append(ctx);
+        } else {
+            rpcAppender.append(ctx);
+        }
+    }
+
     /**
      * 清理是否有压测流量请求标记，用于收集性能数据时使用
      */
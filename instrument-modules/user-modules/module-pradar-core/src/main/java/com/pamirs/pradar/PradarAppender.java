@@ -14,6 +14,7 @@
  */
 package com.pamirs.pradar;
 
+import java.nio.ByteBuffer;
 
 public abstract class PradarAppender {
 
@@ -31,6 +32,17 @@ public abstract class PradarAppender {
      */
     public abstract void append(String log);
 
+    /**
+     * 写已经按 {@link Pradar#DEFAULT_CHARSET} 编码好的日志，写完后 buffer 中的内容被消费
+     * <p>
+     * 默认解码成字符串后调用 {@link #append(String)}，能直接输出字节的实现需要覆盖该方法
+     *
+     * @param log 追加的日志，可读部分为一条完整的日志
+     */
+    public void appendBuffer(ByteBuffer log) {
+        append(Pradar.DEFAULT_CHARSET.decode(log).toString());
+    }
+
     /**
      * 刷新输出缓冲区
      */
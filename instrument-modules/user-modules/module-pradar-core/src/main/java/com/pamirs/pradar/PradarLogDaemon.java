@@ -64,6 +64,17 @@ class PradarLogDaemon implements Runnable {
 
         // 如果被删除，则尝试重新创建之；强制刷新 appender
         flushAndReload();
+
+        // 尾部采样中超时未结束的调用链
+        sweepTailSampler();
+    }
+
+    private void sweepTailSampler() {
+        try {
+            TraceTailSampler.getInstance().sweep();
+        } catch (Throwable e) {
+            LOGGER.error("fail to sweep trace tail sampler", e);
+        }
     }
 
     private void cleanupFiles() {
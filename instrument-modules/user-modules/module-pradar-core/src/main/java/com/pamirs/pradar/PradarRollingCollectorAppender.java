@@ -9,7 +9,9 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -26,7 +28,14 @@ public class PradarRollingCollectorAppender extends PradarAppender {
 
     private final String hostAddress;
 
-    StringBuilder stringBuilder = new StringBuilder();
+    private static final int DEFAULT_BUFFER_SIZE = 4 * 1024; // 4KB
+    private static final int MAX_RETAIN_BUFFER_SIZE = 1024 * 1024; // 1MB
+
+    /**
+     * 按 {@link Pradar#DEFAULT_CHARSET} 编码好的待发送日志，flush 时一次解码成字符串发送
+     */
+    private byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+    private int bufferSize;
 
     List<Object> sendContent = new ArrayList<>(1000);
 
@@ -82,14 +91,30 @@ public class PradarRollingCollectorAppender extends PradarAppender {
 
     @Override
     public void append(String log) {
-        stringBuilder.append(log);
+        appendBuffer(ByteBuffer.wrap(log.getBytes(Pradar.DEFAULT_CHARSET)));
+    }
+
+    /**
+     * 编码好的日志直接拷贝到发送缓冲区，不再逐条解码成字符串
+     */
+    @Override
+    public void appendBuffer(ByteBuffer log) {
+        int len = log.remaining();
+        if (bufferSize + len > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, bufferSize + len));
+        }
+        log.get(buffer, bufferSize, len);
+        bufferSize += len;
     }
 
     @Override
     public void flush() {
-        if (stringBuilder.length() > 0){
-            this.send(stringBuilder.toString());
-            stringBuilder = new StringBuilder();
+        if (bufferSize > 0) {
+            this.send(new String(buffer, 0, bufferSize, Pradar.DEFAULT_CHARSET));
+            bufferSize = 0;
+            if (buffer.length > MAX_RETAIN_BUFFER_SIZE) {
+                buffer = new byte[DEFAULT_BUFFER_SIZE];
+            }
         }
 
         if (CollectionUtil.isNotEmpty(sendContent)){
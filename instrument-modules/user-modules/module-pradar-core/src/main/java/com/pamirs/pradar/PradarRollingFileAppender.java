@@ -20,6 +20,8 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -28,6 +30,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * 支持多进程文件滚动的实现。注意：这个类的实现没有做并发保护，
  * 使用时必须保证单线程操作。一般搭配 {@link SyncAppender} 或者 {@link AsyncAppender}
  * 使用。一般配合 {@link PradarLogDaemon} 使用。
+ * <p>
+ * 日志先写入 direct 缓冲，再通过 O_APPEND 打开的 {@link FileChannel} 写出，
+ * 编码好的日志可以通过 {@link #appendBuffer(ByteBuffer)} 直接写入，不再经过 String 和 byte[] 的复制
  */
 class PradarRollingFileAppender extends PradarAppender {
 
@@ -63,7 +68,15 @@ class PradarRollingFileAppender extends PradarAppender {
 
     private final AtomicBoolean isRolling = new AtomicBoolean(false);
 
-    private BufferedOutputStream bos = null;
+    private FileOutputStream fos = null;
+
+    private FileChannel channel = null;
+
+    /**
+     * 输出缓冲，与原来 BufferedOutputStream 的行为一致：小于缓冲的日志先缓存，
+     * 不小于缓冲的日志先刷新缓冲再直接写出
+     */
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(bufferSize);
 
     private long nextFlushTime = 0L;
 
@@ -207,7 +220,9 @@ class PradarRollingFileAppender extends PradarAppender {
                 return;
             }
             FileOutputStream ostream = new FileOutputStream(logFile, true); // 必须 true 保证 O_APPEND
-            this.bos = new BufferedOutputStream(ostream, bufferSize);
+            this.fos = ostream;
+            this.channel = ostream.getChannel();
+            this.writeBuffer.clear();
             this.outputByteSize = logFile.length();
         } catch (Throwable e) {
             doSelfLog("[ERROR] Fail to create file to write: " + filePath + ", error=" + e.getMessage());
@@ -216,18 +231,25 @@ class PradarRollingFileAppender extends PradarAppender {
 
     @Override
     public void append(String log) {
-        BufferedOutputStream bos = this.bos;
-        if (bos != null) {
+        if (channel != null) {
+            appendBuffer(ByteBuffer.wrap(log.getBytes(Pradar.DEFAULT_CHARSET)));
+        }
+    }
+
+    @Override
+    public void appendBuffer(ByteBuffer log) {
+        FileChannel channel = this.channel;
+        if (channel != null) {
             try {
                 waitUntilRollFinish();
 
-                byte[] bytes = log.getBytes(Pradar.DEFAULT_CHARSET);
-                int len = bytes.length;
+                int len = log.remaining();
                 if (len > DEFAULT_BUFFER_SIZE && this.multiProcessDetected) {
                     len = DEFAULT_BUFFER_SIZE;
-                    bytes[len - 1] = '\n';
+                    log.limit(log.position() + len);
+                    log.put(log.limit() - 1, (byte) '\n');
                 }
-                bos.write(bytes, 0, len);
+                write(channel, log);
                 outputByteSize += len;
 
                 if (outputByteSize >= maxFileSize) {
@@ -246,12 +268,42 @@ class PradarRollingFileAppender extends PradarAppender {
         }
     }
 
+    private void write(FileChannel channel, ByteBuffer log) throws IOException {
+        final ByteBuffer writeBuffer = this.writeBuffer;
+        if (log.remaining() >= writeBuffer.capacity()) {
+            flushBuffer(channel);
+            while (log.hasRemaining()) {
+                channel.write(log);
+            }
+            return;
+        }
+        if (log.remaining() > writeBuffer.remaining()) {
+            flushBuffer(channel);
+        }
+        writeBuffer.put(log);
+    }
+
+    private void flushBuffer(FileChannel channel) throws IOException {
+        final ByteBuffer writeBuffer = this.writeBuffer;
+        if (writeBuffer.position() == 0) {
+            return;
+        }
+        writeBuffer.flip();
+        try {
+            while (writeBuffer.hasRemaining()) {
+                channel.write(writeBuffer);
+            }
+        } finally {
+            writeBuffer.clear();
+        }
+    }
+
     @Override
     public void flush() {
-        final BufferedOutputStream bos = this.bos;
-        if (bos != null) {
+        final FileChannel channel = this.channel;
+        if (channel != null) {
             try {
-                bos.flush();
+                flushBuffer(channel);
                 nextFlushTime = System.currentTimeMillis() + LOG_FLUSH_INTERVAL;
             } catch (Throwable e) {
                 doSelfLog("[WARN] Fail to flush OutputStream: " + filePath + ", " + e.getMessage());
@@ -325,14 +377,20 @@ class PradarRollingFileAppender extends PradarAppender {
 
     @Override
     public void close() {
-        BufferedOutputStream bos = this.bos;
-        if (bos != null) {
+        FileOutputStream fos = this.fos;
+        if (fos != null) {
+            try {
+                flushBuffer(channel);
+            } catch (IOException e) {
+                doSelfLog("[WARN] Fail to flush OutputStream: " + filePath + ", " + e.getMessage());
+            }
             try {
-                bos.close();
+                fos.close();
             } catch (IOException e) {
                 doSelfLog("[WARN] Fail to close OutputStream: " + e.getMessage());
             }
-            this.bos = null;
+            this.fos = null;
+            this.channel = null;
         }
     }
 
@@ -344,7 +402,7 @@ class PradarRollingFileAppender extends PradarAppender {
         flush();
         File logFile = new File(filePath + '.' + lastFileSuffix);
         long fileSize = logFile.length();
-        if (this.bos == null || fileSize < outputByteSize) {
+        if (this.channel == null || fileSize < outputByteSize) {
             // 可以判断文件已经滚动，或已删除
             doSelfLog("[INFO] Log file rolled over by outside: " + filePath + ", force reload");
             close();
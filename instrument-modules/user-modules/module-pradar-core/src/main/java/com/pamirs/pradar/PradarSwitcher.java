@@ -373,6 +373,27 @@ public class PradarSwitcher {
         return GlobalConfig.getInstance().getSimulatorDynamicConfig().getClusterTestTraceSamplingInterval();
     }
 
+    /**
+     * @return 是否开启 trace 尾部采样
+     */
+    static public boolean isTraceTailSamplingEnabled() {
+        return GlobalConfig.getInstance().getSimulatorDynamicConfig().isTraceTailSamplingEnabled();
+    }
+
+    /**
+     * @return 尾部采样慢调用阈值，单位毫秒
+     */
+    static public int getTraceTailSamplingSlowThreshold() {
+        return GlobalConfig.getInstance().getSimulatorDynamicConfig().getTraceTailSamplingSlowThreshold();
+    }
+
+    /**
+     * @return 尾部采样每秒最多输出的 trace 日志条数
+     */
+    static public int getTraceTailSamplingMaxLogsPerSecond() {
+        return GlobalConfig.getInstance().getSimulatorDynamicConfig().getTraceTailSamplingMaxLogsPerSecond();
+    }
+
     static public boolean isSwitchSaveBusinessTrace() {
         return GlobalConfig.getInstance().getSimulatorDynamicConfig().isSwitchSaveBusinessTrace();
     }
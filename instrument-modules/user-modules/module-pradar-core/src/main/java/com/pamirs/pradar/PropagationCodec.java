@@ -0,0 +1,70 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import com.pamirs.pradar.interceptor.ContextTransfer;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * 调用上下文的远程传输编码
+ * <p>
+ * 直接把传输字段写入载体(Dubbo attachment、gRPC metadata、HTTP header 等)，不再像
+ * {@link Pradar#getInvokeContextTransformMap()} 那样先构造完整的上下文 Map、再逐个移除非传输字段。
+ * 写入的 key 和值与 {@link Pradar#getInvokeContextTransformMap()} 完全一致
+ */
+public final class PropagationCodec {
+
+    private PropagationCodec() {
+    }
+
+    /**
+     * 将当前调用上下文写入载体，当前没有调用上下文时不写入任何字段
+     *
+     * @param carrier 载体
+     */
+    public static void inject(ContextTransfer carrier) {
+        inject(InvokeContext.get(), carrier);
+    }
+
+    static void inject(InvokeContext ctx, ContextTransfer carrier) {
+        if (ctx == null || carrier == null) {
+            return;
+        }
+        final String appName = AppNameUtils.appName();
+        if (StringUtils.isNotBlank(ctx.traceId)) {
+            carrier.transfer(PradarService.PRADAR_TRACE_ID_KEY, ctx.traceId);
+        }
+        carrier.transfer(PradarService.PRADAR_TRACE_APPNAME_KEY,
+            ctx.traceAppName == null ? appName : ctx.traceAppName);
+        final String invokeId = ctx.invokeId == null ? null : ctx.invokeId.toString();
+        if (StringUtils.isNotBlank(invokeId)) {
+            carrier.transfer(PradarService.PRADAR_INVOKE_ID_KEY, invokeId);
+        }
+        final String userData = ctx.exportUserData();
+        if (StringUtils.isNotBlank(userData)) {
+            carrier.transfer(PradarService.PRADAR_USER_DATA_KEY, userData);
+        }
+        carrier.transfer(PradarService.PRADAR_REMOTE_APPNAME_KEY, appName);
+        if (StringUtils.isNotBlank(appName) || ctx.upAppName == null) {
+            carrier.transfer(PradarService.PRADAR_UPSTREAM_APPNAME_KEY, appName);
+        } else {
+            carrier.transfer(PradarService.PRADAR_UPSTREAM_APPNAME_KEY, ctx.upAppName);
+        }
+        carrier.transfer(PradarService.PRADAR_REMOTE_IP, PradarCoreUtils.getLocalAddress());
+        carrier.transfer(PradarService.PRADAR_CLUSTER_TEST_KEY,
+            ctx.isClusterTest() ? Pradar.PRADAR_CLUSTER_TEST_ON : Pradar.PRADAR_CLUSTER_TEST_OFF);
+        carrier.transfer(PradarService.PRADAR_DEBUG_KEY, ctx.isDebug() ? Pradar.PRADAR_DEBUG_ON : Pradar.PRADAR_DEBUG_OFF);
+    }
+}
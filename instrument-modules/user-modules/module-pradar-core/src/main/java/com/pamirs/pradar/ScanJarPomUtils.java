@@ -44,25 +44,10 @@ public class ScanJarPomUtils {
         final Set<String> result = new HashSet<String>(jarPaths.size());
         try {
             for (String jarPath : jarPaths) {
-                String jarName = jarPath.substring(jarPath.lastIndexOf(File.separator) + 1);
-                if (jarPath.endsWith(".jar") && jarName.matches(".*-[0-9].*\\.jar")) {
-                    JarFile jarFile = null;
-                    try {
-                        jarFile = new JarFile(jarPath);
-                        final String pomInfo = readPomPropertiesFromJarFile(jarFile);
-                        if (pomInfo != null && pomInfo.split(":").length == 3) {
-                            result.add(pomInfo);
-                        }
-                    } catch (Exception e) {
-                        LOGGER.error("处理jar包版本信息失败", e);
-                    } finally {
-                        if (jarFile != null) {
-                            try {
-                                jarFile.close();
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
-                        }
+                if (isVersionedJar(jarPath)) {
+                    final String pomInfo = scanJar(jarPath);
+                    if (pomInfo != null) {
+                        result.add(pomInfo);
                     }
                 }
             }
@@ -72,6 +57,45 @@ public class ScanJarPomUtils {
         return result;
     }
 
+    /**
+     * 是否是带版本号的 jar 包，只有这类 jar 包才需要扫描 pom 信息
+     *
+     * @param jarPath jar包路径
+     * @return 是否需要扫描
+     */
+    public static boolean isVersionedJar(String jarPath) {
+        String jarName = jarPath.substring(jarPath.lastIndexOf(File.separator) + 1);
+        return jarPath.endsWith(".jar") && jarName.matches(".*-[0-9].*\\.jar");
+    }
+
+    /**
+     * 扫描单个 jar 包的 pom 信息
+     *
+     * @param jarPath jar包路径
+     * @return "groupId:artifactId:version" 格式的 pom 信息，无法识别时返回 null
+     */
+    public static String scanJar(String jarPath) {
+        JarFile jarFile = null;
+        try {
+            jarFile = new JarFile(jarPath);
+            final String pomInfo = readPomPropertiesFromJarFile(jarFile);
+            if (pomInfo != null && pomInfo.split(":").length == 3) {
+                return pomInfo;
+            }
+        } catch (Exception e) {
+            LOGGER.error("处理jar包版本信息失败", e);
+        } finally {
+            if (jarFile != null) {
+                try {
+                    jarFile.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return null;
+    }
+
     public static Set<String> scan() {
         final String property = System.getProperty("java.class.path");
         final String[] jarPaths = property.split(File.pathSeparator);
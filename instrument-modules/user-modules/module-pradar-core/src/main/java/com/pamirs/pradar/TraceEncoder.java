@@ -46,7 +46,14 @@ public abstract class TraceEncoder {
 class TraceInvokeContextEncoder extends TraceEncoder {
 
     private int DEFAULT_BUFFER_SIZE = 256;
+    /**
+     * 只用于拼接 {@link AbstractContext#logContextData(StringBuilder)}
+     */
     private StringBuilder buffer = new StringBuilder(DEFAULT_BUFFER_SIZE);
+    /**
+     * 日志行直接拼接并编码到可复用的缓冲中，输出与原来拼接成 String 后再编码的结果逐字节一致
+     */
+    private final TraceLogBuffer logBuffer = new TraceLogBuffer(Pradar.DEFAULT_CHARSET);
 
     @Override
     public void encode(BaseContext base, PradarAppender eea) throws IOException {
@@ -58,8 +65,7 @@ class TraceInvokeContextEncoder extends TraceEncoder {
         }
         attachment(ctx);
         //Pradar TODO
-        StringBuilder buffer = this.buffer;
-        buffer.delete(0, buffer.length());
+        TraceLogBuffer buffer = this.logBuffer.reset();
         buffer.append(ctx.getTraceId() == null ? "" : ctx.getTraceId()).append('|')
                 .append(ctx.getStartTime()).append('|');
         // 新版本兼容老版本的控制台和大数据
@@ -71,24 +77,21 @@ class TraceInvokeContextEncoder extends TraceEncoder {
         buffer.append(Pradar.AGENT_ID_NOT_CONTAIN_USER_INFO).append('|')
                 .append(ctx.getInvokeId() == null ? "" : ctx.getInvokeId()).append('|')
                 .append(ctx.getInvokeType()).append('|')
-                .append(PradarCoreUtils.makeLogSafe(AppNameUtils.appName())).append('|')
+                .appendSafe(AppNameUtils.appName()).append('|')
                 .append(ctx.getLogTime() - ctx.getStartTime()).append('|')
-                .append(PradarCoreUtils.makeLogSafe(ctx.getMiddlewareName() == null ? "" : ctx.getMiddlewareName())).append(
-                        '|')
-                .append(PradarCoreUtils.makeLogSafe(ctx.getServiceName() == null ? "" : ctx.getServiceName())).append('|')
-                .append(PradarCoreUtils.makeLogSafe(ctx.getMethodName() == null ? "" : ctx.getMethodName())).append('|')
+                .appendSafe(ctx.getMiddlewareName() == null ? "" : ctx.getMiddlewareName()).append('|')
+                .appendSafe(ctx.getServiceName() == null ? "" : ctx.getServiceName()).append('|')
+                .appendSafe(ctx.getMethodName() == null ? "" : ctx.getMethodName()).append('|')
                 .append(ctx.getResultCode() == null ? "" : ctx.getResultCode()).append('|')
-                .append(PradarCoreUtils.makeLogSafe(
-                        ResultSerializer.serializeRequest(ctx.getRequest() == null ? "" : ctx.getRequest(),
-                                Pradar.getPluginRequestSize()))).append('|')
-                .append(PradarCoreUtils.makeLogSafe(
-                        ResultSerializer.serializeRequest(ctx.getMockResponse() != null ? ctx.getMockResponse() : ctx.getResponse() != null ? ctx.getResponse() : "" ,
-                                Pradar.getPluginRequestSize()))).append('|')
+                .appendSafe(ResultSerializer.serializeRequest(ctx.getRequest() == null ? "" : ctx.getRequest(),
+                        Pradar.getPluginRequestSize())).append('|')
+                .appendSafe(ResultSerializer.serializeRequest(ctx.getMockResponse() != null ? ctx.getMockResponse() : ctx.getResponse() != null ? ctx.getResponse() : "" ,
+                        Pradar.getPluginRequestSize())).append('|')
                 .append(TraceCoreUtils.combineString(ctx.isClusterTest(), ctx.isDebug(),
-                        "0".equals(ctx.invokeId),
+                        ctx.invokeId != null && ctx.invokeId.is(Pradar.ROOT_INVOKE_ID),
                         TraceCoreUtils.isServer(ctx)))
-                .append("|")
-                .append(PradarCoreUtils.makeLogSafe(ctx.getCallBackMsg() == null ? "" : ctx.getCallBackMsg()));
+                .append('|')
+                .appendSafe(ctx.getCallBackMsg() == null ? "" : ctx.getCallBackMsg());
         int samplingInterval;
         if (ctx.isClusterTest()) {
             samplingInterval = PradarSwitcher.getClusterTestSamplingInterval();
@@ -100,11 +103,14 @@ class TraceInvokeContextEncoder extends TraceEncoder {
                 .append("|@")
                 .append(TraceCoreUtils.localAttributes(
                         ctx.upAppName, ctx.remoteIp, ctx.getPort(), ctx.requestSize, ctx.responseSize, ctx.mockResponse != null))
-                .append("|")
+                .append('|')
                 .append(ctx.ext == null ? "" : ctx.ext);
-        ctx.logContextData(buffer);
+        StringBuilder contextData = this.buffer;
+        contextData.delete(0, contextData.length());
+        ctx.logContextData(contextData);
+        buffer.append(contextData);
         buffer.append(PradarCoreUtils.NEWLINE);
-        eea.append(buffer.toString());
+        eea.appendBuffer(buffer.encode());
         ctx.destroy();
     }
 
@@ -243,7 +249,7 @@ class TraceCollectorInvokeEncoder extends TraceEncoder {
         traceData.setResultCode(ctx.getResultCode() == null ? "" : ctx.getResultCode());
         traceData.setPressureTest(ctx.isClusterTest());
         traceData.setDebugTest(ctx.isDebug());
-        traceData.setEntrance("0".equals(ctx.invokeId));
+        traceData.setEntrance(ctx.invokeId != null && ctx.invokeId.is(Pradar.ROOT_INVOKE_ID));
         traceData.setServer(TraceCoreUtils.isServer(ctx));
         traceData.setUpAppName(ctx.upAppName);
         traceData.setRemoteIp(ctx.remoteIp);
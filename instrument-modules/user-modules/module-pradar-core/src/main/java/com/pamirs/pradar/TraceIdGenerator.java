@@ -22,11 +22,32 @@ import org.apache.commons.lang.StringUtils;
 
 public class TraceIdGenerator {
 
+    private final static char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
     private static String IP_16 = "ffffffff";
     private static String IP_int = "255255255255";
     private static String PID = "0000";
     private static char PID_FLAG = 'd';
 
+    /**
+     * 预先计算好的16进制ip
+     */
+    private static char[] IP_16_CHARS = IP_16.toCharArray();
+    /**
+     * 预先计算好的 pid 标识 + 16进制pid
+     */
+    private static char[] PID_CHARS = (PID_FLAG + PID).toCharArray();
+
+    /**
+     * 线程内复用的 traceId 缓冲区，时间戳最长19位，最长不超过 8 + 19 + 5 + 5 + 5
+     */
+    private final static ThreadLocal<char[]> TRACE_ID_BUFFER = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[48];
+        }
+    };
+
     private static AtomicInteger count = new AtomicInteger(1000);
 
     static {
@@ -40,6 +61,8 @@ public class TraceIdGenerator {
             PID = getHexPid(getPid());
         } catch (Throwable e) {
         }
+        IP_16_CHARS = IP_16.toCharArray();
+        PID_CHARS = (PID_FLAG + PID).toCharArray();
     }
 
     static String getHexPid(int pid) {
@@ -79,37 +102,95 @@ public class TraceIdGenerator {
         return pid;
     }
 
-    private static String getTraceId(String ip, long timestamp, int nextId, boolean isClusterTestRequest) {
-        StringBuilder appender = new StringBuilder(32);
-        appender.append(ip).append(timestamp).append(getNextIdStr(nextId)).append(PID_FLAG).append(PID);
-        if (isClusterTestRequest) {
-            appender.append(dealSamplingInterval(PradarSwitcher.getClusterTestSamplingInterval()));
-        } else {
-            appender.append(dealSamplingInterval(PradarSwitcher.getSamplingInterval()));
+    /**
+     * 生成 traceId，格式为: 16进制ip(8位) + 时间戳 + nextId(4位) + 'd' + 16进制pid(4位) + 采样率(4位)
+     * <p>
+     * 直接写入线程内复用的字符缓冲区，只在最后创建一次字符串
+     *
+     * @param ip               16进制ip
+     * @param timestamp        时间戳
+     * @param nextId           滚动的数字
+     * @param samplingInterval 采样率
+     * @return traceId
+     */
+    static String getTraceId(char[] ip, long timestamp, int nextId, int samplingInterval) {
+        final char[] buffer = TRACE_ID_BUFFER.get();
+        int pos = ip.length;
+        System.arraycopy(ip, 0, buffer, 0, pos);
+        pos = appendNumber(buffer, pos, timestamp, 1);
+        pos = appendNumber(buffer, pos, nextId, 4);
+        System.arraycopy(PID_CHARS, 0, buffer, pos, PID_CHARS.length);
+        pos += PID_CHARS.length;
+        if (samplingInterval < 0 || samplingInterval > 10000) {
+            samplingInterval = 0;
         }
-        return appender.toString();
+        pos = appendNumber(buffer, pos, samplingInterval, 4);
+        return new String(buffer, 0, pos);
+    }
+
+    private static int getSamplingInterval(boolean isClusterTestRequest) {
+        return isClusterTestRequest ? PradarSwitcher.getClusterTestSamplingInterval() : PradarSwitcher.getSamplingInterval();
     }
 
     /**
-     * 处理采用率，输出4位字符串。
+     * 写入非负数字，不足位数时在前面补0
      *
-     * @param samplingInterval 采样率
-     * @return 4位字符串
+     * @param buffer    缓冲区
+     * @param pos       写入位置
+     * @param value     非负数字
+     * @param minDigits 最少位数
+     * @return 写入后的位置
      */
-    private static String dealSamplingInterval(int samplingInterval) {
-        if (samplingInterval < 0 || samplingInterval > 10000) {
-            return "0000";
+    private static int appendNumber(char[] buffer, int pos, long value, int minDigits) {
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
         }
-        if (samplingInterval < 10){
-            return "000" + samplingInterval;
+        if (digits < minDigits) {
+            digits = minDigits;
         }
-        if (samplingInterval < 100){
-            return "00" + samplingInterval;
+        int end = pos + digits;
+        for (int i = end - 1; i >= pos; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
         }
-        if (samplingInterval < 1000){
-            return "0" + samplingInterval;
+        return end;
+    }
+
+    /**
+     * 把 ip 转换成16进制写入 8 位字符数组，ip 格式不正确时返回 null
+     *
+     * @param ip ip
+     * @return 16进制ip
+     */
+    private static char[] toHexIp(String ip) {
+        final char[] chars = new char[8];
+        int octet = -1;
+        int index = 0;
+        for (int i = 0, len = ip.length(); i <= len; i++) {
+            char c = i < len ? ip.charAt(i) : '.';
+            if (c == '.') {
+                if (octet < 0 || index > 3) {
+                    return null;
+                }
+                /**
+                 * ip 的各段按照倒序输出
+                 */
+                int pos = (3 - index) << 1;
+                chars[pos] = HEX_CHARS[octet >> 4];
+                chars[pos + 1] = HEX_CHARS[octet & 0xf];
+                index++;
+                octet = -1;
+            } else if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
         }
-        return samplingInterval + "";
+        return index == 4 ? chars : null;
     }
 
     /**
@@ -121,7 +202,8 @@ public class TraceIdGenerator {
      * @return
      */
     public static String generate(boolean isClusterTestRequest) {
-        return getTraceId(IP_16, System.currentTimeMillis(), getNextId(isClusterTestRequest), isClusterTestRequest);
+        return getTraceId(IP_16_CHARS, System.currentTimeMillis(), getNextId(isClusterTestRequest),
+            getSamplingInterval(isClusterTestRequest));
     }
 
     /**
@@ -135,16 +217,14 @@ public class TraceIdGenerator {
      */
     public static String generate(String ip, boolean isClusterTestRequest) {
         if (StringUtils.isNotBlank(ip) && validate(ip)) {
-            try {
-                return getTraceId(getIP_16(ip), System.currentTimeMillis(), getNextId(isClusterTestRequest),
-                    isClusterTestRequest);
-            } catch (Throwable t) {
-                //说明ip格式有问题
-                return generate(isClusterTestRequest);
+            final char[] hexIp = toHexIp(ip);
+            if (hexIp != null) {
+                return getTraceId(hexIp, System.currentTimeMillis(), getNextId(isClusterTestRequest),
+                    getSamplingInterval(isClusterTestRequest));
             }
-        } else {
-            return generate(isClusterTestRequest);
+            //说明ip格式有问题
         }
+        return generate(isClusterTestRequest);
     }
 
     /**
@@ -193,19 +273,6 @@ public class TraceIdGenerator {
         return ip.replace(".", "");
     }
 
-    private static String getNextIdStr(int nextId) {
-        if (nextId > 1000) {
-            return String.valueOf(nextId);
-        }
-        if (nextId > 100) {
-            return "0" + nextId;
-        }
-        if (nextId > 10) {
-            return "00" + nextId;
-        }
-        return "000" + nextId;
-    }
-
     /**
      * 获取 traceId 的数字组成部分，此部分会拿来判断是否进行采样
      * 此值是一个在[1-上限]之内滚动的数字，上限的计算方式是取在10000以内(不包含10000)最大的采样率值的倍数值
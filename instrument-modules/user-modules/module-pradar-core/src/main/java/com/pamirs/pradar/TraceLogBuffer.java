@@ -0,0 +1,203 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * 可复用的日志行缓冲
+ * <p>
+ * 字段直接追加到内部的字符数组中，需要安全处理的字段在追加时就地转义，不再像
+ * {@link PradarCoreUtils#makeLogSafe(String)} 一样产生中间字符串；一行日志拼接完成后一次性编码到可复用的
+ * direct {@link ByteBuffer} 中，交给 {@link PradarAppender#appendBuffer(ByteBuffer)} 直接写出。
+ * 编码结果与 {@link String#getBytes(Charset)} 完全一致
+ * <p>
+ * 非线程安全，只能由单个线程使用
+ */
+final class TraceLogBuffer {
+
+    private static final int DEFAULT_CHAR_SIZE = 256;
+    private static final int DEFAULT_BYTE_SIZE = 1024;
+
+    private final CharsetEncoder encoder;
+
+    private char[] chars;
+    private int length;
+    /**
+     * 基于 chars 的视图，只有 chars 扩容时才重新创建
+     */
+    private CharBuffer charView;
+    private ByteBuffer bytes;
+
+    TraceLogBuffer(Charset charset) {
+        this.encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars = new char[DEFAULT_CHAR_SIZE];
+        this.charView = CharBuffer.wrap(chars);
+        this.bytes = ByteBuffer.allocateDirect(DEFAULT_BYTE_SIZE);
+    }
+
+    /**
+     * 清空缓冲，保留已分配的空间
+     */
+    TraceLogBuffer reset() {
+        length = 0;
+        return this;
+    }
+
+    int length() {
+        return length;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > chars.length) {
+            int newCapacity = chars.length + (chars.length >> 1);
+            if (newCapacity < minCapacity) {
+                newCapacity = minCapacity;
+            }
+            char[] newChars = new char[newCapacity];
+            System.arraycopy(chars, 0, newChars, 0, length);
+            chars = newChars;
+            charView = CharBuffer.wrap(chars);
+        }
+    }
+
+    TraceLogBuffer append(char c) {
+        ensureCapacity(length + 1);
+        chars[length++] = c;
+        return this;
+    }
+
+    TraceLogBuffer append(String value) {
+        if (value == null) {
+            value = "null";
+        }
+        int len = value.length();
+        ensureCapacity(length + len);
+        value.getChars(0, len, chars, length);
+        length += len;
+        return this;
+    }
+
+    TraceLogBuffer append(StringBuilder value) {
+        int len = value.length();
+        ensureCapacity(length + len);
+        value.getChars(0, len, chars, length);
+        length += len;
+        return this;
+    }
+
+    TraceLogBuffer append(Object value) {
+        return append(String.valueOf(value));
+    }
+
+    TraceLogBuffer append(int value) {
+        return append((long) value);
+    }
+
+    TraceLogBuffer append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append(String.valueOf(value));
+        }
+        boolean negative = value < 0;
+        if (negative) {
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int size = negative ? digits + 1 : digits;
+        ensureCapacity(length + size);
+        int pos = length + size;
+        do {
+            chars[--pos] = (char) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        if (negative) {
+            chars[--pos] = '-';
+        }
+        length += size;
+        return this;
+    }
+
+    /**
+     * 追加字段并就地转义，结果与 {@link PradarCoreUtils#makeLogSafe(String)} 一致：
+     * 换行(\r\n 或 \n)替换为 \t，分隔符 | 替换为 \
+     *
+     * @param value 字段值
+     */
+    TraceLogBuffer appendSafe(String value) {
+        if (value == null) {
+            return append("null");
+        }
+        int len = value.length();
+        ensureCapacity(length + len);
+        char[] chars = this.chars;
+        int pos = length;
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if (c == '\r' && i + 1 < len && value.charAt(i + 1) == '\n') {
+                chars[pos++] = '\t';
+                i++;
+            } else if (c == '\n') {
+                chars[pos++] = '\t';
+            } else if (c == '|') {
+                chars[pos++] = '\\';
+            } else {
+                chars[pos++] = c;
+            }
+        }
+        length = pos;
+        return this;
+    }
+
+    /**
+     * 将当前内容编码到可复用的 direct ByteBuffer 中
+     *
+     * @return 可读的 ByteBuffer，下一次调用前有效
+     */
+    ByteBuffer encode() {
+        CharBuffer in = this.charView;
+        in.clear();
+        in.limit(length);
+        ByteBuffer out = this.bytes;
+        out.clear();
+        encoder.reset();
+        // 非法字符已配置为替换，编码结果只会是 UNDERFLOW 或 OVERFLOW
+        while (encoder.encode(in, out, true).isOverflow()) {
+            out = grow(out);
+        }
+        while (encoder.flush(out).isOverflow()) {
+            out = grow(out);
+        }
+        out.flip();
+        return out;
+    }
+
+    private ByteBuffer grow(ByteBuffer out) {
+        ByteBuffer newBytes = ByteBuffer.allocateDirect(Math.max(out.capacity() << 1,
+            (int) (length * encoder.maxBytesPerChar())));
+        out.flip();
+        newBytes.put(out);
+        this.bytes = newBytes;
+        return newBytes;
+    }
+}
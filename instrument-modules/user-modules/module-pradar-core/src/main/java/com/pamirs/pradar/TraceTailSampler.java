@@ -0,0 +1,460 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * trace 尾部采样
+ * <p>
+ * 同一条调用链在当前进程内的调用(以进程内的根上下文为界，称为一个片段)先缓存在片段中，
+ * 根上下文结束时再统一决定是否输出日志：
+ * <ul>
+ * <li>调试流量、有调用出错、有调用耗时超过慢调用阈值的片段全部保留</li>
+ * <li>其余片段按照原有采样率，使用与头部采样相同的 traceId 序号字段采样，同一个 traceId 在各个进程、两种采样模式下的结果一致</li>
+ * <li>按照每秒最多输出的日志条数限流，并根据上一秒的采样量自动调整缩放比例，缩放时在上一步命中的片段中再按 traceId 的哈希值抽样</li>
+ * </ul>
+ * 片段中缓存的调用数量有上限，达到上限或者超过最长等待时间还未结束的片段会提前做出决定，
+ * 决定之后到达的调用直接沿用该决定
+ */
+class TraceTailSampler {
+    private final static Logger LOGGER = LoggerFactory.getLogger(TraceTailSampler.class);
+
+    private final static TraceTailSampler INSTANCE = new TraceTailSampler(new SpanSink() {
+        @Override
+        public void append(InvokeContext ctx) {
+            Pradar.appendInvokeContext(ctx);
+        }
+    });
+
+    /**
+     * 单个片段最多缓存的调用数量
+     */
+    private final static int MAX_SEGMENT_SPANS = getIntProperty("pradar.trace.tail.sampling.segment.size", 256);
+
+    /**
+     * 片段最长等待时间，单位毫秒
+     */
+    private final static long MAX_SEGMENT_WAIT = getIntProperty("pradar.trace.tail.sampling.max.wait", 10000);
+
+    private final static long SWEEP_INTERVAL = 1000L;
+    private final static long REPORT_INTERVAL = 60 * 1000L;
+
+    /**
+     * 基础采样率的最小缩放比例
+     */
+    private final static double MIN_RATE_SCALE = 0.0001D;
+
+    private final static byte UNDECIDED = 0;
+    private final static byte KEEP = 1;
+    private final static byte DROP = -1;
+
+    private final static AtomicReferenceFieldUpdater<InvokeContext, Segment> SEGMENT_UPDATER
+        = AtomicReferenceFieldUpdater.newUpdater(InvokeContext.class, Segment.class, "tailSegment");
+
+    private final SpanSink sink;
+
+    /**
+     * 未决定的片段，按创建时间排序
+     */
+    private final ConcurrentLinkedQueue<Segment> openSegments = new ConcurrentLinkedQueue<Segment>();
+
+    private final AtomicLong nextSweepTime = new AtomicLong();
+    private final ReentrantLock sweepLock = new ReentrantLock();
+
+    private final TokenBucket tokenBucket = new TokenBucket();
+
+    /**
+     * 基础采样率的缩放比例，每秒根据随机采样命中的日志条数与限流值调整一次
+     */
+    private volatile double rateScale = 1.0D;
+    private final AtomicLong sampledSpansInWindow = new AtomicLong();
+    private volatile long windowStartTime = System.currentTimeMillis();
+    private volatile long lastReportTime = System.currentTimeMillis();
+
+    private final AtomicLong keptSegments = new AtomicLong();
+    private final AtomicLong keptSpans = new AtomicLong();
+    private final AtomicLong keptErrorSegments = new AtomicLong();
+    private final AtomicLong keptSlowSegments = new AtomicLong();
+    private final AtomicLong droppedSegments = new AtomicLong();
+    private final AtomicLong droppedSpans = new AtomicLong();
+    private final AtomicLong rateLimitedSegments = new AtomicLong();
+
+    TraceTailSampler(SpanSink sink) {
+        this.sink = sink;
+    }
+
+    static TraceTailSampler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 提交一个已经结束的调用
+     *
+     * @param ctx      调用上下文
+     * @param filtered 是否被开关过滤，被过滤的调用不输出，但进程内根上下文结束时仍然会结束片段
+     */
+    void commit(InvokeContext ctx, boolean filtered) {
+        final Segment segment = segmentOf(ctx);
+        final long now = System.currentTimeMillis();
+        InvokeContext[] spans = null;
+        int size = 0;
+        byte decision;
+        synchronized (segment) {
+            decision = segment.decision;
+            if (decision == UNDECIDED) {
+                if (!filtered) {
+                    segment.add(ctx, getSlowThreshold());
+                }
+                /**
+                 * close 会置空 owner，是否为根上下文必须在 close 之前判断
+                 */
+                if (ctx == segment.owner || segment.size >= MAX_SEGMENT_SPANS) {
+                    decision = decide(segment);
+                    spans = segment.spans;
+                    size = segment.size;
+                    segment.close(decision);
+                }
+            }
+        }
+        if (spans != null) {
+            flush(spans, size, decision, true);
+        } else if (decision != UNDECIDED && !filtered) {
+            /**
+             * 片段已经决定，之后到达的调用(异步调用或者片段提前决定)直接沿用该决定
+             */
+            flush(new InvokeContext[] {ctx}, 1, decision, false);
+        }
+        sweepIfNecessary(now);
+    }
+
+    /**
+     * 获取调用所属的片段，不存在则在进程内的根上下文上创建
+     *
+     * @param ctx 调用上下文
+     * @return 片段
+     */
+    Segment segmentOf(InvokeContext ctx) {
+        InvokeContext root = ctx;
+        while (root.tailSegment == null && root.parentInvokeContext != null) {
+            root = root.parentInvokeContext;
+        }
+        Segment segment = root.tailSegment;
+        if (segment != null) {
+            return segment;
+        }
+        segment = new Segment(root);
+        if (SEGMENT_UPDATER.compareAndSet(root, null, segment)) {
+            openSegments.offer(segment);
+            return segment;
+        }
+        return root.tailSegment;
+    }
+
+    /**
+     * 清理超过最长等待时间的片段，并定时调整基础采样率、输出采样统计
+     * <p>
+     * 由 {@link PradarLogDaemon} 定时调用，提交调用时也会按间隔触发。已经有线程在清理时直接返回，业务线程不会因此阻塞
+     */
+    void sweep() {
+        if (!sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            doSweep();
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private void doSweep() {
+        final long now = System.currentTimeMillis();
+        Segment segment;
+        while ((segment = openSegments.peek()) != null) {
+            if (segment.decision == UNDECIDED && now - segment.createTime < MAX_SEGMENT_WAIT) {
+                break;
+            }
+            openSegments.poll();
+            InvokeContext[] spans = null;
+            int size = 0;
+            byte decision = UNDECIDED;
+            synchronized (segment) {
+                if (segment.decision == UNDECIDED) {
+                    decision = decide(segment);
+                    spans = segment.spans;
+                    size = segment.size;
+                    segment.close(decision);
+                }
+            }
+            if (spans != null) {
+                flush(spans, size, decision, true);
+            }
+        }
+        adjustRate(now);
+        report(now);
+    }
+
+    private void sweepIfNecessary(long now) {
+        long next = nextSweepTime.get();
+        if (now >= next && nextSweepTime.compareAndSet(next, now + SWEEP_INTERVAL)) {
+            sweep();
+        }
+    }
+
+    private byte decide(Segment segment) {
+        if (segment.size == 0) {
+            return DROP;
+        }
+        final int maxLogsPerSecond = getMaxLogsPerSecond();
+        if (segment.forced || segment.error || segment.slow) {
+            tokenBucket.consume(segment.size, maxLogsPerSecond);
+            if (segment.error) {
+                keptErrorSegments.incrementAndGet();
+            } else if (segment.slow) {
+                keptSlowSegments.incrementAndGet();
+            }
+            return KEEP;
+        }
+        if (!AbstractContext.isSampledByTraceId(segment.traceId, getSamplingInterval(segment.clusterTest))) {
+            return DROP;
+        }
+        final double scale = rateScale;
+        if (scale < 1.0D && sampleValue(segment.traceId) >= scale) {
+            return DROP;
+        }
+        sampledSpansInWindow.addAndGet(segment.size);
+        if (!tokenBucket.tryAcquire(segment.size, maxLogsPerSecond)) {
+            rateLimitedSegments.incrementAndGet();
+            return DROP;
+        }
+        return KEEP;
+    }
+
+    private void flush(InvokeContext[] spans, int size, byte decision, boolean wholeSegment) {
+        if (size == 0) {
+            return;
+        }
+        if (decision == KEEP) {
+            if (wholeSegment) {
+                keptSegments.incrementAndGet();
+            }
+            keptSpans.addAndGet(size);
+            for (int i = 0; i < size; i++) {
+                try {
+                    sink.append(spans[i]);
+                } catch (Throwable e) {
+                    LOGGER.error("TraceTailSampler append trace log err", e);
+                }
+            }
+        } else {
+            if (wholeSegment) {
+                droppedSegments.incrementAndGet();
+            }
+            droppedSpans.addAndGet(size);
+        }
+    }
+
+    /**
+     * 根据上一秒随机采样命中的日志条数调整基础采样率，使随机采样的输出量趋近于限流值
+     */
+    private void adjustRate(long now) {
+        final long elapsed = now - windowStartTime;
+        if (elapsed < SWEEP_INTERVAL) {
+            return;
+        }
+        windowStartTime = now;
+        final long sampled = sampledSpansInWindow.getAndSet(0L);
+        final double perSecond = sampled * 1000D / elapsed;
+        final int maxLogsPerSecond = getMaxLogsPerSecond();
+        double scale = perSecond <= 0 ? 1.0D : rateScale * maxLogsPerSecond / perSecond;
+        rateScale = Math.max(MIN_RATE_SCALE, Math.min(1.0D, scale));
+    }
+
+    private void report(long now) {
+        if (now - lastReportTime < REPORT_INTERVAL) {
+            return;
+        }
+        lastReportTime = now;
+        LOGGER.info("[pradar] trace tail sampling kept segments: {}, kept spans: {}, kept error segments: {}, kept slow segments: {}, "
+                + "dropped segments: {}, dropped spans: {}, rate limited segments: {}, rate scale: {}",
+            new Object[] {keptSegments.get(), keptSpans.get(), keptErrorSegments.get(), keptSlowSegments.get(),
+                droppedSegments.get(), droppedSpans.get(), rateLimitedSegments.get(), rateScale});
+    }
+
+    /**
+     * 获取尾部采样的保留、丢弃统计
+     *
+     * @return 统计信息
+     */
+    Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<String, Object>();
+        statistics.put("keptSegments", keptSegments.get());
+        statistics.put("keptSpans", keptSpans.get());
+        statistics.put("keptErrorSegments", keptErrorSegments.get());
+        statistics.put("keptSlowSegments", keptSlowSegments.get());
+        statistics.put("droppedSegments", droppedSegments.get());
+        statistics.put("droppedSpans", droppedSpans.get());
+        statistics.put("rateLimitedSegments", rateLimitedSegments.get());
+        statistics.put("openSegments", openSegments.size());
+        statistics.put("rateScale", rateScale);
+        return statistics;
+    }
+
+    /**
+     * @return 慢调用阈值，单位毫秒
+     */
+    int getSlowThreshold() {
+        return PradarSwitcher.getTraceTailSamplingSlowThreshold();
+    }
+
+    /**
+     * @return 每秒最多输出的日志条数
+     */
+    int getMaxLogsPerSecond() {
+        return PradarSwitcher.getTraceTailSamplingMaxLogsPerSecond();
+    }
+
+    /**
+     * @param clusterTest 是否是压测流量
+     * @return 采样频率 1/x
+     */
+    int getSamplingInterval(boolean clusterTest) {
+        return clusterTest ? PradarSwitcher.getClusterTestSamplingInterval() : PradarSwitcher.getSamplingInterval();
+    }
+
+    /**
+     * 将 traceId 映射到 [0, 1)，限流缩放时在采样命中的片段中抽样，保证同一个 traceId 在各个进程中的结果一致
+     */
+    static double sampleValue(String traceId) {
+        if (traceId == null) {
+            return 0D;
+        }
+        int hash = MurmurHash3.hash(traceId.hashCode()) & Integer.MAX_VALUE;
+        return (hash % 10000) / 10000D;
+    }
+
+    private static int getIntProperty(String key, int defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 日志的输出目标
+     */
+    interface SpanSink {
+        void append(InvokeContext ctx);
+    }
+
+    /**
+     * 调用链在当前进程内的片段
+     */
+    final static class Segment {
+        /**
+         * 进程内的根上下文，片段决定后置空，决定后仍留在待清理队列中的片段不再持有根上下文
+         */
+        private InvokeContext owner;
+        private final String traceId;
+        private final long createTime = System.currentTimeMillis();
+        private InvokeContext[] spans = new InvokeContext[8];
+        private int size;
+        private boolean forced;
+        private boolean error;
+        private boolean slow;
+        private boolean clusterTest;
+        private volatile byte decision = UNDECIDED;
+
+        Segment(InvokeContext owner) {
+            this.owner = owner;
+            this.traceId = owner.getTraceId();
+        }
+
+        private void add(InvokeContext ctx, int slowThreshold) {
+            if (size == spans.length) {
+                InvokeContext[] newSpans = new InvokeContext[Math.min(spans.length << 1, MAX_SEGMENT_SPANS)];
+                System.arraycopy(spans, 0, newSpans, 0, size);
+                spans = newSpans;
+            }
+            spans[size++] = ctx;
+            if (ctx.isDebug() || TraceIdGenerator.getNextId(ctx.getTraceId()) == 0) {
+                forced = true;
+            }
+            if (ctx.hasError || (ctx.resultCode != null && !ResultCode.isOk(ctx.resultCode))) {
+                error = true;
+            }
+            if (slowThreshold > 0 && ctx.logTime > 0 && ctx.startTime > 0
+                && ctx.logTime - ctx.startTime >= slowThreshold) {
+                slow = true;
+            }
+            if (ctx.isClusterTest()) {
+                clusterTest = true;
+            }
+        }
+
+        private void close(byte decision) {
+            this.decision = decision;
+            this.owner = null;
+            this.spans = null;
+            this.size = 0;
+        }
+    }
+
+    /**
+     * 每秒最多输出的日志条数，允许一秒的突发。必定保留的片段也会消耗令牌，使随机采样的输出让位于出错与慢调用
+     */
+    private final static class TokenBucket {
+        private double tokens;
+        private long lastRefillTime = System.nanoTime();
+        private int rate;
+
+        synchronized boolean tryAcquire(int permits, int maxLogsPerSecond) {
+            refill(maxLogsPerSecond);
+            if (tokens < permits) {
+                return false;
+            }
+            tokens -= permits;
+            return true;
+        }
+
+        synchronized void consume(int permits, int maxLogsPerSecond) {
+            refill(maxLogsPerSecond);
+            tokens = Math.max(-rate, tokens - permits);
+        }
+
+        private void refill(int maxLogsPerSecond) {
+            final long now = System.nanoTime();
+            if (rate != maxLogsPerSecond) {
+                tokens = rate == 0 ? maxLogsPerSecond : Math.min(tokens, maxLogsPerSecond);
+                rate = maxLogsPerSecond;
+            }
+            tokens = Math.min(rate, tokens + (now - lastRefillTime) * rate / 1000000000D);
+            lastRefillTime = now;
+        }
+    }
+}
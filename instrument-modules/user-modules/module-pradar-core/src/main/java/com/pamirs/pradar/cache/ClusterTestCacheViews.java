@@ -0,0 +1,396 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar.cache;
+
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * 缓存隔离使用的延迟视图
+ * <p>
+ * 缓存返回的 keySet/entrySet 等集合不再整体复制到新的集合中，而是返回直接读取原集合的视图，
+ * 遍历时才过滤或者转换 {@link ClusterTestCacheWrapperKey}，size 在调用时才计算，
+ * isEmpty 和读取第一个元素只需要遍历到第一个匹配的元素
+ * <p>
+ * 是否是压测流量在创建视图时确定，视图在其他线程上使用时结果不变
+ */
+public final class ClusterTestCacheViews {
+
+    private ClusterTestCacheViews() {
+    }
+
+    /**
+     * key 集合视图，压测流量只包含压测 key(去掉包装)，业务流量只包含业务 key
+     *
+     * @param keys        缓存的 key 集合
+     * @param clusterTest 是否是压测流量
+     * @return key 集合视图
+     */
+    public static Set keySet(Set keys, boolean clusterTest) {
+        return new FilteredKeySet(keys, clusterTest);
+    }
+
+    /**
+     * entry 集合视图，压测流量只包含压测 key 的 entry(去掉 key 的包装)，业务流量只包含业务 key 的 entry
+     *
+     * @param entries     缓存的 entry 集合
+     * @param clusterTest 是否是压测流量
+     * @return entry 集合视图
+     */
+    public static Set<Map.Entry> entrySet(Set<Map.Entry> entries, boolean clusterTest) {
+        return new FilteredEntrySet(entries, clusterTest);
+    }
+
+    /**
+     * 把 key 包装成压测 key 的视图，已经包装过的 key 不再重复包装，可以重复遍历
+     *
+     * @param keys key 集合
+     * @return 包装后的视图
+     */
+    public static Iterable wrapKeys(Iterable keys) {
+        return new WrappedKeys(keys);
+    }
+
+    /**
+     * 去掉压测 key 包装的列表视图
+     *
+     * @param keys key 列表
+     * @return 列表视图
+     */
+    public static List unwrapKeys(List keys) {
+        return keys instanceof RandomAccess ? new RandomAccessUnwrappedKeys(keys) : new UnwrappedKeys(keys);
+    }
+
+    /**
+     * 判断 key 在当前流量下是否可见
+     */
+    private static boolean isVisible(Object key, boolean clusterTest) {
+        return (key instanceof ClusterTestCacheWrapperKey) == clusterTest;
+    }
+
+    private static Object unwrap(Object key) {
+        return key instanceof ClusterTestCacheWrapperKey ? ((ClusterTestCacheWrapperKey) key).getKey() : key;
+    }
+
+    /**
+     * 过滤并转换元素的迭代器，remove 直接作用在原集合上
+     */
+    private abstract static class FilteredIterator implements Iterator {
+        private final static Object NONE = new Object();
+
+        private final Collection collection;
+        private final Iterator iterator;
+        private Object next;
+        private boolean hasNext;
+        /**
+         * 上一次 next 返回的原始元素
+         */
+        private Object lastReturned = NONE;
+        /**
+         * 返回 lastReturned 之后原集合的迭代器是否已经向后读取过
+         */
+        private boolean advanced;
+
+        FilteredIterator(Collection collection) {
+            this.collection = collection;
+            this.iterator = collection.iterator();
+        }
+
+        /**
+         * 元素是否可见
+         */
+        abstract boolean accept(Object element);
+
+        /**
+         * 转换可见的元素
+         */
+        abstract Object convert(Object element);
+
+        @Override
+        public boolean hasNext() {
+            while (!hasNext && iterator.hasNext()) {
+                Object element = iterator.next();
+                advanced = true;
+                if (accept(element)) {
+                    next = element;
+                    hasNext = true;
+                }
+            }
+            return hasNext;
+        }
+
+        @Override
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasNext = false;
+            Object element = next;
+            next = null;
+            lastReturned = element;
+            advanced = false;
+            return convert(element);
+        }
+
+        /**
+         * next 之后调用了 hasNext 时，原集合的迭代器已经越过了上一个元素，改为从原集合中删除该元素
+         */
+        @Override
+        public void remove() {
+            if (lastReturned == NONE) {
+                throw new IllegalStateException();
+            }
+            if (advanced) {
+                collection.remove(lastReturned);
+            } else {
+                iterator.remove();
+            }
+            lastReturned = NONE;
+        }
+    }
+
+    private abstract static class FilteredSet extends AbstractSet {
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (Iterator it = iterator(); it.hasNext(); it.next()) {
+                size++;
+            }
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !iterator().hasNext();
+        }
+    }
+
+    private final static class FilteredKeySet extends FilteredSet {
+        private final Set keys;
+        private final boolean clusterTest;
+
+        FilteredKeySet(Set keys, boolean clusterTest) {
+            this.keys = keys;
+            this.clusterTest = clusterTest;
+        }
+
+        @Override
+        public Iterator iterator() {
+            return new FilteredIterator(keys) {
+                @Override
+                boolean accept(Object element) {
+                    return isVisible(element, clusterTest);
+                }
+
+                @Override
+                Object convert(Object element) {
+                    return clusterTest ? unwrap(element) : element;
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (clusterTest) {
+                return keys.contains(o instanceof ClusterTestCacheWrapperKey ? o : new ClusterTestCacheWrapperKey(o));
+            }
+            return !(o instanceof ClusterTestCacheWrapperKey) && keys.contains(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (clusterTest) {
+                return keys.remove(o instanceof ClusterTestCacheWrapperKey ? o : new ClusterTestCacheWrapperKey(o));
+            }
+            return !(o instanceof ClusterTestCacheWrapperKey) && keys.remove(o);
+        }
+    }
+
+    private final static class FilteredEntrySet extends FilteredSet {
+        private final Set<Map.Entry> entries;
+        private final boolean clusterTest;
+
+        FilteredEntrySet(Set<Map.Entry> entries, boolean clusterTest) {
+            this.entries = entries;
+            this.clusterTest = clusterTest;
+        }
+
+        @Override
+        public Iterator iterator() {
+            return new FilteredIterator(entries) {
+                @Override
+                boolean accept(Object element) {
+                    return isVisible(((Map.Entry) element).getKey(), clusterTest);
+                }
+
+                @Override
+                Object convert(Object element) {
+                    return clusterTest ? new UnwrappedEntry((Map.Entry) element) : element;
+                }
+            };
+        }
+    }
+
+    /**
+     * 去掉 key 包装的 entry，setValue 直接作用在原 entry 上
+     */
+    private final static class UnwrappedEntry implements Map.Entry {
+        private final Map.Entry entry;
+
+        UnwrappedEntry(Map.Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object getKey() {
+            return unwrap(entry.getKey());
+        }
+
+        @Override
+        public Object getValue() {
+            return entry.getValue();
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            return entry.setValue(value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry e = (Map.Entry) o;
+            Object key = getKey();
+            Object value = getValue();
+            return (key == null ? e.getKey() == null : key.equals(e.getKey()))
+                    && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object key = getKey();
+            Object value = getValue();
+            return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    private final static class WrappedKeys extends AbstractCollection {
+        private final Iterable keys;
+
+        WrappedKeys(Iterable keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        public Iterator iterator() {
+            final Iterator iterator = keys.iterator();
+            return new Iterator() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Object next() {
+                    Object key = iterator.next();
+                    return key instanceof ClusterTestCacheWrapperKey ? key : new ClusterTestCacheWrapperKey(key);
+                }
+
+                @Override
+                public void remove() {
+                    iterator.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            if (keys instanceof Collection) {
+                return ((Collection) keys).size();
+            }
+            int size = 0;
+            for (Iterator it = keys.iterator(); it.hasNext(); it.next()) {
+                size++;
+            }
+            return size;
+        }
+    }
+
+    private static class UnwrappedKeys extends AbstractList {
+        private final List keys;
+
+        UnwrappedKeys(List keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        public Object get(int index) {
+            return unwrap(keys.get(index));
+        }
+
+        @Override
+        public Object remove(int index) {
+            return unwrap(keys.remove(index));
+        }
+
+        @Override
+        public Iterator iterator() {
+            final Iterator iterator = keys.iterator();
+            return new Iterator() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Object next() {
+                    return unwrap(iterator.next());
+                }
+
+                @Override
+                public void remove() {
+                    iterator.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return keys.size();
+        }
+    }
+
+    private final static class RandomAccessUnwrappedKeys extends UnwrappedKeys implements RandomAccess {
+        RandomAccessUnwrappedKeys(List keys) {
+            super(keys);
+        }
+    }
+}
@@ -16,6 +16,7 @@ package com.pamirs.pradar.interceptor;
 
 import com.pamirs.pradar.InvokeContext;
 import com.pamirs.pradar.Pradar;
+import com.pamirs.pradar.PropagationCodec;
 import com.pamirs.pradar.ResultCode;
 import com.pamirs.pradar.TraceIdGenerator;
 import com.pamirs.pradar.exception.PradarException;
@@ -31,6 +32,7 @@ import javax.annotation.Resource;
 import java.util.Map;
 
 import static com.pamirs.pradar.interceptor.TraceInterceptorAdaptor.BEFORE_TRACE_SUCCESS;
+import static com.pamirs.pradar.interceptor.TraceInterceptorAdaptor.TRACE_UNSAMPLED;
 
 /**
  * 方法的 trace 埋点的开始埋点，适用于一次 trace 需要两个方法完成的场景
@@ -284,7 +286,13 @@ abstract class BeforeTraceInterceptor extends BaseInterceptor {
         if (record.getClusterTest() != null) {
             invokeContext.setClusterTest(record.getClusterTest());
         }
-        if (Pradar.isRequestOn()) {
+        /**
+         * 未被采样的调用链日志最终会被丢弃，不再采集请求与响应
+         */
+        final boolean unsampled = Pradar.isTraceUnsampled(invokeContext);
+        if (unsampled) {
+            advice.mark(TRACE_UNSAMPLED);
+        } else if (Pradar.isRequestOn()) {
             invokeContext.setRequest(record.getRequest());
         }
         advice.mark(BEFORE_TRACE_SUCCESS);
@@ -305,7 +313,9 @@ abstract class BeforeTraceInterceptor extends BaseInterceptor {
         }
 
         if (advice.getThrowable() != null) {
-            invokeContext.setResponse(advice.getThrowable());
+            if (!unsampled) {
+                invokeContext.setResponse(advice.getThrowable());
+            }
             Pradar.setError(true);
         }
 
@@ -352,7 +362,13 @@ abstract class BeforeTraceInterceptor extends BaseInterceptor {
                 invokeContext.setRequestSize(record.getRequestSize());
             }
 
-            if (Pradar.isRequestOn()) {
+            /**
+             * 未被采样的调用链日志最终会被丢弃，不再采集请求与响应
+             */
+            final boolean unsampled = Pradar.isTraceUnsampled(invokeContext);
+            if (unsampled) {
+                advice.mark(TRACE_UNSAMPLED);
+            } else if (Pradar.isRequestOn()) {
                 invokeContext.setRequest(record.getRequest());
             }
 
@@ -369,7 +385,9 @@ abstract class BeforeTraceInterceptor extends BaseInterceptor {
             }
 
             if (advice.getThrowable() != null) {
-                invokeContext.setResponse(advice.getThrowable());
+                if (!unsampled) {
+                    invokeContext.setResponse(advice.getThrowable());
+                }
                 Pradar.setError(true);
             }
 
@@ -383,10 +401,7 @@ abstract class BeforeTraceInterceptor extends BaseInterceptor {
                 try {
                     ContextTransfer contextTransfer = getContextTransfer(advice);
                     if (contextTransfer != null) {
-                        Map<String, String> contextMap = Pradar.getInvokeContextTransformMap();
-                        for (Map.Entry<String, String> entry : contextMap.entrySet()) {
-                            contextTransfer.transfer(entry.getKey(), entry.getValue());
-                        }
+                        PropagationCodec.inject(contextTransfer);
                     }
                 } catch (Throwable e) {
                     if (Pradar.isClusterTest()){
@@ -484,6 +499,19 @@ abstract class BeforeTraceInterceptor extends BaseInterceptor {
         }
     }
 
+    /**
+     * 开始调用时调用链未被采样，并且结束时仍未被采样(期间可能被标记为压测流量)，则不再构建 SpanRecord
+     *
+     * @param advice 切点对象
+     * @return true 表示未被采样
+     */
+    private boolean isTraceUnsampled(Advice advice) {
+        if (!advice.unMark(TRACE_UNSAMPLED)) {
+            return false;
+        }
+        return Pradar.isTraceUnsampled();
+    }
+
     /**
      * 结束客户端异常调用
      *
@@ -496,6 +524,10 @@ abstract class BeforeTraceInterceptor extends BaseInterceptor {
                 LOGGER.debug("{} before trace not finished.", getClass().getName());
                 return;
             }
+            if (isTraceUnsampled(advice)) {
+                Pradar.endClientInvoke(ResultCode.INVOKE_RESULT_FAILED, getPluginType());
+                return;
+            }
             SpanRecord record = exceptionTrace(advice);
             if (record == null) {
                 return;
@@ -541,6 +573,10 @@ abstract class BeforeTraceInterceptor extends BaseInterceptor {
                 LOGGER.debug("{} before trace not finished.", getClass().getName());
                 return;
             }
+            if (isTraceUnsampled(advice)) {
+                Pradar.endServerInvoke(ResultCode.INVOKE_RESULT_FAILED, getPluginType());
+                return;
+            }
             SpanRecord record = exceptionTrace(advice);
             if (record == null) {
                 return;
@@ -16,6 +16,7 @@ package com.pamirs.pradar.interceptor;
 
 import com.pamirs.pradar.InvokeContext;
 import com.pamirs.pradar.Pradar;
+import com.pamirs.pradar.PropagationCodec;
 import com.pamirs.pradar.ResultCode;
 import com.pamirs.pradar.TraceIdGenerator;
 import com.pamirs.pradar.exception.PradarException;
@@ -28,7 +29,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Resource;
-import java.util.Map;
 
 /**
  * 实例方法埋点的环绕拦截器抽象实现,可实现追踪埋点与压测增强的混合逻辑
@@ -326,10 +326,7 @@ abstract class ReverseTraceInterceptor extends BaseInterceptor {
                 try {
                     ContextTransfer contextTransfer = getContextTransfer(advice);
                     if (contextTransfer != null) {
-                        Map<String, String> contextMap = Pradar.getInvokeContextTransformMap();
-                        for (Map.Entry<String, String> entry : contextMap.entrySet()) {
-                            contextTransfer.transfer(entry.getKey(), entry.getValue());
-                        }
+                        PropagationCodec.inject(contextTransfer);
                     }
                 } catch (Throwable e) {
                     LOGGER.error("AGENT: {} trace context transfer err, trace context may be lost.", getClass().getName(), e);
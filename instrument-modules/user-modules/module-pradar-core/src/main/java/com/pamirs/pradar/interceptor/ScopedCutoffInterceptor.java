@@ -15,7 +15,7 @@
 package com.pamirs.pradar.interceptor;
 
 import com.pamirs.pradar.CutOffResult;
-import com.pamirs.pradar.scope.ScopeFactory;
+import com.pamirs.pradar.scope.BehaviorScopes;
 import com.shulie.instrument.simulator.api.listener.ext.Advice;
 import com.shulie.instrument.simulator.api.listener.ext.AdviceListener;
 import com.shulie.instrument.simulator.api.scope.InterceptorScope;
@@ -35,6 +35,10 @@ public class ScopedCutoffInterceptor extends CutoffInterceptor implements Scoped
 
     private final CutoffInterceptor interceptor;
     private final InterceptorScope scope;
+    /**
+     * 未指定作用域时，按增强的类和方法解析出的作用域
+     */
+    private final BehaviorScopes behaviorScopes;
     private final int policy;
 
     public ScopedCutoffInterceptor(CutoffInterceptor interceptor, int policy) {
@@ -47,6 +51,7 @@ public class ScopedCutoffInterceptor extends CutoffInterceptor implements Scoped
         }
         this.interceptor = interceptor;
         this.scope = scope;
+        this.behaviorScopes = new BehaviorScopes(interceptor.getClass().getName());
         super.setInterceptorScope(scope);
         this.policy = policy;
     }
@@ -55,7 +60,7 @@ public class ScopedCutoffInterceptor extends CutoffInterceptor implements Scoped
         if (scope != null) {
             return scope;
         }
-        return ScopeFactory.getScope(interceptor.getClass().getName() + "#" + advice.getTargetClass().getName() + "_" + advice.getBehaviorName());
+        return behaviorScopes.get(advice);
     }
 
     @Override
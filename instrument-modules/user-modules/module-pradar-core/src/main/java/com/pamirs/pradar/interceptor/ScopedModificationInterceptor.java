@@ -15,7 +15,7 @@
 package com.pamirs.pradar.interceptor;
 
 
-import com.pamirs.pradar.scope.ScopeFactory;
+import com.pamirs.pradar.scope.BehaviorScopes;
 import com.shulie.instrument.simulator.api.listener.ext.Advice;
 import com.shulie.instrument.simulator.api.listener.ext.AdviceListener;
 import com.shulie.instrument.simulator.api.scope.InterceptorScope;
@@ -31,6 +31,10 @@ public class ScopedModificationInterceptor extends ModificationInterceptor imple
 
     private final ModificationInterceptor interceptor;
     private final InterceptorScope scope;
+    /**
+     * 未指定作用域时，按增强的类和方法解析出的作用域
+     */
+    private final BehaviorScopes behaviorScopes;
     private final int policy;
 
     public ScopedModificationInterceptor(ModificationInterceptor interceptor, int policy) {
@@ -46,6 +50,7 @@ public class ScopedModificationInterceptor extends ModificationInterceptor imple
         }
         this.interceptor = interceptor;
         this.scope = scope;
+        this.behaviorScopes = new BehaviorScopes(interceptor.getClass().getName());
         super.setInterceptorScope(scope);
         this.policy = policy;
     }
@@ -54,7 +59,7 @@ public class ScopedModificationInterceptor extends ModificationInterceptor imple
         if (scope != null) {
             return scope;
         }
-        return ScopeFactory.getScope(interceptor.getClass().getName() + "#" + advice.getTargetClass().getName() + "_" + advice.getBehaviorName());
+        return behaviorScopes.get(advice);
     }
 
     @Override
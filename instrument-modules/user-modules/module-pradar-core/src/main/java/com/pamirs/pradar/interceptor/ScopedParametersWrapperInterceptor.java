@@ -15,7 +15,7 @@
 package com.pamirs.pradar.interceptor;
 
 
-import com.pamirs.pradar.scope.ScopeFactory;
+import com.pamirs.pradar.scope.BehaviorScopes;
 import com.shulie.instrument.simulator.api.listener.ext.Advice;
 import com.shulie.instrument.simulator.api.listener.ext.AdviceListener;
 import com.shulie.instrument.simulator.api.scope.ExecutionPolicy;
@@ -33,6 +33,10 @@ public class ScopedParametersWrapperInterceptor extends ParametersWrapperInterce
 
     private final ParametersWrapperInterceptor interceptor;
     private final InterceptorScope scope;
+    /**
+     * 未指定作用域时，按增强的类和方法解析出的作用域
+     */
+    private final BehaviorScopes behaviorScopes;
     private final int policy;
 
     public ScopedParametersWrapperInterceptor(ParametersWrapperInterceptor interceptor, int policy) {
@@ -48,6 +52,7 @@ public class ScopedParametersWrapperInterceptor extends ParametersWrapperInterce
         }
         this.interceptor = interceptor;
         this.scope = scope;
+        this.behaviorScopes = new BehaviorScopes(interceptor.getClass().getName());
         super.setInterceptorScope(scope);
         this.policy = policy;
     }
@@ -56,7 +61,7 @@ public class ScopedParametersWrapperInterceptor extends ParametersWrapperInterce
         if (scope != null) {
             return scope;
         }
-        return ScopeFactory.getScope(interceptor.getClass().getName() + "#" + advice.getTargetClass().getName() + "_" + advice.getBehaviorName());
+        return behaviorScopes.get(advice);
     }
 
     @Override
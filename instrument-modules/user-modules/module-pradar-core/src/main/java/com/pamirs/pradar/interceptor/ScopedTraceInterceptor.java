@@ -15,7 +15,7 @@
 package com.pamirs.pradar.interceptor;
 
 
-import com.pamirs.pradar.scope.ScopeFactory;
+import com.pamirs.pradar.scope.BehaviorScopes;
 import com.shulie.instrument.simulator.api.ProcessControlException;
 import com.shulie.instrument.simulator.api.listener.ext.Advice;
 import com.shulie.instrument.simulator.api.listener.ext.AdviceListener;
@@ -32,6 +32,10 @@ public class ScopedTraceInterceptor extends AroundInterceptor implements ScopedI
 
     private final TraceInterceptor interceptor;
     private final InterceptorScope scope;
+    /**
+     * 未指定作用域时，按增强的类和方法解析出的作用域
+     */
+    private final BehaviorScopes behaviorScopes;
     private final int policy;
 
     public ScopedTraceInterceptor(TraceInterceptor interceptor, int policy) {
@@ -44,6 +48,7 @@ public class ScopedTraceInterceptor extends AroundInterceptor implements ScopedI
         }
         this.interceptor = interceptor;
         this.scope = scope;
+        this.behaviorScopes = new BehaviorScopes(interceptor.getClass().getName());
         this.policy = policy;
         super.setInterceptorScope(scope);
     }
@@ -52,7 +57,7 @@ public class ScopedTraceInterceptor extends AroundInterceptor implements ScopedI
         if (scope != null) {
             return scope;
         }
-        return ScopeFactory.getScope(interceptor.getClass().getName() + "#" + advice.getTargetClass().getName() + "_" + advice.getBehaviorName());
+        return behaviorScopes.get(advice);
     }
 
     @Override
@@ -28,9 +28,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Resource;
-import java.util.Map;
 
 import static com.pamirs.pradar.interceptor.TraceInterceptorAdaptor.BEFORE_TRACE_SUCCESS;
+import static com.pamirs.pradar.interceptor.TraceInterceptorAdaptor.TRACE_UNSAMPLED;
 
 /**
  * 实例方法埋点的环绕拦截器抽象实现,可实现追踪埋点与压测增强的混合逻辑
@@ -285,6 +285,7 @@ abstract class TraceInterceptor extends BaseInterceptor {
                     }
                 } finally {
                     advice.unMark(BEFORE_TRACE_SUCCESS);
+                    advice.unMark(TRACE_UNSAMPLED);
                 }
             } else {
                 LOGGER.error("trace throw exception, but not BEFORE_TRACE_SUCCESS in {}.beforeTrace(...). loss trace log!", getClass().getName(), throwable);
@@ -329,7 +330,13 @@ abstract class TraceInterceptor extends BaseInterceptor {
         if (record.getClusterTest() != null) {
             invokeContext.setClusterTest(record.getClusterTest());
         }
-        if (Pradar.isRequestOn()) {
+        /**
+         * 未被采样的调用链日志最终会被丢弃，不再采集请求与响应
+         */
+        final boolean unsampled = Pradar.isTraceUnsampled(invokeContext);
+        if (unsampled) {
+            advice.mark(TRACE_UNSAMPLED);
+        } else if (Pradar.isRequestOn()) {
             invokeContext.setRequest(record.getRequest());
         }
         advice.mark(BEFORE_TRACE_SUCCESS);
@@ -381,7 +388,12 @@ abstract class TraceInterceptor extends BaseInterceptor {
             if (record.getRequestSize() != 0) {
                 invokeContext.setRequestSize(record.getRequestSize());
             }
-            if (Pradar.isRequestOn()) {
+            /**
+             * 未被采样的调用链日志最终会被丢弃，不再采集请求与响应，结束时也不再构建 SpanRecord
+             */
+            if (Pradar.isTraceUnsampled(invokeContext)) {
+                advice.mark(TRACE_UNSAMPLED);
+            } else if (Pradar.isRequestOn()) {
                 invokeContext.setRequest(record.getRequest());
             }
             if (StringUtils.isNotBlank(record.getRemoteIp())) {
@@ -407,10 +419,7 @@ abstract class TraceInterceptor extends BaseInterceptor {
                 try {
                     ContextTransfer contextTransfer = getContextTransfer(advice);
                     if (contextTransfer != null) {
-                        Map<String, String> contextMap = Pradar.getInvokeContextTransformMap();
-                        for (Map.Entry<String, String> entry : contextMap.entrySet()) {
-                            contextTransfer.transfer(entry.getKey(), entry.getValue());
-                        }
+                        PropagationCodec.inject(contextTransfer);
                     }
                 } catch (Throwable e) {
                     LOGGER.error("AGENT: {} trace context transfer err, trace context may be lost.", getClass().getName(), e);
@@ -433,6 +442,10 @@ abstract class TraceInterceptor extends BaseInterceptor {
                 }
                 return;
             }
+            if (isTraceUnsampled(advice)) {
+                endClientInvoke(ResultCode.INVOKE_RESULT_SUCCESS, getPluginType(), advice);
+                return;
+            }
             SpanRecord record = afterTrace(advice);
             if (record == null) {
                 //如果上下文开始了，但是这里没有，则需要强制结束
@@ -513,6 +526,19 @@ abstract class TraceInterceptor extends BaseInterceptor {
         }
     }
 
+    /**
+     * 开始调用时调用链未被采样，并且结束时仍未被采样(期间可能被标记为压测流量)，则不再构建 SpanRecord
+     *
+     * @param advice 切点对象
+     * @return true 表示未被采样
+     */
+    private boolean isTraceUnsampled(Advice advice) {
+        if (!advice.unMark(TRACE_UNSAMPLED)) {
+            return false;
+        }
+        return Pradar.isTraceUnsampled(readCurrentInvokeContext(advice));
+    }
+
     private InvokeContext readCurrentInvokeContext(Advice advice) {
         if (advice.getInvokeContext() == null) {
             return Pradar.getInvokeContext();
@@ -536,6 +562,14 @@ abstract class TraceInterceptor extends BaseInterceptor {
         }
         boolean isTrace = isTrace0(advice);
         try {
+            if (isTraceUnsampled(advice)) {
+                if (isTrace) {
+                    endTrace(ResultCode.INVOKE_RESULT_SUCCESS, getPluginType(), advice);
+                } else {
+                    endServerInvoke(ResultCode.INVOKE_RESULT_SUCCESS, getPluginType(), advice);
+                }
+                return;
+            }
             SpanRecord record = afterTrace(advice);
             if (record == null) {
                 if (!Pradar.hasInvokeContext() || readCurrentInvokeContext(advice).isEmpty()) {
@@ -733,6 +767,10 @@ abstract class TraceInterceptor extends BaseInterceptor {
                 }
                 return;
             }
+            if (isTraceUnsampled(advice)) {
+                endClientInvoke(ResultCode.INVOKE_RESULT_FAILED, getPluginType(), advice);
+                return;
+            }
             SpanRecord record = exceptionTrace(advice);
             if (record == null) {
                 endClientInvoke(ResultCode.INVOKE_RESULT_SUCCESS, getPluginType(), advice);
@@ -785,6 +823,14 @@ abstract class TraceInterceptor extends BaseInterceptor {
         }
         boolean isTrace = isTrace0(advice);
         try {
+            if (isTraceUnsampled(advice)) {
+                if (isTrace) {
+                    endTrace(ResultCode.INVOKE_RESULT_FAILED, getPluginType(), advice);
+                } else {
+                    endServerInvoke(ResultCode.INVOKE_RESULT_FAILED, getPluginType(), advice);
+                }
+                return;
+            }
             SpanRecord record = exceptionTrace(advice);
             if (record == null) {
                 if (isTrace) {
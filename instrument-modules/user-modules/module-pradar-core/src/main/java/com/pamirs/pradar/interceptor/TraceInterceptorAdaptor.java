@@ -26,6 +26,10 @@ import com.shulie.instrument.simulator.api.listener.ext.Advice;
  */
 public abstract class TraceInterceptorAdaptor extends TraceInterceptor {
     public final static String BEFORE_TRACE_SUCCESS = "before-trace-success";
+    /**
+     * 开始调用时调用链未被采样，未构建 SpanRecord
+     */
+    public final static String TRACE_UNSAMPLED = "trace-unsampled";
 
     @Override
     public void beforeFirst(Advice advice) throws Exception {
@@ -17,14 +17,11 @@ package com.pamirs.pradar.pressurement.agent.shared.exit;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.pamirs.pradar.PradarSwitcher;
 import com.pamirs.pradar.internal.config.MatchConfig;
 import com.pamirs.pradar.pressurement.agent.shared.custominterfacebase.Exit;
@@ -43,59 +40,69 @@ public class ArbiterHttpExit implements Exit {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ArbiterHttpExit.class);
 
-    private static LoadingCache<String, MatchConfig> patternCache = CacheBuilder.newBuilder()
-            .maximumSize(300).expireAfterAccess(5 * 60, TimeUnit.SECONDS).build(
-                    new CacheLoader<String, MatchConfig>() {
-                        @Override
-                        public MatchConfig load(String name) throws Exception {
-                            Set<MatchConfig> urlWhiteList = GlobalConfig.getInstance().getUrlWhiteList();
-                            if (urlWhiteList != null) {
-                                for (MatchConfig matchConfig : urlWhiteList) {
-                                    /*   MatchConfig matching = matching(name, matchConfig);*/
-                                    MatchConfig matching = match(name, matchConfig);
-                                    if (null != matching && matching.isSuccess()) {
-                                        return matching;
-                                    }
-                                }
-                            }
-                            return failure();
-                        }
-                    }
-            );
-
-    private static LoadingCache<String, MatchConfig> httpMatchResult = CacheBuilder.newBuilder()
-            .maximumSize(300).expireAfterAccess(5 * 60, TimeUnit.SECONDS).build(
-                    new CacheLoader<String, MatchConfig>() {
-                        @Override
-                        public MatchConfig load(String url) throws Exception {
-                            return shallWePassHttpStringCache(url);
-                        }
-                    }
-            );
-
-    private static LoadingCache<String, MatchConfig> rpcMatchResult = CacheBuilder.newBuilder()
-            .maximumSize(100).expireAfterAccess(5 * 60, TimeUnit.SECONDS).build(
-                    new CacheLoader<String, MatchConfig>() {
-                        @Override
-                        public MatchConfig load(String name) throws Exception {
-                            return getRpcPassedCache(name);
-                        }
-                    }
-            );
+    /**
+     * 编译后的白名单，白名单变更后在下一次匹配时重新编译
+     */
+    private static volatile HttpWhiteListMatcher httpWhiteListMatcher;
+    private static volatile RpcWhiteListMatcher rpcWhiteListMatcher;
+
+    /**
+     * 匹配次数及耗时统计
+     */
+    private static final AtomicLong httpMatchCount = new AtomicLong();
+    private static final AtomicLong httpMatchNanos = new AtomicLong();
+    private static final AtomicLong rpcMatchCount = new AtomicLong();
+    private static final AtomicLong rpcMatchNanos = new AtomicLong();
 
     public static void release() {
-        patternCache.invalidateAll();
-        httpMatchResult.invalidateAll();
-        rpcMatchResult.invalidateAll();
+        httpWhiteListMatcher = null;
+        rpcWhiteListMatcher = null;
     }
 
     public static void clearRpcMatch() {
-        rpcMatchResult.invalidateAll();
+        rpcWhiteListMatcher = null;
     }
 
     public static void clearHttpMatch() {
-        httpMatchResult.invalidateAll();
-        patternCache.invalidateAll();
+        httpWhiteListMatcher = null;
+    }
+
+    private static HttpWhiteListMatcher getHttpWhiteListMatcher() {
+        final Set<MatchConfig> urlWhiteList = GlobalConfig.getInstance().getUrlWhiteList();
+        HttpWhiteListMatcher matcher = httpWhiteListMatcher;
+        if (matcher == null || !matcher.isCompiledFrom(urlWhiteList)) {
+            matcher = new HttpWhiteListMatcher(urlWhiteList);
+            httpWhiteListMatcher = matcher;
+        }
+        return matcher;
+    }
+
+    private static RpcWhiteListMatcher getRpcWhiteListMatcher() {
+        final Set<MatchConfig> rpcNameWhiteList = GlobalConfig.getInstance().getRpcNameWhiteList();
+        RpcWhiteListMatcher matcher = rpcWhiteListMatcher;
+        if (matcher == null || !matcher.isCompiledFrom(rpcNameWhiteList)) {
+            matcher = new RpcWhiteListMatcher(rpcNameWhiteList);
+            rpcWhiteListMatcher = matcher;
+        }
+        return matcher;
+    }
+
+    /**
+     * 白名单匹配次数及耗时统计
+     *
+     * @return 统计信息
+     */
+    public static Map<String, Object> getMatchStatistics() {
+        Map<String, Object> statistics = new HashMap<String, Object>();
+        long httpCount = httpMatchCount.get();
+        long rpcCount = rpcMatchCount.get();
+        statistics.put("httpMatchCount", httpCount);
+        statistics.put("httpMatchTotalMicros", TimeUnit.NANOSECONDS.toMicros(httpMatchNanos.get()));
+        statistics.put("httpMatchAvgNanos", httpCount == 0 ? 0 : httpMatchNanos.get() / httpCount);
+        statistics.put("rpcMatchCount", rpcCount);
+        statistics.put("rpcMatchTotalMicros", TimeUnit.NANOSECONDS.toMicros(rpcMatchNanos.get()));
+        statistics.put("rpcMatchAvgNanos", rpcCount == 0 ? 0 : rpcMatchNanos.get() / rpcCount);
+        return statistics;
     }
 
     public static MatchConfig failure() {
@@ -113,55 +120,17 @@ public class ArbiterHttpExit implements Exit {
         if (!PradarSwitcher.whiteListSwitchOn()) {
             return MatchConfig.success(new WhiteListStrategy());
         }
-        if (StringUtils.isBlank(methodName)) {
-            return copyMatchConfig(rpcMatchResult.getUnchecked(className));
-        }
-        return copyMatchConfig(rpcMatchResult.getUnchecked(className + '#' + methodName));
-    }
-
-    private static MatchConfig getRpcPassedCache(String name) {
-        if (!PradarSwitcher.whiteListSwitchOn()) {
-            return MatchConfig.success(new WhiteListStrategy());
-        }
-        if (StringUtils.isBlank(name)) {
-            return failure();
-        }
-
-        MatchConfig config = new MatchConfig();
-        config.setUrl(name);
-
-        Set<MatchConfig> rpcNameList = GlobalConfig.getInstance().getRpcNameWhiteList();
-        if (rpcNameList == null) {
+        if (StringUtils.isBlank(className)) {
             return failure();
         }
-        Iterator<MatchConfig> iterator = rpcNameList.iterator();
-        while (iterator.hasNext()) {
-            MatchConfig next = iterator.next();
-            if (next.equals(config)) {
-                return next;
-            }
-        }
-
-        if (StringUtils.indexOf(name, '#') != -1) {
-            return failure();
-        } else {
-            for (MatchConfig matchConfig : rpcNameList) {
-                String value = matchConfig.getUrl();
-                final int index = StringUtils.indexOf(value, '#');
-                if (index == -1) {
-                    if (StringUtils.equals(value, name)) {
-                        return matchConfig;
-                    }
-                } else {
-                    // 如果白名单包含 # ，则取出类名进行比较
-                    String className = StringUtils.substring(value, index);
-                    if (StringUtils.equals(value, className)) {
-                        return matchConfig;
-                    }
-                }
-            }
+        final long start = System.nanoTime();
+        try {
+            MatchConfig config = getRpcWhiteListMatcher().match(className, StringUtils.isBlank(methodName) ? null : methodName);
+            return config == null ? failure() : copyMatchConfig(config);
+        } finally {
+            rpcMatchCount.incrementAndGet();
+            rpcMatchNanos.addAndGet(System.nanoTime() - start);
         }
-        return failure();
     }
 
     /**
@@ -172,9 +141,16 @@ public class ArbiterHttpExit implements Exit {
             if (!PradarSwitcher.whiteListSwitchOn()) {
                 return MatchConfig.success(new WhiteListStrategy());
             }
-            return copyMatchConfig(httpMatchResult.get(url));
-        } catch (ExecutionException e) {
-            LOGGER.warn("WhiteListError: shallWePassHttpString cache exception!", e);
+            final long start = System.nanoTime();
+            try {
+                MatchConfig config = shallWePassHttpStringCache(url);
+                return config.isSuccess() ? copyMatchConfig(config) : config;
+            } finally {
+                httpMatchCount.incrementAndGet();
+                httpMatchNanos.addAndGet(System.nanoTime() - start);
+            }
+        } catch (Throwable e) {
+            LOGGER.warn("WhiteListError: shallWePassHttpString exception!", e);
             return failure();
         }
     }
@@ -252,20 +228,13 @@ public class ArbiterHttpExit implements Exit {
                 /**
                  * 如果 url 为空或者是/没有其他值，则使用原 url 匹配一次
                  */
-                config = patternCache.getUnchecked(orgUrl);
-                if (null != config) {
-                    return config;
-                }
+                config = getHttpWhiteListMatcher().match(orgUrl);
+                return config == null ? failure() : config;
             }
-            config = patternCache.getUnchecked(url);
+            config = getHttpWhiteListMatcher().match(url);
             if (null != config) {
                 return config;
             }
-            if (null != PradarSwitcher.httpPassPrefix.get()
-                    && url.startsWith(PradarSwitcher.httpPassPrefix.get())) {
-                return config;
-            }
-            LOGGER.warn("WhiteListError: url is not allowed:" + url);
         }
         return failure();
     }
@@ -0,0 +1,354 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar.pressurement.agent.shared.exit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.pamirs.pradar.internal.config.MatchConfig;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * 编译后的 url 白名单
+ * <p>
+ * 白名单变更时编译一次，之后只读。匹配规则与 {@link HttpMatcher} 一致：
+ * <ul>
+ * <li>去掉首尾的 / 差异后完全相等</li>
+ * <li>以 {xxx} 表示的路径变量匹配任意一段路径，路径段数必须相等</li>
+ * <li>/order/{id} 这种只有一个变量的规则，变量所在段只需要以变量前的字符开头</li>
+ * </ul>
+ * 完全相等的规则放在 hash 表中，带变量的规则按路径段构建成前缀树，一次匹配只需要按路径段遍历一次。
+ * 同一个 url 匹配到多条规则时，优先完全相等的规则，其次是字面路径段更多的规则
+ * </p>
+ * <p>
+ * 带 scheme://host 的 url 在 {@link HttpMatcher} 中按整个 url 切分路径段，只有单个变量的规则能匹配，
+ * 所以这些规则额外构建一棵前缀树，scheme:、空段及 host 作为字面路径段参与匹配
+ * </p>
+ */
+final class HttpWhiteListMatcher {
+
+
+    /**
+     * 编译时使用的白名单，用来判断白名单是否已经变更
+     */
+    private final Set<MatchConfig> source;
+
+    /**
+     * 完全匹配的规则
+     */
+    private final Map<String, MatchConfig> exactly = new HashMap<String, MatchConfig>();
+
+    /**
+     * 带路径变量的规则
+     */
+    private final Node root = new Node();
+
+    /**
+     * 只有单个变量的规则，用于匹配带 scheme://host 的 url
+     */
+    private final Node absoluteRoot = new Node();
+
+    /**
+     * 无法编译的规则，使用 {@link HttpMatcher} 逐个匹配
+     */
+    private final List<MatchConfig> others = new ArrayList<MatchConfig>();
+
+    private final HttpMatcher httpMatcher = new HttpMatcher();
+
+    HttpWhiteListMatcher(Set<MatchConfig> source) {
+        this.source = source;
+        if (source == null) {
+            return;
+        }
+        for (MatchConfig config : source) {
+            if (config == null || StringUtils.isBlank(config.getUrl())) {
+                continue;
+            }
+            compile(config);
+        }
+    }
+
+    boolean isCompiledFrom(Set<MatchConfig> source) {
+        return this.source == source;
+    }
+
+    private void compile(MatchConfig config) {
+        final String expression = format(config.getUrl().trim());
+        if (!exactly.containsKey(expression)) {
+            exactly.put(expression, config);
+        }
+        if (expression.indexOf('{') == -1) {
+            return;
+        }
+        final String[] segments = expression.split("/");
+        final String[] paramArr = expression.split("\\{");
+        if (paramArr.length >= 3 || (paramArr.length == 2 && "/".equals(paramArr[0]) && paramArr[1].contains("}"))) {
+            compileVariables(config, segments);
+        } else if (expression.contains("/{") && expression.contains("}")) {
+            final int indexOfVariable = expression.indexOf('{');
+            final int indexOfEnd = expression.indexOf('}', indexOfVariable);
+            // 变量没有结束符或者变量中有 /，以及末尾有多个 / 时，HttpMatcher 逐字符比较的结果无法按路径段还原
+            if (indexOfEnd == -1 || expression.lastIndexOf('/', indexOfEnd) > indexOfVariable || expression.endsWith("/")) {
+                others.add(config);
+                return;
+            }
+            compileRestful(root, config, segments);
+            compileRestful(absoluteRoot, config, segments);
+        }
+    }
+
+    /**
+     * 每个以 { 开头 } 结尾的路径段都是变量，其他路径段需要完全相等；全部是变量的规则只能完全匹配
+     */
+    private void compileVariables(MatchConfig config, String[] segments) {
+        boolean hasLiteral = false;
+        for (int i = 1; i < segments.length; i++) {
+            if (segments[i].length() == 0) {
+                return;
+            }
+            if (!isVariable(segments[i])) {
+                hasLiteral = true;
+            }
+        }
+        if (!hasLiteral) {
+            return;
+        }
+        Node node = root;
+        for (int i = 1; i < segments.length; i++) {
+            node = isVariable(segments[i]) ? node.variableChild() : node.literalChild(segments[i]);
+        }
+        node.accept(config);
+    }
+
+    /**
+     * 只有一个变量的规则，变量所在的路径段只比较变量前的字符；变量在最后一段时变量后的字符不参与比较，
+     * 变量不在最后一段时变量后不能再有其他字符
+     */
+    private static void compileRestful(Node root, MatchConfig config, String[] segments) {
+        Node node = root;
+        for (int i = 1; i < segments.length; i++) {
+            final String segment = segments[i];
+            final int index = segment.indexOf('{');
+            if (index == -1) {
+                node = node.literalChild(segment);
+                continue;
+            }
+            final String prefix = segment.substring(0, index);
+            if (i == segments.length - 1) {
+                node.acceptPrefix(prefix, config);
+                return;
+            }
+            if (segment.indexOf('}') != segment.length() - 1) {
+                return;
+            }
+            node = node.prefixChild(prefix);
+        }
+        node.accept(config);
+    }
+
+    /**
+     * 匹配 url
+     *
+     * @param url url
+     * @return 匹配到的规则，未匹配到返回 null
+     */
+    MatchConfig match(String url) {
+        if (StringUtils.isEmpty(url)) {
+            return null;
+        }
+        final String formatted = format(url.trim());
+        MatchConfig config = exactly.get(formatted);
+        if (config != null) {
+            return config;
+        }
+        // 末尾有多个 / 的 url 切分时会丢掉末尾的空段，只能逐个规则匹配
+        if (formatted.length() > 1 && formatted.charAt(formatted.length() - 1) == '/') {
+            return matchOthers(url, source);
+        }
+        final Node node = formatted.contains("://") ? absoluteRoot : root;
+        if (!node.isEmpty()) {
+            final String[] segments = formatted.split("/");
+            config = segments.length > 1 ? node.match(segments, 1) : null;
+            if (config != null) {
+                return config;
+            }
+        }
+        return matchOthers(url, others);
+    }
+
+    private MatchConfig matchOthers(String url, Iterable<MatchConfig> configs) {
+        if (configs == null) {
+            return null;
+        }
+        for (MatchConfig matchConfig : configs) {
+            MatchConfig matching = httpMatcher.match(url, matchConfig);
+            if (null != matching && matching.isSuccess()) {
+                return matching;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isVariable(String segment) {
+        return segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}';
+    }
+
+    /**
+     * 确保首位是/，长度大于1时末尾不是/
+     */
+    private static String format(String url) {
+        if (url.length() == 0 || url.charAt(0) != '/') {
+            url = '/' + url;
+        }
+        if (url.length() > 1 && url.charAt(url.length() - 1) == '/') {
+            url = url.substring(0, url.length() - 1);
+        }
+        return url;
+    }
+
+    private static final class Node {
+        private Map<String, Node> literals;
+        private Node variable;
+        private List<PrefixNode> prefixes;
+        private MatchConfig config;
+        private List<PrefixConfig> prefixConfigs;
+
+        Node literalChild(String segment) {
+            if (literals == null) {
+                literals = new HashMap<String, Node>();
+            }
+            Node node = literals.get(segment);
+            if (node == null) {
+                node = new Node();
+                literals.put(segment, node);
+            }
+            return node;
+        }
+
+        Node variableChild() {
+            if (variable == null) {
+                variable = new Node();
+            }
+            return variable;
+        }
+
+        Node prefixChild(String prefix) {
+            if (prefixes == null) {
+                prefixes = new ArrayList<PrefixNode>(1);
+            }
+            for (PrefixNode prefixNode : prefixes) {
+                if (prefixNode.prefix.equals(prefix)) {
+                    return prefixNode.node;
+                }
+            }
+            PrefixNode prefixNode = new PrefixNode(prefix, new Node());
+            prefixes.add(prefixNode);
+            Collections.sort(prefixes);
+            return prefixNode.node;
+        }
+
+        void accept(MatchConfig config) {
+            if (this.config == null) {
+                this.config = config;
+            }
+        }
+
+        void acceptPrefix(String prefix, MatchConfig config) {
+            if (prefixConfigs == null) {
+                prefixConfigs = new ArrayList<PrefixConfig>(1);
+            }
+            prefixConfigs.add(new PrefixConfig(prefix, config));
+            Collections.sort(prefixConfigs);
+        }
+
+        boolean isEmpty() {
+            return literals == null && variable == null && prefixes == null && config == null && prefixConfigs == null;
+        }
+
+        /**
+         * 依次尝试字面路径段、前缀路径段、变量路径段
+         */
+        MatchConfig match(String[] segments, int index) {
+            if (index == segments.length) {
+                return config;
+            }
+            final String segment = segments[index];
+            MatchConfig matched;
+            if (literals != null) {
+                Node node = literals.get(segment);
+                if (node != null && (matched = node.match(segments, index + 1)) != null) {
+                    return matched;
+                }
+            }
+            if (prefixConfigs != null && index == segments.length - 1) {
+                for (PrefixConfig prefixConfig : prefixConfigs) {
+                    // 最后一段的变量至少要有一个字符
+                    if (segment.length() > prefixConfig.prefix.length() && segment.startsWith(prefixConfig.prefix)) {
+                        return prefixConfig.config;
+                    }
+                }
+            }
+            if (prefixes != null) {
+                for (PrefixNode prefixNode : prefixes) {
+                    if (segment.startsWith(prefixNode.prefix)
+                            && (matched = prefixNode.node.match(segments, index + 1)) != null) {
+                        return matched;
+                    }
+                }
+            }
+            if (variable != null) {
+                return variable.match(segments, index + 1);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 按前缀长度倒序，前缀越长越优先
+     */
+    private static final class PrefixNode implements Comparable<PrefixNode> {
+        private final String prefix;
+        private final Node node;
+
+        PrefixNode(String prefix, Node node) {
+            this.prefix = prefix;
+            this.node = node;
+        }
+
+        @Override
+        public int compareTo(PrefixNode o) {
+            return o.prefix.length() - prefix.length();
+        }
+    }
+
+    private static final class PrefixConfig implements Comparable<PrefixConfig> {
+        private final String prefix;
+        private final MatchConfig config;
+
+        PrefixConfig(String prefix, MatchConfig config) {
+            this.prefix = prefix;
+            this.config = config;
+        }
+
+        @Override
+        public int compareTo(PrefixConfig o) {
+            return o.prefix.length() - prefix.length();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar.pressurement.agent.shared.exit;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.pamirs.pradar.internal.config.MatchConfig;
+
+/**
+ * 编译后的 rpc 白名单
+ * <p>
+ * 白名单中的名称为 类名 或者 类名#方法名，按类名、方法名两级 hash 表存放，
+ * 匹配时不需要拼接 类名#方法名
+ * </p>
+ */
+final class RpcWhiteListMatcher {
+
+
+    /**
+     * 编译时使用的白名单，用来判断白名单是否已经变更
+     */
+    private final Set<MatchConfig> source;
+
+    /**
+     * 类名 -> 规则
+     */
+    private final Map<String, MatchConfig> classNames = new HashMap<String, MatchConfig>();
+
+    /**
+     * 类名 -> 方法名 -> 规则
+     */
+    private final Map<String, Map<String, MatchConfig>> methodNames = new HashMap<String, Map<String, MatchConfig>>();
+
+    RpcWhiteListMatcher(Set<MatchConfig> source) {
+        this.source = source;
+        if (source == null) {
+            return;
+        }
+        for (MatchConfig config : source) {
+            if (config == null || config.getUrl() == null) {
+                continue;
+            }
+            final String name = config.getUrl();
+            final int index = name.indexOf('#');
+            if (index == -1) {
+                if (!classNames.containsKey(name)) {
+                    classNames.put(name, config);
+                }
+                continue;
+            }
+            final String className = name.substring(0, index);
+            Map<String, MatchConfig> methods = methodNames.get(className);
+            if (methods == null) {
+                methods = new HashMap<String, MatchConfig>();
+                methodNames.put(className, methods);
+            }
+            final String methodName = name.substring(index + 1);
+            if (!methods.containsKey(methodName)) {
+                methods.put(methodName, config);
+            }
+        }
+    }
+
+    boolean isCompiledFrom(Set<MatchConfig> source) {
+        return this.source == source;
+    }
+
+    /**
+     * 匹配 rpc 名称
+     *
+     * @param className  类名，方法名为空时可以是 类名#方法名
+     * @param methodName 方法名，可以为空
+     * @return 匹配到的规则，未匹配到返回 null
+     */
+    MatchConfig match(String className, String methodName) {
+        if (methodName == null) {
+            final int index = className.indexOf('#');
+            if (index == -1) {
+                return classNames.get(className);
+            }
+            methodName = className.substring(index + 1);
+            className = className.substring(0, index);
+        } else {
+            final int index = className.indexOf('#');
+            if (index != -1) {
+                methodName = className.substring(index + 1) + '#' + methodName;
+                className = className.substring(0, index);
+            }
+        }
+        final Map<String, MatchConfig> methods = methodNames.get(className);
+        return methods == null ? null : methods.get(methodName);
+    }
+}
@@ -137,7 +137,7 @@ public final class EventRouter {
     }
 
     // 目前已经使用的order: -1 0 6
-    // 数据源： 10 11 12 13 14 15 16 17 18 19 20 21 22 23 24 25 26 27 28
+    // 数据源： 10 11 12 13 14 15 16 17 18 19 20 21 22 23 24 25 26 27 28 29
     // mq:      30 31 32 33 34 60
     // es:      35 36 37
     // job:     50
@@ -54,6 +54,21 @@ public class SimulatorDynamicConfig {
             = "pradar.shadow.request.response.data.allow.trace";
     private static final String SECURITY_FIELD = "securityField";
 
+    /**
+     * trace 尾部采样，调用链结束后再决定是否输出日志，出错、慢调用以及调试流量的调用链全部保留
+     */
+    private static final String TRACE_TAIL_SAMPLING_ENABLED_KEY = "pradar.trace.tail.sampling.enabled";
+    /**
+     * 尾部采样慢调用阈值，单位毫秒
+     */
+    private static final String TRACE_TAIL_SAMPLING_SLOW_THRESHOLD_KEY = "pradar.trace.tail.sampling.slow.threshold";
+    private static final int DEFAULT_TRACE_TAIL_SAMPLING_SLOW_THRESHOLD = 1000;
+    /**
+     * 尾部采样每秒最多输出的 trace 日志条数，超出后自动降低基础采样率
+     */
+    private static final String TRACE_TAIL_SAMPLING_MAX_LOGS_PER_SECOND_KEY = "pradar.trace.tail.sampling.max.logs.per.second";
+    private static final int DEFAULT_TRACE_TAIL_SAMPLING_MAX_LOGS_PER_SECOND = 2000;
+
     /**
      * 单个应用的静默开关
      */
@@ -98,6 +113,18 @@ public class SimulatorDynamicConfig {
      * trace 压测流量采样率
      */
     private final int clusterTestTraceSamplingInterval;
+    /**
+     * 是否开启 trace 尾部采样
+     */
+    private final boolean traceTailSamplingEnabled;
+    /**
+     * 尾部采样慢调用阈值，单位毫秒
+     */
+    private final int traceTailSamplingSlowThreshold;
+    /**
+     * 尾部采样每秒最多输出的 trace 日志条数
+     */
+    private final int traceTailSamplingMaxLogsPerSecond;
     /**
      * trace 日志 的版本号
      */
@@ -174,6 +201,9 @@ public class SimulatorDynamicConfig {
         }
         this.traceSamplingInterval = getTraceSamplingInterval(config);
         this.clusterTestTraceSamplingInterval = getClusterTestTraceSamplingInterval(config);
+        this.traceTailSamplingEnabled = getTraceTailSamplingEnabled(config);
+        this.traceTailSamplingSlowThreshold = getTraceTailSamplingSlowThreshold(config);
+        this.traceTailSamplingMaxLogsPerSecond = getTraceTailSamplingMaxLogsPerSecond(config);
         this.pradarTraceLogVersion = getPradarTraceLogVersion(config);
         this.pradarMonitorLogVersion = getPradarMonitorLogVersion(config);
         this.pradarErrorLogVersion = getPradarErrorLogVersion(config);
@@ -586,6 +616,81 @@ public class SimulatorDynamicConfig {
         return clusterTestTraceSamplingInterval;
     }
 
+    private boolean getTraceTailSamplingEnabled(Map<String, String> config) {
+        try {
+            if (config == null || degradeTriggered) {
+                return false;
+            }
+            final String value = getConfig(config, TRACE_TAIL_SAMPLING_ENABLED_KEY);
+            if (value == null) {
+                return false;
+            }
+            return Boolean.parseBoolean(value);
+        } catch (Throwable e) {
+            LOGGER.error("getTraceTailSamplingEnabled error, use default false.", e);
+            return false;
+        }
+    }
+
+    private int getTraceTailSamplingSlowThreshold(Map<String, String> config) {
+        try {
+            if (config == null) {
+                return DEFAULT_TRACE_TAIL_SAMPLING_SLOW_THRESHOLD;
+            }
+            final String value = getConfig(config, TRACE_TAIL_SAMPLING_SLOW_THRESHOLD_KEY);
+            if (value == null) {
+                return DEFAULT_TRACE_TAIL_SAMPLING_SLOW_THRESHOLD;
+            }
+            return Integer.parseInt(value);
+        } catch (Throwable e) {
+            LOGGER.error("getTraceTailSamplingSlowThreshold error.", e);
+            return DEFAULT_TRACE_TAIL_SAMPLING_SLOW_THRESHOLD;
+        }
+    }
+
+    private int getTraceTailSamplingMaxLogsPerSecond(Map<String, String> config) {
+        try {
+            if (config == null) {
+                return DEFAULT_TRACE_TAIL_SAMPLING_MAX_LOGS_PER_SECOND;
+            }
+            final String value = getConfig(config, TRACE_TAIL_SAMPLING_MAX_LOGS_PER_SECOND_KEY);
+            if (value == null) {
+                return DEFAULT_TRACE_TAIL_SAMPLING_MAX_LOGS_PER_SECOND;
+            }
+            return Integer.parseInt(value);
+        } catch (Throwable e) {
+            LOGGER.error("getTraceTailSamplingMaxLogsPerSecond error.", e);
+            return DEFAULT_TRACE_TAIL_SAMPLING_MAX_LOGS_PER_SECOND;
+        }
+    }
+
+    /**
+     * 是否开启 trace 尾部采样
+     *
+     * @return
+     */
+    public boolean isTraceTailSamplingEnabled() {
+        return traceTailSamplingEnabled;
+    }
+
+    /**
+     * 尾部采样慢调用阈值，单位毫秒
+     *
+     * @return
+     */
+    public int getTraceTailSamplingSlowThreshold() {
+        return traceTailSamplingSlowThreshold;
+    }
+
+    /**
+     * 尾部采样每秒最多输出的 trace 日志条数
+     *
+     * @return
+     */
+    public int getTraceTailSamplingMaxLogsPerSecond() {
+        return traceTailSamplingMaxLogsPerSecond;
+    }
+
     private String getConfig(Map<String, String> config, String key) {
         String s = config.get(key);
         return s == null ? System.getProperty(key) : s;
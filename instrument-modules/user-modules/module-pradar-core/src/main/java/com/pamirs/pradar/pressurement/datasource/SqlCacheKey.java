@@ -0,0 +1,85 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar.pressurement.datasource;
+
+/**
+ * sql 解析缓存的 key
+ * <p>
+ * 由 sql、数据源 key 以及数据库类型组成，hash 在构造时计算一次，避免每次查询缓存都拼接并重新切分字符串
+ * </p>
+ */
+final class SqlCacheKey {
+    private final String sql;
+    private final String dataSourceKey;
+    private final String dbType;
+    private final int hash;
+
+    SqlCacheKey(String sql, String dataSourceKey, String dbType) {
+        this.sql = sql;
+        this.dataSourceKey = dataSourceKey;
+        this.dbType = dbType;
+        int result = sql != null ? sql.hashCode() : 0;
+        result = 31 * result + (dataSourceKey != null ? dataSourceKey.hashCode() : 0);
+        result = 31 * result + (dbType != null ? dbType.hashCode() : 0);
+        this.hash = result;
+    }
+
+    String getSql() {
+        return sql;
+    }
+
+    String getDataSourceKey() {
+        return dataSourceKey;
+    }
+
+    String getDbType() {
+        return dbType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SqlCacheKey)) {
+            return false;
+        }
+        SqlCacheKey that = (SqlCacheKey) o;
+        if (hash != that.hash) {
+            return false;
+        }
+        if (sql != null ? !sql.equals(that.sql) : that.sql != null) {
+            return false;
+        }
+        if (dataSourceKey != null ? !dataSourceKey.equals(that.dataSourceKey) : that.dataSourceKey != null) {
+            return false;
+        }
+        return dbType != null ? dbType.equals(that.dbType) : that.dbType == null;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "SqlCacheKey{" +
+                "sql='" + sql + '\'' +
+                ", dataSourceKey='" + dataSourceKey + '\'' +
+                ", dbType='" + dbType + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar.pressurement.datasource;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.pamirs.pradar.Pradar;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * sql 解析结果缓存
+ * <p>
+ * 每个数据源使用独立的缓存，按 sql 及解析结果的字符数计算权重，避免一个数据源的大量 sql 把其他数据源的缓存挤掉。
+ * 缓存容量可以通过 pradar.sql.cache.weight 统一配置，也可以通过 pradar.sql.cache.weight.{数据源 key} 单独配置
+ * </p>
+ *
+ * @param <V> 解析结果
+ */
+public class SqlParseCache<V> {
+
+    /**
+     * 每个数据源缓存的最大权重，即缓存的 sql 及解析结果的字符数
+     */
+    public static final String CACHE_WEIGHT = "pradar.sql.cache.weight";
+
+    /**
+     * 缓存多长时间未访问后过期，单位秒
+     */
+    public static final String CACHE_EXPIRE_SECONDS = "pradar.sql.cache.expire.seconds";
+
+    private static final long DEFAULT_CACHE_WEIGHT = 4L * 1024 * 1024;
+    private static final long DEFAULT_CACHE_EXPIRE_SECONDS = 5 * 60;
+    private static final String DEFAULT_DATA_SOURCE_KEY = "";
+
+    private final String name;
+    private final Weigher<SqlCacheKey, V> weigher;
+    private final ConcurrentMap<String, Cache<SqlCacheKey, V>> caches = new ConcurrentHashMap<String, Cache<SqlCacheKey, V>>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong loadFailureCount = new AtomicLong();
+    private final AtomicLong totalLoadTimeNanos = new AtomicLong();
+
+    private final RemovalListener<SqlCacheKey, V> removalListener = new RemovalListener<SqlCacheKey, V>() {
+        @Override
+        public void onRemoval(RemovalNotification<SqlCacheKey, V> notification) {
+            if (notification.wasEvicted()) {
+                evictionCount.incrementAndGet();
+            }
+        }
+    };
+
+    /**
+     * @param name    缓存名称，仅用于统计
+     * @param weigher 解析结果的权重计算
+     */
+    public SqlParseCache(String name, Weigher<SqlCacheKey, V> weigher) {
+        this.name = name;
+        this.weigher = weigher;
+    }
+
+    private Cache<SqlCacheKey, V> getCache(String dataSourceKey) {
+        if (dataSourceKey == null) {
+            dataSourceKey = DEFAULT_DATA_SOURCE_KEY;
+        }
+        Cache<SqlCacheKey, V> cache = caches.get(dataSourceKey);
+        if (cache != null) {
+            return cache;
+        }
+        long weight = getMaximumWeight(dataSourceKey);
+        long expireSeconds = getExpireSeconds();
+        CacheBuilder<SqlCacheKey, V> builder = CacheBuilder.newBuilder()
+                .maximumWeight(weight)
+                .weigher(weigher)
+                .removalListener(removalListener);
+        if (expireSeconds > 0) {
+            builder.expireAfterAccess(expireSeconds, TimeUnit.SECONDS);
+        }
+        cache = builder.build();
+        Cache<SqlCacheKey, V> old = caches.putIfAbsent(dataSourceKey, cache);
+        return old != null ? old : cache;
+    }
+
+    long getMaximumWeight(String dataSourceKey) {
+        return Pradar.getLongProperty(CACHE_WEIGHT + '.' + dataSourceKey,
+                Pradar.getLongProperty(CACHE_WEIGHT, DEFAULT_CACHE_WEIGHT));
+    }
+
+    long getExpireSeconds() {
+        return Pradar.getLongProperty(CACHE_EXPIRE_SECONDS, DEFAULT_CACHE_EXPIRE_SECONDS);
+    }
+
+    /**
+     * 获取缓存的解析结果，不存在则解析，解析失败的结果不会缓存
+     *
+     * @param key    缓存 key
+     * @param loader 解析
+     * @return 解析结果
+     * @throws Exception 解析失败时抛出，与 {@link Cache#get(Object, Callable)} 一致
+     */
+    public V get(SqlCacheKey key, final Callable<V> loader) throws Exception {
+        Cache<SqlCacheKey, V> cache = getCache(key.getDataSourceKey());
+        V value = cache.getIfPresent(key);
+        if (value != null) {
+            hitCount.incrementAndGet();
+            return value;
+        }
+        missCount.incrementAndGet();
+        return cache.get(key, new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                return load(loader);
+            }
+        });
+    }
+
+    /**
+     * 在缓存不存在时解析并放入缓存，用于预热
+     *
+     * @param key    缓存 key
+     * @param loader 解析
+     * @throws Exception 解析失败
+     */
+    public void warmUp(SqlCacheKey key, Callable<V> loader) throws Exception {
+        Cache<SqlCacheKey, V> cache = getCache(key.getDataSourceKey());
+        if (cache.getIfPresent(key) != null) {
+            return;
+        }
+        cache.put(key, load(loader));
+    }
+
+    /**
+     * 当前所有数据源缓存内容的快照
+     *
+     * @return 缓存 key 及解析结果
+     */
+    public Map<SqlCacheKey, V> snapshot() {
+        Map<SqlCacheKey, V> snapshot = new HashMap<SqlCacheKey, V>();
+        for (Cache<SqlCacheKey, V> cache : caches.values()) {
+            snapshot.putAll(cache.asMap());
+        }
+        return snapshot;
+    }
+
+    private V load(Callable<V> loader) throws Exception {
+        loadCount.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            return loader.call();
+        } catch (Exception e) {
+            loadFailureCount.incrementAndGet();
+            throw e;
+        } finally {
+            totalLoadTimeNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    public void invalidateAll() {
+        for (Cache<SqlCacheKey, V> cache : caches.values()) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * 缓存统计，包括命中、未命中、淘汰次数以及解析耗时
+     *
+     * @return 统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Long> sizes = new HashMap<String, Long>();
+        long size = 0;
+        for (Map.Entry<String, Cache<SqlCacheKey, V>> entry : caches.entrySet()) {
+            long cacheSize = entry.getValue().size();
+            sizes.put(entry.getKey(), cacheSize);
+            size += cacheSize;
+        }
+        long hit = hitCount.get();
+        long miss = missCount.get();
+        long load = loadCount.get();
+        long loadTimeNanos = totalLoadTimeNanos.get();
+        Map<String, Object> statistics = new HashMap<String, Object>();
+        statistics.put("name", name);
+        statistics.put("hitCount", hit);
+        statistics.put("missCount", miss);
+        statistics.put("hitRate", hit + miss == 0 ? 1.0 : (double) hit / (hit + miss));
+        statistics.put("evictionCount", evictionCount.get());
+        statistics.put("loadCount", load);
+        statistics.put("loadFailureCount", loadFailureCount.get());
+        statistics.put("totalLoadTimeMillis", TimeUnit.NANOSECONDS.toMillis(loadTimeNanos));
+        statistics.put("averageLoadTimeMicros", load == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(loadTimeNanos / load));
+        statistics.put("size", size);
+        statistics.put("dataSourceSizes", sizes);
+        return statistics;
+    }
+}
@@ -14,9 +14,7 @@
  */
 package com.pamirs.pradar.pressurement.datasource;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
 import com.pamirs.pradar.ConfigNames;
 import com.pamirs.pradar.ErrorTypeEnum;
 import com.pamirs.pradar.Pradar;
@@ -44,8 +42,13 @@ import org.slf4j.LoggerFactory;
 import java.io.StringWriter;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * <p>{@code } instances should NOT be constructed in
@@ -56,87 +59,237 @@ import java.util.concurrent.TimeUnit;
 public class SqlParser {
     private final static Logger LOGGER = LoggerFactory.getLogger(SqlParser.class);
     public static String lowerCase;
-    private static LoadingCache<String, TableParserResult> cacheSqlTablesBuilder = CacheBuilder.newBuilder()
-            .maximumSize(300).expireAfterAccess(5 * 60, TimeUnit.SECONDS).build(
-
-                    new CacheLoader<String, TableParserResult>() {
-                        @Override
-                        public TableParserResult load(String name) throws Exception {
-                            try {
-                                String[] args = StringUtils.splitByWholeSeparator(name, "$$$$");
-                                String sql = args[0];
-                                String dbType = args[1];
-                                if ("null".equals(dbType)) {
-                                    dbType = null;
-                                }
-                                return parseTables(sql, dbType);
-                            } catch (SQLException e) {
-                                return TableParserResult.EMPTY;
-                            }
-                        }
-                    }
 
-            );
-    private static LoadingCache<String, String> cacheTableModeBuilder = CacheBuilder.newBuilder()
-            .maximumSize(300).expireAfterAccess(5 * 60, TimeUnit.SECONDS).build(
-
-                    new CacheLoader<String, String>() {
-                        @Override
-                        public String load(String name) throws Exception {
-                            String[] args = StringUtils.splitByWholeSeparator(name, "$$$$");
-                            String sql = args[0];
-                            String key = args[1];
-                            String dbType = args[2];
-                            if ("null".equals(dbType)) {
-                                dbType = null;
-                            }
-                            String midType = args[3];
-                            return parseAndReplaceTableNames(sql, key, dbType, midType);
-                        }
-                    }
+    /**
+     * 是否在影子库配置变更后，根据业务流量中解析过的 sql 预先生成影子表/影子库改写后的 sql
+     */
+    public static final String CACHE_WARM_UP = "pradar.sql.cache.warmup";
 
-            );
-    private static LoadingCache<String, String> cacheSchemaModeBuilder = CacheBuilder.newBuilder()
-            .maximumSize(300).expireAfterAccess(5 * 60, TimeUnit.SECONDS).build(
-
-                    new CacheLoader<String, String>() {
-                        @Override
-                        public String load(String name) throws Exception {
-                            String[] args = StringUtils.splitByWholeSeparator(name, "$$$$");
-                            String sql = args[0];
-                            String key = args[1];
-                            String dbType = args[2];
-                            if ("null".equals(dbType)) {
-                                dbType = null;
-                            }
-                            return parseAndReplaceSchema(sql, key, dbType);
-                        }
-                    }
+    /**
+     * 每次预热的 sql 个数上限
+     */
+    public static final String CACHE_WARM_UP_LIMIT = "pradar.sql.cache.warmup.limit";
+
+    private static final Weigher<SqlCacheKey, String> SQL_WEIGHER = new Weigher<SqlCacheKey, String>() {
+        @Override
+        public int weigh(SqlCacheKey key, String value) {
+            return key.getSql().length() + (value == null ? 0 : value.length());
+        }
+    };
+
+    private static final Weigher<SqlCacheKey, TableParserResult> TABLES_WEIGHER = new Weigher<SqlCacheKey, TableParserResult>() {
+        @Override
+        public int weigh(SqlCacheKey key, TableParserResult value) {
+            int weight = key.getSql().length();
+            for (String table : value.getTables()) {
+                weight += table.length();
+            }
+            return weight;
+        }
+    };
+
+    private static final SqlParseCache<TableParserResult> cacheSqlTables = new SqlParseCache<TableParserResult>("tables", TABLES_WEIGHER);
+    private static final SqlParseCache<String> cacheTableMode = new SqlParseCache<String>("shadowTable", SQL_WEIGHER);
+    private static final SqlParseCache<String> cacheSchemaMode = new SqlParseCache<String>("shadowSchema", SQL_WEIGHER);
 
-            );
+    private static volatile ThreadPoolExecutor warmUpExecutor;
+    private static volatile boolean warmUpEnabled;
+    private static final AtomicBoolean warmUpPending = new AtomicBoolean();
+
+    /**
+     * 模块加载时调用，开启预热后每次清空影子表/影子库的改写缓存都会在后台重新预热
+     */
+    public static void init() {
+        warmUpEnabled = Pradar.getBooleanProperty(CACHE_WARM_UP, false);
+    }
 
     public static void clear() {
-        cacheSchemaModeBuilder.invalidateAll();
-        cacheTableModeBuilder.invalidateAll();
+        cacheSchemaMode.invalidateAll();
+        cacheTableMode.invalidateAll();
+        scheduleWarmUp();
     }
 
     public static void release() {
-        cacheSchemaModeBuilder.invalidateAll();
-        cacheTableModeBuilder.invalidateAll();
-        cacheSqlTablesBuilder.invalidateAll();
+        cacheSchemaMode.invalidateAll();
+        cacheTableMode.invalidateAll();
+        cacheSqlTables.invalidateAll();
+        warmUpEnabled = false;
+        synchronized (SqlParser.class) {
+            if (warmUpExecutor != null) {
+                warmUpExecutor.shutdownNow();
+                warmUpExecutor = null;
+            }
+        }
+        warmUpPending.set(false);
     }
 
-    public static TableParserResult getTables(String sql, String dbType) {
+    /**
+     * 获取 sql 解析缓存的统计信息
+     *
+     * @return 每个缓存的命中、未命中、淘汰次数及解析耗时
+     */
+    public static List<Map<String, Object>> getCacheStatistics() {
+        List<Map<String, Object>> statistics = new ArrayList<Map<String, Object>>(3);
+        statistics.add(cacheSqlTables.getStatistics());
+        statistics.add(cacheTableMode.getStatistics());
+        statistics.add(cacheSchemaMode.getStatistics());
+        return statistics;
+    }
+
+    public static TableParserResult getTables(final String sql, final String dbType) {
         String innerDbtype = dbType;
         //影子表压测
         try {
-            return cacheSqlTablesBuilder.get(sql + "$$$$" + innerDbtype);
+            return cacheSqlTables.get(new SqlCacheKey(sql, null, innerDbtype), new Callable<TableParserResult>() {
+                @Override
+                public TableParserResult call() throws Exception {
+                    try {
+                        return parseTables(sql, dbType);
+                    } catch (SQLException e) {
+                        return TableParserResult.EMPTY;
+                    }
+                }
+            });
         } catch (Throwable e) {
             LOGGER.error("parse sql tables error. sql={}, dbType={} ", sql, dbType, e);
             return TableParserResult.EMPTY;
         }
     }
 
+    /**
+     * 合并多次清空缓存触发的预热，同一时间最多只有一个等待执行的预热任务
+     */
+    private static void scheduleWarmUp() {
+        if (!warmUpEnabled || !warmUpPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            getWarmUpExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    warmUpPending.set(false);
+                    warmUpAll();
+                }
+            });
+        } catch (Throwable e) {
+            warmUpPending.set(false);
+            LOGGER.warn("submit sql cache warm up task failed.", e);
+        }
+    }
+
+    /**
+     * 业务流量已经解析过表名的 sql 都在 cacheSqlTables 中，按当前的影子库配置逐个生成改写后的 sql，
+     * 压测流量进来时直接命中缓存。预热不记录错误 sql，也不上报缺少影子表，这些仍然在压测流量自己解析时暴露
+     */
+    private static void warmUpAll() {
+        final Map<String, ShadowDatabaseConfig> configs = GlobalConfig.getInstance().getShadowDatasourceConfigs();
+        if (configs == null || configs.isEmpty()) {
+            return;
+        }
+        final Map<SqlCacheKey, TableParserResult> statements = cacheSqlTables.snapshot();
+        if (statements.isEmpty()) {
+            return;
+        }
+        final int limit = Pradar.getIntProperty(CACHE_WARM_UP_LIMIT, 1024);
+        final long start = System.currentTimeMillis();
+        int count = 0;
+        for (Map.Entry<String, ShadowDatabaseConfig> config : configs.entrySet()) {
+            final String dbType = JdbcUtils.getDbType(config.getValue().getUrl(), null);
+            for (Map.Entry<SqlCacheKey, TableParserResult> statement : statements.entrySet()) {
+                if (count >= limit || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                if (!StringUtils.equalsIgnoreCase(dbType, statement.getKey().getDbType())) {
+                    continue;
+                }
+                if (warmUp(statement.getKey().getSql(), config.getKey(), statement.getKey().getDbType(),
+                        config.getValue(), statement.getValue())) {
+                    count++;
+                }
+            }
+        }
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("sql cache warm up finished. statements:{}, warmed:{}, cost:{}ms",
+                    new Object[]{statements.size(), count, System.currentTimeMillis() - start});
+        }
+    }
+
+    private static boolean warmUp(final String sql, final String key, final String dbType,
+                                  final ShadowDatabaseConfig config, final TableParserResult tables) {
+        final SqlCacheKey cacheKey = new SqlCacheKey(sql, key, dbType);
+        try {
+            if (config.isShadowTable()) {
+                if (!containsBusinessTable(config, tables)) {
+                    return false;
+                }
+                cacheTableMode.warmUp(cacheKey, new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return parseAndReplaceTableNames(sql, key, dbType, null, false);
+                    }
+                });
+            } else {
+                cacheSchemaMode.warmUp(cacheKey, new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return parseAndReplaceSchema(sql, key, dbType, false);
+                    }
+                });
+            }
+            return true;
+        } catch (Throwable e) {
+            // 预热失败不影响业务，压测流量进来时会重新解析并上报错误
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("warm up shadow sql failed. sql={}, key={}, dbType={}", new Object[]{sql, key, dbType, e});
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 影子表模式只预热涉及业务表的 sql，表名可能带 schema 或者引号
+     */
+    private static boolean containsBusinessTable(ShadowDatabaseConfig config, TableParserResult tables) {
+        final Map<String, String> businessTables = config.getBusinessShadowTables();
+        if (businessTables == null || businessTables.isEmpty()) {
+            return false;
+        }
+        for (String table : tables.getTables()) {
+            String name = StringUtils.remove(table, '`');
+            if (name.indexOf('.') != -1) {
+                name = StringUtils.substringAfterLast(name, ".");
+            }
+            for (String businessTable : businessTables.keySet()) {
+                if (StringUtils.equalsIgnoreCase(businessTable, name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static ThreadPoolExecutor getWarmUpExecutor() {
+        ThreadPoolExecutor executor = warmUpExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (SqlParser.class) {
+            if (warmUpExecutor == null) {
+                warmUpExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                Thread t = new Thread(r, "Pradar-Sql-Cache-WarmUp");
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        });
+            }
+            return warmUpExecutor;
+        }
+    }
+
     private static TableParserResult parseTables(String sql, String dbTypeName) throws SQLException {
         DbType dbType = DbType.of(dbTypeName);
         boolean isSelect = true;
@@ -191,7 +344,7 @@ public class SqlParser {
         return new TableParserResult(tables, isSelect);
     }
 
-    public static String replaceTable(String sql, String dbConnectionKey, String dbType, String midType) throws SQLException {
+    public static String replaceTable(final String sql, final String dbConnectionKey, final String dbType, final String midType) throws SQLException {
         if (!Pradar.isClusterTest()) {
             return sql;
         }
@@ -199,7 +352,12 @@ public class SqlParser {
         String innerDbtype = dbType;
         //影子表压测
         try {
-            return cacheTableModeBuilder.get(sql + "$$$$" + key + "$$$$" + innerDbtype + "$$$$" + midType);
+            return cacheTableMode.get(new SqlCacheKey(sql, key, innerDbtype), new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return parseAndReplaceTableNames(sql, dbConnectionKey, dbType, midType);
+                }
+            });
         } catch (Throwable e) {
             LOGGER.error("replace table to shadow table error. sql={}, key={}, dbType={}", sql, dbConnectionKey, dbType,
                     e);
@@ -219,7 +377,7 @@ public class SqlParser {
         }
     }
 
-    public static String replaceSchema(String sql, String dbConnectionKey, String dbType) throws SQLException {
+    public static String replaceSchema(final String sql, final String dbConnectionKey, final String dbType) throws SQLException {
         if (!Pradar.isClusterTest()) {
             return sql;
         }
@@ -227,7 +385,12 @@ public class SqlParser {
         String innerDbtype = dbType;
         //影子表压测
         try {
-            return cacheSchemaModeBuilder.get(sql + "$$$$" + key + "$$$$" + innerDbtype);
+            return cacheSchemaMode.get(new SqlCacheKey(sql, key, innerDbtype), new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return parseAndReplaceSchema(sql, dbConnectionKey, dbType);
+                }
+            });
         } catch (Throwable e) {
             LOGGER.error("replace schema to shadow schema error. sql={}, key={}, dbType={}", sql, dbConnectionKey,
                     dbType, e);
@@ -362,6 +525,20 @@ public class SqlParser {
      * @throws SQLException
      */
     public static String parseAndReplaceSchema(String sql, String key, String dbTypeName) throws SQLException {
+        return parseAndReplaceSchema(sql, key, dbTypeName, true);
+    }
+
+    /**
+     * 替换 schema
+     *
+     * @param sql
+     * @param key
+     * @param dbTypeName
+     * @param report     解析失败时是否记录错误 sql，预热时不记录
+     * @return
+     * @throws SQLException
+     */
+    private static String parseAndReplaceSchema(String sql, String key, String dbTypeName, boolean report) throws SQLException {
         sql = sql.replaceAll("<  >", "<>");
         ShadowDatabaseConfig config = GlobalConfig.getInstance().getShadowDatabaseConfig(key);
         if (config == null) {
@@ -371,7 +548,7 @@ public class SqlParser {
         // new MySQL Parser
         SQLStatementParser parser = SQLParserUtils.createSQLStatementParser(sql, dbTypeName);
         if (parser == null) {
-            if (GlobalConfig.getInstance().getWrongSqlDetail().size() < 10) {
+            if (report && GlobalConfig.getInstance().getWrongSqlDetail().size() < 10) {
                 GlobalConfig.getInstance().addWrongSqlDetail(
                         StringUtils.substring("dbType not support" + key + " dbType" + dbTypeName + " sql" + sql, 0, 1995));
             }
@@ -419,7 +596,7 @@ public class SqlParser {
                 sqlStatement.accept(visitor);
             }
         } catch (Throwable e) {
-            if (GlobalConfig.getInstance().getWrongSqlDetail().size() < 10) {
+            if (report && GlobalConfig.getInstance().getWrongSqlDetail().size() < 10) {
                 GlobalConfig.getInstance().addWrongSqlDetail(
                         StringUtils.substring(("Exception:" + e + " sql" + sql), 0, 1995));
             }
@@ -430,6 +607,15 @@ public class SqlParser {
     }
 
     public static String parseAndReplaceTableNames(String sql, String key, String dbTypeName, String midType) throws SQLException {
+        return parseAndReplaceTableNames(sql, key, dbTypeName, midType, true);
+    }
+
+    /**
+     * 替换影子表
+     *
+     * @param report 解析失败或者没有配置影子表时是否记录错误 sql 并上报异常，预热时不上报
+     */
+    private static String parseAndReplaceTableNames(String sql, String key, String dbTypeName, String midType, boolean report) throws SQLException {
 
         sql = sql.replaceAll("<  >", "<>");
         DbType dbType = DbType.of(dbTypeName);
@@ -452,7 +638,7 @@ public class SqlParser {
         // new MySQL Parser
         SQLStatementParser parser = SQLParserUtils.createSQLStatementParser(sql, dbTypeName);
         if (parser == null) {
-            if (GlobalConfig.getInstance().getWrongSqlDetail().size() < 10) {
+            if (report && GlobalConfig.getInstance().getWrongSqlDetail().size() < 10) {
                 GlobalConfig.getInstance().addWrongSqlDetail(
                         StringUtils.substring("dbType not support" + key + " dbType" + dbTypeName + " sql" + sql, 0, 1995));
             }
@@ -530,7 +716,7 @@ public class SqlParser {
                 sqlStatement.accept(visitor);
             }
         } catch (Throwable e) {
-            if (GlobalConfig.getInstance().getWrongSqlDetail().size() < 10) {
+            if (report && GlobalConfig.getInstance().getWrongSqlDetail().size() < 10) {
                 GlobalConfig.getInstance().addWrongSqlDetail(
                         StringUtils.substring(("Exception:" + e + " sql" + sql), 0, 1995));
             }
@@ -571,9 +757,12 @@ public class SqlParser {
                     }
 
                     if (!passThisTable) {
-                        if (GlobalConfig.getInstance().getWrongSqlDetail().size() < 10) {
+                        if (report && GlobalConfig.getInstance().getWrongSqlDetail().size() < 10) {
                             GlobalConfig.getInstance().addWrongSqlDetail(StringUtils.substring(sql, 0, 1995));
                         }
+                        if (!report) {
+                            throw new SQLException("The business table [" + name.getName() + "] doesn't has shadow mapping table!");
+                        }
                         String url = key;
                         if (url.indexOf('|') != -1) {
                             url = url.substring(0, url.indexOf('|'));
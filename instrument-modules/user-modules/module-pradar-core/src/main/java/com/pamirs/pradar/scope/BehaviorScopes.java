@@ -0,0 +1,106 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar.scope;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.shulie.instrument.simulator.api.listener.ext.Advice;
+import com.shulie.instrument.simulator.api.scope.InterceptorScope;
+
+/**
+ * 按增强的类和方法解析的作用域缓存
+ * <p>
+ * 作用域名称为 拦截器类名#目标类名_方法名，每个(拦截器, 增强方法)只在第一次调用时拼接名称并从
+ * {@link ScopeFactory} 中解析一次，之后直接按目标类和方法名取到作用域，不再拼接字符串和查找作用域池。
+ * 一个拦截器一般只增强少量方法，先在小数组中按引用比较查找，超出后再使用 Map
+ */
+public final class BehaviorScopes {
+
+    private final static int MAX_ARRAY_SIZE = 16;
+
+    private final String scopeNamePrefix;
+
+    private volatile Entry[] entries = new Entry[0];
+
+    /**
+     * 数组放满之后使用，目标类 -> 方法名 -> 作用域
+     */
+    private final ConcurrentHashMap<Class, ConcurrentHashMap<String, InterceptorScope>> overflow
+        = new ConcurrentHashMap<Class, ConcurrentHashMap<String, InterceptorScope>>();
+
+    public BehaviorScopes(String interceptorClassName) {
+        this.scopeNamePrefix = interceptorClassName + "#";
+    }
+
+    public InterceptorScope get(Advice advice) {
+        final Class targetClass = advice.getTargetClass();
+        final String behaviorName = advice.getBehaviorName();
+        final Entry[] entries = this.entries;
+        for (int i = 0; i < entries.length; i++) {
+            final Entry entry = entries[i];
+            if (entry.targetClass == targetClass
+                && (entry.behaviorName == behaviorName || entry.behaviorName.equals(behaviorName))) {
+                return entry.scope;
+            }
+        }
+        if (entries.length >= MAX_ARRAY_SIZE) {
+            ConcurrentHashMap<String, InterceptorScope> scopes = overflow.get(targetClass);
+            if (scopes != null) {
+                InterceptorScope scope = scopes.get(behaviorName);
+                if (scope != null) {
+                    return scope;
+                }
+            }
+        }
+        return resolve(targetClass, behaviorName);
+    }
+
+    private synchronized InterceptorScope resolve(Class targetClass, String behaviorName) {
+        final InterceptorScope scope = ScopeFactory.getScope(
+            scopeNamePrefix + targetClass.getName() + "_" + behaviorName);
+        final Entry[] entries = this.entries;
+        if (entries.length < MAX_ARRAY_SIZE) {
+            for (Entry entry : entries) {
+                if (entry.targetClass == targetClass && entry.behaviorName.equals(behaviorName)) {
+                    return entry.scope;
+                }
+            }
+            final Entry[] newEntries = new Entry[entries.length + 1];
+            System.arraycopy(entries, 0, newEntries, 0, entries.length);
+            newEntries[entries.length] = new Entry(targetClass, behaviorName, scope);
+            this.entries = newEntries;
+        } else {
+            ConcurrentHashMap<String, InterceptorScope> scopes = overflow.get(targetClass);
+            if (scopes == null) {
+                scopes = new ConcurrentHashMap<String, InterceptorScope>();
+                overflow.put(targetClass, scopes);
+            }
+            scopes.put(behaviorName, scope);
+        }
+        return scope;
+    }
+
+    private final static class Entry {
+        private final Class targetClass;
+        private final String behaviorName;
+        private final InterceptorScope scope;
+
+        private Entry(Class targetClass, String behaviorName, InterceptorScope scope) {
+            this.targetClass = targetClass;
+            this.behaviorName = behaviorName;
+            this.scope = scope;
+        }
+    }
+}
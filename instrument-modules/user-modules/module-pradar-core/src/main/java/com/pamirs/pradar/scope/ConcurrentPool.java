@@ -47,6 +47,7 @@ public class ConcurrentPool<K, V> implements Pool<K, V> {
         final V newValue = this.objectFactory.create(key);
         final V oldValue = this.pool.putIfAbsent(key, newValue);
         if (oldValue != null) {
+            this.objectFactory.destroy(newValue);
             return oldValue;
         }
         return newValue;
@@ -15,31 +15,56 @@
 package com.pamirs.pradar.scope;
 
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.shulie.instrument.simulator.api.scope.InterceptorScope;
 import com.shulie.instrument.simulator.api.scope.InterceptorScopeInvocation;
 
 /**
  * Created by xiaobin on 2017/1/19.
+ * <p>
+ * 每个作用域在创建时分配一个连续的下标，当前线程上的调用按下标放在一个线程内共享的数组中，
+ * 不再每个作用域一个 ThreadLocal。调用退出最外层后只清空调用上的状态，数组和调用对象都留在线程上复用，
+ * 热点路径上不再有分配。
+ * <p>
+ * 线程内数组的类型是 api 中的 {@link InterceptorScopeInvocation}，不是模块内的类；模块卸载时通过
+ * {@link ScopeFactory#release()} 清空所有线程的数组，线程池中的线程只会留下一个空数组，不会持有模块内的对象。
+ * 并发创建时未放入作用域池的实例会归还下标，下标可以被后创建的作用域复用
  */
 public class DefaultInterceptorScope implements InterceptorScope {
+    private final static int DEFAULT_SLOT_SIZE = 64;
+
+    private final static AtomicInteger INDEX_GENERATOR = new AtomicInteger();
+
+    /**
+     * 已归还可复用的下标
+     */
+    private final static Queue<Integer> FREE_INDEXES = new ConcurrentLinkedQueue<Integer>();
+
+    private final static ThreadLocal<InterceptorScopeInvocation[]> SLOTS
+        = new ThreadLocal<InterceptorScopeInvocation[]>();
+
+    /**
+     * 所有线程上的数组，模块卸载时清空；线程结束后数组被回收，这里不会阻止回收
+     */
+    private final static Set<InterceptorScopeInvocation[]> ALL_SLOTS = Collections.synchronizedSet(
+        Collections.newSetFromMap(new WeakHashMap<InterceptorScopeInvocation[], Boolean>()));
+
     private final String name;
-    private final ThreadLocal<InterceptorScopeInvocation> threadLocal;
+    private final int index;
+    private final AtomicBoolean released = new AtomicBoolean();
 
     public DefaultInterceptorScope(final String name) {
         this.name = name;
-        this.threadLocal = new ThreadLocal<InterceptorScopeInvocation>() {
-
-            @Override
-            protected InterceptorScopeInvocation initialValue() {
-                return new DefaultInterceptorScopeInvocation(name, new Runnable() {
-                    @Override
-                    public void run() {
-                        remove();
-                    }
-                });
-            }
-
-        };
+        Integer freeIndex = FREE_INDEXES.poll();
+        this.index = freeIndex != null ? freeIndex : INDEX_GENERATOR.getAndIncrement();
     }
 
     @Override
@@ -49,11 +74,71 @@ public class DefaultInterceptorScope implements InterceptorScope {
 
     @Override
     public InterceptorScopeInvocation getCurrentInvocation() {
-        return threadLocal.get();
+        InterceptorScopeInvocation[] slots = SLOTS.get();
+        if (slots != null && index < slots.length) {
+            InterceptorScopeInvocation invocation = slots[index];
+            if (invocation instanceof ScopeInvocation && ((ScopeInvocation) invocation).scope == this) {
+                return invocation;
+            }
+        } else {
+            slots = slots == null
+                ? newSlots(Math.max(DEFAULT_SLOT_SIZE, Math.max(index + 1, INDEX_GENERATOR.get())))
+                : growSlots(slots, Math.max(index + 1, slots.length + (slots.length >> 1)));
+        }
+        final InterceptorScopeInvocation invocation = new ScopeInvocation(name, this);
+        slots[index] = invocation;
+        return invocation;
     }
 
     @Override
     public void remove() {
-        this.threadLocal.remove();
+        InterceptorScopeInvocation[] slots = SLOTS.get();
+        if (slots != null && index < slots.length) {
+            slots[index] = null;
+        }
+    }
+
+    /**
+     * 归还下标，只能用于没有被使用过的作用域
+     */
+    void release() {
+        if (released.compareAndSet(false, true)) {
+            FREE_INDEXES.offer(index);
+        }
+    }
+
+    /**
+     * 清空所有线程上的调用对象，模块卸载时调用
+     */
+    static void releaseSlots() {
+        synchronized (ALL_SLOTS) {
+            for (InterceptorScopeInvocation[] slots : ALL_SLOTS) {
+                Arrays.fill(slots, null);
+            }
+        }
+        SLOTS.remove();
+    }
+
+    private static InterceptorScopeInvocation[] newSlots(int size) {
+        final InterceptorScopeInvocation[] slots = new InterceptorScopeInvocation[size];
+        ALL_SLOTS.add(slots);
+        SLOTS.set(slots);
+        return slots;
+    }
+
+    private static InterceptorScopeInvocation[] growSlots(InterceptorScopeInvocation[] old, int size) {
+        final InterceptorScopeInvocation[] slots = newSlots(size);
+        System.arraycopy(old, 0, slots, 0, old.length);
+        ALL_SLOTS.remove(old);
+        return slots;
+    }
+
+    private final static class ScopeInvocation extends DefaultInterceptorScopeInvocation {
+        private final DefaultInterceptorScope scope;
+
+        private ScopeInvocation(String name, DefaultInterceptorScope scope) {
+            super(name, null);
+            this.scope = scope;
+        }
     }
 }
@@ -114,6 +114,7 @@ public class DefaultInterceptorScopeInvocation implements InterceptorScopeInvoca
 
         if (--depth == 0) {
             attachment = null;
+            skippedBoundary = 0;
             if (releaseCallback != null) {
                 releaseCallback.run();
             }
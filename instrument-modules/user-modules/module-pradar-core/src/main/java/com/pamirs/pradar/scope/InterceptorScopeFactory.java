@@ -24,5 +24,12 @@ class InterceptorScopeFactory implements PoolObjectFactory<String, InterceptorSc
     public InterceptorScope create(String scopeName) {
         return new DefaultInterceptorScope(scopeName);
     }
+
+    @Override
+    public void destroy(InterceptorScope scope) {
+        if (scope instanceof DefaultInterceptorScope) {
+            ((DefaultInterceptorScope) scope).release();
+        }
+    }
 }
 
@@ -19,4 +19,11 @@ package com.pamirs.pradar.scope;
  */
 public interface PoolObjectFactory<K, V> {
     V create(K key);
+
+    /**
+     * 并发创建时未放入池中的对象会交给此方法回收
+     *
+     * @param value 未被使用的对象
+     */
+    void destroy(V value);
 }
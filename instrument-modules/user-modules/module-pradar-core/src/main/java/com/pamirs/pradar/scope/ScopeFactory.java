@@ -25,5 +25,12 @@ public class ScopeFactory {
     public static InterceptorScope getScope(String scopeName) {
         return interceptorScopePool.get(scopeName);
     }
+
+    /**
+     * 清空所有线程上保留的作用域调用，模块卸载时调用
+     */
+    public static void release() {
+        DefaultInterceptorScope.releaseSlots();
+    }
 }
 
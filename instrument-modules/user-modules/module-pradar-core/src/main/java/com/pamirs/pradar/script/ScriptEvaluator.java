@@ -55,4 +55,9 @@ public interface ScriptEvaluator {
      * @return the return value of the script, if any
      */
     Object evaluate(ClassLoader classLoader, String script, Map<String, Object> arguments);
+
+    /**
+     * 清空已编译的脚本缓存，脚本配置变更后调用
+     */
+    void invalidate();
 }
@@ -62,6 +62,15 @@ public class ScriptManager {
         return evaluators.get(type);
     }
 
+    /**
+     * 清空所有脚本执行器中已编译的脚本缓存
+     */
+    public void invalidate() {
+        for (ScriptEvaluator evaluator : evaluators.values()) {
+            evaluator.invalidate();
+        }
+    }
+
     public static void main(String[] args) throws EvalError, InterruptedException {
 
         final String scriptContent = "return Long.valueOf(aaaL) +\" : \" +args[1];";
@@ -14,23 +14,60 @@
  */
 package com.pamirs.pradar.script.bsh;
 
+import bsh.BshMethod;
 import bsh.EvalError;
 import bsh.Interpreter;
+import bsh.Primitive;
+import bsh.UtilEvalError;
+import com.pamirs.pradar.Pradar;
 import com.pamirs.pradar.script.ScriptEvaluator;
 
 import java.io.StringReader;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * BeanShell 脚本执行器
+ * <p>
+ * 脚本按内容编译一次后缓存：
+ * 1. 形如 return "..."; 的静态返回值脚本直接返回常量，不再经过解释器
+ * 2. 最后一条语句是 return 的脚本包装成脚本方法，每个线程、每个 ClassLoader 只定义一次，之后直接调用方法，不再重复解析脚本
+ * 3. 其他脚本保持原有的逐次解释执行
+ * <p>
+ * 解释器非线程安全，所以预编译的脚本方法与解释器绑定在线程上，绑定参数在同一个解释器上复用
+ *
  * @author xiaobin.zfb|xiaobin@shulie.io
  * @since 2021/6/18 2:35 下午
  */
 public class BshScriptEvaluator implements ScriptEvaluator {
+    /**
+     * 预编译的脚本方法名
+     */
+    private final static String SCRIPT_METHOD_NAME = "__pradar_script";
+
+    private final static Class[] EMPTY_SIGNATURE = new Class[0];
+    private final static Object[] EMPTY_ARGS = new Object[0];
+
+    /**
+     * 编译缓存的最大脚本数，超过后清空重建，避免脚本不断变化时无限增长
+     */
+    private final static int MAX_CACHE_SIZE = Pradar.getIntProperty("pradar.script.cache.size", 512);
+
     private ClassLoader classLoader;
 
-    private ThreadLocal<Map<String, Interpreter>> tt = new ThreadLocal<Map<String, Interpreter>>();
+    /**
+     * 脚本内容 -> 编译结果，所有线程共享
+     */
+    private final ConcurrentHashMap<String, CompiledScript> compiledScripts = new ConcurrentHashMap<String, CompiledScript>();
+
+    /**
+     * 缓存版本，失效时递增，线程内的预编译脚本发现版本变化后整体丢弃
+     */
+    private volatile int generation;
+
+    private final ThreadLocal<ThreadScripts> threadScripts = new ThreadLocal<ThreadScripts>();
 
     /**
      * Construct a new BshScriptEvaluator.
@@ -65,54 +102,347 @@ public class BshScriptEvaluator implements ScriptEvaluator {
 
     @Override
     public Object evaluate(String script, Map<String, Object> arguments) {
-        try {
-            Interpreter interpreter = fetchInterpreter(classLoader, script);
-            interpreter.setClassLoader(this.classLoader);
-            if (arguments != null) {
-                for (Map.Entry<String, Object> entry : arguments.entrySet()) {
-                    interpreter.set(entry.getKey(), entry.getValue());
-                }
-            }
-            return interpreter.eval(new StringReader(script));
-        } catch (EvalError ex) {
-            throw new RuntimeException(script, ex);
-        }
+        return evaluate(this.classLoader, script, arguments);
     }
 
     @Override
     public Object evaluate(ClassLoader classLoader, String script, Map<String, Object> arguments) {
+        CompiledScript compiledScript = compile(script);
+        if (compiledScript.isStatic) {
+            return compiledScript.staticValue;
+        }
         try {
-            Interpreter interpreter = fetchInterpreter(classLoader, script);
-//            Interpreter interpreter = new Interpreter();
-//            interpreter.setClassLoader(classLoader);
+            PreparedScript preparedScript = fetchPreparedScript(classLoader, compiledScript);
             if (arguments != null) {
                 for (Map.Entry<String, Object> entry : arguments.entrySet()) {
-                    interpreter.set(entry.getKey(), entry.getValue());
+                    preparedScript.interpreter.set(entry.getKey(), entry.getValue());
                 }
             }
-            return interpreter.eval(new StringReader(script));
+            return preparedScript.invoke();
         } catch (EvalError ex) {
             throw new RuntimeException(script, ex);
         }
     }
 
-    private Interpreter fetchInterpreter(ClassLoader classLoader, String script) {
-        Map<String, Interpreter> map = tt.get();
+    @Override
+    public void invalidate() {
+        compiledScripts.clear();
+        generation++;
+    }
+
+    private CompiledScript compile(String script) {
+        CompiledScript compiledScript = compiledScripts.get(script);
+        if (compiledScript != null) {
+            return compiledScript;
+        }
+        compiledScript = CompiledScript.compile(script);
+        if (compiledScripts.size() >= MAX_CACHE_SIZE) {
+            compiledScripts.clear();
+        }
+        CompiledScript old = compiledScripts.putIfAbsent(script, compiledScript);
+        return old != null ? old : compiledScript;
+    }
+
+    private PreparedScript fetchPreparedScript(ClassLoader classLoader, CompiledScript compiledScript) throws EvalError {
+        ThreadScripts scripts = threadScripts.get();
+        if (scripts == null || scripts.generation != generation || scripts.size >= MAX_CACHE_SIZE) {
+            scripts = new ThreadScripts(generation);
+            threadScripts.set(scripts);
+        }
+        Map<String, PreparedScript> map = scripts.preparedScripts.get(classLoader);
         if (map == null) {
-            map = new HashMap<String, Interpreter>();
-            tt.set(map);
+            map = new HashMap<String, PreparedScript>();
+            scripts.preparedScripts.put(classLoader, map);
+        }
+        PreparedScript preparedScript = map.get(compiledScript.script);
+        if (preparedScript == null) {
+            preparedScript = PreparedScript.prepare(classLoader, compiledScript);
+            map.put(compiledScript.script, preparedScript);
+            scripts.size++;
         }
-        String key = keyOf(classLoader, script);
-        Interpreter interpreter = map.get(key);
-        if (interpreter == null) {
-            interpreter = new Interpreter();
+        return preparedScript;
+    }
+
+    /**
+     * 线程内的预编译脚本
+     */
+    private static class ThreadScripts {
+        private final int generation;
+        private final Map<ClassLoader, Map<String, PreparedScript>> preparedScripts = new IdentityHashMap<ClassLoader, Map<String, PreparedScript>>();
+        private int size;
+
+        private ThreadScripts(int generation) {
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * 与解释器绑定的脚本，只能在所属线程中使用
+     */
+    private static class PreparedScript {
+        private final Interpreter interpreter;
+        private final String script;
+        /**
+         * 预编译的脚本方法，为 null 时逐次解释执行脚本
+         */
+        private final BshMethod method;
+
+        private PreparedScript(Interpreter interpreter, String script, BshMethod method) {
+            this.interpreter = interpreter;
+            this.script = script;
+            this.method = method;
+        }
+
+        static PreparedScript prepare(ClassLoader classLoader, CompiledScript compiledScript) throws EvalError {
+            Interpreter interpreter = new Interpreter();
             interpreter.setClassLoader(classLoader);
-            map.put(key, interpreter);
+            BshMethod method = null;
+            if (compiledScript.methodDeclaration != null) {
+                try {
+                    interpreter.eval(new StringReader(compiledScript.methodDeclaration));
+                    method = interpreter.getNameSpace().getMethod(SCRIPT_METHOD_NAME, EMPTY_SIGNATURE);
+                } catch (EvalError e) {
+                    /**
+                     * 包装成方法后无法定义的脚本(如脚本中包含方法内不支持的语法)，退回到逐次解释执行
+                     */
+                    method = null;
+                } catch (UtilEvalError e) {
+                    method = null;
+                }
+            }
+            return new PreparedScript(interpreter, compiledScript.script, method);
+        }
+
+        Object invoke() throws EvalError {
+            if (method == null) {
+                return interpreter.eval(new StringReader(script));
+            }
+            return Primitive.unwrap(method.invoke(EMPTY_ARGS, interpreter));
         }
-        return interpreter;
     }
 
-    private String keyOf(ClassLoader classLoader, String script) {
-        return String.valueOf(classLoader) + script;
+    /**
+     * 按脚本内容编译的结果，与线程和 ClassLoader 无关
+     */
+    static class CompiledScript {
+        final String script;
+        final boolean isStatic;
+        final Object staticValue;
+        /**
+         * 脚本包装成的方法定义，为 null 时不能预编译
+         */
+        final String methodDeclaration;
+
+        private CompiledScript(String script, boolean isStatic, Object staticValue, String methodDeclaration) {
+            this.script = script;
+            this.isStatic = isStatic;
+            this.staticValue = staticValue;
+            this.methodDeclaration = methodDeclaration;
+        }
+
+        static CompiledScript compile(String script) {
+            String staticValue = parseStaticValue(script);
+            if (staticValue != null) {
+                return new CompiledScript(script, true, staticValue, null);
+            }
+            /**
+             * 最后一条语句不是 return 的脚本依赖解释器返回最后一条语句的值，包装成方法后语义不一致，只能解释执行
+             */
+            if (!endsWithReturn(script)) {
+                return new CompiledScript(script, false, null, null);
+            }
+            return new CompiledScript(script, false, null, SCRIPT_METHOD_NAME + "() {\n" + script + "\n}");
+        }
+
+        /**
+         * 解析形如 return "...";  的静态返回值脚本，常见于直接返回固定 JSON 的 mock
+         *
+         * @param script 脚本内容
+         * @return 返回的字符串常量，不是静态返回值脚本则返回 null
+         */
+        static String parseStaticValue(String script) {
+            int length = script.length();
+            int i = skipWhitespace(script, 0);
+            if (!script.startsWith("return", i)) {
+                return null;
+            }
+            i += 6;
+            int start = skipWhitespace(script, i);
+            if (start == i || start >= length || script.charAt(start) != '"') {
+                return null;
+            }
+            StringBuilder builder = new StringBuilder(length);
+            i = start + 1;
+            while (true) {
+                if (i >= length) {
+                    return null;
+                }
+                char c = script.charAt(i++);
+                if (c == '"') {
+                    break;
+                }
+                if (c == '\n' || c == '\r') {
+                    return null;
+                }
+                if (c != '\\') {
+                    builder.append(c);
+                    continue;
+                }
+                if (i >= length) {
+                    return null;
+                }
+                c = script.charAt(i++);
+                switch (c) {
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case '"':
+                    case '\'':
+                    case '\\':
+                        builder.append(c);
+                        break;
+                    default:
+                        /**
+                         * 其他转义(如 unicode、八进制)交给解释器处理
+                         */
+                        return null;
+                }
+            }
+            i = skipWhitespace(script, i);
+            if (i >= length || script.charAt(i) != ';') {
+                return null;
+            }
+            i = skipWhitespace(script, i + 1);
+            return i == length ? builder.toString() : null;
+        }
+
+        /**
+         * 脚本最后一条顶层语句是否为 return 语句，字符串、字符常量及注释中的内容不参与判断
+         *
+         * @param script 脚本内容
+         * @return 最后一条语句是 return 时返回 true
+         */
+        static boolean endsWithReturn(String script) {
+            int length = script.length();
+            int depth = 0;
+            /**
+             * inReturn: 正处于顶层的 return 语句中；returnEnded: 顶层 return 语句刚刚结束，之后只有空白或注释
+             */
+            boolean statementStart = true;
+            boolean inReturn = false;
+            boolean returnEnded = false;
+            int i = 0;
+            while (i < length) {
+                char c = script.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                    continue;
+                }
+                if (c == '/' && i + 1 < length && script.charAt(i + 1) == '/') {
+                    i = script.indexOf('\n', i);
+                    if (i == -1) {
+                        break;
+                    }
+                    continue;
+                }
+                if (c == '/' && i + 1 < length && script.charAt(i + 1) == '*') {
+                    i = script.indexOf("*/", i + 2);
+                    if (i == -1) {
+                        return false;
+                    }
+                    i += 2;
+                    continue;
+                }
+                /**
+                 * return 语句结束后又出现了其他内容
+                 */
+                returnEnded = false;
+                if (c == '"' || c == '\'') {
+                    i = skipLiteral(script, i, c);
+                    if (i == -1) {
+                        return false;
+                    }
+                    statementStart = false;
+                    continue;
+                }
+                if (Character.isJavaIdentifierStart(c)) {
+                    int end = i + 1;
+                    while (end < length && Character.isJavaIdentifierPart(script.charAt(end))) {
+                        end++;
+                    }
+                    if (statementStart && depth == 0 && end - i == 6 && script.startsWith("return", i)) {
+                        inReturn = true;
+                    }
+                    statementStart = false;
+                    i = end;
+                    continue;
+                }
+                switch (c) {
+                    case '(':
+                    case '[':
+                    case '{':
+                        depth++;
+                        statementStart = c == '{';
+                        break;
+                    case ')':
+                    case ']':
+                        depth--;
+                        statementStart = false;
+                        break;
+                    case '}':
+                        depth--;
+                        statementStart = true;
+                        break;
+                    case ';':
+                        statementStart = true;
+                        if (depth == 0 && inReturn) {
+                            inReturn = false;
+                            returnEnded = true;
+                        }
+                        break;
+                    default:
+                        statementStart = false;
+                }
+                i++;
+            }
+            return returnEnded;
+        }
+
+        /**
+         * 跳过字符串或字符常量
+         *
+         * @return 常量结束后的位置，常量没有结束时返回 -1
+         */
+        private static int skipLiteral(String script, int index, char quote) {
+            int i = index + 1;
+            while (i < script.length()) {
+                char c = script.charAt(i++);
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static int skipWhitespace(String script, int index) {
+            while (index < script.length() && Character.isWhitespace(script.charAt(index))) {
+                index++;
+            }
+            return index;
+        }
     }
 }
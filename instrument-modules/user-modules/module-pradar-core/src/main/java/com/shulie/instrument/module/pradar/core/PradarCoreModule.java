@@ -14,6 +14,8 @@
  */
 package com.shulie.instrument.module.pradar.core;
 
+import java.util.Map;
+
 import javax.annotation.Resource;
 
 import com.pamirs.pradar.Pradar;
@@ -34,6 +36,7 @@ import com.pamirs.pradar.pressurement.agent.shared.service.GlobalConfig;
 import com.pamirs.pradar.pressurement.agent.shared.util.PradarSpringUtil;
 import com.pamirs.pradar.pressurement.datasource.SqlParser;
 import com.pamirs.pradar.pressurement.datasource.util.SqlMetadataParser;
+import com.pamirs.pradar.scope.ScopeFactory;
 import com.pamirs.pradar.upload.uploader.AgentOnlineUploader;
 import com.pamirs.pradar.utils.MonitorCollector;
 import com.shulie.instrument.module.pradar.core.handler.DefaultExceptionHandler;
@@ -43,9 +46,11 @@ import com.shulie.instrument.module.pradar.core.handler.OnlySilenceExecutionTagS
 import com.shulie.instrument.module.pradar.core.service.DefaultGlobalConfigService;
 import com.shulie.instrument.module.pradar.core.service.DefaultPradarInternalService;
 import com.shulie.instrument.module.pradar.core.service.DefaultPradarService;
+import com.shulie.instrument.simulator.api.CommandResponse;
 import com.shulie.instrument.simulator.api.ExtensionModule;
 import com.shulie.instrument.simulator.api.ModuleInfo;
 import com.shulie.instrument.simulator.api.ModuleLifecycleAdapter;
+import com.shulie.instrument.simulator.api.annotation.Command;
 import com.shulie.instrument.simulator.api.resource.ModuleCommandInvoker;
 import com.shulie.instrument.simulator.message.Messager;
 import org.kohsuke.MetaInfServices;
@@ -129,6 +134,8 @@ public class PradarCoreModule extends ModuleLifecycleAdapter implements Extensio
             Messager.registerExecutionTagSupplier(new DefaultExecutionTagSupplier());
         }
 
+        SqlParser.init();
+
         monitorCollector = MonitorCollector.getInstance(simulatorConfig);
         monitorCollector.start();
 
@@ -139,6 +146,48 @@ public class PradarCoreModule extends ModuleLifecycleAdapter implements Extensio
         return true;
     }
 
+    /**
+     * 获取 sql 解析缓存的统计信息，包括各个缓存的命中、未命中、淘汰次数及解析耗时
+     *
+     * @param args
+     * @return
+     */
+    @Command("getSqlCacheStatistics")
+    public CommandResponse<Object> getSqlCacheStatistics(Map<String, String> args) {
+        CommandResponse<Object> commandResponse = new CommandResponse<Object>();
+        commandResponse.setSuccess(true);
+        commandResponse.setResult(SqlParser.getCacheStatistics());
+        return commandResponse;
+    }
+
+    /**
+     * 获取 http/rpc 白名单的匹配次数及耗时
+     *
+     * @param args
+     * @return
+     */
+    @Command("getWhiteListMatchStatistics")
+    public CommandResponse<Object> getWhiteListMatchStatistics(Map<String, String> args) {
+        CommandResponse<Object> commandResponse = new CommandResponse<Object>();
+        commandResponse.setSuccess(true);
+        commandResponse.setResult(ArbiterHttpExit.getMatchStatistics());
+        return commandResponse;
+    }
+
+    /**
+     * 获取 trace 采样频率及尾部采样的保留、丢弃统计
+     *
+     * @param args
+     * @return
+     */
+    @Command("getTraceSamplingStatistics")
+    public CommandResponse<Object> getTraceSamplingStatistics(Map<String, String> args) {
+        CommandResponse<Object> commandResponse = new CommandResponse<Object>();
+        commandResponse.setSuccess(true);
+        commandResponse.setResult(Pradar.getTraceSamplingStatistics());
+        return commandResponse;
+    }
+
     private void startDegradeDetect() {
         boolean isDocker = Pradar.isRunningInsideDocker();
         degradeDetect = new CombineResourceLimitDegradeDetect(
@@ -204,6 +253,7 @@ public class PradarCoreModule extends ModuleLifecycleAdapter implements Extensio
         ClassUtils.release();
         PradarSpringUtil.release();
         SqlMetadataParser.clear();
+        ScopeFactory.release();
         degradeDetect.stopDetect();
     }
 }
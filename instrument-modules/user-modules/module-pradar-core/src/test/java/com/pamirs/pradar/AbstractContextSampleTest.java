@@ -0,0 +1,170 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.pamirs.pradar.pressurement.agent.shared.service.GlobalConfig;
+import com.pamirs.pradar.pressurement.agent.shared.service.SimulatorDynamicConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * 校验 {@link AbstractContext} 的头部采样：调用链开始时确定一次，子上下文和异步上下文直接继承，
+ * 压测流量与调试流量的采样行为保持不变
+ */
+public class AbstractContextSampleTest {
+
+    private final static String SAMPLING_INTERVAL_KEY = "trace.samplingInterval";
+    private final static String CLUSTER_TEST_SAMPLING_INTERVAL_KEY = "trace.ct.samplingInterval";
+    private final static char[] IP = "6401a8c0".toCharArray();
+
+    /**
+     * Pradar 类加载时确定日志目录，在用到 Pradar 之前指向临时目录
+     */
+    @BeforeClass
+    public static void redirectPradarLogs() {
+        System.setProperty("SIMULATOR_LOG_PATH",
+            new File(System.getProperty("java.io.tmpdir"), "pradarlogs-test").getAbsolutePath());
+    }
+
+    @After
+    public void after() {
+        InvokeContext.set(null);
+        System.clearProperty(SAMPLING_INTERVAL_KEY);
+        System.clearProperty(CLUSTER_TEST_SAMPLING_INTERVAL_KEY);
+        GlobalConfig.getInstance().setSimulatorDynamicConfig(new SimulatorDynamicConfig(new HashMap<String, String>()));
+    }
+
+    @Test
+    public void testDecisionFixedForTrace() {
+        samplingInterval(10, 1);
+        final InvokeContext unsampled = start(11);
+        Assert.assertFalse(unsampled.isTraceSampled());
+        Assert.assertTrue(Pradar.isTraceUnsampled(unsampled));
+        final InvokeContext sampled = start(20);
+        Assert.assertTrue(sampled.isTraceSampled());
+        Assert.assertFalse(Pradar.isTraceUnsampled(sampled));
+
+        /**
+         * 调用链中途修改采样率不影响已经确定的结果
+         */
+        samplingInterval(1, 1);
+        Assert.assertFalse(unsampled.isTraceSampled());
+        samplingInterval(9999, 1);
+        Assert.assertTrue(sampled.isTraceSampled());
+
+        Assert.assertFalse(start(11).isTraceSampled());
+        samplingInterval(1, 1);
+        Assert.assertTrue(start(11).isTraceSampled());
+    }
+
+    @Test
+    public void testChildInheritDecision() throws CloneNotSupportedException {
+        samplingInterval(10, 1);
+        final InvokeContext root = start(11);
+        Assert.assertFalse(root.isTraceSampled());
+
+        samplingInterval(1, 1);
+        final InvokeContext child = root.createChildInvoke();
+        final InvokeContext grandChild = child.createChildInvoke();
+        final InvokeContext async = (InvokeContext) root.clone();
+        final InvokeContext copy = root.cloneInstance();
+        for (InvokeContext ctx : new InvokeContext[] {child, grandChild, async, copy}) {
+            Assert.assertEquals(root.getTraceId(), ctx.getTraceId());
+            Assert.assertFalse(ctx.isTraceSampled());
+            Assert.assertTrue(Pradar.isTraceUnsampled(ctx));
+        }
+
+        final InvokeContext sampledRoot = start(20);
+        samplingInterval(10, 1);
+        Assert.assertTrue(sampledRoot.isTraceSampled());
+        samplingInterval(9999, 1);
+        Assert.assertTrue(sampledRoot.createChildInvoke().isTraceSampled());
+        Assert.assertTrue(((InvokeContext) sampledRoot.clone()).isTraceSampled());
+    }
+
+    @Test
+    public void testUndecidedParent() {
+        samplingInterval(10, 1);
+        final InvokeContext root = new InvokeContext(traceId(11), "app", Pradar.ROOT_INVOKE_ID);
+        final InvokeContext child = root.createChildInvoke();
+        samplingInterval(1, 1);
+        Assert.assertTrue(child.isTraceSampled());
+    }
+
+    @Test
+    public void testClusterTestDecision() {
+        samplingInterval(10, 1);
+        final InvokeContext ctx = start(11);
+        ctx.setClusterTest(true);
+        Assert.assertTrue(ctx.isTraceSampled());
+        Assert.assertFalse(Pradar.isTraceUnsampled(ctx));
+
+        /**
+         * 压测流量使用压测采样率，与业务流量的结果分开记录
+         */
+        samplingInterval(1, 10);
+        final InvokeContext clusterTest = start(11);
+        clusterTest.setClusterTest(true);
+        Assert.assertFalse(clusterTest.isTraceSampled());
+        Assert.assertFalse(Pradar.isTraceUnsampled(clusterTest));
+        samplingInterval(1, 1);
+        Assert.assertFalse(clusterTest.isTraceSampled());
+        Assert.assertFalse(clusterTest.createChildInvoke().isTraceSampled());
+
+        clusterTest.setClusterTest(false);
+        Assert.assertTrue(clusterTest.isTraceSampled());
+    }
+
+    @Test
+    public void testDebugAlwaysSampled() {
+        samplingInterval(10, 10);
+        final InvokeContext ctx = start(11);
+        ctx.setDebug(true);
+        Assert.assertTrue(ctx.isTraceSampled());
+        Assert.assertFalse(Pradar.isTraceUnsampled(ctx));
+        ctx.setClusterTest(true);
+        Assert.assertTrue(ctx.isTraceSampled());
+
+        ctx.setDebug(false);
+        ctx.setClusterTest(false);
+        Assert.assertFalse(ctx.isTraceSampled());
+    }
+
+    /**
+     * 创建调用链的根上下文并设置为当前线程的上下文
+     */
+    private static InvokeContext start(int nextId) {
+        final InvokeContext ctx = new InvokeContext(traceId(nextId), "app", Pradar.ROOT_INVOKE_ID);
+        InvokeContext.set(ctx);
+        return ctx;
+    }
+
+    private static String traceId(int nextId) {
+        return TraceIdGenerator.getTraceId(IP, System.currentTimeMillis(), nextId, 0);
+    }
+
+    private static void samplingInterval(int samplingInterval, int clusterTestSamplingInterval) {
+        final Map<String, String> config = new HashMap<String, String>();
+        config.put(SAMPLING_INTERVAL_KEY, String.valueOf(samplingInterval));
+        config.put(CLUSTER_TEST_SAMPLING_INTERVAL_KEY, String.valueOf(clusterTestSamplingInterval));
+        GlobalConfig.getInstance().setSimulatorDynamicConfig(new SimulatorDynamicConfig(config));
+    }
+}
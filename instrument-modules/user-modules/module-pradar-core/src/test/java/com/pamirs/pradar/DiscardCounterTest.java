@@ -0,0 +1,60 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 验证 {@link DiscardCounter} 多线程累加后汇总不丢计数，汇总后清零
+ */
+public class DiscardCounterTest {
+
+    @Test
+    public void sumAcrossThreadsThenReset() throws Exception {
+        final DiscardCounter counter = new DiscardCounter(4);
+        final int threads = 8;
+        final int perThread = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int n = 0; n < perThread; n++) {
+                        counter.increment();
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        Assert.assertEquals((long) threads * perThread, counter.sumThenReset());
+        Assert.assertEquals(0L, counter.sumThenReset());
+        counter.increment();
+        Assert.assertEquals(1L, counter.sumThenReset());
+    }
+}
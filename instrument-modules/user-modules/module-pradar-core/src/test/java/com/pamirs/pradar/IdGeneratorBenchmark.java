@@ -0,0 +1,129 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 每个入口请求生成 traceId、每个出口调用生成子调用 ID 的开销
+ * <p>
+ * legacyTraceId 还原了改造前的拼接方式：StringBuilder 依次追加 ip、时间戳、补 0 后的 nextId、pid 和采样率，
+ * 补 0 本身又会产生临时字符串；traceId 调用 {@link TraceIdGenerator#getTraceId(char[], long, int, int)}，
+ * 在线程内复用的字符数组里按位写入，只在最后创建一次 String。
+ * <p>
+ * 子调用 ID 分三种情况：legacyChildInvokeId 是原先每次都拼接的 父ID.序号；childInvokeId 只创建记录父节点和序号的
+ * {@link InvokeId}，对应没有透传、也没有打印日志的本地调用；childInvokeIdToString 在此基础上再转换成字符串，
+ * 对应需要透传的 RPC 调用，这一项与 legacyChildInvokeId 接近才说明延迟转换没有带来额外开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    private final static String IP_16 = "6401a8c0";
+    private final static String PID = "2f1a";
+    private final static int SAMPLING_INTERVAL = 10;
+
+    private char[] ip;
+    private int nextId;
+    private String legacyParentInvokeId;
+    private InvokeId parentInvokeId;
+    private AtomicInteger childInvokeIdx;
+
+    @Setup
+    public void setup() {
+        ip = IP_16.toCharArray();
+        legacyParentInvokeId = "0.1.2";
+        parentInvokeId = InvokeId.of("0").child(1).child(2);
+        childInvokeIdx = new AtomicInteger();
+    }
+
+    @Benchmark
+    public String legacyTraceId() {
+        StringBuilder appender = new StringBuilder(32);
+        appender.append(IP_16).append(System.currentTimeMillis()).append(legacyNextIdStr(nextId())).append('d')
+            .append(PID).append(legacySamplingInterval(SAMPLING_INTERVAL));
+        return appender.toString();
+    }
+
+    @Benchmark
+    public String traceId() {
+        return TraceIdGenerator.getTraceId(ip, System.currentTimeMillis(), nextId(), SAMPLING_INTERVAL);
+    }
+
+    @Benchmark
+    public String legacyChildInvokeId() {
+        return legacyParentInvokeId + "." + childInvokeIdx.incrementAndGet();
+    }
+
+    @Benchmark
+    public InvokeId childInvokeId() {
+        return parentInvokeId.child(childInvokeIdx.incrementAndGet());
+    }
+
+    @Benchmark
+    public String childInvokeIdToString() {
+        return parentInvokeId.child(childInvokeIdx.incrementAndGet()).toString();
+    }
+
+    private int nextId() {
+        nextId = nextId >= 9999 ? 1 : nextId + 1;
+        return nextId;
+    }
+
+    private static String legacyNextIdStr(int nextId) {
+        if (nextId > 1000) {
+            return String.valueOf(nextId);
+        }
+        if (nextId > 100) {
+            return "0" + nextId;
+        }
+        if (nextId > 10) {
+            return "00" + nextId;
+        }
+        return "000" + nextId;
+    }
+
+    private static String legacySamplingInterval(int samplingInterval) {
+        if (samplingInterval < 0 || samplingInterval > 10000) {
+            return "0000";
+        }
+        if (samplingInterval < 10) {
+            return "000" + samplingInterval;
+        }
+        if (samplingInterval < 100) {
+            return "00" + samplingInterval;
+        }
+        if (samplingInterval < 1000) {
+            return "0" + samplingInterval;
+        }
+        return samplingInterval + "";
+    }
+}
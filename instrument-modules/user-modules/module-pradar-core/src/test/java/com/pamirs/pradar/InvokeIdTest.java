@@ -0,0 +1,86 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 校验 {@link InvokeId} 转换出的字符串与改造前 父ID + "." + 序号 的拼接结果一致
+ */
+public class InvokeIdTest {
+
+    @Test
+    public void testOf() {
+        Assert.assertNull(InvokeId.of(null));
+        final InvokeId invokeId = InvokeId.of("0.1.2");
+        Assert.assertEquals("0.1.2", invokeId.toString());
+        Assert.assertEquals(5, invokeId.length());
+        Assert.assertTrue(invokeId.is("0.1.2"));
+        Assert.assertFalse(invokeId.is("0.1.3"));
+        Assert.assertFalse(invokeId.is("0.1"));
+        Assert.assertFalse(invokeId.is(null));
+    }
+
+    @Test
+    public void testChildSameAsLegacy() {
+        InvokeId invokeId = InvokeId.of(Pradar.ROOT_INVOKE_ID);
+        String legacy = Pradar.ROOT_INVOKE_ID;
+        final int[] indexes = new int[] {1, 9, 10, 11, 99, 100, 12345, Integer.MAX_VALUE};
+        for (int index : indexes) {
+            invokeId = invokeId.child(index);
+            legacy = legacy + "." + index;
+            Assert.assertEquals(legacy.length(), invokeId.length());
+            Assert.assertTrue(invokeId.is(legacy));
+            Assert.assertEquals(legacy, invokeId.toString());
+        }
+    }
+
+    @Test
+    public void testChildOfRenderedParent() {
+        final InvokeId parent = InvokeId.of("0").child(3);
+        Assert.assertEquals("0.3", parent.toString());
+        final InvokeId child = parent.child(5);
+        Assert.assertEquals("0.3.5", child.toString());
+        Assert.assertSame(child.toString(), child.toString());
+        Assert.assertEquals("0.3.5.7", child.child(7).toString());
+    }
+
+    @Test
+    public void testNegativeIndex() {
+        final InvokeId child = InvokeId.of("0.1").child(-1);
+        Assert.assertEquals("0.1" + "." + -1, child.toString());
+        Assert.assertEquals("0.1.-1".length(), child.length());
+    }
+
+    @Test
+    public void testContextOverloads() {
+        final InvokeContext fromString = new InvokeContext("traceId", "app", "0.1.2", null);
+        final InvokeContext fromInvokeId = new InvokeContext("traceId", "app", InvokeId.of("0").child(1).child(2), null);
+        Assert.assertEquals("0.1.2", fromString.getInvokeId());
+        Assert.assertEquals(fromString.getInvokeId(), fromInvokeId.getInvokeId());
+        Assert.assertNull(new InvokeContext("traceId", "app", (String) null, null).getInvokeId());
+    }
+
+    @Test
+    public void testBlankInvokeIdNotPropagated() {
+        Assert.assertEquals("0.1",
+            new InvokeContext("traceId", "app", "0.1", null).toMap().get(PradarService.PRADAR_INVOKE_ID_KEY));
+        Assert.assertFalse(new InvokeContext("traceId", "app", " ", null).toMap()
+            .containsKey(PradarService.PRADAR_INVOKE_ID_KEY));
+        Assert.assertFalse(new InvokeContext("traceId", "app", "", null).toMap()
+            .containsKey(PradarService.PRADAR_INVOKE_ID_KEY));
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * 在生成的 jar 包目录上验证 {@link JarInventory} 的增量扫描
+ */
+public class JarInventoryTest {
+
+    private final static int JAR_COUNT = 50;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File jarDir;
+    private File indexFile;
+    private Set<String> jarPaths;
+
+    @Before
+    public void setup() throws IOException {
+        jarDir = folder.newFolder("lib");
+        indexFile = new File(folder.getRoot(), "inventory/app.idx");
+        jarPaths = new HashSet<String>();
+        for (int i = 0; i < JAR_COUNT; i++) {
+            jarPaths.add(writeJar("lib" + i + "-1.0." + i + ".jar", "com.example", "lib" + i, "1.0." + i).getPath());
+        }
+        /**
+         * 没有 pom.properties 的 jar 包从名字中解析，不带版本号的 jar 包不扫描
+         */
+        jarPaths.add(writeJar("plain-2.3.jar", null, null, null).getPath());
+        jarPaths.add(writeJar("noversion.jar", "com.example", "noversion", "1.0").getPath());
+    }
+
+    @Test
+    public void sameResultAsFullScan() {
+        Set<String> result = new JarInventory(indexFile).scan(jarPaths);
+        Assert.assertEquals(ScanJarPomUtils.scanByJarPaths(jarPaths), result);
+        Assert.assertEquals(JAR_COUNT + 1, result.size());
+        Assert.assertTrue(result.contains("com.example:lib7:1.0.7"));
+        Assert.assertTrue(result.contains(":plain:2.3"));
+    }
+
+    @Test
+    public void reuseUnchangedJarsAcrossRestarts() {
+        JarInventory inventory = new JarInventory(indexFile);
+        Set<String> first = inventory.scan(jarPaths);
+        Assert.assertEquals(JAR_COUNT + 1, inventory.getLastRescanCount());
+        Assert.assertTrue(indexFile.isFile());
+
+        Set<String> second = inventory.scan(jarPaths);
+        Assert.assertEquals(0, inventory.getLastRescanCount());
+        Assert.assertEquals(JAR_COUNT + 1, inventory.getLastReuseCount());
+        Assert.assertEquals(first, second);
+
+        JarInventory restarted = new JarInventory(indexFile);
+        Assert.assertEquals(first, restarted.scan(jarPaths));
+        Assert.assertEquals(0, restarted.getLastRescanCount());
+        Assert.assertEquals(JAR_COUNT + 1, restarted.getLastTotalCount());
+    }
+
+    @Test
+    public void rescanChangedAndNewJars() throws IOException {
+        new JarInventory(indexFile).scan(jarPaths);
+
+        File changed = writeJar("lib3-1.0.3.jar", "com.example", "lib3-patched", "1.0.3");
+        changed.setLastModified(changed.lastModified() + 2000L);
+        jarPaths.add(writeJar("extra-9.9.jar", "com.example", "extra", "9.9").getPath());
+
+        JarInventory inventory = new JarInventory(indexFile);
+        Set<String> result = inventory.scan(jarPaths);
+        Assert.assertEquals(2, inventory.getLastRescanCount());
+        Assert.assertTrue(result.contains("com.example:lib3-patched:1.0.3"));
+        Assert.assertFalse(result.contains("com.example:lib3:1.0.3"));
+        Assert.assertTrue(result.contains("com.example:extra:9.9"));
+        Assert.assertEquals(ScanJarPomUtils.scanByJarPaths(jarPaths), result);
+    }
+
+    @Test
+    public void dropRemovedJars() {
+        JarInventory inventory = new JarInventory(indexFile);
+        inventory.scan(jarPaths);
+
+        String removed = new File(jarDir, "lib0-1.0.0.jar").getPath();
+        jarPaths.remove(removed);
+        Set<String> result = inventory.scan(jarPaths);
+        Assert.assertFalse(result.contains("com.example:lib0:1.0.0"));
+        Assert.assertEquals(JAR_COUNT, inventory.getLastTotalCount());
+
+        jarPaths.add(removed);
+        inventory.scan(jarPaths);
+        Assert.assertEquals(1, inventory.getLastRescanCount());
+    }
+
+    @Test
+    public void ignoreBrokenIndexFile() throws IOException {
+        indexFile.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(indexFile);
+        try {
+            out.write("not an inventory".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        JarInventory inventory = new JarInventory(indexFile);
+        Assert.assertEquals(ScanJarPomUtils.scanByJarPaths(jarPaths), inventory.scan(jarPaths));
+        Assert.assertEquals(JAR_COUNT + 1, inventory.getLastRescanCount());
+    }
+
+    @Test(timeout = 30000L)
+    public void concurrentSavesKeepIndexIntact() throws Exception {
+        /**
+         * 模拟同一台机器上同一应用的多个进程同时扫描并保存索引
+         */
+        final int writers = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[writers];
+        for (int i = 0; i < writers; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int round = 0; round < 5; round++) {
+                            new JarInventory(indexFile).scan(jarPaths);
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(error.get());
+
+        JarInventory inventory = new JarInventory(indexFile);
+        Assert.assertEquals(ScanJarPomUtils.scanByJarPaths(jarPaths), inventory.scan(jarPaths));
+        Assert.assertEquals(0, inventory.getLastRescanCount());
+        Assert.assertEquals(JAR_COUNT + 1, inventory.getLastReuseCount());
+        String[] names = indexFile.getParentFile().list();
+        Assert.assertEquals(1, names.length);
+        Assert.assertEquals(indexFile.getName(), names[0]);
+    }
+
+    private File writeJar(String name, String groupId, String artifactId, String version) throws IOException {
+        File jar = new File(jarDir, name);
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            out.putNextEntry(new JarEntry("com/example/Placeholder.class"));
+            out.write(new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE});
+            out.closeEntry();
+            if (groupId != null) {
+                out.putNextEntry(new JarEntry("META-INF/maven/" + groupId + "/" + artifactId + "/pom.properties"));
+                out.write(("groupId=" + groupId + "\nartifactId=" + artifactId + "\nversion=" + version + "\n")
+                    .getBytes("UTF-8"));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,316 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * 验证 {@link LogRingBuffer} 多生产者发布的顺序、写满后的回绕与拒绝，以及各个等待策略下
+ * {@link AsyncAppender#flushAndWait()} 返回时日志都已经写出，以及丢弃计数写入 monitor 日志的格式
+ */
+public class LogRingBufferTest {
+
+    private final static String[] WAIT_STRATEGIES = new String[] {
+        LogRingBuffer.WAIT_STRATEGY_BLOCKING,
+        LogRingBuffer.WAIT_STRATEGY_SLEEPING,
+        LogRingBuffer.WAIT_STRATEGY_YIELDING
+    };
+
+    /**
+     * 丢弃计数的 monitor 日志会用到 Pradar，日志目录指向临时目录
+     */
+    @BeforeClass
+    public static void redirectPradarLogs() {
+        System.setProperty("SIMULATOR_LOG_PATH",
+            new File(System.getProperty("java.io.tmpdir"), "pradarlogs-test").getAbsolutePath());
+    }
+
+    @Test
+    public void capacityRoundsUpToPowerOfTwo() {
+        Assert.assertEquals(8, new LogRingBuffer(5, newWaitStrategy()).capacity());
+        Assert.assertEquals(8, new LogRingBuffer(8, newWaitStrategy()).capacity());
+    }
+
+    @Test
+    public void multiProducerPublishAndConsume() throws Exception {
+        final int producers = 4;
+        final int perProducer = 20000;
+        final LogRingBuffer ringBuffer = new LogRingBuffer(64, newWaitStrategy());
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[producers];
+        for (int i = 0; i < producers; i++) {
+            final int producer = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int seq = 0; seq < perProducer; seq++) {
+                        /**
+                         * 队列满时生产者自行重试，保证每条日志都能发布
+                         */
+                        while (!ringBuffer.tryPublish(new long[] {producer, seq})) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            }, "producer-" + i);
+            threads[i].start();
+        }
+
+        final int[] nextSeq = new int[producers];
+        final AtomicInteger consumed = new AtomicInteger();
+        final LogRingBuffer.EventHandler handler = new LogRingBuffer.EventHandler() {
+            @Override
+            public void onEvent(Object event) {
+                final long[] value = (long[]) event;
+                final int producer = (int) value[0];
+                Assert.assertEquals("producer " + producer, nextSeq[producer], value[1]);
+                nextSeq[producer]++;
+                consumed.incrementAndGet();
+            }
+        };
+
+        start.countDown();
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        int idleRounds = 0;
+        while (consumed.get() < producers * perProducer && System.currentTimeMillis() < deadline) {
+            if (ringBuffer.drain(handler, 16) > 0) {
+                idleRounds = 0;
+                Assert.assertTrue(ringBuffer.size() <= ringBuffer.capacity());
+            } else {
+                ringBuffer.waitFor(idleRounds++);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(producers * perProducer, consumed.get());
+        for (int i = 0; i < producers; i++) {
+            Assert.assertEquals(perProducer, nextSeq[i]);
+        }
+        Assert.assertEquals(0, ringBuffer.size());
+    }
+
+    @Test
+    public void wrapAroundAtCapacity() throws Exception {
+        final LogRingBuffer ringBuffer = new LogRingBuffer(8, newWaitStrategy());
+        final List<Object> consumed = new ArrayList<Object>();
+        final LogRingBuffer.EventHandler handler = collect(consumed);
+
+        /**
+         * 每轮写入的条数与容量互质，写入位置会落在所有槽位上并多次回绕
+         */
+        int next = 0;
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 5; i++) {
+                Assert.assertTrue(ringBuffer.tryPublish(next++));
+            }
+            Assert.assertEquals(5, ringBuffer.drain(handler, Integer.MAX_VALUE));
+        }
+
+        Assert.assertEquals(next, consumed.size());
+        for (int i = 0; i < next; i++) {
+            Assert.assertEquals(i, consumed.get(i));
+        }
+        Assert.assertEquals(0, ringBuffer.size());
+    }
+
+    @Test
+    public void rejectWhenFull() throws Exception {
+        final LogRingBuffer ringBuffer = new LogRingBuffer(4, newWaitStrategy());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(ringBuffer.tryPublish(i));
+        }
+        Assert.assertFalse(ringBuffer.tryPublish(4));
+        Assert.assertEquals(4, ringBuffer.size());
+
+        final List<Object> consumed = new ArrayList<Object>();
+        Assert.assertEquals(1, ringBuffer.drain(collect(consumed), 1));
+        Assert.assertTrue(ringBuffer.tryPublish(5));
+        Assert.assertFalse(ringBuffer.tryPublish(6));
+
+        Assert.assertEquals(4, ringBuffer.drain(collect(consumed), Integer.MAX_VALUE));
+        Assert.assertEquals(5, consumed.size());
+        Assert.assertEquals(0, consumed.get(0));
+        Assert.assertEquals(5, consumed.get(4));
+    }
+
+    @Test
+    public void rejectWhileHandlerIsRunning() throws Exception {
+        final LogRingBuffer ringBuffer = new LogRingBuffer(2, newWaitStrategy());
+        Assert.assertTrue(ringBuffer.tryPublish("a"));
+        Assert.assertTrue(ringBuffer.tryPublish("b"));
+        final AtomicBoolean publishedInHandler = new AtomicBoolean(true);
+        ringBuffer.drain(new LogRingBuffer.EventHandler() {
+            @Override
+            public void onEvent(Object event) {
+                /**
+                 * 处理器返回前槽位仍然被占用
+                 */
+                publishedInHandler.set(ringBuffer.tryPublish("c"));
+            }
+        }, 1);
+        Assert.assertFalse(publishedInHandler.get());
+        Assert.assertEquals(1, ringBuffer.size());
+    }
+
+    @Test
+    public void skipEventWhenHandlerFails() throws Exception {
+        final LogRingBuffer ringBuffer = new LogRingBuffer(4, newWaitStrategy());
+        Assert.assertTrue(ringBuffer.tryPublish("bad"));
+        Assert.assertTrue(ringBuffer.tryPublish("good"));
+        try {
+            ringBuffer.drain(new LogRingBuffer.EventHandler() {
+                @Override
+                public void onEvent(Object event) throws IOException {
+                    throw new IOException("disk full");
+                }
+            }, Integer.MAX_VALUE);
+            Assert.fail();
+        } catch (IOException expected) {
+        }
+        final List<Object> consumed = new ArrayList<Object>();
+        Assert.assertEquals(1, ringBuffer.drain(collect(consumed), Integer.MAX_VALUE));
+        Assert.assertEquals("good", consumed.get(0));
+    }
+
+    @Test
+    public void flushAndWaitUnderEachWaitStrategy() throws Exception {
+        for (String waitStrategy : WAIT_STRATEGIES) {
+            final CollectingAppender target = new CollectingAppender();
+            final AsyncAppender appender = new AsyncAppender(1024, 16, waitStrategy);
+            appender.start(target, null, "test-" + waitStrategy);
+            try {
+                /**
+                 * 先让消费者进入等待，日志数远小于唤醒阈值，阻塞策略下只能靠 flushAndWait 唤醒
+                 */
+                Thread.sleep(50);
+                for (int round = 0; round < 3; round++) {
+                    for (int i = 0; i < 100; i++) {
+                        appender.append(waitStrategy + "-" + (round * 100 + i));
+                    }
+                    final long begin = System.currentTimeMillis();
+                    appender.flushAndWait();
+
+                    Assert.assertTrue(waitStrategy, System.currentTimeMillis() - begin < 500);
+                    Assert.assertEquals(waitStrategy, 0, appender.size());
+                    final List<String> lines = target.lines();
+                    Assert.assertEquals(waitStrategy, (round + 1) * 100, lines.size());
+                    for (int i = 0; i < lines.size(); i++) {
+                        Assert.assertEquals(waitStrategy + "-" + i, lines.get(i));
+                    }
+                    Assert.assertTrue(waitStrategy, target.flushCount() > round);
+                }
+            } finally {
+                appender.close();
+            }
+        }
+    }
+
+    @Test
+    public void drainDiscardCountsIntoMonitorLog() {
+        /**
+         * 不启动消费者，队列写满后各类生产者的日志都会被丢弃
+         */
+        final AsyncAppender appender = new AsyncAppender(2, 16, LogRingBuffer.WAIT_STRATEGY_BLOCKING);
+        Assert.assertNull(appender.drainDiscardLog(1000L));
+        appender.append("a");
+        appender.append("b");
+        appender.append("c");
+        appender.append("d");
+        Assert.assertFalse(appender.append(new InvokeContext("c0a801641630000000000100012f1a", "demo-app", "0")));
+        Assert.assertFalse(appender.append(AsyncAppender.EVENT_LOG_FLUSH));
+
+        final String discardLog = appender.drainDiscardLog(1000L);
+        Assert.assertTrue(discardLog.endsWith(PradarCoreUtils.NEWLINE));
+        final String[] fields = discardLog.trim().split("\\|");
+        Assert.assertEquals(11, fields.length);
+        Assert.assertEquals(AsyncAppender.DISCARD_LOG_TYPE, fields[3]);
+        Assert.assertEquals("1000", fields[5]);
+        Assert.assertEquals("1", fields[6]);
+        Assert.assertEquals("2", fields[7]);
+        Assert.assertEquals("1", fields[8]);
+        Assert.assertEquals("2", fields[9]);
+        Assert.assertNull(appender.drainDiscardLog(1000L));
+    }
+
+    private static LogRingBuffer.WaitStrategy newWaitStrategy() {
+        return LogRingBuffer.newWaitStrategy(LogRingBuffer.WAIT_STRATEGY_YIELDING, 1);
+    }
+
+    private static LogRingBuffer.EventHandler collect(final List<Object> consumed) {
+        return new LogRingBuffer.EventHandler() {
+            @Override
+            public void onEvent(Object event) {
+                consumed.add(event);
+            }
+        };
+    }
+
+    private static class CollectingAppender extends PradarAppender {
+        private final List<String> lines = new ArrayList<String>();
+        private int flushCount;
+
+        synchronized List<String> lines() {
+            return new ArrayList<String>(lines);
+        }
+
+        synchronized int flushCount() {
+            return flushCount;
+        }
+
+        @Override
+        public synchronized void append(String log) {
+            lines.add(log);
+        }
+
+        @Override
+        public synchronized void flush() {
+            flushCount++;
+        }
+
+        @Override
+        public void rollOver() {
+        }
+
+        @Override
+        public void reload() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void cleanup() {
+        }
+    }
+}
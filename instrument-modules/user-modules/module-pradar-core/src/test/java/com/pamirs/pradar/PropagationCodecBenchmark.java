@@ -0,0 +1,104 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.pamirs.pradar.interceptor.ContextTransfer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Dubbo 等 RPC 插件在一次出口调用中把调用上下文写入 attachment 的开销，上下文为压测流量并带有上游应用名
+ * <p>
+ * legacyTransformMap 使用 {@link PropagationCodecTest#legacyTransformMap(InvokeContext)} 还原的改造前
+ * Pradar.getInvokeContextTransformMap() 的做法：toMap 构造完整的上下文 Map，
+ * 再补充本机 IP、线程 ID 等字段，最后用 List.contains 逐个移除非透传字段。
+ * transformMap 对应还在使用 Map 接口的插件，{@link PropagationCodec} 只写出透传字段，但仍要经过一个中间 Map。
+ * inject 对应已经改为直接写入载体的插件，没有中间 Map
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropagationCodecBenchmark {
+
+    private InvokeContext ctx;
+
+    /**
+     * 模拟 Dubbo invocation 上已有的 attachment
+     */
+    private Map<String, String> attachments;
+
+    private ContextTransfer carrier;
+
+    @Setup
+    public void setup() {
+        ctx = new InvokeContext("c0a801641630000000000100012f1a", "demo-app", "0.1.2");
+        ctx.setClusterTest(true);
+        ctx.setUpAppName("upstream-app");
+        attachments = new HashMap<String, String>(32);
+        carrier = new ContextTransfer() {
+            @Override
+            public void transfer(String key, String value) {
+                attachments.put(key, value);
+            }
+        };
+    }
+
+    @Benchmark
+    public Object legacyTransformMap() {
+        attachments.clear();
+        for (Map.Entry<String, String> entry : PropagationCodecTest.legacyTransformMap(ctx).entrySet()) {
+            carrier.transfer(entry.getKey(), entry.getValue());
+        }
+        return attachments;
+    }
+
+    @Benchmark
+    public Object transformMap() {
+        attachments.clear();
+        final Map<String, String> map = new HashMap<String, String>(16);
+        PropagationCodec.inject(ctx, new ContextTransfer() {
+            @Override
+            public void transfer(String key, String value) {
+                map.put(key, value);
+            }
+        });
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            carrier.transfer(entry.getKey(), entry.getValue());
+        }
+        return attachments;
+    }
+
+    @Benchmark
+    public Object inject() {
+        attachments.clear();
+        PropagationCodec.inject(ctx, carrier);
+        return attachments;
+    }
+}
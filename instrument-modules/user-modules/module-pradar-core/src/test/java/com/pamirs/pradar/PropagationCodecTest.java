@@ -0,0 +1,197 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.pamirs.pradar.interceptor.ContextTransfer;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * 校验 {@link PropagationCodec} 写入载体的 key 和值与改造前的 Pradar.getInvokeContextTransformMap() 完全一致
+ */
+public class PropagationCodecTest {
+
+    private final static String APP_NAME_KEY = "simulator.app.name";
+
+    /**
+     * 应用名为空时会打日志，日志目录指向临时目录
+     */
+    @BeforeClass
+    public static void redirectPradarLogs() {
+        System.setProperty("SIMULATOR_LOG_PATH",
+            new File(System.getProperty("java.io.tmpdir"), "pradarlogs-test").getAbsolutePath());
+    }
+
+    @Test
+    public void testClusterTestContext() {
+        InvokeContext ctx = new InvokeContext("c0a801641630000000000100012f1a", "demo-app", "0.1.2");
+        ctx.setClusterTest(true);
+        ctx.setUpAppName("upstream-app");
+        assertSameAsLegacy(ctx);
+        Assert.assertEquals(Pradar.PRADAR_CLUSTER_TEST_ON, inject(ctx).get(PradarService.PRADAR_CLUSTER_TEST_KEY));
+    }
+
+    @Test
+    public void testDebugContext() {
+        InvokeContext ctx = new InvokeContext("c0a801641630000000000100012f1a", null, "0.1");
+        ctx.setDebug(true);
+        assertSameAsLegacy(ctx);
+        Assert.assertEquals(Pradar.PRADAR_DEBUG_ON, inject(ctx).get(PradarService.PRADAR_DEBUG_KEY));
+    }
+
+    @Test
+    public void testUpAppNameWithBlankAppName() {
+        final String appName = System.getProperty(APP_NAME_KEY);
+        System.setProperty(APP_NAME_KEY, " ");
+        AppNameUtils.reset();
+        try {
+            InvokeContext ctx = new InvokeContext("c0a801641630000000000100012f1a", "demo-app", "0.1.2");
+            ctx.setUpAppName("upstream-app");
+            assertSameAsLegacy(ctx);
+            Assert.assertEquals("upstream-app", inject(ctx).get(PradarService.PRADAR_UPSTREAM_APPNAME_KEY));
+        } finally {
+            restoreAppName(appName);
+        }
+    }
+
+    @Test
+    public void testAppNameCachedOnceNotBlank() {
+        final String appName = System.getProperty(APP_NAME_KEY);
+        System.setProperty(APP_NAME_KEY, " ");
+        AppNameUtils.reset();
+        try {
+            Assert.assertEquals(" ", AppNameUtils.appName());
+            System.setProperty(APP_NAME_KEY, "first-app");
+            Assert.assertEquals("first-app", AppNameUtils.appName());
+            System.setProperty(APP_NAME_KEY, "second-app");
+            Assert.assertEquals("first-app", AppNameUtils.appName());
+            Assert.assertEquals("first-app",
+                inject(new InvokeContext("c0a801641630000000000100012f1a", null, "0.1"))
+                    .get(PradarService.PRADAR_REMOTE_APPNAME_KEY));
+        } finally {
+            restoreAppName(appName);
+        }
+    }
+
+    private static void restoreAppName(String appName) {
+        if (appName == null) {
+            System.clearProperty(APP_NAME_KEY);
+        } else {
+            System.setProperty(APP_NAME_KEY, appName);
+        }
+        AppNameUtils.reset();
+    }
+
+    @Test
+    public void testEmptyInvokeId() {
+        assertSameAsLegacy(new InvokeContext("c0a801641630000000000100012f1a", "demo-app", ""));
+        assertSameAsLegacy(new InvokeContext("c0a801641630000000000100012f1a", "demo-app", " "));
+        Assert.assertFalse(inject(new InvokeContext("c0a801641630000000000100012f1a", "demo-app", " "))
+            .containsKey(PradarService.PRADAR_INVOKE_ID_KEY));
+    }
+
+    @Test
+    public void testNoContext() {
+        Assert.assertNull(InvokeContext.get());
+        final Map<String, String> attachments = new HashMap<String, String>();
+        PropagationCodec.inject(new MapTransfer(attachments));
+        Assert.assertEquals(legacyTransformMap(null), attachments);
+        Assert.assertTrue(attachments.isEmpty());
+    }
+
+    /**
+     * 编码写入的 key 必须在传输字段列表内，传输字段列表新增了上下文会导出的 key 时需要同步修改编码
+     */
+    @Test
+    public void testKeysMatchTransformKeys() {
+        InvokeContext ctx = new InvokeContext("c0a801641630000000000100012f1a", "demo-app", "0.1.2");
+        ctx.putUserData("k", "v");
+        ctx.setUpAppName("upstream-app");
+        final Set<String> injected = inject(ctx).keySet();
+        Assert.assertTrue(Pradar.getInvokeContextTransformKeys().containsAll(injected));
+
+        final Set<String> notInjected = new HashSet<String>(Pradar.getInvokeContextTransformKeys());
+        notInjected.removeAll(injected);
+        final Set<String> expected = new HashSet<String>();
+        expected.add(PradarService.PRADAR_TRACE_NODE_KEY);
+        expected.add(PradarService.PRADAR_WHITE_LIST_CHECK);
+        Assert.assertEquals(expected, notInjected);
+    }
+
+    private static void assertSameAsLegacy(InvokeContext ctx) {
+        Assert.assertEquals(legacyTransformMap(ctx), inject(ctx));
+    }
+
+    private static Map<String, String> inject(InvokeContext ctx) {
+        final Map<String, String> attachments = new HashMap<String, String>();
+        PropagationCodec.inject(ctx, new MapTransfer(attachments));
+        return attachments;
+    }
+
+    /**
+     * 改造前 Pradar.getInvokeContextMap() 加上 Pradar.getInvokeContextTransformMap() 的实现
+     *
+     * @param invokeContext 调用上下文，为 null 时对应当前线程上没有调用上下文
+     * @return 透传字段
+     */
+    static Map<String, String> legacyTransformMap(InvokeContext invokeContext) {
+        Map<String, String> ctx;
+        if (invokeContext == null) {
+            ctx = new HashMap<String, String>();
+            ctx.put(Pradar.THREAD_ID_KEY, String.valueOf(Thread.currentThread().getId()));
+            ctx.put(Pradar.HAS_CONTEXT, Boolean.FALSE.toString());
+        } else {
+            ctx = invokeContext.toMap();
+            if (StringUtils.isNotBlank(AppNameUtils.appName())) {
+                ctx.put(PradarService.PRADAR_UPSTREAM_APPNAME_KEY, AppNameUtils.appName());
+                ctx.put(PradarService.PRADAR_REMOTE_APPNAME_KEY, AppNameUtils.appName());
+            }
+            ctx.put(PradarService.PRADAR_REMOTE_IP, PradarCoreUtils.getLocalAddress());
+            ctx.put(Pradar.THREAD_ID_KEY, String.valueOf(Thread.currentThread().getId()));
+            ctx.put(Pradar.HAS_CONTEXT, Boolean.TRUE.toString());
+            ctx.put(Pradar.IDENTITY_CONTEXT_ID, String.valueOf(invokeContext.getId()));
+        }
+        Iterator<Map.Entry<String, String>> it = ctx.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, String> entry = it.next();
+            if (!Pradar.getInvokeContextTransformKeys().contains(entry.getKey())) {
+                it.remove();
+            }
+        }
+        return ctx;
+    }
+
+    private static class MapTransfer implements ContextTransfer {
+        private final Map<String, String> map;
+
+        MapTransfer(Map<String, String> map) {
+            this.map = map;
+        }
+
+        @Override
+        public void transfer(String key, String value) {
+            map.put(key, value);
+        }
+    }
+}
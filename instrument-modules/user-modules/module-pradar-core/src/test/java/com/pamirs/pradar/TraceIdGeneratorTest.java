@@ -0,0 +1,168 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 按照改造前的拼接方式校验 traceId 的格式：16进制ip(8位) + 时间戳 + nextId(4位) + 'd' + 16进制pid(4位) + 采样率(4位)
+ * <p>
+ * 改造前 nextId 为 10、100、1000 时会补成 5 位，导致 pid 段错位、{@link TraceIdGenerator#getNextId(String)} 解析错误，
+ * 这三个值按照 4 位校验，其余取值与改造前逐字符一致
+ */
+public class TraceIdGeneratorTest {
+
+    private final static long TIMESTAMP = 1650000000123L;
+    private final static String PID = "d" + TraceIdGenerator.getHexPid(TraceIdGenerator.getPid());
+
+    @Test
+    public void testHexIp() {
+        Assert.assertEquals("0302010a", TraceIdGenerator.generate("10.1.2.3", false).substring(0, 8));
+        Assert.assertEquals("6401a8c0", TraceIdGenerator.generate("192.168.1.100", false).substring(0, 8));
+        Assert.assertEquals("00000000", TraceIdGenerator.generate("0.0.0.0", false).substring(0, 8));
+        Assert.assertEquals("ffffffff", TraceIdGenerator.generate("255.255.255.255", false).substring(0, 8));
+        for (String ip : new String[] {"10.1.2.3", "192.168.1.100", "172.16.254.7", "1.10.100.200"}) {
+            Assert.assertEquals(legacyIp16(ip), TraceIdGenerator.generate(ip, true).substring(0, 8));
+        }
+    }
+
+    @Test
+    public void testInvalidIpFallback() {
+        final String local = TraceIdGenerator.generate(false).substring(0, 8);
+        Assert.assertEquals(local, TraceIdGenerator.generate("1.2.3", false).substring(0, 8));
+        Assert.assertEquals(local, TraceIdGenerator.generate("1.2.3.x", false).substring(0, 8));
+        Assert.assertEquals(local, TraceIdGenerator.generate("  ", false).substring(0, 8));
+        Assert.assertEquals(local, TraceIdGenerator.generate(null, false).substring(0, 8));
+    }
+
+    @Test
+    public void testSameAsLegacy() {
+        final char[] ip = "6401a8c0".toCharArray();
+        for (int nextId = 1; nextId <= 9999; nextId++) {
+            if (nextId == 10 || nextId == 100 || nextId == 1000) {
+                continue;
+            }
+            Assert.assertEquals(legacyTraceId("6401a8c0", TIMESTAMP, nextId, 10),
+                TraceIdGenerator.getTraceId(ip, TIMESTAMP, nextId, 10));
+        }
+    }
+
+    @Test
+    public void testNextIdPadding() {
+        final char[] ip = "6401a8c0".toCharArray();
+        final int[] nextIds = new int[] {1, 9, 10, 11, 99, 100, 101, 999, 1000, 1001, 9999};
+        final String[] expected = new String[] {"0001", "0009", "0010", "0011", "0099", "0100", "0101", "0999",
+            "1000", "1001", "9999"};
+        for (int i = 0; i < nextIds.length; i++) {
+            final String traceId = TraceIdGenerator.getTraceId(ip, TIMESTAMP, nextIds[i], 10);
+            Assert.assertEquals(8 + 13 + 4 + 5 + 4, traceId.length());
+            Assert.assertEquals(expected[i], traceId.substring(21, 25));
+            Assert.assertEquals(PID, traceId.substring(25, 30));
+        }
+        /**
+         * 改造前的边界值多补了一位
+         */
+        Assert.assertEquals("00010", legacyNextIdStr(10));
+        Assert.assertEquals("00100", legacyNextIdStr(100));
+        Assert.assertEquals("01000", legacyNextIdStr(1000));
+    }
+
+    @Test
+    public void testPidField() {
+        final String traceId = TraceIdGenerator.getTraceId("6401a8c0".toCharArray(), TIMESTAMP, 1, 10);
+        Assert.assertEquals('d', traceId.charAt(25));
+        Assert.assertEquals(PID, traceId.substring(25, 30));
+        Assert.assertEquals("0000", TraceIdGenerator.getHexPid(-1));
+        Assert.assertEquals("00ff", TraceIdGenerator.getHexPid(255));
+        Assert.assertEquals("ffff", TraceIdGenerator.getHexPid(65535));
+        Assert.assertEquals("2462", TraceIdGenerator.getHexPid(6539314));
+    }
+
+    @Test
+    public void testSamplingIntervalField() {
+        final char[] ip = "6401a8c0".toCharArray();
+        final int[] intervals = new int[] {-1, 0, 1, 9, 10, 99, 100, 999, 1000, 9999, 10000, 10001};
+        for (int interval : intervals) {
+            final String traceId = TraceIdGenerator.getTraceId(ip, TIMESTAMP, 1, interval);
+            Assert.assertEquals(legacyTraceId("6401a8c0", TIMESTAMP, 1, interval), traceId);
+            Assert.assertEquals(legacySamplingInterval(interval), traceId.substring(30));
+        }
+    }
+
+    @Test
+    public void testGetNextIdRoundTrip() {
+        final char[] ip = "6401a8c0".toCharArray();
+        for (int nextId = 1; nextId <= 9999; nextId++) {
+            Assert.assertEquals(nextId,
+                TraceIdGenerator.getNextId(TraceIdGenerator.getTraceId(ip, TIMESTAMP, nextId, 10)));
+        }
+        Assert.assertEquals(-1, TraceIdGenerator.getNextId("6401a8c0"));
+        final String generated = TraceIdGenerator.generate("10.1.2.3", false);
+        final int nextId = TraceIdGenerator.getNextId(generated);
+        Assert.assertTrue(nextId >= 1 && nextId <= 9999);
+    }
+
+    private static String legacyTraceId(String ip, long timestamp, int nextId, int samplingInterval) {
+        StringBuilder appender = new StringBuilder(32);
+        appender.append(ip).append(timestamp).append(legacyNextIdStr(nextId)).append(PID)
+            .append(legacySamplingInterval(samplingInterval));
+        return appender.toString();
+    }
+
+    private static String legacyIp16(String ip) {
+        String[] ips = StringUtils.split(ip, '.');
+        StringBuilder sb = new StringBuilder();
+        for (int i = ips.length - 1; i >= 0; --i) {
+            String hex = Integer.toHexString(Integer.parseInt(ips[i]));
+            if (hex.length() == 1) {
+                sb.append('0').append(hex);
+            } else {
+                sb.append(hex);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String legacyNextIdStr(int nextId) {
+        if (nextId > 1000) {
+            return String.valueOf(nextId);
+        }
+        if (nextId > 100) {
+            return "0" + nextId;
+        }
+        if (nextId > 10) {
+            return "00" + nextId;
+        }
+        return "000" + nextId;
+    }
+
+    private static String legacySamplingInterval(int samplingInterval) {
+        if (samplingInterval < 0 || samplingInterval > 10000) {
+            return "0000";
+        }
+        if (samplingInterval < 10) {
+            return "000" + samplingInterval;
+        }
+        if (samplingInterval < 100) {
+            return "00" + samplingInterval;
+        }
+        if (samplingInterval < 1000) {
+            return "0" + samplingInterval;
+        }
+        return samplingInterval + "";
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 验证 {@link TraceLogBuffer} 写出的字节与原先
+ * {@link PradarCoreUtils#makeLogSafe(String)} + {@link String#getBytes(Charset)} 的结果完全一致
+ */
+public class TraceLogBufferTest {
+
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
+    private final static Charset GBK = Charset.forName("GBK");
+
+    private final static String[] SAMPLES = new String[]{
+        "",
+        "plain",
+        "a|b||c|",
+        "line1\r\nline2\nline3\r",
+        "\r\r\n\n\r\n|\r",
+        "\r",
+        "\n",
+        "压测流量|影子库\r\n中文",
+        "emoji 😀 pair",
+        "lone high \uD800 surrogate",
+        "lone low \uDC00 surrogate",
+        "\uDBFF"
+    };
+
+    @Test
+    public void testAppendSafeSameAsMakeLogSafe() {
+        for (Charset charset : new Charset[]{UTF_8, GBK}) {
+            TraceLogBuffer buffer = new TraceLogBuffer(charset);
+            for (String sample : SAMPLES) {
+                assertSafe(buffer, charset, sample);
+            }
+            assertSafe(buffer, charset, null);
+        }
+    }
+
+    @Test
+    public void testRandomFieldsAndGrowth() {
+        Random random = new Random(20210901L);
+        char[] alphabet = new char[]{'a', 'Z', '0', '|', '\r', '\n', '\t', '\\', '中', '文',
+            '\uD83D', '\uDE00', 'é', ' '};
+        for (Charset charset : new Charset[]{UTF_8, GBK}) {
+            /**
+             * 同一个 buffer 反复 reset 复用，覆盖 char 数组与 direct ByteBuffer 的扩容
+             */
+            TraceLogBuffer buffer = new TraceLogBuffer(charset);
+            for (int round = 0; round < 500; round++) {
+                int len = random.nextInt(round < 450 ? 64 : 20000);
+                StringBuilder builder = new StringBuilder(len);
+                for (int i = 0; i < len; i++) {
+                    builder.append(alphabet[random.nextInt(alphabet.length)]);
+                }
+                assertSafe(buffer, charset, builder.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testLineSameAsStringConcat() {
+        TraceLogBuffer buffer = new TraceLogBuffer(UTF_8);
+        long[] values = new long[]{0L, 1L, -1L, 9L, 10L, -10L, 99L, 100L, Integer.MAX_VALUE, Integer.MIN_VALUE,
+            Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1, 1234567890123L, -987654321L};
+        for (int round = 0; round < 3; round++) {
+            buffer.reset();
+            StringBuilder expected = new StringBuilder();
+            for (long value : values) {
+                buffer.append(value).append('|');
+                expected.append(value).append('|');
+                buffer.append((int) value).append('|');
+                expected.append((int) value).append('|');
+            }
+            buffer.append("traceId").append('|').append((Object) null).append('|')
+                .append(new StringBuilder("服务|名")).append('|').appendSafe("a|b\r\nc").append("\r\n");
+            expected.append("traceId").append('|').append((Object) null).append('|')
+                .append(new StringBuilder("服务|名")).append('|').append(PradarCoreUtils.makeLogSafe("a|b\r\nc"))
+                .append("\r\n");
+            Assert.assertEquals(expected.length(), buffer.length());
+            Assert.assertArrayEquals(expected.toString().getBytes(UTF_8), toBytes(buffer.encode()));
+        }
+    }
+
+    private static void assertSafe(TraceLogBuffer buffer, Charset charset, String value) {
+        String expected = String.valueOf(PradarCoreUtils.makeLogSafe(value));
+        buffer.reset().appendSafe(value);
+        Assert.assertEquals("length of " + value, expected.length(), buffer.length());
+        byte[] actual = toBytes(buffer.encode());
+        byte[] wanted = expected.getBytes(charset);
+        if (!Arrays.equals(wanted, actual)) {
+            Assert.fail(charset + " bytes differ for [" + value + "]: expected " + Arrays.toString(wanted)
+                + " but was " + Arrays.toString(actual));
+        }
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,360 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.pamirs.pradar.pressurement.agent.shared.service.GlobalConfig;
+import com.pamirs.pradar.pressurement.agent.shared.service.SimulatorDynamicConfig;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * 验证 {@link TraceTailSampler} 的保留规则、随机采样与令牌桶限流
+ */
+public class TraceTailSamplerTest {
+
+    private final static char[] IP = "6401a8c0".toCharArray();
+    private final static String SAMPLING_INTERVAL_KEY = "trace.samplingInterval";
+
+    private List<InvokeContext> appended;
+    private TestSampler sampler;
+
+    /**
+     * 采样器提交时会初始化 Pradar 日志，日志目录指向临时目录
+     */
+    @BeforeClass
+    public static void redirectPradarLogs() {
+        System.setProperty("SIMULATOR_LOG_PATH",
+            new File(System.getProperty("java.io.tmpdir"), "pradarlogs-test").getAbsolutePath());
+    }
+
+    @Before
+    public void before() {
+        appended = new ArrayList<InvokeContext>();
+        sampler = new TestSampler(appended);
+    }
+
+    @Test
+    public void testErrorSegmentKept() {
+        sampler.interval = 10000;
+        InvokeContext root = root(unsampledTraceId(0));
+        InvokeContext child = child(root, "0.1");
+        child.hasError = true;
+        commitSegment(root, child);
+        assertKept(child, root);
+
+        InvokeContext failedRoot = root(unsampledTraceId(1));
+        InvokeContext failedChild = child(failedRoot, "0.1");
+        failedChild.setResultCode(ResultCode.INVOKE_RESULT_FAILED);
+        commitSegment(failedRoot, failedChild);
+        assertKept(child, root, failedChild, failedRoot);
+
+        Map<String, Object> statistics = sampler.getStatistics();
+        Assert.assertEquals(2L, statistics.get("keptSegments"));
+        Assert.assertEquals(2L, statistics.get("keptErrorSegments"));
+        Assert.assertEquals(4L, statistics.get("keptSpans"));
+        Assert.assertEquals(0L, statistics.get("droppedSegments"));
+    }
+
+    @Test
+    public void testHttpStatusNotError() {
+        sampler.interval = 10000;
+        InvokeContext root = root(unsampledTraceId(0));
+        InvokeContext child = child(root, "0.1");
+        child.setResultCode("302");
+        commitSegment(root, child);
+        Assert.assertTrue(appended.isEmpty());
+        Assert.assertEquals(1L, sampler.getStatistics().get("droppedSegments"));
+        Assert.assertEquals(2L, sampler.getStatistics().get("droppedSpans"));
+    }
+
+    @Test
+    public void testSlowSegmentKept() {
+        sampler.interval = 10000;
+        sampler.slowThreshold = 100;
+        InvokeContext root = root(unsampledTraceId(0));
+        InvokeContext fast = child(root, "0.1");
+        fast.startTime = 1000L;
+        fast.logTime = 1099L;
+        commitSegment(root, fast);
+        Assert.assertTrue(appended.isEmpty());
+
+        InvokeContext slowRoot = root(unsampledTraceId(1));
+        InvokeContext slow = child(slowRoot, "0.1");
+        slow.startTime = 1000L;
+        slow.logTime = 1100L;
+        commitSegment(slowRoot, slow);
+        assertKept(slow, slowRoot);
+        Assert.assertEquals(1L, sampler.getStatistics().get("keptSlowSegments"));
+    }
+
+    @Test
+    public void testDebugSegmentKept() {
+        sampler.interval = 10000;
+        InvokeContext root = root(unsampledTraceId(0));
+        root.setDebug(true);
+        InvokeContext child = child(root, "0.1");
+        commitSegment(root, child);
+        assertKept(child, root);
+    }
+
+    @Test
+    public void testSamplingByTraceIdField() {
+        sampler.interval = 10;
+        InvokeContext sampled = root(traceId(20));
+        commitSegment(sampled, child(sampled, "0.1"));
+        Assert.assertEquals(2, appended.size());
+
+        InvokeContext unsampled = root(traceId(21));
+        commitSegment(unsampled, child(unsampled, "0.1"));
+        Assert.assertEquals(2, appended.size());
+
+        /**
+         * 不是生成格式的 traceId 与头部采样一样按 hashCode 采样
+         */
+        String shortTraceId = null;
+        for (int i = 0; shortTraceId == null; i++) {
+            if (("trace" + i).hashCode() % 10 == 0) {
+                shortTraceId = "trace" + i;
+            }
+        }
+        commitSegment(root(shortTraceId));
+        Assert.assertEquals(3, appended.size());
+
+        /**
+         * 采样频率为 1 时全部保留
+         */
+        sampler.interval = 1;
+        InvokeContext other = root(unsampledTraceId(0));
+        commitSegment(other);
+        Assert.assertEquals(4, appended.size());
+    }
+
+    /**
+     * 尾部采样的随机部分与头部采样使用同一个 traceId 字段，结果一致
+     */
+    @Test
+    public void testSameDecisionAsHeadSampling() {
+        try {
+            for (int interval : new int[] {1, 2, 7, 10, 100, 9999}) {
+                sampler.interval = interval;
+                samplingInterval(interval);
+                for (int nextId = 1; nextId <= 300; nextId++) {
+                    final InvokeContext root = root(traceId(nextId));
+                    final boolean head = root.isTraceSampled();
+                    final int before = appended.size();
+                    commitSegment(root);
+                    Assert.assertEquals(interval + "/" + nextId, head, appended.size() > before);
+                }
+            }
+        } finally {
+            System.clearProperty(SAMPLING_INTERVAL_KEY);
+            GlobalConfig.getInstance().setSimulatorDynamicConfig(
+                new SimulatorDynamicConfig(new HashMap<String, String>()));
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void testSweepNeverBlocks() throws Exception {
+        /**
+         * 等待超过一秒，使清理时调整采样率，在调整采样率时阻塞清理线程
+         */
+        Thread.sleep(1100L);
+        final Thread sweeper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sampler.sweep();
+            }
+        });
+        sweeper.setDaemon(true);
+        sampler.blockedThread = sweeper;
+        sweeper.start();
+        Assert.assertTrue(sampler.blocked.await(5, TimeUnit.SECONDS));
+
+        sampler.sweep();
+        sampler.interval = 1;
+        InvokeContext root = root(traceId(1));
+        commitSegment(root, child(root, "0.1"));
+        Assert.assertEquals(2, appended.size());
+
+        sampler.gate.countDown();
+        sweeper.join();
+    }
+
+    @Test
+    public void testTokenBucketLimitsRandomSampling() {
+        sampler.interval = 1;
+        sampler.maxLogsPerSecond = 3;
+        InvokeContext first = root("trace-a");
+        commitSegment(first, child(first, "0.1"));
+        Assert.assertEquals(2, appended.size());
+
+        InvokeContext limited = root("trace-b");
+        commitSegment(limited, child(limited, "0.1"));
+        Assert.assertEquals(2, appended.size());
+        Assert.assertEquals(1L, sampler.getStatistics().get("rateLimitedSegments"));
+
+        /**
+         * 出错的片段不受限流影响，但会消耗令牌，之后随机采样的片段让位
+         */
+        InvokeContext error = root("trace-c");
+        error.hasError = true;
+        commitSegment(error);
+        Assert.assertEquals(3, appended.size());
+
+        InvokeContext single = root("trace-d");
+        commitSegment(single);
+        Assert.assertEquals(3, appended.size());
+        Assert.assertEquals(2L, sampler.getStatistics().get("rateLimitedSegments"));
+    }
+
+    @Test
+    public void testLateSpanFollowsDecision() {
+        sampler.interval = 10000;
+        InvokeContext kept = root(unsampledTraceId(0));
+        kept.hasError = true;
+        commitSegment(kept);
+        InvokeContext keptAsync = child(kept, "0.1");
+        sampler.commit(keptAsync, false);
+        assertKept(kept, keptAsync);
+
+        InvokeContext dropped = root(unsampledTraceId(1));
+        commitSegment(dropped);
+        InvokeContext droppedAsync = child(dropped, "0.1");
+        droppedAsync.hasError = true;
+        sampler.commit(droppedAsync, false);
+        assertKept(kept, keptAsync);
+        Assert.assertEquals(2L, sampler.getStatistics().get("droppedSpans"));
+    }
+
+    @Test
+    public void testFilteredSpanNotAppended() {
+        sampler.interval = 1;
+        InvokeContext root = root("trace-filtered");
+        InvokeContext child = child(root, "0.1");
+        sampler.commit(child, false);
+        sampler.commit(root, true);
+        assertKept(child);
+    }
+
+    @Test
+    public void testFullSegmentDecidedEarly() {
+        sampler.interval = 1;
+        InvokeContext root = root("trace-full");
+        int count = 0;
+        while (appended.isEmpty()) {
+            sampler.commit(child(root, "0." + (++count)), false);
+            Assert.assertTrue("segment never decided", count <= 10000);
+        }
+        Assert.assertEquals(count, appended.size());
+        /**
+         * 已经决定保留，之后的调用直接输出
+         */
+        sampler.commit(root, false);
+        Assert.assertEquals(count + 1, appended.size());
+    }
+
+    private void commitSegment(InvokeContext root, InvokeContext... children) {
+        for (InvokeContext child : children) {
+            sampler.commit(child, false);
+        }
+        sampler.commit(root, false);
+    }
+
+    /**
+     * 片段中的调用按提交顺序输出
+     */
+    private void assertKept(InvokeContext... spans) {
+        Assert.assertEquals(spans.length, appended.size());
+        for (int i = 0; i < spans.length; i++) {
+            Assert.assertSame(spans[i], appended.get(i));
+        }
+    }
+
+    /**
+     * @return 采样频率为 10000 时不会被采样命中的 traceId
+     */
+    private static String unsampledTraceId(int seq) {
+        return traceId(seq + 1);
+    }
+
+    private static String traceId(int nextId) {
+        return TraceIdGenerator.getTraceId(IP, System.currentTimeMillis(), nextId, 0);
+    }
+
+    private static void samplingInterval(int samplingInterval) {
+        final Map<String, String> config = new HashMap<String, String>();
+        config.put(SAMPLING_INTERVAL_KEY, String.valueOf(samplingInterval));
+        GlobalConfig.getInstance().setSimulatorDynamicConfig(new SimulatorDynamicConfig(config));
+    }
+
+    private static InvokeContext root(String traceId) {
+        return new InvokeContext(traceId, "app", "0");
+    }
+
+    private static InvokeContext child(InvokeContext parent, String invokeId) {
+        return new InvokeContext(parent.getTraceId(), "app", invokeId, parent);
+    }
+
+    private static class TestSampler extends TraceTailSampler {
+        private int slowThreshold = 0;
+        private int maxLogsPerSecond = 10000;
+        private int interval = 1;
+        private volatile Thread blockedThread;
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final CountDownLatch gate = new CountDownLatch(1);
+
+        TestSampler(final List<InvokeContext> appended) {
+            super(new SpanSink() {
+                @Override
+                public void append(InvokeContext ctx) {
+                    appended.add(ctx);
+                }
+            });
+        }
+
+        @Override
+        int getSlowThreshold() {
+            return slowThreshold;
+        }
+
+        @Override
+        int getMaxLogsPerSecond() {
+            if (Thread.currentThread() == blockedThread) {
+                blocked.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return maxLogsPerSecond;
+        }
+
+        @Override
+        int getSamplingInterval(boolean clusterTest) {
+            return interval;
+        }
+    }
+}
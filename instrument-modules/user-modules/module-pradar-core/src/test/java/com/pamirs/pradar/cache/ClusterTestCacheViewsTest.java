@@ -0,0 +1,219 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 验证 {@link ClusterTestCacheViews} 的视图在业务流量与压测流量下的 size、isEmpty、contains、remove
+ */
+public class ClusterTestCacheViewsTest {
+
+    private Map<Object, Object> cache;
+
+    @Before
+    public void before() {
+        cache = new HashMap<Object, Object>();
+        cache.put("b1", "v1");
+        cache.put("b2", "v2");
+        cache.put("b3", "v3");
+        cache.put(new ClusterTestCacheWrapperKey("p1"), "pv1");
+        cache.put(new ClusterTestCacheWrapperKey("p2"), "pv2");
+    }
+
+    @Test
+    public void testKeySetSizeAndContains() {
+        Set business = ClusterTestCacheViews.keySet(cache.keySet(), false);
+        Set pressure = ClusterTestCacheViews.keySet(cache.keySet(), true);
+        Assert.assertEquals(3, business.size());
+        Assert.assertEquals(2, pressure.size());
+        Assert.assertFalse(business.isEmpty());
+        Assert.assertFalse(pressure.isEmpty());
+        Assert.assertEquals(set("b1", "b2", "b3"), new HashSet(business));
+        Assert.assertEquals(set("p1", "p2"), new HashSet(pressure));
+
+        Assert.assertTrue(business.contains("b1"));
+        Assert.assertFalse(business.contains("p1"));
+        Assert.assertFalse(business.contains(new ClusterTestCacheWrapperKey("p1")));
+        Assert.assertTrue(pressure.contains("p1"));
+        Assert.assertTrue(pressure.contains(new ClusterTestCacheWrapperKey("p1")));
+        Assert.assertFalse(pressure.contains("b1"));
+
+        cache.put("b4", "v4");
+        Assert.assertEquals("view reads the backing set", 4, business.size());
+    }
+
+    @Test
+    public void testEmptyViews() {
+        Map<Object, Object> onlyBusiness = new HashMap<Object, Object>();
+        onlyBusiness.put("b1", "v1");
+        Set pressure = ClusterTestCacheViews.keySet(onlyBusiness.keySet(), true);
+        Set<Map.Entry> pressureEntries = ClusterTestCacheViews.entrySet(toEntries(onlyBusiness), true);
+        Assert.assertTrue(pressure.isEmpty());
+        Assert.assertEquals(0, pressure.size());
+        Assert.assertTrue(pressureEntries.isEmpty());
+        Assert.assertFalse(pressure.iterator().hasNext());
+        try {
+            pressure.iterator().next();
+            Assert.fail();
+        } catch (NoSuchElementException e) {
+        }
+        Assert.assertFalse(ClusterTestCacheViews.keySet(onlyBusiness.keySet(), false).isEmpty());
+    }
+
+    @Test
+    public void testKeySetRemove() {
+        Set business = ClusterTestCacheViews.keySet(cache.keySet(), false);
+        Set pressure = ClusterTestCacheViews.keySet(cache.keySet(), true);
+        Assert.assertFalse(business.remove("p1"));
+        Assert.assertFalse(business.remove(new ClusterTestCacheWrapperKey("p1")));
+        Assert.assertTrue(business.remove("b1"));
+        Assert.assertFalse(pressure.remove("b2"));
+        Assert.assertTrue(pressure.remove("p1"));
+        Assert.assertEquals(set("b2", "b3", new ClusterTestCacheWrapperKey("p2")), cache.keySet());
+
+        removeAll(pressure);
+        Assert.assertTrue(pressure.isEmpty());
+        Assert.assertEquals(set("b2", "b3"), cache.keySet());
+        removeAll(business);
+        Assert.assertTrue(cache.isEmpty());
+    }
+
+    @Test
+    public void testEntrySetSizeContainsAndRemove() {
+        Set<Map.Entry> business = ClusterTestCacheViews.entrySet(toEntries(cache), false);
+        Set<Map.Entry> pressure = ClusterTestCacheViews.entrySet(toEntries(cache), true);
+        Assert.assertEquals(3, business.size());
+        Assert.assertEquals(2, pressure.size());
+
+        Map<Object, Object> pressureCopy = new HashMap<Object, Object>();
+        for (Map.Entry entry : pressure) {
+            pressureCopy.put(entry.getKey(), entry.getValue());
+        }
+        Assert.assertEquals("pv1", pressureCopy.get("p1"));
+        Assert.assertEquals("pv2", pressureCopy.get("p2"));
+        Assert.assertTrue(pressure.contains(entry("p1", "pv1")));
+        Assert.assertFalse(pressure.contains(entry("b1", "v1")));
+        Assert.assertTrue(business.contains(entry("b1", "v1")));
+        Assert.assertFalse(business.contains(entry("p1", "pv1")));
+
+        for (Iterator<Map.Entry> it = pressure.iterator(); it.hasNext(); ) {
+            Map.Entry entry = it.next();
+            if ("p1".equals(entry.getKey())) {
+                entry.setValue("changed");
+                it.remove();
+            }
+        }
+        Assert.assertEquals(1, pressure.size());
+        Assert.assertFalse(cache.containsKey(new ClusterTestCacheWrapperKey("p1")));
+        Assert.assertEquals(3, business.size());
+
+        removeAll(business);
+        Assert.assertTrue(business.isEmpty());
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals("pv2", cache.get(new ClusterTestCacheWrapperKey("p2")));
+    }
+
+    @Test
+    public void testRemoveAfterHasNext() {
+        for (boolean clusterTest : new boolean[]{false, true}) {
+            Map<Object, Object> concurrentCache = new ConcurrentHashMap<Object, Object>(cache);
+            Set keys = ClusterTestCacheViews.keySet(concurrentCache.keySet(), clusterTest);
+            List removed = new ArrayList();
+            /**
+             * hasNext 预读了下一个可见元素(并可能跳过了不可见元素)，remove 仍然只删除上一次 next 返回的元素
+             */
+            for (Iterator it = keys.iterator(); it.hasNext(); ) {
+                Object key = it.next();
+                boolean more = it.hasNext();
+                it.remove();
+                removed.add(key);
+                if (!more) {
+                    break;
+                }
+            }
+            Assert.assertEquals(clusterTest ? 2 : 3, removed.size());
+            Assert.assertTrue(keys.isEmpty());
+            Assert.assertEquals(clusterTest ? 3 : 2, concurrentCache.size());
+            Assert.assertEquals(clusterTest ? 3 : 2,
+                    ClusterTestCacheViews.keySet(concurrentCache.keySet(), !clusterTest).size());
+
+            Map<Object, Object> concurrentEntries = new ConcurrentHashMap<Object, Object>(cache);
+            Set<Map.Entry> entries = ClusterTestCacheViews.entrySet(toEntries(concurrentEntries), clusterTest);
+            Iterator<Map.Entry> it = entries.iterator();
+            it.next();
+            it.hasNext();
+            it.remove();
+            Assert.assertEquals(clusterTest ? 1 : 2, entries.size());
+            Assert.assertEquals(4, concurrentEntries.size());
+        }
+    }
+
+    @Test
+    public void testIteratorRemoveState() {
+        Iterator it = ClusterTestCacheViews.keySet(cache.keySet(), true).iterator();
+        try {
+            it.remove();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        }
+        it.next();
+        it.remove();
+        try {
+            it.remove();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        }
+        Assert.assertEquals(4, cache.size());
+    }
+
+    private static void removeAll(Set view) {
+        for (Iterator it = view.iterator(); it.hasNext(); ) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<Map.Entry> toEntries(Map map) {
+        return (Set<Map.Entry>) (Set) map.entrySet();
+    }
+
+    private static Set<Object> set(Object... values) {
+        Set<Object> set = new HashSet<Object>();
+        for (Object value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+
+    private static Map.Entry entry(Object key, Object value) {
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        map.put(key, value);
+        return map.entrySet().iterator().next();
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar.pressurement.agent.shared.exit;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.pamirs.pradar.internal.config.MatchConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 编译后的白名单与逐条使用 {@link HttpMatcher} 匹配的结果一致
+ * <p>
+ * 同一个 url 命中多条规则时两者返回的规则可能不同，所以只比较是否命中，并检查命中的规则本身能被 {@link HttpMatcher} 匹配
+ * </p>
+ */
+public class HttpWhiteListMatcherTest {
+
+    private static final String[] RULE_SEGMENTS = {"a", "b", "ab", "order", "{id}", "{name}", "b{id}", "{id}b", "a{id}b", "", "{a/b}", "{", "}"};
+    private static final String[] URL_SEGMENTS = {"a", "b", "ab", "order", "1", "b1", "1b", "a1b", "bb", "", "{id}"};
+    private static final String[] VARIABLE_VALUES = {"", "1", "b", "bb", "x/y"};
+    private static final String[] HOSTS = {"http://h", "https://h:8080", "http://pt-h"};
+
+    private final HttpMatcher httpMatcher = new HttpMatcher();
+
+    @Test
+    public void relativeAndAbsoluteUrls() {
+        Set<MatchConfig> whiteList = whiteList("/order/{id}", "/a/b{id}", "/a/{id}/b", "/{id}/{name}/a", "/b/c/",
+                "http://h/order/{id}", "http://h/a/{x}/{y}");
+        HttpWhiteListMatcher matcher = new HttpWhiteListMatcher(whiteList);
+        assertSame(matcher, whiteList, "/order/1");
+        assertSame(matcher, whiteList, "order/1/");
+        assertSame(matcher, whiteList, "/a/b");
+        assertSame(matcher, whiteList, "/a/b1");
+        assertSame(matcher, whiteList, "/a//b");
+        assertSame(matcher, whiteList, "/x/y/a");
+        assertSame(matcher, whiteList, "/b/c");
+        assertSame(matcher, whiteList, "http://h/order/1");
+        assertSame(matcher, whiteList, "http://h/order/");
+        assertSame(matcher, whiteList, "http://g/order/1");
+        assertSame(matcher, whiteList, "http://h/a/1/2");
+        assertSame(matcher, whiteList, "http://h/x/y/a");
+        Assert.assertNotNull(matcher.match("http://h/order/1"));
+        Assert.assertNull(matcher.match("/a/b"));
+    }
+
+    @Test
+    public void randomizedEquivalence() {
+        Random random = new Random(20210826L);
+        for (int round = 0; round < 2000; round++) {
+            List<String> rules = new ArrayList<String>();
+            int ruleCount = 1 + random.nextInt(8);
+            for (int i = 0; i < ruleCount; i++) {
+                rules.add(randomRule(random));
+            }
+            Set<MatchConfig> whiteList = whiteList(rules.toArray(new String[rules.size()]));
+            HttpWhiteListMatcher matcher = new HttpWhiteListMatcher(whiteList);
+            for (int i = 0; i < 30; i++) {
+                String url = random.nextBoolean()
+                        ? instantiate(rules.get(random.nextInt(rules.size())), random)
+                        : randomUrl(random);
+                if (url.trim().length() == 0) {
+                    continue;
+                }
+                assertSame(matcher, whiteList, url);
+            }
+        }
+    }
+
+    private void assertSame(HttpWhiteListMatcher matcher, Set<MatchConfig> whiteList, String url) {
+        boolean expected = false;
+        for (MatchConfig config : whiteList) {
+            if (httpMatcher.match(url, config).isSuccess()) {
+                expected = true;
+                break;
+            }
+        }
+        MatchConfig actual = matcher.match(url);
+        Assert.assertEquals("url: " + url + ", white list: " + whiteList, expected, actual != null);
+        if (actual != null) {
+            Assert.assertTrue("url: " + url + ", rule: " + actual.getUrl(), httpMatcher.match(url, actual).isSuccess());
+        }
+    }
+
+    private static Set<MatchConfig> whiteList(String... urls) {
+        Set<MatchConfig> whiteList = new LinkedHashSet<MatchConfig>();
+        for (String url : urls) {
+            MatchConfig config = new MatchConfig();
+            config.setUrl(url);
+            whiteList.add(config);
+        }
+        return whiteList;
+    }
+
+    private static String randomRule(Random random) {
+        StringBuilder rule = new StringBuilder();
+        if (random.nextInt(4) == 0) {
+            rule.append(HOSTS[random.nextInt(HOSTS.length)]);
+        }
+        int segments = 1 + random.nextInt(4);
+        for (int i = 0; i < segments; i++) {
+            if (i > 0 || rule.length() > 0 || random.nextInt(5) != 0) {
+                rule.append('/');
+            }
+            rule.append(RULE_SEGMENTS[random.nextInt(RULE_SEGMENTS.length)]);
+        }
+        if (random.nextInt(5) == 0) {
+            rule.append('/');
+        }
+        return rule.length() == 0 ? "/" : rule.toString();
+    }
+
+    private static String randomUrl(Random random) {
+        StringBuilder url = new StringBuilder();
+        if (random.nextInt(3) == 0) {
+            url.append(HOSTS[random.nextInt(HOSTS.length)]);
+        }
+        int segments = random.nextInt(5);
+        for (int i = 0; i < segments; i++) {
+            url.append('/').append(URL_SEGMENTS[random.nextInt(URL_SEGMENTS.length)]);
+        }
+        if (random.nextInt(5) == 0) {
+            url.append('/');
+        }
+        return url.length() == 0 ? "/" : url.toString();
+    }
+
+    /**
+     * 把规则中的变量替换为随机值，得到大概率命中的 url
+     */
+    private static String instantiate(String rule, Random random) {
+        StringBuilder url = new StringBuilder();
+        int index = 0;
+        while (index < rule.length()) {
+            int start = rule.indexOf('{', index);
+            int end = start == -1 ? -1 : rule.indexOf('}', start);
+            if (end == -1) {
+                url.append(rule.substring(index));
+                break;
+            }
+            url.append(rule, index, start).append(VARIABLE_VALUES[random.nextInt(VARIABLE_VALUES.length)]);
+            index = end + 1;
+        }
+        if (random.nextInt(3) == 0 && url.indexOf("://") == -1) {
+            url.insert(0, HOSTS[random.nextInt(HOSTS.length)] + (url.length() > 0 && url.charAt(0) == '/' ? "" : "/"));
+        }
+        return url.toString();
+    }
+}
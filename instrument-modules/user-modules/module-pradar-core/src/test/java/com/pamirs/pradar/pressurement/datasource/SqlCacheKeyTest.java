@@ -0,0 +1,60 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar.pressurement.datasource;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * {@link SqlCacheKey} 的相等性，各个组成部分都参与比较，不会因为拼接产生歧义
+ */
+public class SqlCacheKeyTest {
+
+    @Test
+    public void equalsAllParts() {
+        SqlCacheKey key = new SqlCacheKey("select * from user", "jdbc:mysql://db/test|root", "mysql");
+        Assert.assertEquals(key, new SqlCacheKey("select * from user", "jdbc:mysql://db/test|root", "mysql"));
+        Assert.assertEquals(key.hashCode(), new SqlCacheKey("select * from user", "jdbc:mysql://db/test|root", "mysql").hashCode());
+        Assert.assertNotEquals(key, new SqlCacheKey("select * from users", "jdbc:mysql://db/test|root", "mysql"));
+        Assert.assertNotEquals(key, new SqlCacheKey("select * from user", "jdbc:mysql://db/test|admin", "mysql"));
+        Assert.assertNotEquals(key, new SqlCacheKey("select * from user", "jdbc:mysql://db/test|root", "oracle"));
+    }
+
+    @Test
+    public void nullParts() {
+        SqlCacheKey key = new SqlCacheKey("select 1", null, null);
+        Assert.assertEquals(key, new SqlCacheKey("select 1", null, null));
+        Assert.assertEquals(key.hashCode(), new SqlCacheKey("select 1", null, null).hashCode());
+        Assert.assertNotEquals(key, new SqlCacheKey("select 1", "", null));
+        Assert.assertNotEquals(key, new SqlCacheKey("select 1", null, ""));
+        Assert.assertNotEquals(new SqlCacheKey(null, null, null), key);
+        Assert.assertEquals(new SqlCacheKey(null, null, null), new SqlCacheKey(null, null, null));
+    }
+
+    /**
+     * 原来的 key 是 sql + 分隔符 + 数据源 + 分隔符 + 数据库类型，内容中带分隔符时会相互混淆
+     */
+    @Test
+    public void noConcatenationAmbiguity() {
+        Set<SqlCacheKey> keys = new HashSet<SqlCacheKey>();
+        keys.add(new SqlCacheKey("a|b", "c", "mysql"));
+        keys.add(new SqlCacheKey("a", "b|c", "mysql"));
+        keys.add(new SqlCacheKey("a|b|c", null, "mysql"));
+        Assert.assertEquals(3, keys.size());
+    }
+}
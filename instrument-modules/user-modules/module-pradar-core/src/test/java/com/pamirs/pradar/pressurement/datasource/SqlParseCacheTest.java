@@ -0,0 +1,145 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar.pressurement.datasource;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.cache.Weigher;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * {@link SqlParseCache} 按数据源隔离、按权重淘汰以及统计信息
+ */
+public class SqlParseCacheTest {
+
+    private static final Weigher<SqlCacheKey, String> WEIGHER = new Weigher<SqlCacheKey, String>() {
+        @Override
+        public int weigh(SqlCacheKey key, String value) {
+            return key.getSql().length() + value.length();
+        }
+    };
+
+    /**
+     * 不读取 Pradar 配置，使用固定的权重，不过期
+     */
+    private static SqlParseCache<String> newCache(final long weight) {
+        return new SqlParseCache<String>("test", WEIGHER) {
+            @Override
+            long getMaximumWeight(String dataSourceKey) {
+                return weight;
+            }
+
+            @Override
+            long getExpireSeconds() {
+                return 0;
+            }
+        };
+    }
+
+    private static Callable<String> rewrite(final String sql, final AtomicInteger loads) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                loads.incrementAndGet();
+                return sql.replace("user", "pt_user");
+            }
+        };
+    }
+
+    @Test
+    public void hitAfterFirstLoad() throws Exception {
+        SqlParseCache<String> cache = newCache(1024 * 1024);
+        AtomicInteger loads = new AtomicInteger();
+        SqlCacheKey key = new SqlCacheKey("select * from user", "ds1", "mysql");
+        Assert.assertEquals("select * from pt_user", cache.get(key, rewrite(key.getSql(), loads)));
+        Assert.assertEquals("select * from pt_user", cache.get(new SqlCacheKey("select * from user", "ds1", "mysql"), rewrite(key.getSql(), loads)));
+        Assert.assertEquals(1, loads.get());
+
+        Map<String, Object> statistics = cache.getStatistics();
+        Assert.assertEquals(1L, statistics.get("hitCount"));
+        Assert.assertEquals(1L, statistics.get("missCount"));
+        Assert.assertEquals(1L, statistics.get("loadCount"));
+        Assert.assertEquals(1L, statistics.get("size"));
+    }
+
+    @Test
+    public void failedLoadNotCached() throws Exception {
+        SqlParseCache<String> cache = newCache(1024 * 1024);
+        SqlCacheKey key = new SqlCacheKey("select * from", "ds1", "mysql");
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get(key, new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        throw new java.sql.SQLException("Wrong sql");
+                    }
+                });
+                Assert.fail();
+            } catch (Exception e) {
+                // expected
+            }
+        }
+        Map<String, Object> statistics = cache.getStatistics();
+        Assert.assertEquals(2L, statistics.get("loadFailureCount"));
+        Assert.assertEquals(0L, statistics.get("size"));
+    }
+
+    /**
+     * 一个数据源的大量 sql 只会淘汰自己的缓存
+     */
+    @Test
+    public void evictPerDataSource() throws Exception {
+        SqlParseCache<String> cache = newCache(4096);
+        AtomicInteger loads = new AtomicInteger();
+        SqlCacheKey quiet = new SqlCacheKey("select * from user where id = ?", "quiet", "mysql");
+        cache.get(quiet, rewrite(quiet.getSql(), loads));
+        for (int i = 0; i < 1000; i++) {
+            String sql = "select * from user where id = ? and version = " + i;
+            cache.get(new SqlCacheKey(sql, "noisy", "mysql"), rewrite(sql, loads));
+        }
+        Map<String, Object> statistics = cache.getStatistics();
+        Assert.assertTrue((Long) statistics.get("evictionCount") > 0);
+        Assert.assertTrue((Long) statistics.get("size") < 1001);
+
+        int before = loads.get();
+        cache.get(quiet, rewrite(quiet.getSql(), loads));
+        Assert.assertEquals(before, loads.get());
+    }
+
+    @Test
+    public void warmUpAndSnapshot() throws Exception {
+        SqlParseCache<String> cache = newCache(1024 * 1024);
+        AtomicInteger loads = new AtomicInteger();
+        SqlCacheKey key1 = new SqlCacheKey("select * from user", "ds1", "mysql");
+        SqlCacheKey key2 = new SqlCacheKey("delete from user", "ds2", "mysql");
+        cache.warmUp(key1, rewrite(key1.getSql(), loads));
+        cache.warmUp(key1, rewrite(key1.getSql(), loads));
+        cache.warmUp(key2, rewrite(key2.getSql(), loads));
+        Assert.assertEquals(2, loads.get());
+
+        Map<SqlCacheKey, String> snapshot = cache.snapshot();
+        Assert.assertEquals(2, snapshot.size());
+        Assert.assertEquals("delete from pt_user", snapshot.get(key2));
+
+        cache.get(key1, rewrite(key1.getSql(), loads));
+        Assert.assertEquals(2, loads.get());
+
+        cache.invalidateAll();
+        Assert.assertTrue(cache.snapshot().isEmpty());
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar.scope;
+
+import java.lang.reflect.Field;
+
+import com.shulie.instrument.simulator.api.scope.ExecutionPolicy;
+import com.shulie.instrument.simulator.api.scope.InterceptorScope;
+import com.shulie.instrument.simulator.api.scope.InterceptorScopeInvocation;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 验证 {@link DefaultInterceptorScope} 在调用退出后复用线程内数组和调用对象、模块卸载时清空所有线程的数组，以及下标的回收
+ */
+public class DefaultInterceptorScopeTest {
+
+    @Test
+    public void testNestedInvocationReusedAfterExit() throws Exception {
+        InterceptorScope outer = new DefaultInterceptorScope("outer");
+        InterceptorScope inner = new DefaultInterceptorScope("inner");
+
+        InterceptorScopeInvocation outerInvocation = outer.getCurrentInvocation();
+        Assert.assertTrue(outerInvocation.tryEnter(ExecutionPolicy.BOUNDARY));
+        Assert.assertSame(outerInvocation, outer.getCurrentInvocation());
+        Assert.assertFalse(outer.getCurrentInvocation().tryEnter(ExecutionPolicy.BOUNDARY));
+        Assert.assertTrue(outer.getCurrentInvocation().tryEnter(ExecutionPolicy.INTERNAL));
+
+        InterceptorScopeInvocation innerInvocation = inner.getCurrentInvocation();
+        Assert.assertTrue(innerInvocation.tryEnter(ExecutionPolicy.ALWAYS));
+        innerInvocation.setAttachment("inner");
+        Assert.assertSame(innerInvocation, inner.getCurrentInvocation());
+        final Object[] slots = threadSlots();
+        Assert.assertNotNull(slots);
+
+        inner.getCurrentInvocation().leave(ExecutionPolicy.ALWAYS);
+        Assert.assertFalse(inner.getCurrentInvocation().isActive());
+        Assert.assertSame(innerInvocation, inner.getCurrentInvocation());
+
+        Assert.assertTrue(outer.getCurrentInvocation().canLeave(ExecutionPolicy.INTERNAL));
+        outer.getCurrentInvocation().leave(ExecutionPolicy.INTERNAL);
+        Assert.assertFalse(outer.getCurrentInvocation().canLeave(ExecutionPolicy.BOUNDARY));
+        Assert.assertTrue(outer.getCurrentInvocation().canLeave(ExecutionPolicy.BOUNDARY));
+        outer.getCurrentInvocation().leave(ExecutionPolicy.BOUNDARY);
+
+        /**
+         * 退出最外层后数组和调用对象都留在线程上，下一次调用直接复用，调用上的状态已经清空
+         */
+        Assert.assertSame(slots, threadSlots());
+        Assert.assertSame(outerInvocation, outer.getCurrentInvocation());
+        Assert.assertTrue(innerInvocation.tryEnter(ExecutionPolicy.ALWAYS));
+        Assert.assertNull(innerInvocation.getAttachment());
+        innerInvocation.leave(ExecutionPolicy.ALWAYS);
+        Assert.assertSame(slots, threadSlots());
+    }
+
+    @Test
+    public void testRemoveDropsInvocation() throws Exception {
+        InterceptorScope scope = new DefaultInterceptorScope("remove");
+        InterceptorScopeInvocation invocation = scope.getCurrentInvocation();
+        Assert.assertTrue(invocation.tryEnter(ExecutionPolicy.ALWAYS));
+        scope.remove();
+        Assert.assertNotSame(invocation, scope.getCurrentInvocation());
+        Assert.assertFalse(scope.getCurrentInvocation().isActive());
+    }
+
+    @Test
+    public void testReleaseSlotsClearsEveryThread() throws Exception {
+        final InterceptorScope scope = new DefaultInterceptorScope("release");
+        final Object[][] otherSlots = new Object[1][];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                InterceptorScopeInvocation invocation = scope.getCurrentInvocation();
+                invocation.tryEnter(ExecutionPolicy.ALWAYS);
+                invocation.leave(ExecutionPolicy.ALWAYS);
+                try {
+                    otherSlots[0] = threadSlots();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        Assert.assertNotNull(otherSlots[0]);
+        Assert.assertTrue(containsInvocation(otherSlots[0]));
+
+        Assert.assertTrue(scope.getCurrentInvocation().tryEnter(ExecutionPolicy.ALWAYS));
+        scope.getCurrentInvocation().leave(ExecutionPolicy.ALWAYS);
+        Assert.assertNotNull(threadSlots());
+
+        ScopeFactory.release();
+        Assert.assertFalse(containsInvocation(otherSlots[0]));
+        Assert.assertNull(threadSlots());
+    }
+
+    @Test
+    public void testReleasedIndexReused() throws Exception {
+        DefaultInterceptorScope unused = new DefaultInterceptorScope("unused");
+        int index = index(unused);
+        unused.release();
+        unused.release();
+        Assert.assertEquals(index, index(new DefaultInterceptorScope("reused")));
+        Assert.assertNotEquals(index, index(new DefaultInterceptorScope("next")));
+    }
+
+    @Test
+    public void testPoolReleasesLosingScope() throws Exception {
+        final boolean[] raced = new boolean[1];
+        final DefaultInterceptorScope[] destroyed = new DefaultInterceptorScope[1];
+        final ConcurrentPool<String, InterceptorScope>[] holder = new ConcurrentPool[1];
+        holder[0] = new ConcurrentPool<String, InterceptorScope>(new PoolObjectFactory<String, InterceptorScope>() {
+            private final InterceptorScopeFactory delegate = new InterceptorScopeFactory();
+
+            @Override
+            public InterceptorScope create(String key) {
+                if (!raced[0]) {
+                    /**
+                     * 模拟另一个线程先放入了同名的作用域
+                     */
+                    raced[0] = true;
+                    holder[0].get(key);
+                }
+                return delegate.create(key);
+            }
+
+            @Override
+            public void destroy(InterceptorScope value) {
+                destroyed[0] = (DefaultInterceptorScope) value;
+                delegate.destroy(value);
+            }
+        });
+        InterceptorScope scope = holder[0].get("race");
+        Assert.assertNotNull(destroyed[0]);
+        Assert.assertSame(scope, holder[0].get("race"));
+        Assert.assertNotSame(scope, destroyed[0]);
+        Assert.assertEquals(index(destroyed[0]), index(new DefaultInterceptorScope("reused")));
+    }
+
+    private static Object[] threadSlots() throws Exception {
+        Field field = DefaultInterceptorScope.class.getDeclaredField("SLOTS");
+        field.setAccessible(true);
+        return (Object[]) ((ThreadLocal) field.get(null)).get();
+    }
+
+    private static boolean containsInvocation(Object[] slots) {
+        for (Object slot : slots) {
+            if (slot != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int index(DefaultInterceptorScope scope) throws Exception {
+        Field field = DefaultInterceptorScope.class.getDeclaredField("index");
+        field.setAccessible(true);
+        return field.getInt(scope);
+    }
+}
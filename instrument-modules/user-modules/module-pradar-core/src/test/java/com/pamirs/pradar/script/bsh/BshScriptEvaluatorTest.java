@@ -0,0 +1,95 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pamirs.pradar.script.bsh;
+
+import com.pamirs.pradar.script.bsh.BshScriptEvaluator.CompiledScript;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 脚本编译：静态返回值的解析以及哪些脚本可以包装成脚本方法
+ */
+public class BshScriptEvaluatorTest {
+
+    @Test
+    public void staticValue() {
+        CompiledScript compiled = CompiledScript.compile("  return \"{\\\"code\\\":200}\" ;  \n");
+        Assert.assertTrue(compiled.isStatic);
+        Assert.assertEquals("{\"code\":200}", compiled.staticValue);
+    }
+
+    @Test
+    public void staticValueEscapes() {
+        Assert.assertEquals("a\"b\\c", CompiledScript.parseStaticValue("return \"a\\\"b\\\\c\";"));
+        Assert.assertEquals("\b\t\n\f\r'", CompiledScript.parseStaticValue("return \"\\b\\t\\n\\f\\r\\'\";"));
+        Assert.assertEquals("", CompiledScript.parseStaticValue("return \"\";"));
+        /**
+         * unicode 及八进制转义交给解释器
+         */
+        Assert.assertNull(CompiledScript.parseStaticValue("return \"\\u0041\";"));
+        Assert.assertNull(CompiledScript.parseStaticValue("return \"\\101\";"));
+        /**
+         * 结尾是转义字符或者没有结束的引号
+         */
+        Assert.assertNull(CompiledScript.parseStaticValue("return \"abc\\"));
+        Assert.assertNull(CompiledScript.parseStaticValue("return \"abc\\\";"));
+        Assert.assertNull(CompiledScript.parseStaticValue("return \"abc;"));
+    }
+
+    @Test
+    public void notStaticValue() {
+        Assert.assertNull(CompiledScript.parseStaticValue("return\"a\";"));
+        Assert.assertNull(CompiledScript.parseStaticValue("returns \"a\";"));
+        Assert.assertNull(CompiledScript.parseStaticValue("return \"a\""));
+        Assert.assertNull(CompiledScript.parseStaticValue("return \"a\"; x = 1;"));
+        Assert.assertNull(CompiledScript.parseStaticValue("return \"a\" + b;"));
+        Assert.assertNull(CompiledScript.parseStaticValue("return \"a\nb\";"));
+        Assert.assertNull(CompiledScript.parseStaticValue("return 'a';"));
+        Assert.assertNull(CompiledScript.parseStaticValue("x = 1; return \"a\";"));
+    }
+
+    @Test
+    public void wrapOnlyWhenLastStatementIsReturn() {
+        assertWrapped("x = 1; return x;");
+        assertWrapped("if (x) { return \"a\"; } return \"b\";");
+        assertWrapped("for (int i = 0; i < 3; i++) { sum += i; }\nreturn sum; // done");
+        assertWrapped("return new Object() { public String toString() { return \"a\"; } };");
+        assertWrapped("s = \"}\"; return s; /* tail */");
+
+        assertInterpreted("if (x) { return \"a\"; } \"b\";");
+        assertInterpreted("returnCode = 200; returnCode;");
+        assertInterpreted("x = \"return 1;\"; x;");
+        assertInterpreted("// return 1;\nx;");
+        assertInterpreted("/* return 1; */ x;");
+        assertInterpreted("if (x) return \"a\"; else return \"b\";");
+        assertInterpreted("{ return 1; }");
+        assertInterpreted("return 1; x;");
+        assertInterpreted("return 1");
+        assertInterpreted("x.return1();");
+        assertInterpreted("\"b\";");
+    }
+
+    private static void assertWrapped(String script) {
+        CompiledScript compiled = CompiledScript.compile(script);
+        Assert.assertFalse(script, compiled.isStatic);
+        Assert.assertNotNull(script, compiled.methodDeclaration);
+    }
+
+    private static void assertInterpreted(String script) {
+        CompiledScript compiled = CompiledScript.compile(script);
+        Assert.assertFalse(script, compiled.isStatic);
+        Assert.assertNull(script, compiled.methodDeclaration);
+    }
+}
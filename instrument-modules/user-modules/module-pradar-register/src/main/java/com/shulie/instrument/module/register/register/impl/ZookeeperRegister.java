@@ -459,7 +459,7 @@ public class ZookeeperRegister implements Register {
         try {
             String troControlWebUrl = PropertyUtil.getTroControlWebUrl();
             LOGGER.info(String.format("中间件管理：jars：%s", jars));
-            final Set<String> jarInfoSet = ScanJarPomUtils.scanByJarPaths(jars);
+            final Set<String> jarInfoSet = JarInventory.getDefault().scan(jars);
             final ArrayList<MiddlewareRequest> middlewareList = new ArrayList<MiddlewareRequest>();
             for (String jarInfoStr : jarInfoSet) {
                 final String[] split = jarInfoStr.split(":");
@@ -17,13 +17,13 @@ package com.pamirs.attach.plugin.webflux.interceptor;
 
 import com.pamirs.attach.plugin.webflux.common.WebFluxConstants;
 import com.pamirs.pradar.MiddlewareType;
-import com.pamirs.pradar.Pradar;
+import com.pamirs.pradar.PropagationCodec;
+import com.pamirs.pradar.interceptor.ContextTransfer;
 import com.pamirs.pradar.interceptor.SpanRecord;
 import com.pamirs.pradar.interceptor.TraceInterceptorAdaptor;
 import com.shulie.instrument.simulator.api.listener.ext.Advice;
 import org.springframework.http.HttpHeaders;
 
-import java.util.Map;
 
 public class RequestBuildInterceptor extends TraceInterceptorAdaptor {
     @Override
@@ -41,13 +41,15 @@ public class RequestBuildInterceptor extends TraceInterceptorAdaptor {
         if (advice.getParameterArray().length < 6 && !(advice.getParameterArray()[2] instanceof HttpHeaders)) {
             return null;
         }
-        HttpHeaders headers = (HttpHeaders) advice.getParameterArray()[2];
-        Map<String, String> contextMap = Pradar.getInvokeContextTransformMap();
-        for (Map.Entry<String, String> entry : contextMap.entrySet()) {
-            if (entry.getKey() != null && entry.getValue() != null) {
-                headers.add(entry.getKey(), entry.getValue());
+        final HttpHeaders headers = (HttpHeaders) advice.getParameterArray()[2];
+        PropagationCodec.inject(new ContextTransfer() {
+            @Override
+            public void transfer(String key, String value) {
+                if (key != null && value != null) {
+                    headers.add(key, value);
+                }
             }
-        }
+        });
         return null;
     }
 }
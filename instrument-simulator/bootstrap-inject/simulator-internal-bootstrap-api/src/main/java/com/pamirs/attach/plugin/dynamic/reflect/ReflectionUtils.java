@@ -8,6 +8,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 替代{@link Reflect} 工具
@@ -29,6 +30,14 @@ public abstract class ReflectionUtils {
     private static final Map<Class<?>, Constructor[]> declaredConstructorCache =
             new ConcurrentReferenceHashMap<Class<?>, Constructor[]>(256);
 
+    /**
+     * 按字段名解析后的字段缓存，找不到的字段用 {@link #NO_FIELD} 占位
+     */
+    private static final Map<Class<?>, Map<String, Object>> namedFieldCache =
+            new ConcurrentReferenceHashMap<Class<?>, Map<String, Object>>(256);
+
+    private static final Object NO_FIELD = new Object();
+
     public static <T> T invoke(Object target, String methodName) {
         Method method = findMethod(target.getClass(), methodName);
         return (T) invokeMethod(method, target);
@@ -149,6 +158,30 @@ public abstract class ReflectionUtils {
     public static Field findField(Class<?> clazz, String name, Class<?> type) {
         Assert.notNull(clazz, "Class must not be null");
         Assert.isTrue(name != null || type != null, "Either name or type of the field must be specified");
+        if (type == null) {
+            return findNamedField(clazz, name);
+        }
+        return doFindField(clazz, name, type);
+    }
+
+    /**
+     * 按字段名查找字段，每个类的每个字段名只会沿着继承链查找一次
+     */
+    private static Field findNamedField(Class<?> clazz, String name) {
+        Map<String, Object> fields = namedFieldCache.get(clazz);
+        if (fields == null) {
+            fields = new ConcurrentHashMap<String, Object>(8);
+            namedFieldCache.put(clazz, fields);
+        }
+        Object field = fields.get(name);
+        if (field == null) {
+            field = doFindField(clazz, name, null);
+            fields.put(name, field == null ? NO_FIELD : field);
+        }
+        return field == NO_FIELD ? null : (Field) field;
+    }
+
+    private static Field doFindField(Class<?> clazz, String name, Class<?> type) {
         Class<?> searchType = clazz;
         while (Object.class != searchType && searchType != null) {
             Field[] fields = getDeclaredFields(searchType);
@@ -482,6 +515,7 @@ public abstract class ReflectionUtils {
     public static void clearCache() {
         declaredMethodsCache.clear();
         declaredFieldsCache.clear();
+        namedFieldCache.clear();
     }
 
     public interface MethodCallback {
@@ -89,6 +89,52 @@ public class BeforeEvent extends InvokeEvent {
         this.argumentArray = argumentArray;
     }
 
+    /**
+     * 重置事件内容
+     * 仅供框架复用事件对象时使用，ClassLoader 未变化时复用原有的弱引用
+     *
+     * @param processId       调用过程ID
+     * @param invokeId        调用ID
+     * @param javaClassLoader 触发调用事件的ClassLoader
+     * @param clazz           触发调用事件的类名称
+     * @param javaMethodName  触发调用事件的方法名称
+     * @param javaMethodDesc  触发调用事件的方法签名
+     * @param target          触发调用事件的对象(静态方法为null)
+     * @param argumentArray   触发调用事件的方法参数
+     */
+    protected void reset(final int processId,
+                         final int invokeId,
+                         final ClassLoader javaClassLoader,
+                         final Class clazz,
+                         final String javaMethodName,
+                         final String javaMethodDesc,
+                         final Object target,
+                         final Object[] argumentArray) {
+        resetInvoke(processId, invokeId);
+        if (javaClassLoader == null) {
+            this.javaClassLoader = null;
+        } else if (this.javaClassLoader == null || this.javaClassLoader.get() != javaClassLoader) {
+            this.javaClassLoader = new WeakReference<ClassLoader>(javaClassLoader);
+        }
+        this.clazz = clazz;
+        this.javaMethodName = javaMethodName;
+        this.javaMethodDesc = javaMethodDesc;
+        this.target = target;
+        this.argumentArray = argumentArray;
+    }
+
+    /**
+     * 清理事件对业务对象的引用
+     * 仅供框架复用事件对象时使用
+     */
+    protected void clear() {
+        this.clazz = null;
+        this.javaMethodName = null;
+        this.javaMethodDesc = null;
+        this.target = null;
+        this.argumentArray = null;
+    }
+
     /**
      * 改变方法入参
      *
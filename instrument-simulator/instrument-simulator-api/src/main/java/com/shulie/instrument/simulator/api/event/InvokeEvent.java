@@ -49,6 +49,18 @@ public abstract class InvokeEvent extends Event {
         this.invokeId = invokeId;
     }
 
+    /**
+     * 重置调用信息
+     * 仅供框架复用事件对象时使用，事件处理过程中不允许调用
+     *
+     * @param processId 调用过程ID
+     * @param invokeId  调用ID
+     */
+    protected void resetInvoke(final int processId, final int invokeId) {
+        this.processId = processId;
+        this.invokeId = invokeId;
+    }
+
     public int getProcessId() {
         return processId;
     }
@@ -62,6 +62,21 @@ public class ReturnEvent extends InvokeEvent {
         this.returnObj = returnObj;
     }
 
+    /**
+     * 重置事件内容
+     * 仅供框架复用事件对象时使用
+     *
+     * @param processId 调用过程ID
+     * @param invokeId  调用ID
+     * @param returnObj 调用返回值(void方法返回值为null)
+     */
+    protected void reset(final int processId,
+                         final int invokeId,
+                         final Object returnObj) {
+        resetInvoke(processId, invokeId);
+        this.returnObj = returnObj;
+    }
+
     public Object getReturnObj() {
         return returnObj;
     }
@@ -69,6 +69,21 @@ public class ThrowsEvent extends InvokeEvent {
 
     }
 
+    /**
+     * 重置事件内容
+     * 仅供框架复用事件对象时使用
+     *
+     * @param processId 调用过程ID
+     * @param invokeId  调用ID
+     * @param throwable 抛出的异常/错误信息
+     */
+    protected void reset(final int processId,
+                         final int invokeId,
+                         final Throwable throwable) {
+        resetInvoke(processId, invokeId);
+        this.throwable = throwable;
+    }
+
     public Throwable getThrowable() {
         return throwable;
     }
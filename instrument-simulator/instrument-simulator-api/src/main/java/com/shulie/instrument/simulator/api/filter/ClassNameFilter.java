@@ -15,6 +15,7 @@
 package com.shulie.instrument.simulator.api.filter;
 
 import com.shulie.instrument.simulator.api.listener.ext.BuildingForListeners;
+import com.shulie.instrument.simulator.api.listener.ext.PatternType;
 import com.shulie.instrument.simulator.api.util.StringUtil;
 
 import java.util.Collections;
@@ -26,7 +27,7 @@ import java.util.List;
  * @author xiaobin.zfb|xiaobin@shulie.io
  * @since 2020/9/30 11:32 下午
  */
-public class ClassNameFilter implements ExtFilter {
+public class ClassNameFilter implements ExtFilter, ClassNamePatterns {
     private String className;
     private boolean isIncludeSubClasses;
     private boolean isIncludeBootstrap;
@@ -70,4 +71,14 @@ public class ClassNameFilter implements ExtFilter {
     public List<BuildingForListeners> getAllListeners() {
         return Collections.EMPTY_LIST;
     }
+
+    @Override
+    public String[] getClassNamePatterns() {
+        return className == null ? new String[0] : new String[]{className};
+    }
+
+    @Override
+    public int getClassNamePatternType() {
+        return PatternType.WILDCARD;
+    }
 }
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.api.filter;
+
+import com.shulie.instrument.simulator.api.listener.ext.PatternType;
+
+/**
+ * 类名匹配模式
+ * <p>
+ * 过滤器实现此接口后，内核会根据类名匹配模式建立类名索引，类加载时只有命中索引的过滤器
+ * 才会进行类名预匹配。给出的模式必须覆盖{@link Filter#doClassNameFilter(String)}所能匹配的全部类名
+ * </p>
+ *
+ * @author xiaobin.zfb|xiaobin@shulie.io
+ * @since 2020/10/23 10:45 下午
+ */
+public interface ClassNamePatterns {
+
+    /**
+     * 获取类名匹配模式
+     *
+     * @return 类名匹配模式，返回 null 则认为无法建立索引
+     */
+    String[] getClassNamePatterns();
+
+    /**
+     * 获取类名匹配模式的类型
+     *
+     * @return {@link PatternType#WILDCARD} 或 {@link PatternType#REGEX}
+     */
+    int getClassNamePatternType();
+}
@@ -15,6 +15,7 @@
 package com.shulie.instrument.simulator.api.filter;
 
 import com.shulie.instrument.simulator.api.listener.ext.BuildingForListeners;
+import com.shulie.instrument.simulator.api.listener.ext.PatternType;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -26,7 +27,7 @@ import java.util.List;
  * @author xiaobin.zfb|xiaobin@shulie.io
  * @since 2020/9/30 11:32 下午
  */
-public class MultiClassNameFilter implements ExtFilter {
+public class MultiClassNameFilter implements ExtFilter, ClassNamePatterns {
     /**
      * 类名列表
      */
@@ -86,4 +87,14 @@ public class MultiClassNameFilter implements ExtFilter {
     public List<BuildingForListeners> doMethodFilter(MethodDescriptor methodDescriptor) {
         return Collections.EMPTY_LIST;
     }
+
+    @Override
+    public String[] getClassNamePatterns() {
+        return classNames.toArray(new String[0]);
+    }
+
+    @Override
+    public int getClassNamePatternType() {
+        return PatternType.WILDCARD;
+    }
 }
@@ -15,6 +15,7 @@
 package com.shulie.instrument.simulator.api.filter;
 
 import com.shulie.instrument.simulator.api.listener.ext.BuildingForListeners;
+import com.shulie.instrument.simulator.api.listener.ext.PatternType;
 import com.shulie.instrument.simulator.api.util.StringUtil;
 
 import java.util.Collections;
@@ -26,7 +27,7 @@ import java.util.List;
  * @author xiaobin.zfb|xiaobin@shulie.io
  * @since 2020/9/30 11:32 下午
  */
-public class NameRegexFilter implements ExtFilter {
+public class NameRegexFilter implements ExtFilter, ClassNamePatterns {
 
     /**
      * 类名正则表达式
@@ -94,4 +95,17 @@ public class NameRegexFilter implements ExtFilter {
     public boolean isIncludeBootstrap() {
         return isIncludeBootstrap;
     }
+
+    /**
+     * 类名使用 {@link StringUtil#matching(String, String)} 匹配，所以是通配符模式
+     */
+    @Override
+    public String[] getClassNamePatterns() {
+        return javaNameRegex == null ? new String[0] : new String[]{javaNameRegex};
+    }
+
+    @Override
+    public int getClassNamePatternType() {
+        return PatternType.WILDCARD;
+    }
 }
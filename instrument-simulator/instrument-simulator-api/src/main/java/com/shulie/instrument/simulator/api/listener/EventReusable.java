@@ -0,0 +1,31 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.api.listener;
+
+/**
+ * 是否允许复用事件对象的接口, 可直接由 EventListener 实现类实现
+ * 实现了此接口并返回 true 则说明此监听器只在 onEvent 执行期间访问事件对象，onEvent 返回后
+ * 不会再持有事件的引用，框架会使用线程内复用的事件对象进行分发以减少对象的创建
+ *
+ * @see com.shulie.instrument.simulator.api.event.Event
+ */
+public interface EventReusable {
+    /**
+     * 是否允许复用事件对象
+     *
+     * @return
+     */
+    boolean isEventReusable();
+}
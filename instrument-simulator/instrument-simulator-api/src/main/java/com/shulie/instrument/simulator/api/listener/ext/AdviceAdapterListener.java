@@ -19,6 +19,7 @@ import com.shulie.instrument.simulator.api.ProcessController;
 import com.shulie.instrument.simulator.api.annotation.Interrupted;
 import com.shulie.instrument.simulator.api.event.*;
 import com.shulie.instrument.simulator.api.listener.EventListener;
+import com.shulie.instrument.simulator.api.listener.EventReusable;
 import com.shulie.instrument.simulator.api.listener.Interruptable;
 import com.shulie.instrument.simulator.api.util.SimulatorStack;
 import com.shulie.instrument.simulator.api.util.StringUtil;
@@ -32,7 +33,7 @@ import static com.shulie.instrument.simulator.api.event.EventType.*;
  * @author xiaobin.zfb|xiaobin@shulie.io
  * @since 2020/10/23 10:45 下午
  */
-public class AdviceAdapterListener extends EventListener implements Interruptable {
+public class AdviceAdapterListener extends EventListener implements Interruptable, EventReusable {
 
     private final AdviceListener adviceListener;
     private final boolean isInterruptable;
@@ -279,6 +280,16 @@ public class AdviceAdapterListener extends EventListener implements Interruptabl
         return isInterruptable;
     }
 
+    /**
+     * 事件中的数据在 onEvent 中都会被转存至 {@link Advice}，不会持有事件本身的引用
+     *
+     * @return
+     */
+    @Override
+    public boolean isEventReusable() {
+        return true;
+    }
+
     /**
      * 判断是否是中断式事件处理器
      *
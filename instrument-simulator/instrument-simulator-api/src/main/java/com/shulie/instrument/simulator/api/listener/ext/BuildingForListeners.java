@@ -15,6 +15,7 @@
 package com.shulie.instrument.simulator.api.listener.ext;
 
 import com.shulie.instrument.simulator.api.listener.Listeners;
+import com.shulie.instrument.simulator.message.Messager;
 
 import java.util.Arrays;
 
@@ -27,11 +28,16 @@ import java.util.Arrays;
 public class BuildingForListeners {
     private final Listeners listeners;
     private final int[] eventTypes;
+    /**
+     * 监听器ID，连续分配，事件分发时作为监听器表的下标
+     */
+    private final int listenerId;
 
 
     public BuildingForListeners(final Listeners listeners, final int... eventTypes) {
         this.listeners = listeners;
         this.eventTypes = eventTypes;
+        this.listenerId = Messager.nextListenerId();
     }
 
     public Listeners getListeners() {
@@ -43,7 +49,7 @@ public class BuildingForListeners {
     }
 
     public int getListenerId() {
-        return System.identityHashCode(this);
+        return listenerId;
     }
 
     @Override
@@ -16,6 +16,7 @@ package com.shulie.instrument.simulator.api.listener.ext;
 
 
 import com.shulie.instrument.simulator.api.filter.ClassDescriptor;
+import com.shulie.instrument.simulator.api.filter.ClassNamePatterns;
 import com.shulie.instrument.simulator.api.filter.ExtFilter;
 import com.shulie.instrument.simulator.api.filter.Filter;
 import com.shulie.instrument.simulator.api.filter.MethodDescriptor;
@@ -292,7 +293,17 @@ class ClassMatchBuilder implements IClassMatchBuilder {
     private EventWatchCondition toEventWatchCondition() {
         final List<Filter> filters = new ArrayList<Filter>();
 
-        final Filter filter = new ExtFilter() {
+        final Filter filter = new PatternExtFilter() {
+
+            @Override
+            public String[] getClassNamePatterns() {
+                return pattern;
+            }
+
+            @Override
+            public int getClassNamePatternType() {
+                return patternType;
+            }
 
             @Override
             public boolean isIncludeSubClasses() {
@@ -400,6 +411,12 @@ class ClassMatchBuilder implements IClassMatchBuilder {
         };
     }
 
+    /**
+     * 同时给出类名匹配模式的过滤器
+     */
+    private static abstract class PatternExtFilter implements ExtFilter, ClassNamePatterns {
+    }
+
     /**
      * 模式匹配
      *
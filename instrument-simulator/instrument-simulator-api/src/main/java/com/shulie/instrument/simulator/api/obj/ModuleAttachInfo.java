@@ -0,0 +1,118 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.api.obj;
+
+import java.io.Serializable;
+
+/**
+ * 模块挂载信息
+ * <p>
+ * 模块加载耗时以及重新渲染类时对 JVM 造成的停顿
+ * </p>
+ */
+public class ModuleAttachInfo implements Serializable {
+    private final static long serialVersionUID = 1L;
+
+    /**
+     * 模块id
+     */
+    private String moduleId;
+
+    /**
+     * 模块加载总耗时(毫秒)
+     */
+    private long attachTimeMillis;
+
+    /**
+     * 模块加载期间 JVM 进入安全点的次数，-1 表示当前 JVM 不支持获取
+     */
+    private long safepointCount;
+
+    /**
+     * 模块加载期间 JVM 处于安全点的总时间(毫秒)，-1 表示当前 JVM 不支持获取
+     */
+    private long safepointTimeMillis;
+
+    /**
+     * 重新渲染的类个数
+     */
+    private int reTransformClassCount;
+
+    /**
+     * retransformClasses 的调用次数
+     */
+    private int reTransformInvokeCount;
+
+    /**
+     * 重新渲染总耗时(毫秒)
+     */
+    private long reTransformTimeMillis;
+
+    public String getModuleId() {
+        return moduleId;
+    }
+
+    public void setModuleId(String moduleId) {
+        this.moduleId = moduleId;
+    }
+
+    public long getAttachTimeMillis() {
+        return attachTimeMillis;
+    }
+
+    public void setAttachTimeMillis(long attachTimeMillis) {
+        this.attachTimeMillis = attachTimeMillis;
+    }
+
+    public long getSafepointCount() {
+        return safepointCount;
+    }
+
+    public void setSafepointCount(long safepointCount) {
+        this.safepointCount = safepointCount;
+    }
+
+    public long getSafepointTimeMillis() {
+        return safepointTimeMillis;
+    }
+
+    public void setSafepointTimeMillis(long safepointTimeMillis) {
+        this.safepointTimeMillis = safepointTimeMillis;
+    }
+
+    public int getReTransformClassCount() {
+        return reTransformClassCount;
+    }
+
+    public void setReTransformClassCount(int reTransformClassCount) {
+        this.reTransformClassCount = reTransformClassCount;
+    }
+
+    public int getReTransformInvokeCount() {
+        return reTransformInvokeCount;
+    }
+
+    public void setReTransformInvokeCount(int reTransformInvokeCount) {
+        this.reTransformInvokeCount = reTransformInvokeCount;
+    }
+
+    public long getReTransformTimeMillis() {
+        return reTransformTimeMillis;
+    }
+
+    public void setReTransformTimeMillis(long reTransformTimeMillis) {
+        this.reTransformTimeMillis = reTransformTimeMillis;
+    }
+}
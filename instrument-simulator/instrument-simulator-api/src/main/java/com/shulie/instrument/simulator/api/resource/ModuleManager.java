@@ -17,6 +17,7 @@ package com.shulie.instrument.simulator.api.resource;
 import com.shulie.instrument.simulator.api.ExtensionModule;
 import com.shulie.instrument.simulator.api.ModuleException;
 import com.shulie.instrument.simulator.api.ModuleSpec;
+import com.shulie.instrument.simulator.api.obj.ModuleAttachInfo;
 
 import java.io.File;
 import java.util.Collection;
@@ -138,6 +139,15 @@ public interface ModuleManager {
      */
     int getEffectMethodCount(String moduleId) throws ModuleException;
 
+    /**
+     * 获取模块挂载信息，包括模块加载耗时、重新渲染的类个数以及加载期间 JVM 进入安全点的次数
+     *
+     * @param moduleId 模块ID
+     * @return 模块挂载信息
+     * @throws ModuleException 模块不存在
+     */
+    ModuleAttachInfo getAttachInfo(String moduleId) throws ModuleException;
+
     /**
      * 获取模块激活状态，判断当前模块是否已经被激活
      *
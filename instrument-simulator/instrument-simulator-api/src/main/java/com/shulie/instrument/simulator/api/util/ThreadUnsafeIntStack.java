@@ -0,0 +1,137 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.api.util;
+
+import java.util.NoSuchElementException;
+
+import static java.lang.System.arraycopy;
+
+/**
+ * 线程不安全不固定栈深的 int 堆栈实现
+ * 与 {@link ThreadUnsafeSimulatorStack} 行为一致，但直接存储基本类型，入栈时不会产生装箱对象
+ */
+public class ThreadUnsafeIntStack {
+
+    private final static int EMPTY_INDEX = -1;
+    private final static int DEFAULT_STACK_DEEP = 12;
+
+    private int[] elementArray;
+    private int index = EMPTY_INDEX;
+
+    public ThreadUnsafeIntStack() {
+        this(DEFAULT_STACK_DEEP);
+    }
+
+    public ThreadUnsafeIntStack(int stackSize) {
+        this.elementArray = new int[stackSize];
+    }
+
+    /**
+     * 自动扩容
+     * 当前堆栈最大深度不满足期望时会自动扩容(1.5倍扩容)
+     *
+     * @param expectDeep 期望堆栈深度
+     */
+    private void ensureCapacityInternal(int expectDeep) {
+        final int currentStackSize = elementArray.length;
+        if (currentStackSize <= expectDeep) {
+            int newCapacity = currentStackSize + (currentStackSize >> 1) + 1;
+            final int[] newElementArray = new int[newCapacity];
+            arraycopy(elementArray, 0, newElementArray, 0, currentStackSize);
+            this.elementArray = newElementArray;
+        }
+    }
+
+    private void checkForPopOrPeek() {
+        // stack is empty
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * 出栈
+     *
+     * @return
+     */
+    public int pop() {
+        checkForPopOrPeek();
+        return elementArray[index--];
+    }
+
+    /**
+     * 入栈
+     *
+     * @param e
+     */
+    public void push(int e) {
+        ensureCapacityInternal(index + 1);
+        elementArray[++index] = e;
+    }
+
+    /**
+     * 取出栈顶的数据
+     *
+     * @return
+     */
+    public int peek() {
+        checkForPopOrPeek();
+        return elementArray[index];
+    }
+
+    /**
+     * 判断栈是否为空
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return index == EMPTY_INDEX;
+    }
+
+    /**
+     * 判断当前栈是否是最后一个数据
+     *
+     * @return
+     */
+    public boolean isLast() {
+        return index == 0;
+    }
+
+    /**
+     * 取出最后一个位置的数据
+     *
+     * @return
+     */
+    public int peekLast() {
+        checkForPopOrPeek();
+        return elementArray[0];
+    }
+
+    /**
+     * 获取栈的深度
+     *
+     * @return
+     */
+    public int deep() {
+        return index + 1;
+    }
+
+    /**
+     * 清空堆栈，保留已分配的空间以便复用
+     */
+    public void clear() {
+        index = EMPTY_INDEX;
+    }
+}
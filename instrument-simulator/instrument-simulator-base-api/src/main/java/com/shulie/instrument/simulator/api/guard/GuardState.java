@@ -0,0 +1,63 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.api.guard;
+
+/**
+ * 线程内的守护状态
+ * <p>
+ * 每个线程持有一个实例，除了守护区域的引用计数外，还允许挂载一个附件，事件分发时可以通过
+ * 一次 ThreadLocal 访问同时拿到守护状态和挂载在同一线程上的分发数据
+ * <p>
+ * 非线程安全，只能由所属线程访问
+ */
+public final class GuardState {
+
+    /**
+     * 守护区域引用计数
+     */
+    int referenceCount;
+
+    /**
+     * 挂载在当前线程上的附件
+     */
+    private Object attachment;
+
+    /**
+     * 判断当前是否处于守护区域中
+     *
+     * @return TRUE:在守护区域中；FALSE：非守护区域中
+     */
+    public boolean isInGuard() {
+        return referenceCount > 0;
+    }
+
+    /**
+     * 获取挂载在当前线程上的附件
+     *
+     * @return 附件
+     */
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    /**
+     * 挂载附件
+     *
+     * @param attachment 附件
+     */
+    public void setAttachment(Object attachment) {
+        this.attachment = attachment;
+    }
+}
@@ -20,7 +20,6 @@ import org.slf4j.LoggerFactory;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Simulator守卫者
@@ -33,10 +32,10 @@ public class SimulatorGuard {
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final boolean isDebugEnabled = logger.isDebugEnabled();
 
-    private final ThreadLocal<AtomicInteger> guardThreadLocal = new ThreadLocal<AtomicInteger>() {
+    private final ThreadLocal<GuardState> guardThreadLocal = new ThreadLocal<GuardState>() {
         @Override
-        protected AtomicInteger initialValue() {
-            return new AtomicInteger(0);
+        protected GuardState initialValue() {
+            return new GuardState();
         }
     };
 
@@ -46,7 +45,7 @@ public class SimulatorGuard {
      * @return 守护区域当前引用计数
      */
     public int enter() {
-        final int referenceCount = guardThreadLocal.get().getAndIncrement();
+        final int referenceCount = guardThreadLocal.get().referenceCount++;
         if (isDebugEnabled) {
             logger.debug("SIMULATOR: thread:{} enter protect:{}", Thread.currentThread(), referenceCount);
         }
@@ -59,10 +58,16 @@ public class SimulatorGuard {
      * @return 守护区域当前引用计数
      */
     public int exit() {
-        final int referenceCount = guardThreadLocal.get().decrementAndGet();
+        final GuardState state = guardThreadLocal.get();
+        final int referenceCount = --state.referenceCount;
         assert referenceCount >= 0;
         if (referenceCount == 0) {
-            guardThreadLocal.remove();
+            /**
+             * 挂载着附件说明当前线程上还有未结束的事件分发，附件卸下时再清理 ThreadLocal
+             */
+            if (state.getAttachment() == null) {
+                guardThreadLocal.remove();
+            }
             if (isDebugEnabled) {
                 logger.debug("SIMULATOR: thread:{} exit protect:{} with clean", Thread.currentThread(), referenceCount);
             }
@@ -82,7 +87,27 @@ public class SimulatorGuard {
      * @return TRUE:在守护区域中；FALSE：非守护区域中
      */
     public boolean isInGuard() {
-        return guardThreadLocal.get().get() > 0;
+        return guardThreadLocal.get().isInGuard();
+    }
+
+    /**
+     * 获取当前线程的守护状态
+     *
+     * @return 守护状态
+     */
+    public GuardState getState() {
+        return guardThreadLocal.get();
+    }
+
+    /**
+     * 卸下当前线程守护状态上挂载的附件，不在守护区域中时同时清理 ThreadLocal
+     */
+    public void clearAttachment() {
+        final GuardState state = guardThreadLocal.get();
+        state.setAttachment(null);
+        if (!state.isInGuard()) {
+            guardThreadLocal.remove();
+        }
     }
 
     /**
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.api.reflect;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * 已解析好的字段访问器
+ * <p>
+ * 由 {@link FieldAccessors} 按 (类, 字段名) 解析一次后缓存，字段在解析时已经设置为可访问，
+ * 后续读写不再需要查找字段和校验访问权限
+ * <p>
+ * 访问器被全局缓存持有，字段及其声明类只以弱引用持有，否则 Field 会经由声明类一直引用到业务类加载器，
+ * 导致业务类无法卸载。字段被 GC 回收后在下一次访问时从声明类重新取出
+ */
+public final class FieldAccessor {
+
+    private final WeakReference<Class<?>> declaringClass;
+
+    private final String name;
+
+    private final boolean isStatic;
+
+    private volatile WeakReference<Field> field;
+
+    FieldAccessor(Field field) {
+        this.declaringClass = new WeakReference<Class<?>>(field.getDeclaringClass());
+        this.name = field.getName();
+        this.isStatic = Modifier.isStatic(field.getModifiers());
+        this.field = new WeakReference<Field>(field);
+    }
+
+    /**
+     * 读取字段值
+     *
+     * @param target 目标对象，静态字段可以传 null
+     * @param <T>    字段值类型
+     * @return 字段值
+     * @throws ReflectException 读取失败
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object target) throws ReflectException {
+        try {
+            return (T) field().get(isStatic ? null : target);
+        } catch (ReflectException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ReflectException(e);
+        }
+    }
+
+    /**
+     * 设置字段值
+     *
+     * @param target 目标对象，静态字段可以传 null
+     * @param value  字段值
+     * @throws ReflectException 设置失败
+     */
+    public void set(Object target, Object value) throws ReflectException {
+        try {
+            field().set(isStatic ? null : target, value);
+        } catch (ReflectException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ReflectException(e);
+        }
+    }
+
+    public Field getField() throws ReflectException {
+        try {
+            return field();
+        } catch (ReflectException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ReflectException(e);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isStatic() {
+        return isStatic;
+    }
+
+    @Override
+    public String toString() {
+        final Class<?> type = declaringClass.get();
+        return (type == null ? "<unloaded>" : type.getName()) + "." + name;
+    }
+
+    private Field field() throws NoSuchFieldException {
+        Field f = field.get();
+        if (f == null) {
+            final Class<?> type = declaringClass.get();
+            if (type == null) {
+                throw new ReflectException("class of field " + name + " has been unloaded");
+            }
+            f = Reflect.accessible(type.getDeclaredField(name));
+            field = new WeakReference<Field>(f);
+        }
+        return f;
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.api.reflect;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 字段访问器注册表
+ * <p>
+ * 每个 (类, 字段名) 只解析一次，解析结果缓存为 {@link FieldAccessor}，找不到的字段同样会缓存下来，
+ * 避免每次访问都走 getField/getDeclaredField 并沿着父类逐个查找、抛出 NoSuchFieldException
+ * <p>
+ * 类作为弱引用的 key，字段表中的访问器也只以弱引用持有字段和声明类，value 侧没有到类的强引用，
+ * 不会因为缓存而阻止业务类加载器被回收。查找时使用普通对象作为 key，不会在每次访问时创建 Reference
+ */
+public final class FieldAccessors {
+
+    /**
+     * 字段不存在的占位
+     */
+    private static final Object MISSING = new Object();
+
+    private static final ConcurrentMap<Object, ConcurrentMap<String, Object>> TABLES
+        = new ConcurrentHashMap<Object, ConcurrentMap<String, Object>>();
+
+    private static final ReferenceQueue<Class<?>> STALE_KEYS = new ReferenceQueue<Class<?>>();
+
+    private FieldAccessors() {
+    }
+
+    /**
+     * 查找字段访问器，先查找 public 字段(包括父类及接口)，再沿着父类查找声明的字段
+     *
+     * @param type 类
+     * @param name 字段名
+     * @return 字段访问器，字段不存在时返回 null
+     * @throws ReflectException 解析字段失败
+     */
+    public static FieldAccessor find(Class<?> type, String name) throws ReflectException {
+        final ConcurrentMap<String, Object> table = table(type);
+        Object accessor = table.get(name);
+        if (accessor == null) {
+            accessor = resolve(type, name);
+            table.put(name, accessor);
+        }
+        return accessor == MISSING ? null : (FieldAccessor) accessor;
+    }
+
+    /**
+     * 获取字段访问器
+     *
+     * @param type 类
+     * @param name 字段名
+     * @return 字段访问器
+     * @throws ReflectException 字段不存在或解析字段失败
+     */
+    public static FieldAccessor get(Class<?> type, String name) throws ReflectException {
+        final FieldAccessor accessor = find(type, name);
+        if (accessor == null) {
+            throw new ReflectException(new NoSuchFieldException(name));
+        }
+        return accessor;
+    }
+
+    /**
+     * 清空所有缓存
+     */
+    public static void clear() {
+        TABLES.clear();
+        expungeStaleKeys();
+    }
+
+    private static ConcurrentMap<String, Object> table(Class<?> type) {
+        ConcurrentMap<String, Object> table = TABLES.get(new LookupKey(type));
+        if (table == null) {
+            expungeStaleKeys();
+            table = new ConcurrentHashMap<String, Object>(8);
+            final ConcurrentMap<String, Object> old = TABLES.putIfAbsent(new ClassKey(type, STALE_KEYS), table);
+            if (old != null) {
+                table = old;
+            }
+        }
+        return table;
+    }
+
+    private static Object resolve(Class<?> type, String name) throws ReflectException {
+        try {
+            return new FieldAccessor(Reflect.accessible(type.getField(name)));
+        } catch (NoSuchFieldException e) {
+            Class<?> t = type;
+            do {
+                try {
+                    return new FieldAccessor(Reflect.accessible(t.getDeclaredField(name)));
+                } catch (NoSuchFieldException ignore) {
+                }
+                t = t.getSuperclass();
+            } while (t != null);
+            return MISSING;
+        } catch (Throwable e) {
+            throw new ReflectException(e);
+        }
+    }
+
+    private static void expungeStaleKeys() {
+        Reference<? extends Class<?>> ref;
+        while ((ref = STALE_KEYS.poll()) != null) {
+            TABLES.remove(ref);
+        }
+    }
+
+    /**
+     * 以类的同一性作为判断依据的弱引用 key，只在放入缓存时创建
+     */
+    private static final class ClassKey extends WeakReference<Class<?>> {
+
+        private final int hash;
+
+        ClassKey(Class<?> type, ReferenceQueue<Class<?>> queue) {
+            super(type, queue);
+            this.hash = System.identityHashCode(type);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            final Class<?> type = get();
+            if (type == null) {
+                return false;
+            }
+            if (obj instanceof LookupKey) {
+                return type == ((LookupKey) obj).type;
+            }
+            return obj instanceof ClassKey && type == ((ClassKey) obj).get();
+        }
+    }
+
+    /**
+     * 查找用的 key，与 {@link ClassKey} 的 hashCode 与 equals 一致
+     */
+    private static final class LookupKey {
+
+        private final Class<?> type;
+
+        LookupKey(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(type);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof ClassKey) {
+                return type == ((ClassKey) obj).get();
+            }
+            return obj instanceof LookupKey && type == ((LookupKey) obj).type;
+        }
+    }
+}
@@ -79,13 +79,8 @@ public class Reflect {
     }
 
     public Reflect set(String name, Object value) throws ReflectException {
-        try {
-            Field field = field0(name);
-            field.set(object, unwrap(value));
-            return this;
-        } catch (Throwable e) {
-            throw new ReflectException(e);
-        }
+        FieldAccessors.get(type(), name).set(object, unwrap(value));
+        return this;
     }
 
     public Reflect set(Field field, Object value) throws ReflectException {
@@ -123,7 +118,11 @@ public class Reflect {
 
     public boolean existsField(String name) {
         try {
-            field(name);
+            FieldAccessor accessor = FieldAccessors.find(type(), name);
+            if (accessor == null) {
+                return false;
+            }
+            accessor.get(object);
             return true;
         } catch (ReflectException e) {
             return false;
@@ -179,12 +178,7 @@ public class Reflect {
     }
 
     public Reflect field(String name) throws ReflectException {
-        try {
-            Field field = field0(name);
-            return field(field);
-        } catch (Throwable e) {
-            throw new ReflectException(e);
-        }
+        return on(FieldAccessors.get(type(), name).get(object));
     }
 
     public Reflect field(Field field) throws ReflectException {
@@ -196,22 +190,7 @@ public class Reflect {
     }
 
     public Field field0(String name) throws ReflectException {
-        Class<?> type = type();
-
-        try {
-            return type.getField(name);
-        } catch (NoSuchFieldException e) {
-            do {
-                try {
-                    return accessible(type.getDeclaredField(name));
-                } catch (NoSuchFieldException ignore) {
-                }
-                type = type.getSuperclass();
-            }
-            while (type != null);
-
-            throw new ReflectException(e);
-        }
+        return FieldAccessors.get(type(), name).getField();
     }
 
     public Map<String, Reflect> fields() {
@@ -23,8 +23,10 @@ import com.shulie.instrument.simulator.api.resource.*;
 import com.shulie.instrument.simulator.core.classloader.ClassLoaderFactory;
 import com.shulie.instrument.simulator.core.classloader.ClassLoaderService;
 import com.shulie.instrument.simulator.core.inject.ClassInjector;
+import com.shulie.instrument.simulator.core.manager.AttachStatistic;
 import com.shulie.instrument.simulator.core.manager.CoreLoadedClassDataSource;
 import com.shulie.instrument.simulator.core.manager.CoreModuleManager;
+import com.shulie.instrument.simulator.core.manager.ReTransformBatch;
 import com.shulie.instrument.simulator.core.manager.SimulatorClassFileTransformer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -95,6 +97,16 @@ public class CoreModule {
      */
     private ModuleEventWatcher moduleEventWatcher;
 
+    /**
+     * 模块的批量重新渲染
+     */
+    private ReTransformBatch reTransformBatch;
+
+    /**
+     * 模块挂载统计
+     */
+    private final AttachStatistic attachStatistic = new AttachStatistic();
+
     /**
      * 增强模板
      */
@@ -433,6 +445,7 @@ public class CoreModule {
             this.coreLoadedClassDataSource = null;
             this.moduleEventWatcher.close();
             this.moduleEventWatcher = null;
+            this.reTransformBatch = null;
             this.enhanceTemplate = null;
             this.moduleController = null;
             this.moduleManager = null;
@@ -487,6 +500,18 @@ public class CoreModule {
         this.moduleEventWatcher = moduleEventWatcher;
     }
 
+    public ReTransformBatch getReTransformBatch() {
+        return reTransformBatch;
+    }
+
+    public void setReTransformBatch(ReTransformBatch reTransformBatch) {
+        this.reTransformBatch = reTransformBatch;
+    }
+
+    public AttachStatistic getAttachStatistic() {
+        return attachStatistic;
+    }
+
     public ModuleController getModuleController() {
         return moduleController;
     }
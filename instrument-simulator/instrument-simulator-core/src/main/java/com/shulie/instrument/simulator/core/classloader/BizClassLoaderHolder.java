@@ -20,12 +20,12 @@ import com.shulie.instrument.simulator.core.util.SimulatorClassUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.ref.SoftReference;
-
 /**
  * 业务类加载器持有者
  * 业务类加载器持有者是一个链式结构，因为每一级的调用都会设置自己的业务 ClassLoader,多层级之间的调用
  * 就会组成一个链式结构，每一层执行完操作后都会清除当前层的 ClassLoader
+ * <p>
+ * 链表的节点在线程内复用，头节点不对应任何调用层级，设置和清除业务类加载器时不会创建对象
  *
  * @author xiaobin@shulie.io
  * @since 1.0.0
@@ -34,8 +34,18 @@ public class BizClassLoaderHolder {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BizClassLoaderHolder.class);
 
-    private static final ThreadLocal<ClassLoaderNode> holder = new ThreadLocal<ClassLoaderNode>();
-    private static final ThreadLocal<ClassLoaderNode> holderOuter = new ThreadLocal<ClassLoaderNode>();
+    private static final ThreadLocal<ClassLoaderNode> holder = new ThreadLocal<ClassLoaderNode>() {
+        @Override
+        protected ClassLoaderNode initialValue() {
+            return new ClassLoaderNode(null);
+        }
+    };
+    private static final ThreadLocal<ClassLoaderNode> holderOuter = new ThreadLocal<ClassLoaderNode>() {
+        @Override
+        protected ClassLoaderNode initialValue() {
+            return new ClassLoaderNode(null);
+        }
+    };
 
     /**
      * 设置业务类加载器
@@ -63,14 +73,19 @@ public class BizClassLoaderHolder {
 
     private static void setBizClassLoader(ClassLoader classLoader,ThreadLocal<ClassLoaderNode> local) {
         ClassLoaderNode classLoaderNode = local.get();
-        ClassLoaderNode child = new ClassLoaderNode(classLoader, classLoaderNode);
+        ClassLoaderNode child = classLoaderNode.child;
+        if (child == null) {
+            child = new ClassLoaderNode(classLoaderNode);
+            classLoaderNode.child = child;
+        }
+        child.classLoader = classLoader;
         local.set(child);
     }
 
     /**
      * 清除业务类加载器
-     * 当前的业务类加载器节点是顶点时，则清空 ThreadLocal
-     * 当前业务类加载器是非顶点时，则设置当前类加载器顶点为父级
+     * 清空当前节点的业务类加载器，并设置当前类加载器顶点为父级
+     * 当前节点已经是头节点时不做处理
      */
     public static void clearBizClassLoader() {
         clearBizClassLoader(holder);
@@ -82,15 +97,12 @@ public class BizClassLoaderHolder {
 
     private static void clearBizClassLoader(ThreadLocal<ClassLoaderNode> local) {
         ClassLoaderNode stack = local.get();
-        if (stack == null) {
-            return;
-        }
         ClassLoaderNode parent = stack.parent;
         if (parent == null) {
-            local.remove();
-        } else {
-            local.set(parent);
+            return;
         }
+        stack.classLoader = null;
+        local.set(parent);
     }
 
     /**
@@ -108,11 +120,7 @@ public class BizClassLoaderHolder {
     }
 
     private static ClassLoader getBizClassLoader(ThreadLocal<ClassLoaderNode> local) {
-        ClassLoaderNode stack = local.get();
-        ClassLoader classLoader = null;
-        if (stack != null) {
-            classLoader = stack.getClassLoader();
-        }
+        ClassLoader classLoader = local.get().getClassLoader();
         //防止不在我们的插件范围内去执行的时候， 比如业务代码（注册filter等方式），拿不到业务类加载器的情况
         classLoader = classLoader == null ? Thread.currentThread().getContextClassLoader() : classLoader;
         if (SimulatorClassUtils.isSimulatorClassLoader(classLoader)) {
@@ -1,26 +1,27 @@
 package com.shulie.instrument.simulator.core.classloader;
 
-import java.lang.ref.SoftReference;
-
 /**
  * 业务类加载器节点，由这些节点组成链表结构
  * 对应每一个调用层级为一个节点
+ * <p>
+ * 节点在同一线程上一直复用，进入调用层级时设置业务类加载器，离开时清空，不会在调用结束后继续持有业务类加载器
  *
  * @author Licey
  * @date 2022/9/28
  */
 public class ClassLoaderNode {
-    SoftReference<ClassLoader> classLoader;
-    ClassLoaderNode parent;
+    ClassLoader classLoader;
+    final ClassLoaderNode parent;
+    /**
+     * 下一个调用层级复用的节点
+     */
+    ClassLoaderNode child;
 
-    ClassLoaderNode(ClassLoader classLoader, ClassLoaderNode parent) {
-        if (classLoader != null) {
-            this.classLoader = new SoftReference<ClassLoader>(classLoader);
-        }
+    ClassLoaderNode(ClassLoaderNode parent) {
         this.parent = parent;
     }
 
     ClassLoader getClassLoader() {
-        return classLoader == null ? null : classLoader.get();
+        return classLoader;
     }
 }
@@ -17,7 +17,6 @@ package com.shulie.instrument.simulator.core.classloader;
 import com.shulie.instrument.simulator.api.annotation.Stealth;
 import com.shulie.instrument.simulator.api.spi.ModuleJarUnLoadSpi;
 import com.shulie.instrument.simulator.core.util.ReflectUtils;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 
@@ -51,13 +50,6 @@ public class ModuleClassLoader extends ModuleRoutingURLClassLoader {
         }
     }
 
-    private static File copyToTempFile(final File moduleJarFile) throws IOException {
-        File tempFile = File.createTempFile("instrument_simulator_module_jar_" + System.nanoTime(), ".jar");
-        tempFile.deleteOnExit();
-        FileUtils.copyFile(moduleJarFile, tempFile);
-        return tempFile;
-    }
-
     private static URL[] buildResourceUrls(final File tempModuleJarFile, Set<String> importArtifacts) throws IOException {
         List<File> jarFiles = new ArrayList<File>();
         jarFiles.add(tempModuleJarFile);
@@ -74,7 +66,7 @@ public class ModuleClassLoader extends ModuleRoutingURLClassLoader {
     }
 
     public ModuleClassLoader(final ClassLoaderService classLoaderService, final File moduleJarFile, Set<String> importArtifacts, final String moduleId, final String bizClassLoader) throws IOException {
-        this(classLoaderService, moduleJarFile, copyToTempFile(moduleJarFile), importArtifacts, moduleId, bizClassLoader);
+        this(classLoaderService, moduleJarFile, ModuleJarCache.getInstance().get(moduleJarFile), importArtifacts, moduleId, bizClassLoader);
     }
 
     private ModuleClassLoader(final ClassLoaderService classLoaderService,
@@ -85,7 +77,8 @@ public class ModuleClassLoader extends ModuleRoutingURLClassLoader {
                               final String bizClassLoader) throws IOException {
         /**
          * 定义优化从框架加载的包列表
-         * 每次使用拷贝临时文件的方式来加载模块，防止原有模式文件的变更导致运行期出现错误
+         * 使用模块文件的副本来加载模块，防止原有模式文件的变更导致运行期出现错误
+         * 副本按内容缓存，参见 {@link ModuleJarCache}
          */
         super(moduleId,
                 classLoaderService,
@@ -102,7 +95,7 @@ public class ModuleClassLoader extends ModuleRoutingURLClassLoader {
                         "javax.annotation.Resource*"
                 )
         );
-        this.checksumCRC32 = FileUtils.checksumCRC32(moduleJarFile);
+        this.checksumCRC32 = ModuleJarCache.getInstance().checksumCRC32(moduleJarFile);
         this.moduleJarFile = moduleJarFile;
         this.tempModuleJarFile = tempModuleJarFile;
         this.importResources = importResources;
@@ -189,6 +182,7 @@ public class ModuleClassLoader extends ModuleRoutingURLClassLoader {
                     }
                     routingArray = null;
                 }
+                clearRoutingMisses();
                 releaseClasses();
                 return;
             }
@@ -223,6 +217,7 @@ public class ModuleClassLoader extends ModuleRoutingURLClassLoader {
                     }
                     routingArray = null;
                 }
+                clearRoutingMisses();
                 releaseClasses();
             } catch (Throwable cause) {
                 logger.warn("SIMULATOR: close ModuleClassLoader[file={}] failed. probably not a HOTSPOT VM", moduleJarFile, cause);
@@ -230,8 +225,8 @@ public class ModuleClassLoader extends ModuleRoutingURLClassLoader {
 
         } finally {
 
-            // 在这里删除掉临时文件
-            FileUtils.deleteQuietly(tempModuleJarFile);
+            // 在这里删除掉临时文件，缓存中的副本会被共享，不删除
+            ModuleJarCache.getInstance().release(tempModuleJarFile);
         }
     }
 
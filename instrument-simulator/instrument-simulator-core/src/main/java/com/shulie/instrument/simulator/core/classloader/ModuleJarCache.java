@@ -0,0 +1,577 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.classloader;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * 模块 jar 的内容寻址缓存
+ * <p>
+ * 模块类加载器不直接加载原始的模块 jar，而是加载它的副本，防止升级时替换原始 jar 导致运行期出现错误。
+ * 副本以 jar 内容的 SHA-256 命名存放在缓存目录中，内容不变的 jar 在多次启动之间以及同一用户的多个 JVM 之间共享，
+ * 原始 jar 被替换后内容摘要随之变化，会生成新的副本，已经在使用的副本不受影响
+ * <p>
+ * 先只读计算原始 jar 的摘要，同一次读取中同时算出 CRC32 供 {@link #checksumCRC32(File)} 使用，
+ * 副本已经存在时直接使用，只有缓存未命中时才复制；副本先写入临时文件再重命名，并发创建时不会读到写了一半的文件。
+ * 命中时不再重新计算副本的摘要，只核对长度，每个模块 jar 在一次启动中只读取一遍
+ * <p>
+ * 缓存目录默认位于当前用户的 home 目录下，新建时只允许所有者访问。使用中的副本在对应的 {@code <摘要>.lock}
+ * 文件上持有共享锁，清理时只删除能拿到排他锁的副本，不会删除其他 JVM 正在使用的副本。
+ * POSIX 的文件锁属于整个进程，同一个文件上任何一个文件描述符关闭都会释放进程在该文件上的全部锁，
+ * 而副本本身还会被类加载器反复打开关闭，所以锁加在只由这里打开的单独文件上
+ * <p>
+ * 缓存目录不可用时退化为原来的临时文件拷贝
+ */
+final class ModuleJarCache {
+
+    private final static Logger logger = LoggerFactory.getLogger(ModuleJarCache.class);
+
+    /**
+     * 旧版本遗留的临时文件前缀
+     */
+    private final static String LEGACY_TEMP_FILE_PREFIX = "instrument_simulator_module_jar_";
+
+    private final static String CACHE_FILE_SUFFIX = ".jar";
+
+    private final static String PARTIAL_FILE_SUFFIX = ".tmp";
+
+    private final static String LOCK_FILE_SUFFIX = ".lock";
+
+    /**
+     * 写了一半的临时文件超过这个时间没有更新则认为创建它的进程已经退出
+     */
+    private final static long PARTIAL_FILE_EXPIRE_MILLIS = 60L * 60 * 1000;
+
+    private final static ModuleJarCache INSTANCE = new ModuleJarCache(
+            Boolean.parseBoolean(System.getProperty("simulator.module.jar.cache.enabled", "true")),
+            defaultCacheDir(),
+            Long.getLong("simulator.module.jar.cache.expire.hours", 7 * 24L) * 60 * 60 * 1000,
+            Integer.getInteger("simulator.module.jar.cache.max.files", 512));
+
+    private final boolean enabled;
+    private final File cacheDir;
+    private final long expireMillis;
+    private final int maxFiles;
+
+    /**
+     * 原始 jar(路径、大小、修改时间)到摘要的映射，同一个模块创建多个类加载器时不需要重复读取原始 jar
+     */
+    private final ConcurrentMap<String, Checksum> resolved = new ConcurrentHashMap<String, Checksum>();
+
+    /**
+     * 当前 JVM 正在使用的副本的锁文件，文件锁属于整个 JVM，同一个副本只持有一个共享锁
+     */
+    private final static Map<File, InUse> IN_USE = new HashMap<File, InUse>();
+
+    private final AtomicBoolean cleaned = new AtomicBoolean();
+
+    /**
+     * 缓存未命中时复制到缓存目录的次数
+     */
+    private final AtomicLong copyCount = new AtomicLong();
+
+    ModuleJarCache(final boolean enabled, final File cacheDir, final long expireMillis, final int maxFiles) {
+        this.enabled = enabled;
+        this.cacheDir = cacheDir;
+        this.expireMillis = expireMillis;
+        this.maxFiles = maxFiles;
+    }
+
+    static ModuleJarCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 默认的缓存目录，位于当前用户的 home 目录下，不使用所有用户共享的临时目录，
+     * 获取不到 home 目录时返回 null，不使用缓存
+     */
+    static File defaultCacheDir() {
+        final String dir = System.getProperty("simulator.module.jar.cache.dir");
+        if (StringUtils.isNotBlank(dir)) {
+            return new File(dir);
+        }
+        final String userHome = System.getProperty("user.home");
+        if (StringUtils.isBlank(userHome) || "?".equals(userHome)) {
+            return null;
+        }
+        return new File(userHome + File.separator + ".simulator" + File.separator + "module-jar-cache");
+    }
+
+    /**
+     * 获取模块 jar 的副本，不再使用时需要调用 {@link #release(File)}
+     *
+     * @param moduleJarFile 原始模块 jar
+     * @return 模块 jar 的副本
+     * @throws IOException 复制模块 jar 失败
+     */
+    File get(final File moduleJarFile) throws IOException {
+        if (enabled && prepareCacheDir()) {
+            try {
+                return getFromCache(moduleJarFile);
+            } catch (IOException e) {
+                logger.warn("SIMULATOR: module jar cache is unavailable, use temp file instead. cache-dir={}, module-jar={}",
+                        new Object[]{cacheDir, moduleJarFile, e});
+            }
+        }
+        return copyToTempFile(moduleJarFile);
+    }
+
+    /**
+     * 释放模块 jar 的副本，缓存中的副本由其他类加载器或者其他 JVM 共享，只释放文件锁，临时文件直接删除
+     *
+     * @param file 模块 jar 的副本
+     */
+    void release(final File file) {
+        if (file == null) {
+            return;
+        }
+        if (isCached(file)) {
+            unlock(file);
+            return;
+        }
+        FileUtils.deleteQuietly(file);
+    }
+
+    boolean isCached(final File file) {
+        return cacheDir != null && cacheDir.equals(file.getParentFile());
+    }
+
+    /**
+     * 获取模块 jar 的 CRC32，与缓存使用的摘要在同一次读取中算出，之后获取副本时不需要再次读取
+     *
+     * @param moduleJarFile 原始模块 jar
+     * @return CRC32
+     * @throws IOException 读取模块 jar 失败
+     */
+    long checksumCRC32(final File moduleJarFile) throws IOException {
+        if (!enabled) {
+            return FileUtils.checksumCRC32(moduleJarFile);
+        }
+        return resolve(moduleJarFile).crc32;
+    }
+
+    /**
+     * 只读计算原始 jar 的摘要，同样内容的副本已经存在(包括其他 JVM 创建的)时不需要复制
+     */
+    private Checksum resolve(final File moduleJarFile) throws IOException {
+        final String key = moduleJarFile.getCanonicalPath() + '|' + moduleJarFile.length() + '|' + moduleJarFile.lastModified();
+        Checksum checksum = resolved.get(key);
+        if (checksum == null) {
+            checksum = digest(moduleJarFile, null);
+            resolved.put(key, checksum);
+        }
+        return checksum;
+    }
+
+    private File getFromCache(final File moduleJarFile) throws IOException {
+        final Checksum checksum = resolve(moduleJarFile);
+        final File existFile = new File(cacheDir, checksum.digest + CACHE_FILE_SUFFIX);
+        if (use(existFile, checksum)) {
+            return existFile;
+        }
+
+        /**
+         * 缓存未命中，边复制边重新计算摘要，两次读取之间原始 jar 可能被替换，以复制的内容为准
+         */
+        final File partialFile = new File(cacheDir, LEGACY_TEMP_FILE_PREFIX + System.nanoTime() + '_'
+                + Thread.currentThread().getId() + PARTIAL_FILE_SUFFIX);
+        final Checksum copied;
+        try {
+            copied = digest(moduleJarFile, partialFile);
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(partialFile);
+            throw e;
+        }
+        copyCount.incrementAndGet();
+
+        final File cacheFile = new File(cacheDir, copied.digest + CACHE_FILE_SUFFIX);
+        if (use(cacheFile, copied)) {
+            FileUtils.deleteQuietly(partialFile);
+        } else {
+            /**
+             * 已有的同名文件不完整或者正在被清理，用新复制的文件替换它
+             */
+            if (!partialFile.renameTo(cacheFile)) {
+                FileUtils.deleteQuietly(cacheFile);
+                if (!partialFile.renameTo(cacheFile)) {
+                    FileUtils.deleteQuietly(partialFile);
+                }
+            }
+            if (!use(cacheFile, copied)) {
+                throw new IOException("can't create module jar cache file " + cacheFile);
+            }
+        }
+        return cacheFile;
+    }
+
+    long getCopyCount() {
+        return copyCount.get();
+    }
+
+    /**
+     * 使用缓存中的副本：在锁文件上持有共享锁防止被其他 JVM 清理，副本的文件名即为内容摘要，只核对长度
+     *
+     * @param file     副本
+     * @param checksum 副本应有的摘要
+     * @return 副本可以使用时返回 true，此时已经持有锁
+     */
+    private boolean use(final File file, final Checksum checksum) {
+        if (!file.isFile() || !lock(file)) {
+            return false;
+        }
+        /**
+         * 拿到锁之前副本可能刚好被清理掉
+         */
+        final boolean valid = file.isFile() && file.length() == checksum.length;
+        if (!valid) {
+            if (file.isFile()) {
+                logger.warn("SIMULATOR: module jar cache file {} doesn't match its length, ignore it.", file);
+            }
+            unlock(file);
+            return false;
+        }
+        touch(file);
+        return true;
+    }
+
+    private static File lockFileOf(final File file) {
+        final String name = file.getName();
+        return new File(file.getParentFile(), name.substring(0, name.length() - CACHE_FILE_SUFFIX.length()) + LOCK_FILE_SUFFIX);
+    }
+
+    private boolean lock(final File file) {
+        final File lockFile = lockFileOf(file);
+        synchronized (IN_USE) {
+            InUse holder = IN_USE.get(lockFile);
+            if (holder == null) {
+                RandomAccessFile raf = null;
+                try {
+                    raf = new RandomAccessFile(lockFile, "rw");
+                    final FileLock lock = raf.getChannel().tryLock(0L, Long.MAX_VALUE, true);
+                    /**
+                     * 锁文件可能在打开之后、加锁之前被清理删除，此时锁住的已经不是目录中的锁文件
+                     */
+                    if (lock == null || !lockFile.isFile()) {
+                        IOUtils.closeQuietly(raf);
+                        return false;
+                    }
+                    holder = new InUse(raf);
+                    IN_USE.put(lockFile, holder);
+                } catch (Throwable e) {
+                    /**
+                     * 锁文件正在被当前 JVM 的清理持有
+                     */
+                    IOUtils.closeQuietly(raf);
+                    return false;
+                }
+            }
+            holder.count++;
+            return true;
+        }
+    }
+
+    private void unlock(final File file) {
+        final File lockFile = lockFileOf(file);
+        synchronized (IN_USE) {
+            final InUse holder = IN_USE.get(lockFile);
+            if (holder != null && --holder.count <= 0) {
+                IN_USE.remove(lockFile);
+                IOUtils.closeQuietly(holder.raf);
+            }
+        }
+    }
+
+    private boolean prepareCacheDir() {
+        if (cacheDir == null) {
+            return false;
+        }
+        if (!cacheDir.isDirectory()) {
+            if (!cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+                return false;
+            }
+            /**
+             * 副本会被当作模块代码加载，只允许所有者访问
+             */
+            cacheDir.setReadable(false, false);
+            cacheDir.setWritable(false, false);
+            cacheDir.setExecutable(false, false);
+            cacheDir.setReadable(true, true);
+            cacheDir.setWritable(true, true);
+            cacheDir.setExecutable(true, true);
+        }
+        if (!cacheDir.canWrite()) {
+            return false;
+        }
+        if (cleaned.compareAndSet(false, true)) {
+            clean();
+        }
+        return true;
+    }
+
+    /**
+     * 清理长时间未使用的副本，副本数量超过上限时按修改时间从旧到新清理
+     * 其他 JVM 正在使用的副本修改时间会在使用时被刷新，并且持有共享锁，不会被清理
+     */
+    private void clean() {
+        final long now = System.currentTimeMillis();
+        try {
+            final File[] files = cacheDir.listFiles(new FileFilter() {
+                @Override
+                public boolean accept(File file) {
+                    return file.isFile();
+                }
+            });
+            if (files == null) {
+                return;
+            }
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File o1, File o2) {
+                    final long t1 = o1.lastModified();
+                    final long t2 = o2.lastModified();
+                    return t1 < t2 ? 1 : (t1 == t2 ? 0 : -1);
+                }
+            });
+            int count = 0;
+            for (final File file : files) {
+                final long idle = now - file.lastModified();
+                final String name = file.getName();
+                if (name.endsWith(PARTIAL_FILE_SUFFIX)) {
+                    if (idle > PARTIAL_FILE_EXPIRE_MILLIS) {
+                        deleteIfUnlocked(file);
+                    }
+                    continue;
+                }
+                if (name.endsWith(LOCK_FILE_SUFFIX)) {
+                    /**
+                     * 副本已经不存在的锁文件
+                     */
+                    final File cacheFile = new File(cacheDir, name.substring(0, name.length() - LOCK_FILE_SUFFIX.length()) + CACHE_FILE_SUFFIX);
+                    if (!cacheFile.exists() && idle > expireMillis) {
+                        deleteIfUnused(cacheFile);
+                    }
+                    continue;
+                }
+                if (++count > maxFiles || idle > expireMillis) {
+                    deleteIfUnused(file);
+                }
+            }
+            cleanLegacyTempFiles(now);
+        } catch (Throwable e) {
+            logger.warn("SIMULATOR: clean module jar cache failed. cache-dir={}", cacheDir, e);
+        }
+    }
+
+    /**
+     * 在副本的锁文件上拿到排他锁才删除副本和锁文件，拿不到说明当前或者其他 JVM 还在使用
+     * <p>
+     * 整个过程持有 IN_USE 的锁，当前 JVM 不会在清理打开锁文件期间加共享锁，关闭锁文件时也就不会释放掉当前 JVM 持有的共享锁
+     */
+    private void deleteIfUnused(final File file) {
+        final File lockFile = lockFileOf(file);
+        synchronized (IN_USE) {
+            if (IN_USE.containsKey(lockFile)) {
+                return;
+            }
+            RandomAccessFile raf = null;
+            try {
+                raf = new RandomAccessFile(lockFile, "rw");
+                final FileLock lock = raf.getChannel().tryLock();
+                if (lock == null) {
+                    return;
+                }
+                try {
+                    FileUtils.deleteQuietly(file);
+                    FileUtils.deleteQuietly(lockFile);
+                } finally {
+                    lock.release();
+                }
+            } catch (OverlappingFileLockException e) {
+                // 当前 JVM 的其他实例正在使用
+            } catch (IOException e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("SIMULATOR: can't lock module jar cache file {}", lockFile, e);
+                }
+            } finally {
+                IOUtils.closeQuietly(raf);
+            }
+        }
+    }
+
+    /**
+     * 临时文件只由创建它的进程打开，直接在文件上拿排他锁，拿到才删除
+     */
+    private void deleteIfUnlocked(final File file) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            final FileLock lock = raf.getChannel().tryLock();
+            if (lock == null) {
+                return;
+            }
+            try {
+                FileUtils.deleteQuietly(file);
+            } finally {
+                lock.release();
+            }
+        } catch (OverlappingFileLockException e) {
+            // 当前 JVM 的其他实例正在使用
+        } catch (IOException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("SIMULATOR: can't lock module jar cache file {}", file, e);
+            }
+        } finally {
+            IOUtils.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * 清理旧版本进程异常退出时遗留在临时目录中的模块 jar 拷贝
+     */
+    private void cleanLegacyTempFiles(final long now) {
+        final File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile()
+                        && file.getName().startsWith(LEGACY_TEMP_FILE_PREFIX)
+                        && file.getName().endsWith(CACHE_FILE_SUFFIX)
+                        && now - file.lastModified() > expireMillis;
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            deleteIfUnlocked(file);
+        }
+    }
+
+    private static void touch(final File file) {
+        if (!file.setLastModified(System.currentTimeMillis())) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("SIMULATOR: can't touch module jar cache file {}", file);
+            }
+        }
+    }
+
+    /**
+     * 计算文件内容的 SHA-256 摘要和 CRC32
+     *
+     * @param src  原始文件
+     * @param dest 同时复制到的目标文件，为 null 时只计算摘要
+     * @return 摘要
+     * @throws IOException 读取或者复制失败
+     */
+    private static Checksum digest(final File src, final File dest) throws IOException {
+        final MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not supported. " + e.getMessage());
+        }
+        final CRC32 crc32 = new CRC32();
+        InputStream in = null;
+        OutputStream out = null;
+        long length = 0;
+        try {
+            in = new CheckedInputStream(new DigestInputStream(new FileInputStream(src), messageDigest), crc32);
+            if (dest == null) {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    length += read;
+                }
+            } else {
+                out = new FileOutputStream(dest);
+                length = IOUtils.copyLarge(in, out);
+                out.flush();
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(out);
+        }
+        if (dest != null && dest.length() != length) {
+            throw new IOException("module jar " + src + " changed while copying.");
+        }
+        final byte[] digest = messageDigest.digest();
+        final StringBuilder builder = new StringBuilder(digest.length * 2);
+        for (final byte b : digest) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return new Checksum(builder.toString(), crc32.getValue(), length);
+    }
+
+    private static File copyToTempFile(final File moduleJarFile) throws IOException {
+        File tempFile = File.createTempFile(LEGACY_TEMP_FILE_PREFIX + System.nanoTime(), CACHE_FILE_SUFFIX);
+        tempFile.deleteOnExit();
+        FileUtils.copyFile(moduleJarFile, tempFile);
+        return tempFile;
+    }
+
+    /**
+     * 当前 JVM 使用中的副本，持有共享锁的锁文件和引用计数
+     */
+    private final static class InUse {
+        private final RandomAccessFile raf;
+        private int count;
+
+        InUse(RandomAccessFile raf) {
+            this.raf = raf;
+        }
+    }
+
+    /**
+     * 一次读取中算出的文件摘要
+     */
+    private final static class Checksum {
+        private final String digest;
+        private final long crc32;
+        private final long length;
+
+        Checksum(String digest, long crc32, long length) {
+            this.digest = digest;
+            this.crc32 = crc32;
+            this.length = length;
+        }
+    }
+}
@@ -270,12 +270,17 @@ public abstract class ModuleRoutingURLClassLoader extends RoutingURLClassLoader
      */
     @Override
     protected Class<?> resolveRouting(final String javaClassName, final boolean resolve) {
+        if (routingClassMisses.contains(javaClassName)) {
+            return null;
+        }
         // 优先查询类加载路由表,如果命中路由规则,则优先从路由表中的ClassLoader完成类加载
         if (ArrayUtils.isNotEmpty(routingArray)) {
+            boolean isHit = false;
             for (final Routing routing : routingArray) {
                 if (!routing.isHit(javaClassName)) {
                     continue;
                 }
+                isHit = true;
                 final ClassLoader routingClassLoader = routing.classLoader;
                 try {
                     return routingClassLoader.loadClass(javaClassName);
@@ -285,6 +290,9 @@ public abstract class ModuleRoutingURLClassLoader extends RoutingURLClassLoader
                     // ignore...
                 }
             }
+            if (isHit) {
+                routingClassMisses.add(javaClassName);
+            }
         }
         return null;
     }
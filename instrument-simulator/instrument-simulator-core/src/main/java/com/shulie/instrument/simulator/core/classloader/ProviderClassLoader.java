@@ -72,6 +72,7 @@ public class ProviderClassLoader extends RoutingURLClassLoader {
                     }
                     routingArray = null;
                 }
+                clearRoutingMisses();
                 releaseClasses();
                 return;
             }
@@ -106,6 +107,7 @@ public class ProviderClassLoader extends RoutingURLClassLoader {
                     }
                     routingArray = null;
                 }
+                clearRoutingMisses();
 
                 releaseClasses();
             } catch (Throwable cause) {
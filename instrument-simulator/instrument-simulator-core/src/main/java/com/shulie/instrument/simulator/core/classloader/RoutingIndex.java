@@ -0,0 +1,362 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.classloader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 预编译的类加载路由规则
+ * <p>
+ * 在类加载器创建时把通配符表达式按形态拆分，匹配时不再逐条解释表达式：
+ * <ul>
+ * <li>没有 * 的表达式放入精确匹配的哈希表，与原有规则一致按整体相等匹配</li>
+ * <li>只有末尾为 * 的表达式(如 org.slf4j.*)放入前缀树</li>
+ * <li>只有开头为 * 的表达式(如 *String)放入后缀表</li>
+ * <li>其他表达式按原有的通配符规则逐条匹配</li>
+ * </ul>
+ * 资源名直接按照 '/' 等价于 '.'、忽略 .class 后缀的方式参与匹配，不生成中间字符串
+ * <p>
+ * 创建后不可变，线程安全
+ */
+final class RoutingIndex {
+
+    private final static String CLASS_RESOURCE_SUFFIX = ".class";
+
+    /**
+     * 是否存在匹配所有类的表达式
+     */
+    private final boolean matchAll;
+
+    /**
+     * 精确匹配的类名，开放寻址的哈希表
+     */
+    private final String[] exactTable;
+    private final int exactMask;
+
+    /**
+     * 前缀树
+     */
+    private final TrieNode prefixRoot;
+
+    /**
+     * 后缀
+     */
+    private final String[] suffixes;
+
+    /**
+     * 无法预编译的通配符表达式
+     */
+    private final String[] wildcards;
+
+    private RoutingIndex(final boolean matchAll,
+                         final List<String> exacts,
+                         final TrieNode prefixRoot,
+                         final List<String> suffixes,
+                         final List<String> wildcards) {
+        this.matchAll = matchAll;
+        this.prefixRoot = prefixRoot;
+        this.suffixes = suffixes.toArray(new String[suffixes.size()]);
+        this.wildcards = wildcards.toArray(new String[wildcards.size()]);
+        int capacity = 4;
+        while (capacity < exacts.size() * 2) {
+            capacity <<= 1;
+        }
+        this.exactTable = new String[capacity];
+        this.exactMask = capacity - 1;
+        for (final String exact : exacts) {
+            int index = spread(exact.hashCode()) & exactMask;
+            while (exactTable[index] != null && !exactTable[index].equals(exact)) {
+                index = (index + 1) & exactMask;
+            }
+            exactTable[index] = exact;
+        }
+    }
+
+    /**
+     * 编译路由规则
+     *
+     * @param regexExpresses 通配符表达式
+     * @return 编译后的路由规则
+     */
+    static RoutingIndex compile(final Collection<String> regexExpresses) {
+        boolean matchAll = false;
+        final List<String> exacts = new ArrayList<String>();
+        final TrieNode prefixRoot = new TrieNode();
+        final List<String> suffixes = new ArrayList<String>();
+        final List<String> wildcards = new ArrayList<String>();
+        if (regexExpresses != null) {
+            for (final String regexExpress : regexExpresses) {
+                if (regexExpress == null) {
+                    continue;
+                }
+                /**
+                 * 没有 * 的表达式按原有规则整体相等匹配，其中的 ? 与 \ 不作为通配符
+                 */
+                if (regexExpress.indexOf('*') == -1) {
+                    exacts.add(regexExpress);
+                    continue;
+                }
+                if (regexExpress.indexOf('?') != -1 || regexExpress.indexOf('\\') != -1) {
+                    wildcards.add(regexExpress);
+                    continue;
+                }
+                int begin = 0;
+                int end = regexExpress.length();
+                while (begin < end && regexExpress.charAt(begin) == '*') {
+                    begin++;
+                }
+                while (end > begin && regexExpress.charAt(end - 1) == '*') {
+                    end--;
+                }
+                final String literal = regexExpress.substring(begin, end);
+                final boolean leading = begin > 0;
+                final boolean trailing = end < regexExpress.length();
+                if (literal.length() == 0 && (leading || trailing)) {
+                    matchAll = true;
+                } else if (literal.indexOf('*') != -1 || (leading && trailing)) {
+                    wildcards.add(regexExpress);
+                } else if (leading) {
+                    suffixes.add(literal);
+                } else if (trailing) {
+                    prefixRoot.add(literal);
+                } else {
+                    exacts.add(literal);
+                }
+            }
+        }
+        return new RoutingIndex(matchAll, exacts, prefixRoot, suffixes, wildcards);
+    }
+
+    /**
+     * 类名是否命中路由规则
+     *
+     * @param javaClassName 类名
+     * @return true:命中;false:不命中;
+     */
+    boolean isHitClass(final String javaClassName) {
+        return javaClassName != null && isHit(javaClassName, javaClassName.length(), false);
+    }
+
+    /**
+     * 资源名是否命中路由规则，资源名中的 '/' 视为 '.'，.class 结尾的资源按照类名匹配
+     *
+     * @param resourceName 资源名
+     * @return true:命中;false:不命中;
+     */
+    boolean isHitResource(final String resourceName) {
+        if (resourceName == null) {
+            return false;
+        }
+        int length = resourceName.length();
+        if (resourceName.endsWith(CLASS_RESOURCE_SUFFIX)) {
+            length -= CLASS_RESOURCE_SUFFIX.length();
+        }
+        return isHit(resourceName, length, true);
+    }
+
+    private boolean isHit(final String name, final int length, final boolean resource) {
+        if (matchAll) {
+            return true;
+        }
+        if (isExactHit(name, length, resource)
+                || prefixRoot.isHit(name, length, resource)
+                || isSuffixHit(name, length, resource)) {
+            return true;
+        }
+        for (final String wildcard : wildcards) {
+            if (matching(name, length, resource, wildcard, 0, 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isExactHit(final String name, final int length, final boolean resource) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + charAt(name, i, resource);
+        }
+        int index = spread(hash) & exactMask;
+        String exact;
+        while ((exact = exactTable[index]) != null) {
+            if (exact.length() == length && regionEquals(name, 0, resource, exact)) {
+                return true;
+            }
+            index = (index + 1) & exactMask;
+        }
+        return false;
+    }
+
+    private boolean isSuffixHit(final String name, final int length, final boolean resource) {
+        for (final String suffix : suffixes) {
+            if (suffix.length() <= length && regionEquals(name, length - suffix.length(), resource, suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionEquals(final String name, final int offset, final boolean resource, final String literal) {
+        for (int i = 0, len = literal.length(); i < len; i++) {
+            if (charAt(name, offset + i, resource) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char charAt(final String name, final int index, final boolean resource) {
+        final char c = name.charAt(index);
+        return resource && c == '/' ? '.' : c;
+    }
+
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * 通配符匹配，与原有的匹配规则一致
+     */
+    private static boolean matching(final String string, final int sLen, final boolean resource,
+                                    final String wildcard, final int stringStartNdx, final int patternStartNdx) {
+        int pNdx = patternStartNdx;
+        int sNdx = stringStartNdx;
+        int pLen = wildcard.length();
+        if (pLen == 1) {
+            if (wildcard.charAt(0) == '*') {     // speed-up
+                return true;
+            }
+        }
+        boolean nextIsNotWildcard = false;
+
+        while (true) {
+
+            // check if end of string and/or pattern occurred
+            if ((sNdx >= sLen)) {   // end of string still may have pending '*' callback pattern
+                while ((pNdx < pLen) && (wildcard.charAt(pNdx) == '*')) {
+                    pNdx++;
+                }
+                return pNdx >= pLen;
+            }
+            if (pNdx >= pLen) {         // end of pattern, but not end of the string
+                return false;
+            }
+            char p = wildcard.charAt(pNdx);    // pattern char
+
+            // perform logic
+            if (!nextIsNotWildcard) {
+
+                if (p == '\\') {
+                    pNdx++;
+                    nextIsNotWildcard = true;
+                    continue;
+                }
+                if (p == '?') {
+                    sNdx++;
+                    pNdx++;
+                    continue;
+                }
+                if (p == '*') {
+                    char pnext = 0;           // next pattern char
+                    if (pNdx + 1 < pLen) {
+                        pnext = wildcard.charAt(pNdx + 1);
+                    }
+                    if (pnext == '*') {         // double '*' have the same effect as one '*'
+                        pNdx++;
+                        continue;
+                    }
+                    int i;
+                    pNdx++;
+
+                    // find recursively if there is any substring from the end of the
+                    // line that matches the rest of the pattern !!!
+                    for (i = sLen; i >= sNdx; i--) {
+                        if (matching(string, sLen, resource, wildcard, i, pNdx)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            } else {
+                nextIsNotWildcard = false;
+            }
+
+            // check if pattern char and string char are equals
+            if (p != charAt(string, sNdx, resource)) {
+                return false;
+            }
+
+            // everything matches for now, continue
+            sNdx++;
+            pNdx++;
+        }
+    }
+
+    /**
+     * 前缀树节点
+     */
+    private final static class TrieNode {
+        private char[] keys = new char[0];
+        private TrieNode[] children = new TrieNode[0];
+        private boolean terminal;
+
+        void add(final String prefix) {
+            TrieNode node = this;
+            for (int i = 0, len = prefix.length(); i < len; i++) {
+                node = node.getOrCreate(prefix.charAt(i));
+            }
+            node.terminal = true;
+        }
+
+        private TrieNode getOrCreate(final char key) {
+            final TrieNode child = get(key);
+            if (child != null) {
+                return child;
+            }
+            final TrieNode node = new TrieNode();
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[keys.length - 1] = key;
+            children[children.length - 1] = node;
+            return node;
+        }
+
+        private TrieNode get(final char key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        boolean isHit(final String name, final int length, final boolean resource) {
+            TrieNode node = this;
+            for (int i = 0; i < length; i++) {
+                if (node.terminal) {
+                    return true;
+                }
+                node = node.get(charAt(name, i, resource));
+                if (node == null) {
+                    return false;
+                }
+            }
+            return node.terminal;
+        }
+    }
+}
@@ -17,7 +17,6 @@ package com.shulie.instrument.simulator.core.classloader;
 import com.shulie.instrument.simulator.core.util.CompoundEnumeration;
 import com.shulie.instrument.simulator.core.util.EmptyEnumeration;
 import org.apache.commons.lang.ArrayUtils;
-import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,6 +24,7 @@ import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 可路由的URLClassLoader
@@ -36,6 +36,12 @@ public class RoutingURLClassLoader extends URLClassLoader {
     protected final ClassLoader parent;
     protected Routing[] routingArray;
 
+    /**
+     * 路由未找到的类和资源
+     */
+    protected final RoutingMissCache routingClassMisses = new RoutingMissCache();
+    protected final RoutingMissCache routingResourceMisses = new RoutingMissCache();
+
     static {
         try {
             ClassLoader.registerAsParallelCapable();
@@ -91,20 +97,18 @@ public class RoutingURLClassLoader extends URLClassLoader {
     }
 
     protected URL getRoutingResource(String resourceName) {
-        if (resourceName == null) {
+        if (resourceName == null || routingResourceMisses.contains(resourceName)) {
             return null;
         }
 
-        String className = StringUtils.replace(resourceName, "/", ".");
-        if (className.endsWith(".class")) {
-            className = StringUtils.substring(className, 0, className.length() - 6);
-        }
         // 优先查询类加载路由表,如果命中路由规则,则优先从路由表中的ClassLoader完成类加载
         if (ArrayUtils.isNotEmpty(routingArray)) {
+            boolean isHit = false;
             for (final Routing routing : routingArray) {
-                if (!routing.isHit(className)) {
+                if (!routing.isHitResource(resourceName)) {
                     continue;
                 }
+                isHit = true;
                 final ClassLoader routingClassLoader = routing.classLoader;
                 try {
                     URL url = routingClassLoader.getResource(resourceName);
@@ -118,6 +122,9 @@ public class RoutingURLClassLoader extends URLClassLoader {
                     // ignore...
                 }
             }
+            if (isHit) {
+                routingResourceMisses.add(resourceName);
+            }
         }
         return null;
     }
@@ -172,14 +179,10 @@ public class RoutingURLClassLoader extends URLClassLoader {
         }
 
         List<Enumeration<URL>> list = new ArrayList<Enumeration<URL>>();
-        String className = StringUtils.replace(resourceName, "/", ".");
-        if (className.endsWith(".class")) {
-            className = StringUtils.substring(className, 0, className.length() - 6);
-        }
         // 优先查询类加载路由表,如果命中路由规则,则优先从路由表中的ClassLoader完成类加载
         if (ArrayUtils.isNotEmpty(routingArray)) {
             for (final Routing routing : routingArray) {
-                if (!routing.isHit(className)) {
+                if (!routing.isHitResource(resourceName)) {
                     continue;
                 }
                 final ClassLoader routingClassLoader = routing.classLoader;
@@ -206,12 +209,17 @@ public class RoutingURLClassLoader extends URLClassLoader {
      * @return
      */
     protected Class<?> resolveRouting(final String javaClassName, final boolean resolve) {
+        if (routingClassMisses.contains(javaClassName)) {
+            return null;
+        }
         // 优先查询类加载路由表,如果命中路由规则,则优先从路由表中的ClassLoader完成类加载
         if (ArrayUtils.isNotEmpty(routingArray)) {
+            boolean isHit = false;
             for (final Routing routing : routingArray) {
                 if (!routing.isHit(javaClassName)) {
                     continue;
                 }
+                isHit = true;
                 final ClassLoader routingClassLoader = routing.classLoader;
                 try {
                     return routingClassLoader.loadClass(javaClassName);
@@ -221,6 +229,9 @@ public class RoutingURLClassLoader extends URLClassLoader {
                     // ignore...
                 }
             }
+            if (isHit) {
+                routingClassMisses.add(javaClassName);
+            }
         }
         return null;
     }
@@ -292,6 +303,14 @@ public class RoutingURLClassLoader extends URLClassLoader {
     }
 
 
+    /**
+     * 清空路由未找到的类和资源，类加载器关闭时调用
+     */
+    protected void clearRoutingMisses() {
+        routingClassMisses.clear();
+        routingResourceMisses.clear();
+    }
+
     /**
      * 类加载路由匹配器
      */
@@ -301,6 +320,11 @@ public class RoutingURLClassLoader extends URLClassLoader {
         protected Collection<String/*REGEX*/> regexExpresses = new ArrayList<String>();
         protected ClassLoader classLoader;
 
+        /**
+         * 预编译的路由规则
+         */
+        private RoutingIndex routingIndex;
+
         /**
          * 构造类加载路由匹配器
          *
@@ -312,117 +336,7 @@ public class RoutingURLClassLoader extends URLClassLoader {
                 regexExpresses.addAll(Arrays.asList(regexExpressArray));
             }
             this.classLoader = classLoader;
-        }
-
-        /**
-         * 通配符表达式匹配
-         * <p>
-         * 通配符是一种特殊语法，主要有星号(*)和问号(?)组成，在Simulator中主要用来模糊匹配类名和方法名。
-         * 比如：java.lang.String，可以被"*String"所匹配
-         * </p>
-         * <ul>
-         * <li>(null) matching (null) == false</li>
-         * <li>    ANY matching ("*") == true</li>
-         * </ul>
-         *
-         * @param string   目标字符串
-         * @param wildcard 通配符匹配模版
-         * @return true:目标字符串符合匹配模版;false:目标字符串不符合匹配模版
-         */
-        private boolean matching(final String string, final String wildcard) {
-            if ("*".equals(wildcard)) {
-                return true;
-            }
-            if (wildcard == null || string == null) {
-                return false;
-            }
-            /**
-             * 如果没有通配符则全匹配
-             */
-            if (wildcard.indexOf("*") == -1) {
-                return wildcard.equals(string);
-            }
-            return null != wildcard
-                    && null != string
-                    && matching(string, wildcard, 0, 0);
-        }
-
-        /**
-         * Internal matching recursive function.
-         */
-        private boolean matching(String string, String wildcard, int stringStartNdx, int patternStartNdx) {
-            int pNdx = patternStartNdx;
-            int sNdx = stringStartNdx;
-            int pLen = wildcard.length();
-            if (pLen == 1) {
-                if (wildcard.charAt(0) == '*') {     // speed-up
-                    return true;
-                }
-            }
-            int sLen = string.length();
-            boolean nextIsNotWildcard = false;
-
-            while (true) {
-
-                // check if end of string and/or pattern occurred
-                if ((sNdx >= sLen)) {   // end of string still may have pending '*' callback pattern
-                    while ((pNdx < pLen) && (wildcard.charAt(pNdx) == '*')) {
-                        pNdx++;
-                    }
-                    return pNdx >= pLen;
-                }
-                if (pNdx >= pLen) {         // end of pattern, but not end of the string
-                    return false;
-                }
-                char p = wildcard.charAt(pNdx);    // pattern char
-
-                // perform logic
-                if (!nextIsNotWildcard) {
-
-                    if (p == '\\') {
-                        pNdx++;
-                        nextIsNotWildcard = true;
-                        continue;
-                    }
-                    if (p == '?') {
-                        sNdx++;
-                        pNdx++;
-                        continue;
-                    }
-                    if (p == '*') {
-                        char pnext = 0;           // next pattern char
-                        if (pNdx + 1 < pLen) {
-                            pnext = wildcard.charAt(pNdx + 1);
-                        }
-                        if (pnext == '*') {         // double '*' have the same effect as one '*'
-                            pNdx++;
-                            continue;
-                        }
-                        int i;
-                        pNdx++;
-
-                        // find recursively if there is any substring from the end of the
-                        // line that matches the rest of the pattern !!!
-                        for (i = string.length(); i >= sNdx; i--) {
-                            if (matching(string, wildcard, i, pNdx)) {
-                                return true;
-                            }
-                        }
-                        return false;
-                    }
-                } else {
-                    nextIsNotWildcard = false;
-                }
-
-                // check if pattern char and string char are equals
-                if (p != string.charAt(sNdx)) {
-                    return false;
-                }
-
-                // everything matches for now, continue
-                sNdx++;
-                pNdx++;
-            }
+            this.routingIndex = RoutingIndex.compile(regexExpresses);
         }
 
         /**
@@ -431,6 +345,7 @@ public class RoutingURLClassLoader extends URLClassLoader {
         public void clean() {
             regexExpresses.clear();
             regexExpresses = null;
+            routingIndex = null;
             classLoader = null;
         }
 
@@ -442,16 +357,45 @@ public class RoutingURLClassLoader extends URLClassLoader {
          * @return true:命中;false:不命中;
          */
         protected boolean isHit(final String javaClassName) {
-            for (final String regexExpress : regexExpresses) {
-                try {
-                    if (matching(javaClassName, regexExpress)) {
-                        return true;
-                    }
-                } catch (Throwable cause) {
-                    logger.warn("SIMULATOR: routing {} failed, regex-express={}.", javaClassName, regexExpress, cause);
-                }
+            final RoutingIndex routingIndex = this.routingIndex;
+            return routingIndex != null && routingIndex.isHitClass(javaClassName);
+        }
+
+        /**
+         * 当前参与匹配的资源名是否命中路由匹配规则
+         * 资源名中的 '/' 视为 '.'，.class 资源按照类名匹配
+         *
+         * @param resourceName 参与匹配的资源名
+         * @return true:命中;false:不命中;
+         */
+        protected boolean isHitResource(final String resourceName) {
+            final RoutingIndex routingIndex = this.routingIndex;
+            return routingIndex != null && routingIndex.isHitResource(resourceName);
+        }
+    }
+
+    /**
+     * 路由未找到的类或资源
+     * 命中了路由规则但路由的 ClassLoader 中找不到时记录下来，再次查找时直接跳过路由，避免重复的查找和异常
+     * 路由的 ClassLoader 都是框架自身的类加载器，类路径不会变化，所以可以缓存；超过容量时整体清空
+     */
+    protected static class RoutingMissCache {
+        private final static int MAX_SIZE = 4096;
+        private final ConcurrentHashMap<String, Boolean> misses = new ConcurrentHashMap<String, Boolean>();
+
+        public boolean contains(final String name) {
+            return misses.containsKey(name);
+        }
+
+        public void add(final String name) {
+            if (misses.size() >= MAX_SIZE) {
+                misses.clear();
             }
-            return false;
+            misses.put(name, Boolean.TRUE);
+        }
+
+        public void clear() {
+            misses.clear();
         }
     }
 
@@ -20,7 +20,6 @@ import com.shulie.instrument.simulator.core.CoreConfigure;
 import com.shulie.instrument.simulator.core.classloader.ClassLoaderFactory;
 import com.shulie.instrument.simulator.core.classloader.ClassLoaderService;
 import com.shulie.instrument.simulator.core.classloader.ModuleClassLoader;
-import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,8 +64,11 @@ public class ClassLoaderFactoryImpl implements ClassLoaderFactory {
         this.config = config;
         this.isMiddlewareModule = isMiddlewareModule;
         this.classLoaderCache = new ConcurrentHashMap<Integer, ModuleClassLoader>();
-        this.checksumCRC32 = FileUtils.checksumCRC32(moduleJarFile);
         this.defaultClassLoader = new ModuleClassLoader(classLoaderService, moduleJarFile, importArtifacts, moduleId, "middleware-module-default-classloader");
+        /**
+         * 模块类加载器获取 jar 副本时已经算出了 CRC32，不需要再读一遍模块 jar
+         */
+        this.checksumCRC32 = defaultClassLoader.getChecksumCRC32();
         this.defaultBizClassLoaderRef = new AtomicReference<Integer>();
         this.importArtifacts = importArtifacts;
     }
@@ -0,0 +1,298 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.enhance.weaver;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.shulie.instrument.simulator.api.guard.GuardState;
+import com.shulie.instrument.simulator.api.guard.SimulatorGuard;
+
+/**
+ * 线程内的事件分发帧
+ * <p>
+ * 挂载在 {@link SimulatorGuard} 的线程守护状态上，一次 ThreadLocal 访问即可同时拿到守护标记、
+ * 所有监听器在当前线程上的调用流程以及复用的事件池
+ * <p>
+ * 只在当前线程上有调用流程未结束时才挂载，调用流程进行期间的嵌套分发都复用同一个分发帧、事件池和调用流程，
+ * 所有调用流程结束后立即卸下。空闲的业务线程(如线程池中的线程)上不会残留分发帧，
+ * 模块卸载或者 Simulator 卸载后也就不会因为业务线程而无法回收对应的类加载器
+ * <p>
+ * 调用流程按照监听器激活时分配的槽位存放，监听器冻结后槽位会回收给后续激活的监听器使用，
+ * 所以模块反复加载卸载时每个线程上的数组不会持续增长。槽位回收后各个线程会在下一次访问分发帧时
+ * 清理掉已经失效的调用流程
+ * <p>
+ * 非线程安全，只能由所属线程访问
+ */
+final class DispatchFrame {
+
+    private final static int DEFAULT_CAPACITY = 16;
+
+    /**
+     * 已分配的槽位
+     */
+    private final static BitSet USED_SLOTS = new BitSet();
+
+    /**
+     * 槽位当前所属的监听器ID，下标为槽位，写时复制
+     */
+    private static volatile int[] slotOwners = new int[0];
+
+    /**
+     * 槽位回收的次数，分发帧记录的次数与之不同时需要清理失效的调用流程
+     */
+    private static volatile int releasedGeneration;
+
+    /**
+     * 守护状态
+     */
+    private final GuardState guardState;
+
+    /**
+     * 调用堆栈不为空的调用流程数量，为 0 时说明当前线程上没有未结束的调用流程
+     */
+    private int activeProcesses;
+
+    /**
+     * 第一个放入的调用流程的槽位，大多数分发帧从挂载到卸下只有一个监听器的调用流程，直接放在字段上不再创建数组
+     */
+    private int firstSlot = -1;
+
+    /**
+     * 第一个放入的调用流程
+     */
+    private InvokeProcessor.InvokeProcess firstProcess;
+
+    /**
+     * 其他槽位上的调用流程，下标为槽位，放入第二个监听器的调用流程时才创建
+     */
+    private InvokeProcessor.InvokeProcess[] processes;
+
+    /**
+     * 分发帧挂载期间复用的事件池，第一次使用时才创建
+     */
+    private EventPool eventPool;
+
+    /**
+     * 最近一次清理时的槽位回收次数
+     */
+    private int generation = releasedGeneration;
+
+    private DispatchFrame(final GuardState guardState) {
+        this.guardState = guardState;
+    }
+
+    /**
+     * 获取当前线程的事件分发帧
+     * <p>
+     * 当前线程上没有挂载分发帧时返回一个新的分发帧，直到有调用流程开始时才会挂载到线程上
+     *
+     * @return 事件分发帧
+     */
+    static DispatchFrame current() {
+        final GuardState state = SimulatorGuard.getInstance().getState();
+        final Object attachment = state.getAttachment();
+        if (attachment instanceof DispatchFrame) {
+            final DispatchFrame frame = (DispatchFrame) attachment;
+            if (frame.generation != releasedGeneration) {
+                frame.expunge();
+            }
+            return frame;
+        }
+        return new DispatchFrame(state);
+    }
+
+    /**
+     * 获取当前线程上已经挂载的事件分发帧，没有挂载时不会创建
+     *
+     * @return 事件分发帧，没有挂载时返回 null
+     */
+    static DispatchFrame attached() {
+        final GuardState state = SimulatorGuard.getInstance().getState();
+        final Object attachment = state.getAttachment();
+        if (attachment instanceof DispatchFrame) {
+            return (DispatchFrame) attachment;
+        }
+        if (attachment == null && !state.isInGuard()) {
+            /**
+             * 查询时创建的守护状态不需要保留在当前线程上
+             */
+            SimulatorGuard.getInstance().clearAttachment();
+        }
+        return null;
+    }
+
+    /**
+     * 当前线程上是否有未结束的调用流程
+     *
+     * @return TRUE:有；FALSE：没有
+     */
+    boolean hasProcessInFlight() {
+        return activeProcesses > 0;
+    }
+
+    /**
+     * 调用流程开始，第一个开始的调用流程会将分发帧挂载到当前线程上
+     * <p>
+     * 未挂载的分发帧只在创建它的那一次分发中使用，从创建到压入第一个调用ID之间不会进出守护区域，
+     * 创建时拿到的守护状态仍然是当前线程上的守护状态
+     */
+    void onProcessStart() {
+        if (activeProcesses++ == 0) {
+            guardState.setAttachment(this);
+        }
+    }
+
+    /**
+     * 调用流程结束，所有调用流程都结束后从当前线程上卸下分发帧
+     */
+    void onProcessEnd() {
+        if (activeProcesses > 0 && --activeProcesses == 0) {
+            if (guardState.getAttachment() == this) {
+                SimulatorGuard.getInstance().clearAttachment();
+            }
+        }
+    }
+
+    /**
+     * 为监听器分配槽位，优先复用已经回收的槽位
+     *
+     * @param listenerId 监听器ID
+     * @return 槽位
+     */
+    static synchronized int allocateSlot(final int listenerId) {
+        final int slot = USED_SLOTS.nextClearBit(0);
+        USED_SLOTS.set(slot);
+        final int[] owners = Arrays.copyOf(slotOwners, Math.max(slotOwners.length, slot + 1));
+        owners[slot] = listenerId;
+        slotOwners = owners;
+        return slot;
+    }
+
+    /**
+     * 回收监听器的槽位，各个线程上残留的调用流程会在下一次访问分发帧时清理
+     *
+     * @param slot 槽位
+     */
+    static synchronized void releaseSlot(final int slot) {
+        if (slot < 0 || !USED_SLOTS.get(slot)) {
+            return;
+        }
+        USED_SLOTS.clear(slot);
+        final int[] owners = slotOwners.clone();
+        owners[slot] = -1;
+        slotOwners = owners;
+        releasedGeneration++;
+    }
+
+    /**
+     * 清理槽位已经回收或者已经分配给其他监听器的调用流程
+     */
+    private void expunge() {
+        generation = releasedGeneration;
+        final int[] owners = slotOwners;
+        if (firstProcess != null && isStale(owners, firstSlot, firstProcess)) {
+            remove(firstSlot);
+        }
+        if (processes != null) {
+            for (int i = 0; i < processes.length; i++) {
+                if (processes[i] != null && isStale(owners, i, processes[i])) {
+                    remove(i);
+                }
+            }
+        }
+    }
+
+    private static boolean isStale(final int[] owners, final int slot, final InvokeProcessor.InvokeProcess process) {
+        return slot >= owners.length || owners[slot] != process.getListenerId();
+    }
+
+    /**
+     * 当前线程是否处于守护区域中
+     *
+     * @return TRUE:在守护区域中；FALSE：非守护区域中
+     */
+    boolean isInGuard() {
+        return guardState.isInGuard();
+    }
+
+    EventPool getEventPool() {
+        if (eventPool == null) {
+            eventPool = new EventPool();
+        }
+        return eventPool;
+    }
+
+    /**
+     * 获取监听器在当前线程上的调用流程
+     *
+     * @param slot 监听器槽位
+     * @return 调用流程，不存在则返回 null
+     */
+    InvokeProcessor.InvokeProcess get(final int slot) {
+        if (slot == firstSlot) {
+            return firstProcess;
+        }
+        if (slot < 0 || processes == null || slot >= processes.length) {
+            return null;
+        }
+        return processes[slot];
+    }
+
+    /**
+     * 设置监听器在当前线程上的调用流程
+     *
+     * @param slot    监听器槽位
+     * @param process 调用流程
+     */
+    void set(final int slot, final InvokeProcessor.InvokeProcess process) {
+        if (slot == firstSlot || firstSlot < 0) {
+            firstSlot = slot;
+            firstProcess = process;
+            return;
+        }
+        if (processes == null) {
+            processes = new InvokeProcessor.InvokeProcess[Math.max(DEFAULT_CAPACITY, slot + 1)];
+        } else if (slot >= processes.length) {
+            int newCapacity = processes.length;
+            while (newCapacity <= slot) {
+                newCapacity = newCapacity + (newCapacity >> 1);
+            }
+            processes = Arrays.copyOf(processes, newCapacity);
+        }
+        processes[slot] = process;
+    }
+
+    /**
+     * 移除监听器在当前线程上的调用流程
+     *
+     * @param slot 监听器槽位
+     */
+    void remove(final int slot) {
+        final InvokeProcessor.InvokeProcess process;
+        if (slot == firstSlot) {
+            process = firstProcess;
+            firstProcess = null;
+        } else if (slot >= 0 && processes != null && slot < processes.length) {
+            process = processes[slot];
+            processes[slot] = null;
+        } else {
+            return;
+        }
+        if (process != null && !process.isEmptyStack()) {
+            onProcessEnd();
+        }
+    }
+}
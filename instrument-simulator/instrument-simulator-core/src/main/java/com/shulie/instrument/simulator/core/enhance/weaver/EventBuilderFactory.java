@@ -44,9 +44,36 @@ class EventBuilderFactory {
                                         final String javaMethodDesc,
                                         final Object target,
                                         final Object[] argumentArray) {
-        //todo 减少new对象的次数
-        BeforeEvent event = new BeforeEvent(processId, invokeId, javaClassLoader, clazz, javaMethodName, javaMethodDesc, target, argumentArray);
-        return event;
+        return buildBeforeEvent(null, processId, invokeId, javaClassLoader, clazz, javaMethodName, javaMethodDesc, target, argumentArray);
+    }
+
+    /**
+     * 构建 BEFORE 事件，事件池不为空时从事件池中借出复用的事件
+     *
+     * @param eventPool       事件池，为空则创建新的事件
+     * @param processId       调用流程 ID
+     * @param invokeId        调用 ID
+     * @param javaClassLoader classloader
+     * @param clazz           产生事件的 Class
+     * @param javaMethodName  产生事件的方法名称
+     * @param javaMethodDesc  产生事件的方法描述
+     * @param target          产生事件的目标对象
+     * @param argumentArray   产生事件的方法入参
+     * @return {@link BeforeEvent}
+     */
+    public BeforeEvent buildBeforeEvent(final EventPool eventPool,
+                                        final int processId,
+                                        final int invokeId,
+                                        final ClassLoader javaClassLoader,
+                                        final Class clazz,
+                                        final String javaMethodName,
+                                        final String javaMethodDesc,
+                                        final Object target,
+                                        final Object[] argumentArray) {
+        if (eventPool != null) {
+            return eventPool.borrowBeforeEvent(processId, invokeId, javaClassLoader, clazz, javaMethodName, javaMethodDesc, target, argumentArray);
+        }
+        return new BeforeEvent(processId, invokeId, javaClassLoader, clazz, javaMethodName, javaMethodDesc, target, argumentArray);
     }
 
     /**
@@ -60,9 +87,26 @@ class EventBuilderFactory {
     public ReturnEvent buildReturnEvent(final int processId,
                                         final int invokeId,
                                         final Object returnObj) {
-        //todo 减少new对象的次数
-        ReturnEvent event = new ReturnEvent(processId, invokeId, returnObj);
-        return event;
+        return buildReturnEvent(null, processId, invokeId, returnObj);
+    }
+
+    /**
+     * 构建返回事件，事件池不为空时从事件池中借出复用的事件
+     *
+     * @param eventPool 事件池，为空则创建新的事件
+     * @param processId 调用流程 ID
+     * @param invokeId  调用 ID
+     * @param returnObj 返回值
+     * @return {@link ReturnEvent}
+     */
+    public ReturnEvent buildReturnEvent(final EventPool eventPool,
+                                        final int processId,
+                                        final int invokeId,
+                                        final Object returnObj) {
+        if (eventPool != null) {
+            return eventPool.borrowReturnEvent(processId, invokeId, returnObj);
+        }
+        return new ReturnEvent(processId, invokeId, returnObj);
     }
 
     /**
@@ -92,8 +136,38 @@ class EventBuilderFactory {
     public ThrowsEvent buildThrowsEvent(final int processId,
                                         final int invokeId,
                                         final Throwable throwable) {
-        ThrowsEvent event = new ThrowsEvent(processId, invokeId, throwable);
-        return event;
+        return buildThrowsEvent(null, processId, invokeId, throwable);
+    }
+
+    /**
+     * 构建抛出异常事件，事件池不为空时从事件池中借出复用的事件
+     *
+     * @param eventPool 事件池，为空则创建新的事件
+     * @param processId 调用流程 ID
+     * @param invokeId  调用 ID
+     * @param throwable 应用抛出的异常
+     * @return {@link ThrowsEvent}
+     */
+    public ThrowsEvent buildThrowsEvent(final EventPool eventPool,
+                                        final int processId,
+                                        final int invokeId,
+                                        final Throwable throwable) {
+        if (eventPool != null) {
+            return eventPool.borrowThrowsEvent(processId, invokeId, throwable);
+        }
+        return new ThrowsEvent(processId, invokeId, throwable);
+    }
+
+    /**
+     * 归还从事件池中借出的事件
+     *
+     * @param eventPool 事件池，为空则不做任何处理
+     * @param event     事件
+     */
+    public void releaseEvent(final EventPool eventPool, final Event event) {
+        if (eventPool != null) {
+            eventPool.release(event);
+        }
     }
 
     /**
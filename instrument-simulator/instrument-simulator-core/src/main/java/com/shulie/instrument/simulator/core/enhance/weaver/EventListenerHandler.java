@@ -14,8 +14,6 @@
  */
 package com.shulie.instrument.simulator.core.enhance.weaver;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -26,7 +24,6 @@ import com.shulie.instrument.simulator.api.event.Event;
 import com.shulie.instrument.simulator.api.event.EventType;
 import com.shulie.instrument.simulator.api.event.InvokeEvent;
 import com.shulie.instrument.simulator.api.executors.ExecutorServiceFactory;
-import com.shulie.instrument.simulator.api.guard.SimulatorGuard;
 import com.shulie.instrument.simulator.api.listener.EventListener;
 import com.shulie.instrument.simulator.core.classloader.BizClassLoaderHolder;
 import com.shulie.instrument.simulator.core.util.ReflectUtils;
@@ -36,7 +33,6 @@ import com.shulie.instrument.simulator.message.MessageHandler;
 import com.shulie.instrument.simulator.message.Messager;
 import com.shulie.instrument.simulator.message.Result;
 import com.shulie.instrument.simulator.message.exception.ExceptionHandler;
-import org.apache.commons.lang.ArrayUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,15 +48,20 @@ public class EventListenerHandler implements MessageHandler {
     protected static final Logger TIME_CONSUMING_LOGGER = LoggerFactory.getLogger("TIME-CONSUMING-LOGGER");
     private static boolean costEnabled = Boolean.parseBoolean(
         System.getProperty("simulator.messager.cost.enabled", "false"));
+    /**
+     * 是否开启免分配的事件分发模式，开启后声明了 EventReusable 的监听器会使用线程内复用的事件对象，
+     * 调用流程对象也会在调用流程结束后保留复用
+     */
+    private static final boolean eventReuseEnabled = Boolean.parseBoolean(
+        System.getProperty("simulator.event.reuse.enabled", "true"));
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final boolean isDebugEnabled = logger.isDebugEnabled();
     private final boolean isInfoEnabled = logger.isInfoEnabled();
     // 调用序列生成器
     private final AtomicInteger invokeIdSequencer = new AtomicInteger(1000);
 
-    // 全局处理器ID:处理器映射集合
-    private final Map<Integer/*LISTENER_ID*/, InvokeProcessor> mappingOfEventProcessor
-        = new ConcurrentHashMap<Integer, InvokeProcessor>();
+    // 全局处理器表，下标为监听器ID
+    private final InvokeProcessorArray processors = new InvokeProcessorArray();
 
     /**
      * 事件工厂，一个流程有一个单独的事件工厂
@@ -104,7 +105,11 @@ public class EventListenerHandler implements MessageHandler {
     public void active(final int listenerId,
         final EventListener listener,
         final int[] eventEventTypes) {
-        mappingOfEventProcessor.put(listenerId, new InvokeProcessor(listenerId, listener, eventEventTypes));
+        final InvokeProcessor old = processors.set(listenerId,
+            new InvokeProcessor(listenerId, listener, eventEventTypes, eventReuseEnabled));
+        if (old != null) {
+            DispatchFrame.releaseSlot(old.slot);
+        }
         if (isInfoEnabled) {
             logger.info("SIMULATOR: activated listener[id={};target={};] event={}",
                 listenerId,
@@ -120,7 +125,7 @@ public class EventListenerHandler implements MessageHandler {
      * @param listenerId 事件处理器ID
      */
     public void frozen(int listenerId) {
-        final InvokeProcessor processor = mappingOfEventProcessor.remove(listenerId);
+        final InvokeProcessor processor = processors.remove(listenerId);
         if (null == processor) {
             if (isDebugEnabled) {
                 logger.debug("SIMULATOR: ignore frozen listener={}, because not found.", listenerId);
@@ -147,7 +152,8 @@ public class EventListenerHandler implements MessageHandler {
      * @param processId  调用过程ID
      * @param invokeId   调用ID
      * @param event      调用事件
-     * @param processor  事件处理器
+     * @param processor     事件处理器
+     * @param invokeProcess 当前线程上的调用流程
      * @return 处理返回结果
      * @throws Throwable 当出现未知异常时,且事件处理器为中断流程事件时抛出
      */
@@ -156,13 +162,14 @@ public class EventListenerHandler implements MessageHandler {
         final int invokeId,
         final Class clazz,
         final Event event,
-        final InvokeProcessor processor) throws Throwable {
+        final InvokeProcessor processor,
+        final InvokeProcessor.InvokeProcess invokeProcess) throws Throwable {
         final EventListener listener = processor.listener;
 
         /**
          * 如果当前事件不在事件监听器处理列表中，则直接返回，不处理事件
          */
-        if (!ArrayUtils.contains(processor.eventEventTypes, event.getType())) {
+        if (!processor.isEventTypeSupported(event.getType())) {
             return Result.RESULT_NONE;
         }
 
@@ -181,10 +188,11 @@ public class EventListenerHandler implements MessageHandler {
             ProcessControlEntity pce = listener.onEvent(event);
             int state = pce.getState();
             if (state != ProcessControlEntity.NONE_IMMEDIATELY) {
-                return processInterrupt(listenerId, processId, invokeId, clazz, event, processor, pce);
+                return processInterrupt(listenerId, processId, invokeId, clazz, event, processor, invokeProcess, pce);
             }
         } catch (ProcessControlException pce) {
-            return processInterrupt(listenerId, processId, invokeId, clazz, event, processor, pce.toEntity());
+            return processInterrupt(listenerId, processId, invokeId, clazz, event, processor, invokeProcess,
+                pce.toEntity());
         } catch (Throwable throwable) {
             /**
              * BEFORE处理异常,打日志,并通知下游不需要进行处理
@@ -228,7 +236,7 @@ public class EventListenerHandler implements MessageHandler {
     }
 
     private Result processInterrupt(int listenerId, int processId, int invokeId, Class clazz, Event event,
-        InvokeProcessor processor, ProcessControlEntity pce) {
+        InvokeProcessor processor, InvokeProcessor.InvokeProcess invokeProcess, ProcessControlEntity pce) {
         int state = pce.getState();
         /**
          * 代码执行流程变更，如返回或者抛出异常
@@ -237,7 +245,6 @@ public class EventListenerHandler implements MessageHandler {
             logger.warn("SIMULATOR: EventProcessor is closed. {}", clazz.getName());
             return Result.RESULT_NONE;
         }
-        final InvokeProcessor.InvokeProcess invokeProcess = processor.getOrCreate();
 
         if (isDebugEnabled) {
             logger.debug(
@@ -360,7 +367,7 @@ public class EventListenerHandler implements MessageHandler {
          * 判断是否需要补偿
          */
         if (!(event instanceof InvokeEvent)
-            || !ArrayUtils.contains(processor.eventEventTypes, event.getType())) {
+            || !processor.isEventTypeSupported(event.getType())) {
             return;
         }
 
@@ -431,6 +438,23 @@ public class EventListenerHandler implements MessageHandler {
             || (processId != invokeId && isEmptyStack);
     }
 
+    /**
+     * 获取监听器可使用的事件池，监听器未声明允许复用事件时返回 null
+     * <p>
+     * 分发帧只在有调用流程未结束时挂载，最外层调用的事件没有机会被复用，
+     * 所以只有当前线程上还有其他调用流程未结束时才使用事件池，否则直接创建事件
+     *
+     * @param processor 事件处理器
+     * @param frame     当前线程的事件分发帧
+     * @return 事件池
+     */
+    private EventPool getEventPool(final InvokeProcessor processor, final DispatchFrame frame) {
+        if (!eventReuseEnabled || !frame.hasProcessInFlight() || !processor.isEventReusable()) {
+            return null;
+        }
+        return frame.getEventPool();
+    }
+
     @Override
     public Result handleOnBefore(int listenerId, Object[] argumentArray, Class clazz, String javaMethodName,
         String javaMethodDesc, Object target, String listenerClassName, int listenerTag, int executionTag) throws Throwable {
@@ -439,10 +463,11 @@ public class EventListenerHandler implements MessageHandler {
             if (executionTag == ExecutionTagSupplier.EXECUTION_IGNORE) {
                 return Result.RESULT_NONE;
             }
+            final DispatchFrame frame = DispatchFrame.current();
             /**
              * 在守护区内产生的事件不需要响应
              */
-            if (SimulatorGuard.getInstance().isInGuard()) {
+            if (frame.isInGuard()) {
                 if (isDebugEnabled) {
                     logger.debug("SIMULATOR: listener={} is in protecting, ignore processing before-event", listenerId);
                 }
@@ -452,7 +477,7 @@ public class EventListenerHandler implements MessageHandler {
             /**
              * 获取事件处理器
              */
-            final InvokeProcessor processor = mappingOfEventProcessor.get(listenerId);
+            final InvokeProcessor processor = processors.get(listenerId);
 
             /**
              * 如果尚未注册,则直接返回,不做任何处理
@@ -475,7 +500,7 @@ public class EventListenerHandler implements MessageHandler {
             /**
              * 获取调用流程
              */
-            final InvokeProcessor.InvokeProcess invokeProcess = processor.getOrCreate();
+            final InvokeProcessor.InvokeProcess invokeProcess = processor.getOrCreate(frame);
 
             try {
                 /**
@@ -488,6 +513,11 @@ public class EventListenerHandler implements MessageHandler {
                     return Result.RESULT_NONE;
                 }
 
+                /**
+                 * 压入调用ID之前取事件池，此时分发帧上的调用流程都是外层调用
+                 */
+                final EventPool eventPool = getEventPool(processor, frame);
+
                 /**
                  * BEFORE 事件时产生新的 invokeId
                  */
@@ -505,6 +535,7 @@ public class EventListenerHandler implements MessageHandler {
                  */
                 BizClassLoaderHolder.setBizClassLoader(javaClassLoader);
                 final BeforeEvent event = eventFactory.buildBeforeEvent(
+                    eventPool,
                     processId,
                     invokeId,
                     javaClassLoader,
@@ -515,12 +546,13 @@ public class EventListenerHandler implements MessageHandler {
                     argumentArray
                 );
                 try {
-                    return handleEvent(listenerId, processId, invokeId, clazz, event, processor);
+                    return handleEvent(listenerId, processId, invokeId, clazz, event, processor, invokeProcess);
                 } finally {
                     BizClassLoaderHolder.clearBizClassLoader();
+                    eventFactory.releaseEvent(eventPool, event);
                 }
             } finally {
-                processor.cleanIfEmpty();
+                processor.cleanIfEmpty(frame);
             }
         } finally {
             endTimeRecord(startTimeRecord, listenerClassName, "handleOnBefore");
@@ -561,10 +593,11 @@ public class EventListenerHandler implements MessageHandler {
 
     @Override
     public void destroy() {
-        for (Map.Entry<Integer, InvokeProcessor> entry : mappingOfEventProcessor.entrySet()) {
-            entry.getValue().clean();
+        for (InvokeProcessor processor : processors.clear()) {
+            if (processor != null) {
+                processor.clean();
+            }
         }
-        this.mappingOfEventProcessor.clear();
         AsmClassStructure.clear();
         exceptionHandler = null;
     }
@@ -574,10 +607,12 @@ public class EventListenerHandler implements MessageHandler {
         final Object object,
         final boolean isReturn) throws Throwable {
 
+        final DispatchFrame frame = DispatchFrame.current();
+
         /**
          * 在守护区内产生的事件不需要响应
          */
-        if (SimulatorGuard.getInstance().isInGuard()) {
+        if (frame.isInGuard()) {
             if (isDebugEnabled) {
                 logger.debug("SIMULATOR: listener={} is in protecting, ignore processing {}-event", listenerId,
                     isReturn ? "return" : "throws");
@@ -585,7 +620,7 @@ public class EventListenerHandler implements MessageHandler {
             return Result.RESULT_NONE;
         }
 
-        final InvokeProcessor processor = mappingOfEventProcessor.get(listenerId);
+        final InvokeProcessor processor = processors.get(listenerId);
 
         /**
          * 如果尚未注册,则直接返回,不做任何处理
@@ -605,7 +640,7 @@ public class EventListenerHandler implements MessageHandler {
             return Result.RESULT_NONE;
         }
 
-        final InvokeProcessor.InvokeProcess invokeProcess = processor.getOrCreate();
+        final InvokeProcessor.InvokeProcess invokeProcess = processor.getOrCreate(frame);
 
         try {
             // 如果当前调用过程信息堆栈是空的,说明
@@ -642,13 +677,17 @@ public class EventListenerHandler implements MessageHandler {
                 );
             }
 
+            final EventPool eventPool = getEventPool(processor, frame);
             final Event event = isReturn
-                ? eventFactory.buildReturnEvent(processId, invokeId, object)
-                : eventFactory.buildThrowsEvent(processId, invokeId, (Throwable)object);
-
-            return handleEvent(listenerId, processId, invokeId, clazz, event, processor);
+                ? eventFactory.buildReturnEvent(eventPool, processId, invokeId, object)
+                : eventFactory.buildThrowsEvent(eventPool, processId, invokeId, (Throwable)object);
+            try {
+                return handleEvent(listenerId, processId, invokeId, clazz, event, processor, invokeProcess);
+            } finally {
+                eventFactory.releaseEvent(eventPool, event);
+            }
         } finally {
-            processor.cleanIfEmpty();
+            processor.cleanIfEmpty(frame);
         }
 
     }
@@ -661,15 +700,17 @@ public class EventListenerHandler implements MessageHandler {
             return;
         }
 
+        final DispatchFrame frame = DispatchFrame.current();
+
         // 在守护区内产生的事件不需要响应
-        if (SimulatorGuard.getInstance().isInGuard()) {
+        if (frame.isInGuard()) {
             if (isDebugEnabled) {
                 logger.debug("SIMULATOR: listener={} is in protecting, ignore processing call-before-event", listenerId);
             }
             return;
         }
 
-        final InvokeProcessor wrap = mappingOfEventProcessor.get(listenerId);
+        final InvokeProcessor wrap = processors.get(listenerId);
         if (null == wrap) {
             if (isDebugEnabled) {
                 logger.debug("SIMULATOR: listener={} is not activated, ignore processing call-before-event.", listenerId);
@@ -684,7 +725,7 @@ public class EventListenerHandler implements MessageHandler {
             return;
         }
 
-        final InvokeProcessor.InvokeProcess invokeProcess = wrap.getOrCreate();
+        final InvokeProcessor.InvokeProcess invokeProcess = wrap.getOrCreate(frame);
         // 如果当前调用过程信息堆栈是空的,有两种情况
         // 1. CALL_BEFORE事件和BEFORE事件错位
         // 2. 当前方法是<init>，而CALL_BEFORE事件触发是当前方法在调用父类的<init>
@@ -708,12 +749,12 @@ public class EventListenerHandler implements MessageHandler {
                 .buildCallBeforeEvent(processId, invokeId, lineNumber, isInterface, owner, name, desc);
             try {
                 BizClassLoaderHolder.setBizClassLoader(clazz.getClassLoader());
-                handleEvent(listenerId, processId, invokeId, clazz, event, wrap);
+                handleEvent(listenerId, processId, invokeId, clazz, event, wrap, invokeProcess);
             } finally {
                 BizClassLoaderHolder.clearBizClassLoader();
             }
         } finally {
-            wrap.cleanIfEmpty();
+            wrap.cleanIfEmpty(frame);
         }
     }
 
@@ -723,15 +764,16 @@ public class EventListenerHandler implements MessageHandler {
         if (executionTag == ExecutionTagSupplier.EXECUTION_IGNORE) {
             return;
         }
+        final DispatchFrame frame = DispatchFrame.current();
         // 在守护区内产生的事件不需要响应
-        if (SimulatorGuard.getInstance().isInGuard()) {
+        if (frame.isInGuard()) {
             if (isDebugEnabled) {
                 logger.debug("SIMULATOR: listener={} is in protecting, ignore processing call-return-event", listenerId);
             }
             return;
         }
 
-        final InvokeProcessor wrap = mappingOfEventProcessor.get(listenerId);
+        final InvokeProcessor wrap = processors.get(listenerId);
         if (null == wrap) {
             if (isDebugEnabled) {
                 logger.debug("SIMULATOR: listener={} is not activated, ignore processing call-return-event.", listenerId);
@@ -746,7 +788,7 @@ public class EventListenerHandler implements MessageHandler {
             return;
         }
 
-        final InvokeProcessor.InvokeProcess invokeProcess = wrap.getOrCreate();
+        final InvokeProcessor.InvokeProcess invokeProcess = wrap.getOrCreate(frame);
         if (invokeProcess.isEmptyStack()) {
             return;
         }
@@ -764,12 +806,12 @@ public class EventListenerHandler implements MessageHandler {
                 .buildCallReturnEvent(processId, invokeId, isInterface);
             try {
                 BizClassLoaderHolder.setBizClassLoader(clazz.getClassLoader());
-                handleEvent(listenerId, processId, invokeId, clazz, event, wrap);
+                handleEvent(listenerId, processId, invokeId, clazz, event, wrap, invokeProcess);
             } finally {
                 BizClassLoaderHolder.clearBizClassLoader();
             }
         } finally {
-            wrap.cleanIfEmpty();
+            wrap.cleanIfEmpty(frame);
         }
     }
 
@@ -779,15 +821,16 @@ public class EventListenerHandler implements MessageHandler {
         if (executionTag == ExecutionTagSupplier.EXECUTION_IGNORE) {
             return;
         }
+        final DispatchFrame frame = DispatchFrame.current();
         // 在守护区内产生的事件不需要响应
-        if (SimulatorGuard.getInstance().isInGuard()) {
+        if (frame.isInGuard()) {
             if (isDebugEnabled) {
                 logger.debug("SIMULATOR: listener={} is in protecting, ignore processing call-throws-event", listenerId);
             }
             return;
         }
 
-        final InvokeProcessor wrap = mappingOfEventProcessor.get(listenerId);
+        final InvokeProcessor wrap = processors.get(listenerId);
         if (null == wrap) {
             if (isDebugEnabled) {
                 logger.debug("SIMULATOR: listener={} is not activated, ignore processing call-throws-event.", listenerId);
@@ -802,7 +845,7 @@ public class EventListenerHandler implements MessageHandler {
             return;
         }
 
-        final InvokeProcessor.InvokeProcess invokeProcess = wrap.getOrCreate();
+        final InvokeProcessor.InvokeProcess invokeProcess = wrap.getOrCreate(frame);
         if (invokeProcess.isEmptyStack()) {
             return;
         }
@@ -820,12 +863,12 @@ public class EventListenerHandler implements MessageHandler {
                 .buildCallThrowsEvent(processId, invokeId, isInterface, e);
             try {
                 BizClassLoaderHolder.setBizClassLoader(clazz.getClassLoader());
-                handleEvent(listenerId, processId, invokeId, clazz, event, wrap);
+                handleEvent(listenerId, processId, invokeId, clazz, event, wrap, invokeProcess);
             } finally {
                 BizClassLoaderHolder.clearBizClassLoader();
             }
         } finally {
-            wrap.cleanIfEmpty();
+            wrap.cleanIfEmpty(frame);
         }
     }
 
@@ -835,15 +878,16 @@ public class EventListenerHandler implements MessageHandler {
         if (executionTag == ExecutionTagSupplier.EXECUTION_IGNORE) {
             return;
         }
+        final DispatchFrame frame = DispatchFrame.current();
         // 在守护区内产生的事件不需要响应
-        if (SimulatorGuard.getInstance().isInGuard()) {
+        if (frame.isInGuard()) {
             if (isDebugEnabled) {
                 logger.debug("SIMULATOR: listener={} is in protecting, ignore processing call-line-event", listenerId);
             }
             return;
         }
 
-        final InvokeProcessor wrap = mappingOfEventProcessor.get(listenerId);
+        final InvokeProcessor wrap = processors.get(listenerId);
         if (null == wrap) {
             if (isDebugEnabled) {
                 logger.debug("SIMULATOR: listener={} is not activated, ignore processing line-event.", listenerId);
@@ -858,7 +902,7 @@ public class EventListenerHandler implements MessageHandler {
             return;
         }
 
-        final InvokeProcessor.InvokeProcess invokeProcess = wrap.getOrCreate();
+        final InvokeProcessor.InvokeProcess invokeProcess = wrap.getOrCreate(frame);
 
         // 如果当前调用过程信息堆栈是空的,说明BEFORE/LINE错位
         // 处理方式是直接返回,不做任何事件的处理和代码流程的改变
@@ -878,12 +922,12 @@ public class EventListenerHandler implements MessageHandler {
             final Event event = eventFactory.buildLineEvent(processId, invokeId, lineNumber);
             try {
                 BizClassLoaderHolder.setBizClassLoader(clazz.getClassLoader());
-                handleEvent(listenerId, processId, invokeId, clazz, event, wrap);
+                handleEvent(listenerId, processId, invokeId, clazz, event, wrap, invokeProcess);
             } finally {
                 BizClassLoaderHolder.clearBizClassLoader();
             }
         } finally {
-            wrap.cleanIfEmpty();
+            wrap.cleanIfEmpty(frame);
         }
     }
 
@@ -0,0 +1,205 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.enhance.weaver;
+
+import java.util.Arrays;
+
+import com.shulie.instrument.simulator.api.event.BeforeEvent;
+import com.shulie.instrument.simulator.api.event.Event;
+import com.shulie.instrument.simulator.api.event.ReturnEvent;
+import com.shulie.instrument.simulator.api.event.ThrowsEvent;
+
+/**
+ * 线程内复用的事件池
+ * <p>
+ * 只给声明了 {@link com.shulie.instrument.simulator.api.listener.EventReusable} 的监听器使用，
+ * 事件只在 onEvent 期间有效。监听器在处理事件时可能会再次触发增强方法，所以按照分发的嵌套深度
+ * 分配事件对象，同一深度的事件对象在分发结束后清理并复用
+ * <p>
+ * 非线程安全，必须由单个线程独占使用
+ */
+final class EventPool {
+
+    private final static int DEFAULT_DEEP = 8;
+
+    private Slot[] slots = new Slot[DEFAULT_DEEP];
+
+    /**
+     * 当前分发的嵌套深度
+     */
+    private int depth;
+
+    private Slot nextSlot() {
+        if (depth == slots.length) {
+            slots = Arrays.copyOf(slots, depth + (depth >> 1));
+        }
+        Slot slot = slots[depth];
+        if (slot == null) {
+            slot = new Slot();
+            slots[depth] = slot;
+        }
+        depth++;
+        return slot;
+    }
+
+    /**
+     * 借出 BEFORE 事件，使用完成后必须调用 {@link #release(Event)} 归还
+     */
+    BeforeEvent borrowBeforeEvent(final int processId,
+                                  final int invokeId,
+                                  final ClassLoader javaClassLoader,
+                                  final Class clazz,
+                                  final String javaMethodName,
+                                  final String javaMethodDesc,
+                                  final Object target,
+                                  final Object[] argumentArray) {
+        final PooledBeforeEvent event = nextSlot().beforeEvent();
+        event.reset(processId, invokeId, javaClassLoader, clazz, javaMethodName, javaMethodDesc, target,
+            argumentArray);
+        return event;
+    }
+
+    /**
+     * 借出 RETURN 事件，使用完成后必须调用 {@link #release(Event)} 归还
+     */
+    ReturnEvent borrowReturnEvent(final int processId,
+                                  final int invokeId,
+                                  final Object returnObj) {
+        final PooledReturnEvent event = nextSlot().returnEvent();
+        event.reset(processId, invokeId, returnObj);
+        return event;
+    }
+
+    /**
+     * 借出 THROWS 事件，使用完成后必须调用 {@link #release(Event)} 归还
+     */
+    ThrowsEvent borrowThrowsEvent(final int processId,
+                                  final int invokeId,
+                                  final Throwable throwable) {
+        final PooledThrowsEvent event = nextSlot().throwsEvent();
+        event.reset(processId, invokeId, throwable);
+        return event;
+    }
+
+    /**
+     * 归还事件，清理事件中对业务对象的引用
+     *
+     * @param event 借出的事件
+     */
+    void release(final Event event) {
+        if (event instanceof PooledBeforeEvent) {
+            ((PooledBeforeEvent) event).clear();
+        } else if (event instanceof PooledReturnEvent) {
+            ((PooledReturnEvent) event).clear();
+        } else if (event instanceof PooledThrowsEvent) {
+            ((PooledThrowsEvent) event).clear();
+        } else {
+            return;
+        }
+        if (depth > 0) {
+            depth--;
+        }
+    }
+
+    /**
+     * 当前嵌套深度
+     *
+     * @return 嵌套深度
+     */
+    int depth() {
+        return depth;
+    }
+
+    /**
+     * 同一嵌套深度使用的事件对象，每种事件第一次借出时才创建
+     */
+    private final static class Slot {
+        private PooledBeforeEvent beforeEvent;
+        private PooledReturnEvent returnEvent;
+        private PooledThrowsEvent throwsEvent;
+
+        PooledBeforeEvent beforeEvent() {
+            if (beforeEvent == null) {
+                beforeEvent = new PooledBeforeEvent();
+            }
+            return beforeEvent;
+        }
+
+        PooledReturnEvent returnEvent() {
+            if (returnEvent == null) {
+                returnEvent = new PooledReturnEvent();
+            }
+            return returnEvent;
+        }
+
+        PooledThrowsEvent throwsEvent() {
+            if (throwsEvent == null) {
+                throwsEvent = new PooledThrowsEvent();
+            }
+            return throwsEvent;
+        }
+    }
+
+    private final static class PooledBeforeEvent extends BeforeEvent {
+
+        PooledBeforeEvent() {
+            super(0, 0, null, null, null, null, null, null);
+        }
+
+        @Override
+        protected void reset(int processId, int invokeId, ClassLoader javaClassLoader, Class clazz,
+            String javaMethodName, String javaMethodDesc, Object target, Object[] argumentArray) {
+            super.reset(processId, invokeId, javaClassLoader, clazz, javaMethodName, javaMethodDesc, target,
+                argumentArray);
+        }
+
+        @Override
+        protected void clear() {
+            super.clear();
+        }
+    }
+
+    private final static class PooledReturnEvent extends ReturnEvent {
+
+        PooledReturnEvent() {
+            super(0, 0, null);
+        }
+
+        @Override
+        protected void reset(int processId, int invokeId, Object returnObj) {
+            super.reset(processId, invokeId, returnObj);
+        }
+
+        void clear() {
+            super.reset(0, 0, null);
+        }
+    }
+
+    private final static class PooledThrowsEvent extends ThrowsEvent {
+
+        PooledThrowsEvent() {
+            super(0, 0, null);
+        }
+
+        @Override
+        protected void reset(int processId, int invokeId, Throwable throwable) {
+            super.reset(processId, invokeId, throwable);
+        }
+
+        void clear() {
+            super.reset(0, 0, null);
+        }
+    }
+}
@@ -15,8 +15,8 @@
 package com.shulie.instrument.simulator.core.enhance.weaver;
 
 import com.shulie.instrument.simulator.api.listener.EventListener;
-import com.shulie.instrument.simulator.api.util.SimulatorStack;
-import com.shulie.instrument.simulator.api.util.ThreadUnsafeSimulatorStack;
+import com.shulie.instrument.simulator.api.util.ThreadUnsafeIntStack;
+import com.shulie.instrument.simulator.core.util.ReflectUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,12 +27,16 @@ import org.slf4j.LoggerFactory;
  */
 class InvokeProcessor {
 
-    private final Logger logger = LoggerFactory.getLogger(InvokeProcessor.class);
-    private final boolean isDebugEnabled = logger.isDebugEnabled();
+    private final static Logger logger = LoggerFactory.getLogger(InvokeProcessor.class);
+    private final static boolean isDebugEnabled = logger.isDebugEnabled();
     /**
      * 事件监听器 ID
      */
     final int listenerId;
+    /**
+     * 调用流程在线程分发帧中的槽位
+     */
+    final int slot;
     /**
      * 事件监听器
      */
@@ -43,15 +47,20 @@ class InvokeProcessor {
     final int[] eventEventTypes;
 
     /**
-     * 调用流程的 ThreadLocal，这个地方需要使用实例变量，因为需要根据按照线程和 {@link InvokeProcessor} 来隔离调用流程
+     * 需要支持的事件类型掩码，第 n 位表示是否支持事件类型 n
      */
-    private final ThreadLocal<InvokeProcess> processRef = new ThreadLocal<InvokeProcess>();
+    private final int eventTypeMask;
 
     /**
      * 调用流程处理器的运行状态¬
      */
     volatile boolean isRunning = true;
 
+    /**
+     * 调用流程结束后是否保留调用流程对象，保留后分发帧挂载期间的下一次调用流程会原地重置并复用该对象而不是重新创建
+     */
+    private final boolean isReuseProcess;
+
     /**
      * 调用流程处理器构建器
      *
@@ -62,10 +71,59 @@ class InvokeProcessor {
     InvokeProcessor(final int listenerId,
                     final EventListener listener,
                     final int[] eventEventTypes) {
+        this(listenerId, listener, eventEventTypes, false);
+    }
+
+    /**
+     * 调用流程处理器构建器
+     *
+     * @param listenerId      调用流程 ID
+     * @param listener        监听器
+     * @param eventEventTypes 支持的事件列表
+     * @param isReuseProcess  调用流程结束后是否保留调用流程对象以便复用
+     */
+    InvokeProcessor(final int listenerId,
+                    final EventListener listener,
+                    final int[] eventEventTypes,
+                    final boolean isReuseProcess) {
 
         this.listenerId = listenerId;
+        this.slot = DispatchFrame.allocateSlot(listenerId);
         this.eventEventTypes = eventEventTypes;
+        this.eventTypeMask = toEventTypeMask(eventEventTypes);
         this.listener = listener;
+        this.isReuseProcess = isReuseProcess;
+    }
+
+    private static int toEventTypeMask(final int[] eventTypes) {
+        int mask = 0;
+        if (eventTypes != null) {
+            for (int eventType : eventTypes) {
+                if (eventType >= 0 && eventType < Integer.SIZE) {
+                    mask |= 1 << eventType;
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 判断是否支持该事件类型
+     *
+     * @param eventType 事件类型
+     * @return TRUE:支持；FALSE：不支持
+     */
+    final boolean isEventTypeSupported(final int eventType) {
+        return eventType >= 0 && eventType < Integer.SIZE && (eventTypeMask & (1 << eventType)) != 0;
+    }
+
+    /**
+     * 监听器是否允许使用复用的事件对象
+     *
+     * @return TRUE:允许；FALSE：不允许
+     */
+    final boolean isEventReusable() {
+        return ReflectUtils.isReusableEventHandler(listener);
     }
 
     /**
@@ -79,6 +137,8 @@ class InvokeProcessor {
 
     /**
      * 清理
+     * 回收槽位，其他线程上的调用流程会在这些线程下一次访问分发帧时清理，
+     * 当前线程上没有挂载分发帧时不会为了清理而创建
      */
     final void clean() {
         if (!isRunning) {
@@ -86,32 +146,51 @@ class InvokeProcessor {
         }
         isRunning = false;
         listener.clean();
-        processRef.remove();
+        final DispatchFrame frame = DispatchFrame.attached();
+        if (frame != null) {
+            frame.remove(slot);
+        }
+        DispatchFrame.releaseSlot(slot);
     }
 
-    final InvokeProcess getOrCreate() {
-        InvokeProcess invokeProcess = processRef.get();
-        if (invokeProcess == null) {
-            invokeProcess = new InvokeProcess();
-            processRef.set(invokeProcess);
+    /**
+     * 获取或者创建当前线程上的调用流程
+     *
+     * @param frame 当前线程的事件分发帧
+     * @return 调用流程
+     */
+    final InvokeProcess getOrCreate(final DispatchFrame frame) {
+        InvokeProcess invokeProcess = frame.get(slot);
+        if (invokeProcess == null || invokeProcess.getListenerId() != listenerId) {
+            /**
+             * 槽位上可能残留着之前占用该槽位的监听器的调用流程
+             */
+            invokeProcess = new InvokeProcess(listenerId, frame);
+            frame.set(slot, invokeProcess);
         }
         return invokeProcess;
     }
 
-    final InvokeProcess get() {
-        return processRef.get();
-    }
-
     /**
      * clean if empty
+     * 调用流程结束后复用的调用流程原地重置，否则从分发帧中移除
+     *
+     * @param frame 当前线程的事件分发帧
      */
-    final void cleanIfEmpty() {
-        InvokeProcess process = get();
-        if (process == null) {
+    final void cleanIfEmpty(final DispatchFrame frame) {
+        InvokeProcess process = frame.get(slot);
+        if (process == null || process.getListenerId() != listenerId) {
             return;
         }
         if (process.isEmptyStack()) {
-            processRef.remove();
+            if (isReuseProcess) {
+                process.reset();
+                return;
+            }
+            frame.remove(slot);
+            if (isDebugEnabled) {
+                logger.debug("SIMULATOR: clean TLS: event-processor, listener={};", listenerId);
+            }
         }
     }
 
@@ -120,14 +199,26 @@ class InvokeProcessor {
      * 因为方法存在嵌套调用的情况，所以在一次 process 过程中可能会生成一个或者多个 invokeId
      * 只有在方法结束(RETURN/THROWS 事件触发)时 invokeId 才会弹出，代表当前的方法调用已经结束
      * 当所有的栈被清空时表明当前的调用流程已经结束
+     * <p>
+     * 不持有外部 {@link InvokeProcessor} 的引用，监听器冻结后不会因为线程上残留的调用流程而无法回收。
+     * 堆栈由空变为非空、由非空变为空时通知所属的分发帧，分发帧据此决定是否挂载在当前线程上
      */
-    class InvokeProcess {
+    static class InvokeProcess {
+
+        /**
+         * 事件监听器 ID
+         */
+        private final int listenerId;
+
+        /**
+         * 所属的分发帧
+         */
+        private final DispatchFrame frame;
 
         /**
          * 一次方法调用流程的堆栈
          */
-        private final SimulatorStack<Integer> stack
-                = new ThreadUnsafeSimulatorStack<Integer>();
+        private final ThreadUnsafeIntStack stack = new ThreadUnsafeIntStack();
 
         /**
          * 是否需要忽略整个调用过程
@@ -140,6 +231,27 @@ class InvokeProcessor {
          */
         private boolean isExceptionFromImmediately = false;
 
+        InvokeProcess(final int listenerId, final DispatchFrame frame) {
+            this.listenerId = listenerId;
+            this.frame = frame;
+        }
+
+        final int getListenerId() {
+            return listenerId;
+        }
+
+        /**
+         * 重置调用流程，供调用流程结束后复用
+         */
+        final void reset() {
+            if (!stack.isEmpty()) {
+                frame.onProcessEnd();
+            }
+            stack.clear();
+            isIgnoreProcess = false;
+            isExceptionFromImmediately = false;
+        }
+
         /**
          * 压入调用ID
          * 当压入的第一个调用 ID 即为流程 ID，在 BEFORE 事件中产生
@@ -147,6 +259,9 @@ class InvokeProcessor {
          * @param invokeId 调用ID
          */
         final void pushInvokeId(int invokeId) {
+            if (stack.isEmpty()) {
+                frame.onProcessStart();
+            }
             stack.push(invokeId);
             if (isDebugEnabled) {
                 logger.debug("SIMULATOR: push process-stack, process-id={};invoke-id={};deep={};listener={};",
@@ -165,6 +280,9 @@ class InvokeProcessor {
          */
         final int popInvokeId() {
             final int invokeId = stack.pop();
+            if (stack.isEmpty()) {
+                frame.onProcessEnd();
+            }
             if (isDebugEnabled) {
                 if (!stack.isEmpty()) {
                     final int processId = stack.peekLast();
@@ -176,12 +294,6 @@ class InvokeProcessor {
                     );
                 }
             }
-            if (stack.isEmpty()) {
-                processRef.remove();
-                if (isDebugEnabled) {
-                    logger.debug("SIMULATOR: clean TLS: event-processor, listener={};", listenerId);
-                }
-            }
             return invokeId;
         }
 
@@ -14,82 +14,149 @@
  */
 package com.shulie.instrument.simulator.core.enhance.weaver;
 
-import java.util.Arrays;
-
 /**
+ * 以监听器ID为键的事件处理器表
+ * <p>
+ * 监听器ID由 {@link com.shulie.instrument.simulator.message.Messager#nextListenerId()} 连续分配并且不会回收，
+ * 直接作为下标时表的长度会随着模块反复加载卸载持续增长。这里使用开放寻址的散列表，容量只与当前已注册的
+ * 事件处理器数量相关；连续分配的监听器ID取低位即可均匀分布，读取时只需要一次 volatile 读和少量数组访问，
+ * 不需要对监听器ID装箱。写入(激活/冻结)很少发生，每次写入按当前已注册的事件处理器重建散列表，保证读取无锁
+ *
  * @author xiaobin.zfb|xiaobin@shulie.io
  * @since 2021/6/1 11:04 下午
  */
-public class InvokeProcessorArray {
+class InvokeProcessorArray {
+
+    private final static int DEFAULT_CAPACITY = 64;
 
-    private InvokeProcessor[] processors;
-    private volatile int length;
     /**
-     * record assignment index of map
+     * 散列表，长度为 2 的幂并且至少是事件处理器数量的两倍，保证探测时一定能遇到空位
      */
-    private byte[] idxMap;
+    private volatile InvokeProcessor[] table;
+    private int length;
+
+    InvokeProcessorArray() {
+        this(DEFAULT_CAPACITY);
+    }
 
-    public InvokeProcessorArray(int length) {
-        this.processors = new InvokeProcessor[length];
-        this.idxMap = new byte[length];
+    InvokeProcessorArray(int capacity) {
+        this.table = new InvokeProcessor[tableSizeFor(capacity)];
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static int indexOf(final InvokeProcessor[] table, final int listenerId) {
+        final int mask = table.length - 1;
+        int index = listenerId & mask;
+        while (true) {
+            final InvokeProcessor processor = table[index];
+            if (processor == null || processor.listenerId == listenerId) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
     }
 
     /**
-     * find empty index
+     * 按照给定的事件处理器重建散列表
      *
-     * @return
+     * @param current   当前的散列表
+     * @param exclude   需要排除的监听器ID
+     * @param processor 需要追加的事件处理器，可以为 null
      */
-    public synchronized int getNextListenerId() {
-        int index = -1;
-        for (int i = 0, len = processors.length; i < len; i++) {
-            if (processors[i] == null && idxMap[i] == 0) {
-                index = i;
-                break;
+    private void rebuild(final InvokeProcessor[] current, final int exclude, final InvokeProcessor processor) {
+        final int size = length + (processor == null ? 0 : 1);
+        final InvokeProcessor[] rebuilt = new InvokeProcessor[Math.max(DEFAULT_CAPACITY, tableSizeFor(size << 1))];
+        for (InvokeProcessor p : current) {
+            if (p != null && p.listenerId != exclude) {
+                rebuilt[indexOf(rebuilt, p.listenerId)] = p;
             }
         }
-        if (index == -1) {
-            ensureCapacity(processors.length);
-            index = processors.length;
+        if (processor != null) {
+            rebuilt[indexOf(rebuilt, processor.listenerId)] = processor;
+            length++;
         }
-
-        idxMap[index] = 1;
-        return index;
+        table = rebuilt;
     }
 
-    public synchronized void set(int index, InvokeProcessor processor) {
-        ensureCapacity(index);
-        processors[index] = processor;
-        idxMap[index] = 1;
-        length++;
+    /**
+     * 设置事件处理器
+     *
+     * @param listenerId 监听器ID
+     * @param processor  事件处理器
+     * @return 被替换的事件处理器
+     */
+    synchronized InvokeProcessor set(int listenerId, InvokeProcessor processor) {
+        final InvokeProcessor[] current = table;
+        final InvokeProcessor old = current[indexOf(current, listenerId)];
+        if (old != null) {
+            length--;
+        }
+        rebuild(current, listenerId, processor);
+        return old;
     }
 
-    private void ensureCapacity(int index) {
-        if (index >= processors.length) {
-            int oldCapacity = processors.length;
-            int newCapacity = oldCapacity + (oldCapacity >> 1);
-            processors = Arrays.copyOf(processors, newCapacity);
-            idxMap = Arrays.copyOf(idxMap, newCapacity);
-        }
+    /**
+     * 获取事件处理器
+     *
+     * @param listenerId 监听器ID
+     * @return 事件处理器，不存在则返回 null
+     */
+    InvokeProcessor get(int listenerId) {
+        final InvokeProcessor[] current = table;
+        return current[indexOf(current, listenerId)];
     }
 
-    public InvokeProcessor get(int index) {
-        if (index >= processors.length) {
+    /**
+     * 移除事件处理器
+     *
+     * @param listenerId 监听器ID
+     * @return 被移除的事件处理器，不存在则返回 null
+     */
+    synchronized InvokeProcessor remove(int listenerId) {
+        final InvokeProcessor[] current = table;
+        final InvokeProcessor old = current[indexOf(current, listenerId)];
+        if (old == null) {
             return null;
         }
-        return processors[index];
+        length--;
+        rebuild(current, listenerId, null);
+        return old;
     }
 
-    public synchronized InvokeProcessor remove(int index) {
-        if (index >= processors.length) {
-            return null;
-        }
-        InvokeProcessor invokeProcessor = processors[index];
-        processors[index] = null;
-        idxMap[index] = 0;
-        return invokeProcessor;
+    /**
+     * 移除所有的事件处理器
+     *
+     * @return 被移除的事件处理器，数组中可能包含 null
+     */
+    synchronized InvokeProcessor[] clear() {
+        final InvokeProcessor[] current = table;
+        table = new InvokeProcessor[DEFAULT_CAPACITY];
+        length = 0;
+        return current;
     }
 
-    public int length() {
+    /**
+     * 当前已注册的事件处理器数量
+     *
+     * @return 事件处理器数量
+     */
+    synchronized int length() {
         return length;
     }
+
+    /**
+     * 当前散列表的容量
+     *
+     * @return 散列表长度
+     */
+    int capacity() {
+        return table.length;
+    }
 }
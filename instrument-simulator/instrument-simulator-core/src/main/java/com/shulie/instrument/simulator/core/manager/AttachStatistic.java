@@ -0,0 +1,96 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.manager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模块挂载的统计器
+ * <p>
+ * 模块加载的总耗时，以及重新渲染的类个数、调用次数和耗时。
+ * 每一次 retransformClasses 调用都是一次 VM 操作，需要进入一次安全点
+ * </p>
+ */
+public class AttachStatistic {
+
+    // 模块加载总耗时
+    private volatile long attachTimeMillis;
+
+    // 模块加载期间 JVM 进入安全点的次数，不支持获取时为 -1
+    private volatile long safepointCount = -1;
+
+    // 模块加载期间 JVM 处于安全点的总时间，不支持获取时为 -1
+    private volatile long safepointTimeMillis = -1;
+
+    // 重新渲染的类个数
+    private final AtomicInteger reTransformClassCount = new AtomicInteger();
+
+    // retransformClasses 的调用次数
+    private final AtomicInteger reTransformInvokeCount = new AtomicInteger();
+
+    // 重新渲染总耗时
+    private final AtomicLong reTransformTimeNanos = new AtomicLong();
+
+    /**
+     * 统计一次 retransformClasses 调用
+     *
+     * @param classCount 本次重新渲染的类个数
+     * @param costNanos  本次重新渲染耗时
+     */
+    public void statisticReTransform(final int classCount, final long costNanos) {
+        reTransformClassCount.addAndGet(classCount);
+        reTransformInvokeCount.incrementAndGet();
+        reTransformTimeNanos.addAndGet(costNanos);
+    }
+
+    /**
+     * 统计一次模块加载
+     *
+     * @param attachTimeMillis    模块加载耗时
+     * @param safepointCount      模块加载期间 JVM 进入安全点的次数
+     * @param safepointTimeMillis 模块加载期间 JVM 处于安全点的总时间
+     */
+    public void statisticAttach(final long attachTimeMillis, final long safepointCount, final long safepointTimeMillis) {
+        this.attachTimeMillis = attachTimeMillis;
+        this.safepointCount = safepointCount;
+        this.safepointTimeMillis = safepointTimeMillis;
+    }
+
+    public long getAttachTimeMillis() {
+        return attachTimeMillis;
+    }
+
+    public long getSafepointCount() {
+        return safepointCount;
+    }
+
+    public long getSafepointTimeMillis() {
+        return safepointTimeMillis;
+    }
+
+    public int getReTransformClassCount() {
+        return reTransformClassCount.get();
+    }
+
+    public int getReTransformInvokeCount() {
+        return reTransformInvokeCount.get();
+    }
+
+    public long getReTransformTimeMillis() {
+        return reTransformTimeNanos.get() / 1000000L;
+    }
+
+}
@@ -19,6 +19,7 @@ import com.shulie.instrument.simulator.core.util.matcher.Matcher;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 内核使用的已加载类管理
@@ -36,6 +37,17 @@ public interface CoreLoadedClassDataSource extends LoadedClassDataSource {
      */
     List<Class<?>> findForReTransform(Matcher matcher);
 
+    /**
+     * 使用多个{@link Matcher}一次性完成类的检索
+     * <p>
+     * 已加载的类只遍历一次，并且先使用类名预匹配过滤，用于模块加载时批量重新渲染
+     * </p>
+     *
+     * @param matchers 类匹配
+     * @return 每个类匹配所匹配到的类
+     */
+    Map<Matcher, List<Class<?>>> findForBatchReTransform(Collection<Matcher> matchers);
+
     /**
      * 根据 className 来完成唯一类的检索
      *
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.manager;
+
+/**
+ * 批量重新渲染
+ * <p>
+ * 开启后当前线程上发起的观察只注册类转换器，重新渲染延迟到结束时统一进行：
+ * 已加载的类只检索一次，同一个类只重新渲染一次，并且按批次提交给 JVM
+ * </p>
+ */
+public interface ReTransformBatch {
+
+    /**
+     * 开启批量重新渲染，支持嵌套
+     *
+     * @return 是否开启成功，只有开启成功才需要调用 {@link #end()}
+     */
+    boolean begin();
+
+    /**
+     * 结束批量重新渲染，最外层结束时对延迟的观察统一进行重新渲染
+     */
+    void end();
+}
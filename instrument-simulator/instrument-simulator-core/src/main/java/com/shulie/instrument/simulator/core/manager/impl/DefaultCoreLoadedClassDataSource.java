@@ -105,34 +105,10 @@ public class DefaultCoreLoadedClassDataSource implements CoreLoadedClassDataSour
 
     @Override
     public List<Class<?>> findForReTransform(String className) {
-        SimulatorGuard.getInstance().enter();
-        try {
-
-            final List<Class<?>> classes = new ArrayList<Class<?>>();
-            if (null == className) {
-                return classes;
-            }
-
-            for (Class<?> clazz : getAllForLoadedClasses()) {
-                // 过滤掉Simulator家族的类
-                if (SimulatorClassUtils.isComeFromSimulatorFamily(SimulatorStringUtils.toInternalClassName(clazz.getName()), clazz.getClassLoader())) {
-                    continue;
-                }
-
-                try {
-                    if (clazz.getName().equals(className)) {
-                        classes.add(clazz);
-                    }
-                } catch (Throwable cause) {
-                    // 当解析类出现异常的时候，直接认为根本没有这个类即可
-                    logger.warn("SIMULATOR: remove from findForReTransform, because loading class:{} occur an exception", clazz.getName(), cause);
-                }
-            }
-            return classes;
-
-        } finally {
-            SimulatorGuard.getInstance().exit();
+        if (null == className) {
+            return new ArrayList<Class<?>>();
         }
+        return findByClassNames(Collections.singletonList(className));
     }
 
     @Override
@@ -140,73 +116,136 @@ public class DefaultCoreLoadedClassDataSource implements CoreLoadedClassDataSour
         if (ArrayUtils.isEmpty(classNames)) {
             return Collections.EMPTY_LIST;
         }
+        return findByClassNames(Arrays.asList(classNames));
+    }
+
+    @Override
+    public List<Class<?>> findForReTransform(Collection<String> classNames) {
+        if (CollectionUtils.isEmpty(classNames)) {
+            return Collections.EMPTY_LIST;
+        }
+        return findByClassNames(classNames);
+    }
+
+    @Override
+    public Map<Matcher, List<Class<?>>> findForBatchReTransform(final Collection<Matcher> matchers) {
+        final Map<Matcher, List<Class<?>>> result = new LinkedHashMap<Matcher, List<Class<?>>>();
+        if (CollectionUtils.isEmpty(matchers)) {
+            return result;
+        }
+        for (final Matcher matcher : matchers) {
+            result.put(matcher, new ArrayList<Class<?>>());
+        }
         SimulatorGuard.getInstance().enter();
         try {
-            final List<Class<?>> classes = new ArrayList<Class<?>>();
-            for (String className : classNames) {
-                if (null == className) {
-                    return classes;
-                }
-
-                for (Class<?> clazz : getAllForLoadedClasses()) {
-                    // 过滤掉Simulator家族的类
-                    if (SimulatorClassUtils.isComeFromSimulatorFamily(SimulatorStringUtils.toInternalClassName(clazz.getName()), clazz.getClassLoader())) {
+            final Map<String, List<Class<?>>> classNameIndex = buildClassNameIndex();
+            for (final Map.Entry<String, List<Class<?>>> entry : classNameIndex.entrySet()) {
+                for (final Map.Entry<Matcher, List<Class<?>>> matcherEntry : result.entrySet()) {
+                    /**
+                     * 与 DefaultSimulatorClassFileTransformer 保持一致，类名预匹配不通过的类即使重新渲染也不会被增强，
+                     * 所以先用类名过滤，避免为每一个已加载的类都构建类结构
+                     */
+                    if (!matcherEntry.getKey().preMatching(entry.getKey())) {
                         continue;
                     }
-
-                    try {
-                        if (clazz.getName().equals(className)) {
-                            classes.add(clazz);
+                    for (final Class<?> clazz : entry.getValue()) {
+                        if (isMatchedUnsupported(matcherEntry.getKey(), clazz)) {
+                            matcherEntry.getValue().add(clazz);
                         }
-                    } catch (Throwable cause) {
-                        // 当解析类出现异常的时候，直接认为根本没有这个类即可
-                        logger.warn("SIMULATOR: remove from findForReTransform, because loading class:{} occur an exception", clazz.getName(), cause);
                     }
                 }
             }
-            return classes;
-
+            return result;
         } finally {
             SimulatorGuard.getInstance().exit();
         }
     }
 
-    @Override
-    public List<Class<?>> findForReTransform(Collection<String> classNames) {
-        if (CollectionUtils.isEmpty(classNames)) {
-            return Collections.EMPTY_LIST;
-        }
+    /**
+     * 根据类名检索，已加载的类只遍历一次
+     *
+     * @param classNames 类名称，遇到 null 时停止检索
+     * @return 匹配的类，顺序与类名称的顺序一致
+     */
+    private List<Class<?>> findByClassNames(final Collection<String> classNames) {
         SimulatorGuard.getInstance().enter();
         try {
-            final List<Class<?>> classes = new ArrayList<Class<?>>();
+            final Set<String> waitingClassNames = new HashSet<String>();
             for (String className : classNames) {
                 if (null == className) {
-                    return classes;
+                    break;
                 }
+                waitingClassNames.add(className);
+            }
 
+            final Map<String, List<Class<?>>> foundClasses = new HashMap<String, List<Class<?>>>();
+            if (!waitingClassNames.isEmpty()) {
                 for (Class<?> clazz : getAllForLoadedClasses()) {
-                    // 过滤掉Simulator家族的类
-                    if (SimulatorClassUtils.isComeFromSimulatorFamily(SimulatorStringUtils.toInternalClassName(clazz.getName()), clazz.getClassLoader())) {
-                        continue;
-                    }
-
                     try {
-                        if (clazz.getName().equals(className)) {
-                            classes.add(clazz);
+                        final String javaClassName = clazz.getName();
+                        if (!waitingClassNames.contains(javaClassName)) {
+                            continue;
+                        }
+                        // 过滤掉Simulator家族的类
+                        if (SimulatorClassUtils.isComeFromSimulatorFamily(SimulatorStringUtils.toInternalClassName(javaClassName), clazz.getClassLoader())) {
+                            continue;
                         }
+                        List<Class<?>> classes = foundClasses.get(javaClassName);
+                        if (classes == null) {
+                            classes = new ArrayList<Class<?>>(1);
+                            foundClasses.put(javaClassName, classes);
+                        }
+                        classes.add(clazz);
                     } catch (Throwable cause) {
                         // 当解析类出现异常的时候，直接认为根本没有这个类即可
                         logger.warn("SIMULATOR: remove from findForReTransform, because loading class:{} occur an exception", clazz.getName(), cause);
                     }
                 }
             }
-            return classes;
 
+            final List<Class<?>> classes = new ArrayList<Class<?>>();
+            for (String className : classNames) {
+                if (null == className) {
+                    return classes;
+                }
+                final List<Class<?>> found = foundClasses.get(className);
+                if (found != null) {
+                    classes.addAll(found);
+                }
+            }
+            return classes;
         } finally {
             SimulatorGuard.getInstance().exit();
         }
     }
 
+    /**
+     * 构建已加载类的类名索引，过滤掉 JVM 认为不可修改的类以及配置排除的包
+     *
+     * @return 类名 -> 该类名在各个类加载器中加载的类
+     */
+    private Map<String, List<Class<?>>> buildClassNameIndex() {
+        final Class[] loadedClasses = getAllForLoadedClasses();
+        final Map<String, List<Class<?>>> classNameIndex = new HashMap<String, List<Class<?>>>(loadedClasses.length * 4 / 3 + 1);
+        for (Class<?> clazz : loadedClasses) {
+            if (!inst.isModifiableClass(clazz)) {
+                logger.debug("SIMULATOR: remove from findForReTransform, because class:{} is unModifiable", clazz.getName());
+                continue;
+            }
+            final String javaClassName = clazz.getName();
+            if (transformExcludePackages != null && excludeTransformByPackages(javaClassName)) {
+                continue;
+            }
+            List<Class<?>> classes = classNameIndex.get(javaClassName);
+            if (classes == null) {
+                classes = new ArrayList<Class<?>>(1);
+                classNameIndex.put(javaClassName, classes);
+            }
+            classes.add(clazz);
+        }
+        return classNameIndex;
+    }
+
     @Override
     public boolean excludeTransformByPackages(String className) {
         if (className == null || transformExcludePackages == null) {
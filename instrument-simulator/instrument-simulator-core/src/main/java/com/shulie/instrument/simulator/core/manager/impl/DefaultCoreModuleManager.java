@@ -37,6 +37,7 @@ import com.shulie.instrument.simulator.core.manager.ModuleLoader;
 import com.shulie.instrument.simulator.core.manager.*;
 import com.shulie.instrument.simulator.core.util.DefaultModuleLoadInfoManagerUtils;
 import com.shulie.instrument.simulator.core.util.ModuleSpecUtils;
+import com.shulie.instrument.simulator.core.util.SafepointUtils;
 import com.shulie.instrument.simulator.core.util.VersionUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOCase;
@@ -52,6 +53,7 @@ import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.Instrumentation;
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
@@ -64,6 +66,11 @@ import static org.apache.commons.lang.reflect.FieldUtils.writeField;
  */
 public class DefaultCoreModuleManager implements CoreModuleManager {
 
+    /**
+     * 默认的模块并行加载线程数上限
+     */
+    private final static int DEFAULT_MODULE_LOAD_PARALLELISM = 4;
+
     protected final Logger logger = LoggerFactory.getLogger(getClass());
     protected final boolean isDebugEnabled = logger.isDebugEnabled();
     protected final boolean isInfoEnabled = logger.isInfoEnabled();
@@ -71,6 +78,11 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
     protected CoreConfigure config;
     protected Instrumentation inst;
     protected ClassFileTransformer defaultClassFileTransformer;
+    /**
+     * 所有模块共用的统一类转换器，未启用时为空
+     */
+    protected DispatchClassFileTransformer dispatchClassFileTransformer;
+    protected ClassFileTransformer dispatchClassFileTransformerProxy;
     protected ClassInjector classInjector;
     protected CoreLoadedClassDataSource classDataSource;
     protected ProviderManager providerManager;
@@ -168,6 +180,15 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
         this.defaultClassFileTransformer = new InternalClassFileTransformer(classInjector);
         this.inst.addTransformer(this.defaultClassFileTransformer);
 
+        /**
+         * 所有模块的观察共用一个类转换器，每个类只做一次类名预匹配、一次解析、一次织入
+         */
+        if (simulatorConfig.getBooleanProperty(DispatchClassFileTransformer.ENABLED_UNIFIED_TRANSFORMER, true)) {
+            this.dispatchClassFileTransformer = new DispatchClassFileTransformer(classDataSource, config.isEnableUnsafe());
+            this.dispatchClassFileTransformerProxy = CostDumpTransformer.wrap(BytecodeDumpTransformer.wrap(dispatchClassFileTransformer, simulatorConfig), simulatorConfig);
+            this.inst.addTransformer(this.dispatchClassFileTransformerProxy, true);
+        }
+
         /**
          * 如果已经加载的类则直接执行注入操作
          */
@@ -185,10 +206,15 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
     public void onShutdown() {
         this.providerManager.onShutdown(simulatorConfig);
         this.inst.removeTransformer(this.defaultClassFileTransformer);
+        if (this.dispatchClassFileTransformerProxy != null) {
+            this.inst.removeTransformer(this.dispatchClassFileTransformerProxy);
+        }
         this.switcherManager.close();
         this.config = null;
         this.inst = null;
         this.defaultClassFileTransformer = null;
+        this.dispatchClassFileTransformer = null;
+        this.dispatchClassFileTransformerProxy = null;
         this.classInjector.destroy();
         this.classInjector = null;
         this.classDataSource = null;
@@ -388,6 +414,10 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
             );
         }
 
+        final long beginTime = System.currentTimeMillis();
+        final long beginSafepointCount = SafepointUtils.getSafepointCount();
+        final long beginSafepointTime = SafepointUtils.getTotalSafepointTimeMillis();
+
         // 初始化模块信息
         final CoreModule coreModule = new CoreModule(moduleSpec, moduleJarFile, classLoaderFactory, module, this);
 
@@ -398,29 +428,56 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
         // 注入@Resource资源
         injectResource(coreModule.getModule(), coreModule);
 
-        callAndFireModuleLifeCycle(coreModule, MODULE_LOAD);
+        /**
+         * 模块加载期间的观察统一在加载结束时重新渲染
+         */
+        final ReTransformBatch reTransformBatch = coreModule.getReTransformBatch();
+        final boolean isBatch = reTransformBatch.begin();
+        try {
+            callAndFireModuleLifeCycle(coreModule, MODULE_LOAD);
 
-        // 设置为已经加载
-        coreModule.markLoaded(true);
+            // 设置为已经加载
+            coreModule.markLoaded(true);
 
-        // 如果模块标记了加载时自动激活，则需要在加载完成之后激活模块
-        markActiveOnLoadIfNecessary(coreModule);
+            // 如果模块标记了加载时自动激活，则需要在加载完成之后激活模块
+            markActiveOnLoadIfNecessary(coreModule);
 
-        // 注册到模块列表中
-        loadedModuleMap.put(moduleSpec.getModuleId(), coreModule);
+            // 注册到模块列表中
+            loadedModuleMap.put(moduleSpec.getModuleId(), coreModule);
 
-        // 通知生命周期，模块加载完成
-        callAndFireModuleLifeCycle(coreModule, MODULE_LOAD_COMPLETED);
+            // 通知生命周期，模块加载完成
+            callAndFireModuleLifeCycle(coreModule, MODULE_LOAD_COMPLETED);
+        } finally {
+            if (isBatch) {
+                reTransformBatch.end();
+            }
+        }
+
+        final long endSafepointCount = SafepointUtils.getSafepointCount();
+        final long endSafepointTime = SafepointUtils.getTotalSafepointTimeMillis();
+        coreModule.getAttachStatistic().statisticAttach(System.currentTimeMillis() - beginTime,
+                beginSafepointCount < 0 || endSafepointCount < 0 ? -1 : endSafepointCount - beginSafepointCount,
+                beginSafepointTime < 0 || endSafepointTime < 0 ? -1 : endSafepointTime - beginSafepointTime);
+        if (isInfoEnabled) {
+            logger.info("SIMULATOR: module attached, module={};cost={}ms;reTransformClasses={};reTransformInvokes={};safepoints={};",
+                    moduleSpec.getModuleId(),
+                    coreModule.getAttachStatistic().getAttachTimeMillis(),
+                    coreModule.getAttachStatistic().getReTransformClassCount(),
+                    coreModule.getAttachStatistic().getReTransformInvokeCount(),
+                    coreModule.getAttachStatistic().getSafepointCount()
+            );
+        }
 
     }
 
     private void injectCoreModule(final CoreModule coreModule) {
         coreModule.setCoreLoadedClassDataSource(classDataSource);
+        final DefaultModuleEventWatcher defaultModuleEventWatcher = new DefaultModuleEventWatcher(inst, classDataSource, coreModule, config.isEnableUnsafe(), eventListenerHandler, dispatchClassFileTransformer);
         final ModuleEventWatcher moduleEventWatcher = coreModule.append(
                 new ReleaseResource<ModuleEventWatcher>(
                         SimulatorGuard.getInstance().doGuard(
                                 ModuleEventWatcher.class,
-                                new DefaultModuleEventWatcher(inst, classDataSource, coreModule, config.isEnableUnsafe(), eventListenerHandler)
+                                defaultModuleEventWatcher
                         )
                 ) {
                     @Override
@@ -438,6 +495,7 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
                     }
                 });
         coreModule.setModuleEventWatcher(moduleEventWatcher);
+        coreModule.setReTransformBatch(defaultModuleEventWatcher);
         coreModule.setModuleController(new DefaultModuleController(coreModule, this));
         coreModule.setObjectManager(new DefaultObjectManager(simulatorConfig.getInstrumentation()));
         coreModule.setModuleManager(new DefaultModuleManager(this));
@@ -868,8 +926,16 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
             );
         }
 
-        // 通知生命周期
-        callAndFireModuleLifeCycle(coreModule, MODULE_ACTIVE);
+        // 通知生命周期，激活期间的观察统一在激活结束时重新渲染
+        final ReTransformBatch reTransformBatch = coreModule.getReTransformBatch();
+        final boolean isBatch = reTransformBatch != null && reTransformBatch.begin();
+        try {
+            callAndFireModuleLifeCycle(coreModule, MODULE_ACTIVE);
+        } finally {
+            if (isBatch) {
+                reTransformBatch.end();
+            }
+        }
 
         // 激活所有监听器
         for (final SimulatorClassFileTransformer simulatorClassFileTransformer : coreModule.getSimulatorClassFileTransformers()) {
@@ -1116,6 +1182,10 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
     }
 
     private void loadModule(final ModuleSpec moduleSpec) {
+        loadModule(moduleSpec, new InnerModuleLoadCallback());
+    }
+
+    private void loadModule(final ModuleSpec moduleSpec, final ModuleJarLoader.ModuleLoadCallback moduleLoadCallback) {
         /**
          * 过滤掉非法的模块
          */
@@ -1128,7 +1198,7 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
             new ModuleLibLoader(moduleSpec, config.getLaunchMode(), classLoaderService)
                     .load(simulatorConfig,
                             new InnerModuleJarLoadCallback(),
-                            new InnerModuleLoadCallback()
+                            moduleLoadCallback
                     );
         } else {
             logger.warn("SIMULATOR: module-lib not access, ignore flush load this lib. path={}, module-id={}", moduleSpec.getFile(), moduleSpec.getModuleId());
@@ -1136,20 +1206,18 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
     }
 
     /**
-     * 模块加载
+     * 校验模块是否可以加载
      *
-     * @param moduleSpec
-     * @param action
+     * @param moduleSpec 模块描述
+     * @param action     加载动作
+     * @return 是否可以加载
      */
-    private void loadModule(final ModuleSpec moduleSpec, String action) {
-        if (isInfoEnabled) {
-            logger.info("SIMULATOR: prepare to load module {} ,file={}", moduleSpec.getModuleId(), moduleSpec.getFile().getAbsolutePath());
-        }
+    private boolean isModuleLoadable(final ModuleSpec moduleSpec, String action) {
         if (!moduleSpec.getFile().exists() || !moduleSpec.getFile().canRead()) {
             moduleSpec.setValid(false);
             logger.warn("SIMULATOR: {} modules[{}]: module-lib can not access, cause by file is not exists or can't read. module-lib={}, exists={}, canRead={}",
                     action, moduleSpec.getModuleId(), moduleSpec.getFile(), moduleSpec.getFile().exists(), moduleSpec.getFile().canRead());
-            return;
+            return false;
         }
 
         /**
@@ -1159,7 +1227,7 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
             moduleSpec.setValid(false);
             logger.warn("SIMULATOR: {} modules[{}]: module is not enabled, cause by module version is not support simulator version, will be ignored. module-lib={}, simulator-version:{} module-support-version:{}-{}",
                     action, moduleSpec.getModuleId(), moduleSpec.getFile(), simulatorConfig.getSimulatorVersion(), moduleSpec.getSinceVersion(), moduleSpec.getUntilVersion());
-            return;
+            return false;
         }
 
         /**
@@ -1169,9 +1237,64 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
             if (disabledModules.contains(moduleSpec.getModuleId())) {
                 moduleSpec.setValid(false);
                 logger.warn("SIMULATOR: {} modules[{}]: module is disabled, will be ignored. module-lib={}", action, moduleSpec.getModuleId(), moduleSpec.getFile());
-                return;
+                return false;
             }
         }
+        return true;
+    }
+
+    /**
+     * 模块依赖的开关是否已经全部开启
+     * 未全部开启时注册开关回调，开关全部开启后再加载模块
+     *
+     * @param moduleSpec 模块描述
+     * @return 是否可以立即加载
+     */
+    private boolean isDependenciesReady(final ModuleSpec moduleSpec) {
+        if (isEmpty(moduleSpec.getDependencies())) {
+            return true;
+        }
+        /**
+         * 如果开关已经是开启状态，则直接执行即可
+         */
+        if (switcherManager.isAllSwitchOn(moduleSpec.getDependencies())) {
+            return true;
+        }
+        switcherManager.registerMultiSwitchOnCallback(moduleSpec.getDependencies(), new Runnable() {
+            @Override
+            public void run() {
+                /**
+                 * 当开启状态时执行加载
+                 */
+                if (switcherManager.isAllSwitchOn(moduleSpec.getDependencies())) {
+                    loadModule(moduleSpec);
+                    if (isInfoEnabled) {
+                        logger.info("SIMULATOR: load module {} successful,file={}", moduleSpec.getModuleId(), moduleSpec.getFile().getAbsolutePath());
+                    }
+                } else {
+                    /**
+                     * 否则重新注册开关,因为回调执行一次就会销毁
+                     */
+                    switcherManager.registerMultiSwitchOnCallback(moduleSpec.getDependencies(), this);
+                }
+            }
+        });
+        return false;
+    }
+
+    /**
+     * 模块加载
+     *
+     * @param moduleSpec
+     * @param action
+     */
+    private void loadModule(final ModuleSpec moduleSpec, String action) {
+        if (isInfoEnabled) {
+            logger.info("SIMULATOR: prepare to load module {} ,file={}", moduleSpec.getModuleId(), moduleSpec.getFile().getAbsolutePath());
+        }
+        if (!isModuleLoadable(moduleSpec, action)) {
+            return;
+        }
 
         try {
             final ClassLoaderFactory moduleClassLoader = new ClassLoaderFactoryImpl(classLoaderService, config, moduleSpec.getFile(), moduleSpec.getModuleId(), moduleSpec.isMiddlewareModule(), moduleSpec.getImportArtifacts());
@@ -1183,39 +1306,7 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
         if (isInfoEnabled) {
             logger.info("SIMULATOR: {} modules[{}]: load module success. module-lib={}", action, moduleSpec.getModuleId(), moduleSpec.getFile());
         }
-        if (!isEmpty(moduleSpec.getDependencies())) {
-            /**
-             * 如果开关已经是开启状态，则直接执行即可
-             */
-            if (switcherManager.isAllSwitchOn(moduleSpec.getDependencies())) {
-                loadModule(moduleSpec);
-                if (isInfoEnabled) {
-                    logger.info("SIMULATOR: load module {} successful,file={}", moduleSpec.getModuleId(), moduleSpec.getFile().getAbsolutePath());
-                }
-            } else {
-                switcherManager.registerMultiSwitchOnCallback(moduleSpec.getDependencies(), new Runnable() {
-                    @Override
-                    public void run() {
-                        /**
-                         * 当开启状态时执行加载
-                         */
-                        if (switcherManager.isAllSwitchOn(moduleSpec.getDependencies())) {
-                            loadModule(moduleSpec);
-                            if (isInfoEnabled) {
-                                logger.info("SIMULATOR: load module {} successful,file={}", moduleSpec.getModuleId(), moduleSpec.getFile().getAbsolutePath());
-                            }
-                        } else {
-                            /**
-                             * 否则重新注册开关,因为回调执行一次就会销毁
-                             */
-                            switcherManager.registerMultiSwitchOnCallback(moduleSpec.getDependencies(), this);
-                        }
-                    }
-                });
-            }
-
-
-        } else {
+        if (isDependenciesReady(moduleSpec)) {
             loadModule(moduleSpec);
             if (isInfoEnabled) {
                 logger.info("SIMULATOR: load module {} successful,file={}", moduleSpec.getModuleId(), moduleSpec.getFile().getAbsolutePath());
@@ -1229,6 +1320,90 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
         }
     }
 
+    /**
+     * 并行加载模块
+     * 按照模块依赖调度，没有依赖关系的模块并行准备类加载器和实例化，模块的加载和增强仍然串行执行
+     * 并行度由 simulator.module.load.parallelism 配置，小于等于1时退化为串行加载
+     *
+     * @param moduleSpecs 已按优先级排序的模块列表
+     * @param action      加载动作
+     */
+    protected void loadModulesConcurrently(List<ModuleSpec> moduleSpecs, final String action) {
+        final int parallelism = config.getIntProperty("simulator.module.load.parallelism",
+                Math.min(Runtime.getRuntime().availableProcessors(), DEFAULT_MODULE_LOAD_PARALLELISM));
+        if (parallelism <= 1 || moduleSpecs.size() <= 1) {
+            loadModules(moduleSpecs, action);
+            return;
+        }
+        new ModuleLoadScheduler(parallelism, new ModuleLoadScheduler.ModuleLoadHandler() {
+            @Override
+            public ClassLoaderFactory prepare(ModuleSpec moduleSpec) throws Exception {
+                if (isInfoEnabled) {
+                    logger.info("SIMULATOR: prepare to load module {} ,file={}", moduleSpec.getModuleId(), moduleSpec.getFile().getAbsolutePath());
+                }
+                if (!isModuleLoadable(moduleSpec, action)) {
+                    return null;
+                }
+                return new ClassLoaderFactoryImpl(classLoaderService, config, moduleSpec.getFile(), moduleSpec.getModuleId(), moduleSpec.isMiddlewareModule(), moduleSpec.getImportArtifacts());
+            }
+
+            @Override
+            public boolean register(ModuleSpec moduleSpec, ClassLoaderFactory classLoaderFactory) {
+                try {
+                    classLoaderService.load(moduleSpec, classLoaderFactory);
+                } catch (Throwable e) {
+                    logger.info("load module [{}] fail, set module invalid", moduleSpec.getModuleId(), e);
+                    moduleSpec.setValid(false);
+                    classLoaderFactory.release();
+                    return false;
+                }
+                if (isInfoEnabled) {
+                    logger.info("SIMULATOR: {} modules[{}]: load module success. module-lib={}", action, moduleSpec.getModuleId(), moduleSpec.getFile());
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isDependenciesReady(ModuleSpec moduleSpec) {
+                return DefaultCoreModuleManager.this.isDependenciesReady(moduleSpec);
+            }
+
+            @Override
+            public void load(final ModuleSpec moduleSpec, final ModuleLoadScheduler.Node node) {
+                final InnerModuleLoadCallback moduleLoadCallback = new InnerModuleLoadCallback();
+                loadModule(moduleSpec, new ModuleJarLoader.ModuleLoadCallback() {
+                    @Override
+                    public void onLoad(final SimulatorConfig simulatorConfig,
+                                       final ModuleSpec moduleSpec,
+                                       final Class moduleClass,
+                                       final ExtensionModule module,
+                                       final File moduleJarFile,
+                                       final ClassLoaderFactory classLoaderFactory) throws Throwable {
+                        /**
+                         * 模块的加载和激活会增强类，必须串行执行
+                         */
+                        node.attach(new Callable<Void>() {
+                            @Override
+                            public Void call() throws Exception {
+                                try {
+                                    moduleLoadCallback.onLoad(simulatorConfig, moduleSpec, moduleClass, module, moduleJarFile, classLoaderFactory);
+                                } catch (Exception e) {
+                                    throw e;
+                                } catch (Throwable e) {
+                                    throw new ModuleException(moduleSpec.getModuleId(), MODULE_LOAD_ERROR, e);
+                                }
+                                return null;
+                            }
+                        });
+                    }
+                });
+                if (isInfoEnabled) {
+                    logger.info("SIMULATOR: load module {} successful,file={}", moduleSpec.getModuleId(), moduleSpec.getFile().getAbsolutePath());
+                }
+            }
+        }).schedule(moduleSpecs);
+    }
+
     @Override
     public CoreModuleManager load(File file) throws ModuleException {
         ModuleSpec moduleSpec = ModuleSpecUtils.loadModuleSpec(file, false);
@@ -1259,7 +1434,7 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
 
         //加载
         loadModules(systemModuleSpecs, "load");
-        loadModules(userModuleSpecs, "load");
+        loadModulesConcurrently(userModuleSpecs, "load");
         if (isInfoEnabled) {
             logger.info("SIMULATOR: resetting all loaded modules finished :{}", loadedModuleMap.keySet());
         }
@@ -1393,7 +1568,7 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
 
             // 3. 加载所有用户自定义模块
             List<ModuleSpec> userModuleSpecs = ModuleSpecUtils.loadModuleSpecs(appendJarFiles, false, true);
-            loadModules(userModuleSpecs, "soft-flush");
+            loadModulesConcurrently(userModuleSpecs, "soft-flush");
         } catch (Throwable cause) {
             logger.warn("SIMULATOR: soft-flushing modules: occur error.", cause);
         }
@@ -1445,7 +1620,7 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
         // 用户模块目录
         List<File> userModuleLibJars = getAllModuleLibJar(userModuleLibs);
         List<ModuleSpec> userModuleSpecs = ModuleSpecUtils.loadModuleSpecs(userModuleLibJars, false, true);
-        loadModules(userModuleSpecs, "force-flush");
+        loadModulesConcurrently(userModuleSpecs, "force-flush");
 
     }
 
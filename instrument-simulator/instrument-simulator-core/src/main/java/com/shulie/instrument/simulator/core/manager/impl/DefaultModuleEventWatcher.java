@@ -25,6 +25,7 @@ import com.shulie.instrument.simulator.api.util.Sequencer;
 import com.shulie.instrument.simulator.core.CoreModule;
 import com.shulie.instrument.simulator.core.enhance.weaver.EventListenerHandler;
 import com.shulie.instrument.simulator.core.manager.CoreLoadedClassDataSource;
+import com.shulie.instrument.simulator.core.manager.ReTransformBatch;
 import com.shulie.instrument.simulator.core.manager.SimulatorClassFileTransformer;
 import com.shulie.instrument.simulator.core.util.matcher.ExtFilterMatcher;
 import com.shulie.instrument.simulator.core.util.matcher.GroupMatcher;
@@ -41,7 +42,7 @@ import static com.shulie.instrument.simulator.api.filter.ExtFilterFactory.make;
 /**
  * 默认模块事件观察者实现
  */
-public class DefaultModuleEventWatcher implements ModuleEventWatcher {
+public class DefaultModuleEventWatcher implements ModuleEventWatcher, ReTransformBatch {
     private final Logger logger = LoggerFactory.getLogger(DefaultModuleEventWatcher.class);
     private final boolean isDebugEnabled = logger.isDebugEnabled();
     private final boolean isInfoEnabled = logger.isInfoEnabled();
@@ -56,13 +57,28 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
     private EventListenerHandler eventListenerHandler;
     private final boolean isEnableReTransform = !"0".equals(System.getProperty("simulator.delay"));
 
+    /**
+     * 每次 retransformClasses 提交的类个数，小于等于 1 时为逐个类重新渲染并且不开启批量模式
+     */
+    private final int reTransformBatchSize = Integer.getInteger("simulator.retransform.batch.size", 64);
+
+    // 批量模式的嵌套层数，只有开启批量模式的线程上发起的观察才会延迟重新渲染
+    private int batchDepth;
+    private Thread batchThread;
+    private List<PendingWatch> pendingWatches = new ArrayList<PendingWatch>();
+
+    // 统一的类转换器，为空时每个观察各自向 JVM 注册类转换器
+    private final DispatchClassFileTransformer dispatchClassFileTransformer;
+
 
     DefaultModuleEventWatcher(final Instrumentation inst,
                               final CoreLoadedClassDataSource classDataSource,
                               final CoreModule coreModule,
                               final boolean isEnableUnsafe,
-                              final EventListenerHandler eventListenerHandler) {
+                              final EventListenerHandler eventListenerHandler,
+                              final DispatchClassFileTransformer dispatchClassFileTransformer) {
         this.inst = inst;
+        this.dispatchClassFileTransformer = dispatchClassFileTransformer;
         this.classDataSource = classDataSource;
         this.coreModule = coreModule;
         this.isEnableUnsafe = isEnableUnsafe;
@@ -135,6 +151,12 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
                     waitingReTransformClasses, coreModule.getModuleId(), watchId);
         }
 
+        if (reTransformBatchSize > 1) {
+            final Map<Class<?>, Throwable> failures = reTransformClassesInBatch(watchId, waitingReTransformClasses, delete);
+            reportProgress(watchId, waitingReTransformClasses, failures, progress);
+            return;
+        }
+
         int index = 0;
         for (final Class<?> waitingReTransformClass : waitingReTransformClasses) {
             index++;
@@ -166,7 +188,9 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
                             index - 1, total
                     );
                 }
+                final long beginNanos = System.nanoTime();
                 inst.retransformClasses(waitingReTransformClass);
+                coreModule.getAttachStatistic().statisticReTransform(1, System.nanoTime() - beginNanos);
                 if (isInfoEnabled) {
                     logger.info("SIMULATOR: {}watch={} in module={} single reTransform {} success, at index={};total={};",
                             delete ? "successful delete reTransformClasses " : "",
@@ -214,6 +238,204 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
 
     }
 
+    /**
+     * 按批次重新渲染，一次 retransformClasses 调用只需要进入一次安全点。
+     * 批次失败时 JVM 不会重新渲染其中任何一个类，此时退化为逐个类重新渲染，
+     * 以便定位失败的类并且不影响同批次的其他类
+     *
+     * @return 重新渲染失败的类及原因
+     */
+    private Map<Class<?>, Throwable> reTransformClassesInBatch(final int watchId,
+                                                               final List<Class<?>> waitingReTransformClasses,
+                                                               final boolean delete) {
+        final Map<Class<?>, Throwable> failures = new HashMap<Class<?>, Throwable>();
+        final List<Class<?>> modifiableClasses = new ArrayList<Class<?>>(waitingReTransformClasses.size());
+        for (final Class<?> waitingReTransformClass : waitingReTransformClasses) {
+            if (!inst.isModifiableClass(waitingReTransformClass)) {
+                logger.info("SIMULATOR: watch={} in module={} reTransform {} class not supported.",
+                        watchId, coreModule.getModuleId(), waitingReTransformClass);
+                continue;
+            }
+            modifiableClasses.add(waitingReTransformClass);
+        }
+
+        final int total = modifiableClasses.size();
+        for (int from = 0; from < total; from += reTransformBatchSize) {
+            final int to = Math.min(from + reTransformBatchSize, total);
+            final Class<?>[] batch = modifiableClasses.subList(from, to).toArray(new Class<?>[to - from]);
+            try {
+                final long beginNanos = System.nanoTime();
+                inst.retransformClasses(batch);
+                coreModule.getAttachStatistic().statisticReTransform(batch.length, System.nanoTime() - beginNanos);
+                if (isInfoEnabled) {
+                    logger.info("SIMULATOR: {}watch={} in module={} batch reTransform {} classes success, at index={};total={};",
+                            delete ? "successful delete reTransformClasses " : "",
+                            watchId, coreModule.getModuleId(), batch.length,
+                            from, total
+                    );
+                }
+            } catch (Throwable causeOfBatch) {
+                logger.warn("SIMULATOR: watch={} in module={} batch reTransform {} classes failed, at index={};total={}. retry one by one.",
+                        watchId, coreModule.getModuleId(), batch.length,
+                        from, total,
+                        causeOfBatch
+                );
+                for (final Class<?> waitingReTransformClass : batch) {
+                    try {
+                        final long beginNanos = System.nanoTime();
+                        inst.retransformClasses(waitingReTransformClass);
+                        coreModule.getAttachStatistic().statisticReTransform(1, System.nanoTime() - beginNanos);
+                    } catch (Throwable causeOfReTransform) {
+                        logger.warn("SIMULATOR: watch={} in module={} single reTransform {} failed, total={}. ignore this class.",
+                                watchId, coreModule.getModuleId(), waitingReTransformClass,
+                                total,
+                                causeOfReTransform
+                        );
+                        failures.put(waitingReTransformClass, causeOfReTransform);
+                    }
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * 汇报重新渲染的进度
+     */
+    private void reportProgress(final int watchId,
+                                final List<Class<?>> reTransformClasses,
+                                final Map<Class<?>, Throwable> failures,
+                                final Progress progress) {
+        if (null == progress) {
+            return;
+        }
+        int index = 0;
+        for (final Class<?> reTransformClass : reTransformClasses) {
+            index++;
+            final Throwable failure = failures.get(reTransformClass);
+            try {
+                if (failure == null) {
+                    progress.progressOnSuccess(reTransformClass, index);
+                } else {
+                    progress.progressOnFailed(reTransformClass, index, failure);
+                }
+            } catch (Throwable cause) {
+                // 在进行进度汇报的过程中抛出异常,直接进行忽略,因为不影响形变的主体流程
+                logger.warn("SIMULATOR: watch={} in module={} on {} report progress occur exception at index={};total={};",
+                        watchId, coreModule.getModuleId(), reTransformClass,
+                        index - 1, reTransformClasses.size(),
+                        cause
+                );
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean begin() {
+        if (reTransformBatchSize <= 1) {
+            return false;
+        }
+        if (batchDepth == 0) {
+            batchThread = Thread.currentThread();
+        } else if (batchThread != Thread.currentThread()) {
+            return false;
+        }
+        batchDepth++;
+        return true;
+    }
+
+    @Override
+    public void end() {
+        final List<PendingWatch> waitingWatches;
+        synchronized (this) {
+            if (batchDepth == 0 || batchThread != Thread.currentThread()) {
+                return;
+            }
+            if (--batchDepth > 0) {
+                return;
+            }
+            batchThread = null;
+            waitingWatches = pendingWatches;
+            pendingWatches = new ArrayList<PendingWatch>();
+        }
+        if (waitingWatches.isEmpty() || coreModule == null) {
+            return;
+        }
+        try {
+            reTransformPendingWatches(waitingWatches);
+        } catch (Throwable e) {
+            logger.error("SIMULATOR: batch reTransform error. module={}", coreModule.getModuleId(), e);
+        }
+    }
+
+    /**
+     * 如果当前线程开启了批量模式，则延迟重新渲染
+     *
+     * @return 是否已延迟
+     */
+    private synchronized boolean deferIfInBatch(final PendingWatch pendingWatch) {
+        if (batchDepth == 0 || batchThread != Thread.currentThread()) {
+            return false;
+        }
+        pendingWatches.add(pendingWatch);
+        return true;
+    }
+
+    /**
+     * 对批量模式中延迟的观察统一进行重新渲染，已加载的类只检索一次，同一个类只重新渲染一次
+     */
+    private void reTransformPendingWatches(final List<PendingWatch> waitingWatches) {
+        final List<Matcher> matchers = new ArrayList<Matcher>(waitingWatches.size());
+        for (final PendingWatch pendingWatch : waitingWatches) {
+            matchers.add(pendingWatch.matcher);
+        }
+        final Map<Matcher, List<Class<?>>> foundClasses = classDataSource.findForBatchReTransform(matchers);
+
+        final Set<Class<?>> waitingReTransformClasses = new LinkedHashSet<Class<?>>();
+        for (final PendingWatch pendingWatch : waitingWatches) {
+            final List<Class<?>> classes = foundClasses.get(pendingWatch.matcher);
+            if (classes != null) {
+                pendingWatch.reTransformClasses = classes;
+            }
+            waitingReTransformClasses.addAll(pendingWatch.reTransformClasses);
+            if (isInfoEnabled) {
+                logger.info("SIMULATOR: watch={} in module={} found {} classes for watch(ing).",
+                        pendingWatch.watchId,
+                        coreModule.getModuleId(),
+                        pendingWatch.reTransformClasses.size()
+                );
+            }
+            beginProgress(pendingWatch.progress, pendingWatch.reTransformClasses.size());
+        }
+
+        final int firstWatchId = waitingWatches.get(0).watchId;
+        if (isInfoEnabled) {
+            logger.info("SIMULATOR: module={} batch reTransform {} classes for {} watches.",
+                    coreModule.getModuleId(), waitingReTransformClasses.size(), waitingWatches.size());
+        }
+        Map<Class<?>, Throwable> failures = Collections.emptyMap();
+        try {
+            failures = reTransformClassesInBatch(firstWatchId, new ArrayList<Class<?>>(waitingReTransformClasses), false);
+        } finally {
+            for (final PendingWatch pendingWatch : waitingWatches) {
+                reportProgress(pendingWatch.watchId, pendingWatch.reTransformClasses, failures, pendingWatch.progress);
+                finishProgress(pendingWatch.progress,
+                        pendingWatch.transformer.getAffectStatistic().getEffectClassCount(),
+                        pendingWatch.transformer.getAffectStatistic().getEffectMethodCount());
+            }
+        }
+
+        String pauseTime = System.getProperty("reTransform.pause.time.ms");
+        if (pauseTime == null) {
+            return;
+        }
+        try {
+            Thread.sleep(Integer.parseInt(pauseTime));
+        } catch (Exception e) {
+
+        }
+    }
+
     @Override
     public int watch(final Filter filter) {
         return watch(filter, null);
@@ -291,17 +513,36 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
                       final boolean needReTransformer) {
         final int watchId = watchIdSequencer.next();
         // 给对应的模块追加ClassFileTransformer
-        final SimulatorClassFileTransformer transformer = new DefaultSimulatorClassFileTransformer(this,
+        final DefaultSimulatorClassFileTransformer transformer = new DefaultSimulatorClassFileTransformer(this,
                 watchId, coreModule, matcher, isEnableUnsafe);
 
         SimulatorClassFileTransformer proxy = CostDumpTransformer.wrap(BytecodeDumpTransformer.wrap(transformer, coreModule.getSimulatorConfig()), coreModule.getSimulatorConfig());
         // 注册到CoreModule中
         coreModule.getSimulatorClassFileTransformers().add(proxy);
 
-        //这里addTransformer后，接下来引起的类加载都会经过sandClassFileTransformer 每个enhanceTemplate.enhance都是单独的一个transformer
-        inst.addTransformer(proxy, true);
+        if (dispatchClassFileTransformer != null) {
+            // 注册到统一的类转换器，由统一的类转换器完成类名预匹配及一次性织入
+            dispatchClassFileTransformer.add(proxy, transformer);
+        } else {
+            //这里addTransformer后，接下来引起的类加载都会经过sandClassFileTransformer 每个enhanceTemplate.enhance都是单独的一个transformer
+            inst.addTransformer(proxy, true);
+        }
 
 
+        if ((isEnableReTransform || needReTransformer)
+                && deferIfInBatch(new PendingWatch(watchId, matcher, proxy, progress))) {
+            if (isDebugEnabled) {
+                logger.debug("SIMULATOR: watch={} in module={} defer reTransform to the end of batch.",
+                        watchId, coreModule.getModuleId());
+            }
+            try {
+                activeListeners(proxy);
+            } catch (Throwable e) {
+                logger.error("watch class error. active listeners failed, matchers={}", matcher, e);
+            }
+            return watchId;
+        }
+
         List<Class<?>> waitingReTransformClassesTemp = Collections.emptyList();
         if (isEnableReTransform || needReTransformer) {
             // 查找需要渲染的类集合
@@ -331,14 +572,7 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
 
 
             // 激活增强类
-            if (coreModule.isActivated()) {
-                List<BuildingForListeners> listeners = proxy.getAllListeners();
-                if (!isEmpty(listeners)) {
-                    for (BuildingForListeners buildingForListeners : listeners) {
-                        eventListenerHandler.active(buildingForListeners.getListenerId(), proxy.getEventListeners().get(buildingForListeners.getListenerId()), buildingForListeners.getEventTypes());
-                    }
-                }
-            }
+            activeListeners(proxy);
 
         } catch (Throwable e) {
             logger.error("watch class error. waitingReTransformClasses={}, matchers={}", waitingReTransformClasses, matcher, e);
@@ -349,10 +583,32 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
         return watchId;
     }
 
+    // 模块已激活时激活增强类的监听器
+    private void activeListeners(final SimulatorClassFileTransformer proxy) {
+        if (coreModule.isActivated()) {
+            List<BuildingForListeners> listeners = proxy.getAllListeners();
+            if (!isEmpty(listeners)) {
+                for (BuildingForListeners buildingForListeners : listeners) {
+                    eventListenerHandler.active(buildingForListeners.getListenerId(), proxy.getEventListeners().get(buildingForListeners.getListenerId()), buildingForListeners.getEventTypes());
+                }
+            }
+        }
+    }
+
     @Override
     public void delete(final int watcherId,
                        final Progress progress) {
 
+        // 还未重新渲染的观察直接丢弃
+        synchronized (this) {
+            final Iterator<PendingWatch> pendingIt = pendingWatches.iterator();
+            while (pendingIt.hasNext()) {
+                if (pendingIt.next().watchId == watcherId) {
+                    pendingIt.remove();
+                }
+            }
+        }
+
         final Set<Matcher> waitingRemoveMatcherSet = new LinkedHashSet<Matcher>();
 
         // 找出待删除的SimulatorClassFileTransformer
@@ -372,7 +628,10 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
 
 
                 // 在JVM中移除掉命中的ClassFileTransformer
-                inst.removeTransformer(simulatorClassFileTransformer);
+                if (dispatchClassFileTransformer == null
+                        || !dispatchClassFileTransformer.remove(simulatorClassFileTransformer)) {
+                    inst.removeTransformer(simulatorClassFileTransformer);
+                }
 
                 // 计数
                 cCnt += simulatorClassFileTransformer.getAffectStatistic().getEffectClassCount();
@@ -449,4 +708,25 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
     public CoreLoadedClassDataSource getClassDataSource() {
         return classDataSource;
     }
+
+    /**
+     * 批量模式中延迟重新渲染的观察
+     */
+    private static class PendingWatch {
+        private final int watchId;
+        private final Matcher matcher;
+        private final SimulatorClassFileTransformer transformer;
+        private final Progress progress;
+        private List<Class<?>> reTransformClasses = Collections.emptyList();
+
+        PendingWatch(final int watchId,
+                     final Matcher matcher,
+                     final SimulatorClassFileTransformer transformer,
+                     final Progress progress) {
+            this.watchId = watchId;
+            this.matcher = matcher;
+            this.transformer = transformer;
+            this.progress = progress;
+        }
+    }
 }
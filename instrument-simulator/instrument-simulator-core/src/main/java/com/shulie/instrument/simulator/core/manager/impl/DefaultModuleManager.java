@@ -18,8 +18,10 @@ import com.shulie.instrument.simulator.api.ExtensionModule;
 import com.shulie.instrument.simulator.api.ModuleException;
 import com.shulie.instrument.simulator.api.ModuleInfo;
 import com.shulie.instrument.simulator.api.ModuleSpec;
+import com.shulie.instrument.simulator.api.obj.ModuleAttachInfo;
 import com.shulie.instrument.simulator.api.resource.ModuleManager;
 import com.shulie.instrument.simulator.core.CoreModule;
+import com.shulie.instrument.simulator.core.manager.AttachStatistic;
 import com.shulie.instrument.simulator.core.manager.CoreModuleManager;
 
 import java.io.File;
@@ -124,6 +126,20 @@ public class DefaultModuleManager implements ModuleManager {
         return coreModuleManager.getThrowsExceptionIfNull(moduleId).getEffectMethodCount();
     }
 
+    @Override
+    public ModuleAttachInfo getAttachInfo(String moduleId) throws ModuleException {
+        final AttachStatistic attachStatistic = coreModuleManager.getThrowsExceptionIfNull(moduleId).getAttachStatistic();
+        final ModuleAttachInfo attachInfo = new ModuleAttachInfo();
+        attachInfo.setModuleId(moduleId);
+        attachInfo.setAttachTimeMillis(attachStatistic.getAttachTimeMillis());
+        attachInfo.setSafepointCount(attachStatistic.getSafepointCount());
+        attachInfo.setSafepointTimeMillis(attachStatistic.getSafepointTimeMillis());
+        attachInfo.setReTransformClassCount(attachStatistic.getReTransformClassCount());
+        attachInfo.setReTransformInvokeCount(attachStatistic.getReTransformInvokeCount());
+        attachInfo.setReTransformTimeMillis(attachStatistic.getReTransformTimeMillis());
+        return attachInfo;
+    }
+
     @Override
     public boolean isActivated(String moduleId) throws ModuleException {
         return coreModuleManager.getThrowsExceptionIfNull(moduleId).isActivated();
@@ -245,6 +245,15 @@ public class DefaultSimulatorClassFileTransformer extends SimulatorClassFileTran
         return watchId;
     }
 
+    /**
+     * 获取所属模块ID
+     *
+     * @return 模块ID
+     */
+    String getModuleId() {
+        return moduleId;
+    }
+
 
     /**
      * 获取本次匹配器
@@ -0,0 +1,379 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.manager.impl;
+
+import com.shulie.instrument.simulator.api.guard.SimulatorGuard;
+import com.shulie.instrument.simulator.api.listener.EventListener;
+import com.shulie.instrument.simulator.api.listener.ext.BuildingForListeners;
+import com.shulie.instrument.simulator.core.enhance.EventEnhancer;
+import com.shulie.instrument.simulator.core.manager.AffectStatistic;
+import com.shulie.instrument.simulator.core.manager.CoreLoadedClassDataSource;
+import com.shulie.instrument.simulator.core.manager.SimulatorClassFileTransformer;
+import com.shulie.instrument.simulator.core.util.SimulatorClassUtils;
+import com.shulie.instrument.simulator.core.util.matcher.ClassNameIndex;
+import com.shulie.instrument.simulator.core.util.matcher.Matcher;
+import com.shulie.instrument.simulator.core.util.matcher.MatchingResult;
+import com.shulie.instrument.simulator.core.util.matcher.UnsupportedMatcher;
+import com.shulie.instrument.simulator.core.util.matcher.structure.ClassStructure;
+import com.shulie.instrument.simulator.core.util.matcher.structure.ClassStructureFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.ProtectionDomain;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 统一的类转换器
+ * <p>
+ * 所有模块的观察都注册到这一个类转换器上，不再各自向 JVM 注册。类加载时先用类名索引找出可能匹配的观察，
+ * 类名预匹配都不通过则直接返回，不需要解析类；否则只解析一次类结构，合并所有观察匹配到的行为后只织入一次
+ * </p>
+ * <p>
+ * 织入顺序与各自注册类转换器时一致：后注册的观察位于外层。合并织入失败时退化为按注册顺序逐个织入，
+ * 避免一个观察的问题影响其他观察
+ * </p>
+ * <p>
+ * 继承 {@link SimulatorClassFileTransformer} 只是为了复用耗时统计及字节码 dump 的包装，
+ * 本身不属于任何观察
+ * </p>
+ */
+public class DispatchClassFileTransformer extends SimulatorClassFileTransformer {
+
+    /**
+     * 是否启用统一的类转换器，关闭后每个观察各自向 JVM 注册类转换器
+     */
+    public final static String ENABLED_UNIFIED_TRANSFORMER = "simulator.transformer.unified";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final boolean isDebugEnabled = logger.isDebugEnabled();
+    private final boolean isInfoEnabled = logger.isInfoEnabled();
+    private final static int CLASS_VERSION_15 = 49;
+    private final static byte CLASS_VERSION_15_6 = 0;
+    private final static byte CLASS_VERSION_15_7 = 49;
+
+    private final CoreLoadedClassDataSource classDataSource;
+    private final boolean isEnableUnsafe;
+    private final AffectStatistic affectStatistic = new AffectStatistic();
+
+    /**
+     * 注册顺序
+     */
+    private final AtomicInteger orderSequence = new AtomicInteger();
+
+    /**
+     * 所有观察的类名索引
+     */
+    private final ClassNameIndex<Registration> classNameIndex = new ClassNameIndex<Registration>();
+
+    /**
+     * 模块持有的类转换器 -> 注册信息
+     */
+    private final Map<SimulatorClassFileTransformer, Registration> registrations
+            = Collections.synchronizedMap(new IdentityHashMap<SimulatorClassFileTransformer, Registration>());
+
+    public DispatchClassFileTransformer(final CoreLoadedClassDataSource classDataSource,
+                                        final boolean isEnableUnsafe) {
+        this.classDataSource = classDataSource;
+        this.isEnableUnsafe = isEnableUnsafe;
+    }
+
+    /**
+     * 注册观察的类转换器
+     *
+     * @param proxy       模块持有的类转换器，移除时使用
+     * @param transformer 观察的类转换器
+     */
+    void add(final SimulatorClassFileTransformer proxy, final DefaultSimulatorClassFileTransformer transformer) {
+        final Registration registration = new Registration(orderSequence.incrementAndGet(), transformer);
+        if (registrations.put(proxy, registration) == null) {
+            classNameIndex.add(registration, registration.matcher);
+        }
+    }
+
+    /**
+     * 移除观察的类转换器
+     *
+     * @param proxy 模块持有的类转换器
+     * @return 是否是注册在此的类转换器
+     */
+    boolean remove(final SimulatorClassFileTransformer proxy) {
+        final Registration registration = registrations.remove(proxy);
+        if (registration == null) {
+            return false;
+        }
+        classNameIndex.remove(registration);
+        return true;
+    }
+
+    @Override
+    public byte[] transform(final ClassLoader loader,
+                            final String internalClassName,
+                            final Class<?> classBeingRedefined,
+                            final ProtectionDomain protectionDomain,
+                            final byte[] srcByteCodeArray) {
+        if (classNameIndex.isEmpty()) {
+            return null;
+        }
+
+        // 在simulator.properties里排除指定包下的class
+        if (classDataSource.excludeTransformByPackages(internalClassName)) {
+            return null;
+        }
+
+        SimulatorGuard.getInstance().enter();
+        try {
+
+            // 这里过滤掉Simulator所需要的类|来自SimulatorClassLoader所加载的类|来自ModuleJarClassLoader加载的类
+            // 防止ClassCircularityError的发生
+            if (SimulatorClassUtils.isComeFromSimulatorFamily(internalClassName, loader)) {
+                return null;
+            }
+
+            return _transform(
+                    loader,
+                    internalClassName,
+                    classBeingRedefined,
+                    srcByteCodeArray
+            );
+
+        } catch (Throwable cause) {
+            logger.warn("SIMULATOR: simulator transform {} in loader={}; failed, will ignore this transform.",
+                    internalClassName,
+                    loader,
+                    cause
+            );
+            return null;
+        } finally {
+            SimulatorGuard.getInstance().exit();
+        }
+    }
+
+    private byte[] _transform(final ClassLoader loader,
+                              String internalClassName,
+                              final Class<?> classBeingRedefined,
+                              byte[] srcByteCodeArray) {
+        // 如果未开启unsafe开关，是不允许增强来自BootStrapClassLoader的类
+        if (!isEnableUnsafe
+                && null == loader) {
+            if (isDebugEnabled) {
+                logger.debug("SIMULATOR: transform ignore {}, class from bootstrap but unsafe.enable=false.", internalClassName);
+            }
+            return null;
+        }
+
+        ClassStructure classStructure = null;
+        if (internalClassName == null) {
+            classStructure = getClassStructure(loader, classBeingRedefined, srcByteCodeArray);
+            internalClassName = classStructure.getJavaClassName();
+        }
+        final String javaClassName = internalClassName.replace('/', '.');
+
+        // 类名预匹配，全部不通过则不需要解析类
+        final List<Registration> candidates = findCandidates(javaClassName);
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        if (classStructure == null) {
+            classStructure = getClassStructure(loader, classBeingRedefined, srcByteCodeArray);
+        }
+
+        // 后注册的观察位于外层，所以先合并后注册的观察
+        final List<Registration> matchedRegistrations = new ArrayList<Registration>(candidates.size());
+        final List<Map<String, Set<BuildingForListeners>>> matchedSignCodes = new ArrayList<Map<String, Set<BuildingForListeners>>>(candidates.size());
+        final Map<String, Set<BuildingForListeners>> behaviorSignCodes = new HashMap<String, Set<BuildingForListeners>>();
+        for (final Registration registration : candidates) {
+            final MatchingResult matchingResult = new UnsupportedMatcher(loader, isEnableUnsafe).and(registration.matcher).matching(classStructure);
+            final Map<String, Set<BuildingForListeners>> signCodes = matchingResult.getBehaviorSignCodeMap();
+            if (!matchingResult.isMatched() || signCodes.isEmpty()) {
+                continue;
+            }
+            matchedRegistrations.add(registration);
+            matchedSignCodes.add(signCodes);
+            for (final Map.Entry<String, Set<BuildingForListeners>> entry : signCodes.entrySet()) {
+                Set<BuildingForListeners> listeners = behaviorSignCodes.get(entry.getKey());
+                if (listeners == null) {
+                    listeners = new LinkedHashSet<BuildingForListeners>();
+                    behaviorSignCodes.put(entry.getKey(), listeners);
+                }
+                listeners.addAll(entry.getValue());
+            }
+        }
+
+        // 如果一个行为都没匹配上也不用继续了
+        if (behaviorSignCodes.isEmpty()) {
+            if (isDebugEnabled) {
+                logger.debug("SIMULATOR: transform ignore {}, no behaviors matched in loader={}", internalClassName, loader);
+            }
+            return null;
+        }
+
+        /**
+         * ASM增强中使用到了 LDC 命令，LDC命令在 java5(49)才支持，所以当类版本低于此版本时，强制将类版本设置为 java5(49)
+         */
+        if (getClassMajorVersion(srcByteCodeArray) < CLASS_VERSION_15) {
+            srcByteCodeArray = resetClassVersionToJava5(srcByteCodeArray);
+        }
+
+        byte[] toByteCodeArray;
+        try {
+            toByteCodeArray = new EventEnhancer().toByteCodeArray(loader, srcByteCodeArray, behaviorSignCodes);
+        } catch (Throwable cause) {
+            logger.warn("SIMULATOR: transform {} failed in loader={}, retry by each watch.", internalClassName, loader, cause);
+            return transformOneByOne(loader, internalClassName, srcByteCodeArray, matchedRegistrations, matchedSignCodes);
+        }
+        if (srcByteCodeArray == toByteCodeArray) {
+            if (isDebugEnabled) {
+                logger.debug("SIMULATOR: transform ignore {}, nothing changed in loader={}", internalClassName, loader);
+            }
+            return null;
+        }
+
+        // statistic affect
+        for (int i = 0; i < matchedRegistrations.size(); i++) {
+            final Registration registration = matchedRegistrations.get(i);
+            registration.transformer.getAffectStatistic().statisticAffect(loader, internalClassName, matchedSignCodes.get(i));
+            if (isInfoEnabled) {
+                logger.info("SIMULATOR: transform {} finished, by module={} at watch={} in loader={}", internalClassName,
+                        registration.transformer.getModuleId(), registration.transformer.getWatchId(), loader);
+            }
+        }
+        affectStatistic.statisticAffect(loader, internalClassName, behaviorSignCodes);
+        return toByteCodeArray;
+    }
+
+    /**
+     * 按注册顺序逐个织入，等同于每个观察各自注册类转换器
+     */
+    private byte[] transformOneByOne(final ClassLoader loader,
+                                     final String internalClassName,
+                                     final byte[] srcByteCodeArray,
+                                     final List<Registration> matchedRegistrations,
+                                     final List<Map<String, Set<BuildingForListeners>>> matchedSignCodes) {
+        byte[] byteCodeArray = srcByteCodeArray;
+        for (int i = matchedRegistrations.size() - 1; i >= 0; i--) {
+            final Registration registration = matchedRegistrations.get(i);
+            try {
+                byteCodeArray = new EventEnhancer().toByteCodeArray(loader, byteCodeArray, matchedSignCodes.get(i));
+                registration.transformer.getAffectStatistic().statisticAffect(loader, internalClassName, matchedSignCodes.get(i));
+                affectStatistic.statisticAffect(loader, internalClassName, matchedSignCodes.get(i));
+            } catch (Throwable cause) {
+                logger.warn("SIMULATOR: transform {} failed, by module={} at watch={} in loader={}", internalClassName,
+                        registration.transformer.getModuleId(), registration.transformer.getWatchId(), loader, cause);
+            }
+        }
+        return byteCodeArray == srcByteCodeArray ? null : byteCodeArray;
+    }
+
+    /**
+     * 通过类名索引查找候选的观察，并进行类名预匹配
+     *
+     * @param javaClassName 类名
+     * @return 类名预匹配通过的观察，按注册顺序倒序
+     */
+    private List<Registration> findCandidates(final String javaClassName) {
+        final List<Registration> found = new ArrayList<Registration>();
+        classNameIndex.find(javaClassName, found);
+        if (found.isEmpty()) {
+            return found;
+        }
+        Collections.sort(found, Registration.REVERSE_ORDER);
+        final List<Registration> candidates = new ArrayList<Registration>(found.size());
+        Registration last = null;
+        for (final Registration registration : found) {
+            if (registration == last) {
+                continue;
+            }
+            last = registration;
+            if (registration.matcher.preMatching(javaClassName)) {
+                candidates.add(registration);
+            }
+        }
+        return candidates;
+    }
+
+    // 获取当前类结构
+    private ClassStructure getClassStructure(final ClassLoader loader,
+                                             final Class<?> classBeingRedefined,
+                                             final byte[] srcByteCodeArray) {
+        return null == classBeingRedefined
+                ? ClassStructureFactory.createClassStructure(srcByteCodeArray, loader)
+                : ClassStructureFactory.createClassStructure(classBeingRedefined);
+    }
+
+    private int getClassMajorVersion(byte[] data) {
+        return (short) (((data[6] & 0xFF) << 8) | (data[6 + 1] & 0xFF));
+    }
+
+    private byte[] resetClassVersionToJava5(byte[] data) {
+        data[6] = CLASS_VERSION_15_6;
+        data[7] = CLASS_VERSION_15_7;
+        return data;
+    }
+
+    @Override
+    public int getWatchId() {
+        return -1;
+    }
+
+    @Override
+    public Map<Integer, EventListener> getEventListeners() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public List<BuildingForListeners> getAllListeners() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Object getMatcher() {
+        return null;
+    }
+
+    /**
+     * 所有观察合计的影响统计
+     *
+     * @return 影响统计
+     */
+    @Override
+    public AffectStatistic getAffectStatistic() {
+        return affectStatistic;
+    }
+
+    /**
+     * 观察的注册信息
+     */
+    private static class Registration {
+
+        private final static Comparator<Registration> REVERSE_ORDER = new Comparator<Registration>() {
+            @Override
+            public int compare(Registration o1, Registration o2) {
+                return o1.order > o2.order ? -1 : (o1.order == o2.order ? 0 : 1);
+            }
+        };
+
+        private final int order;
+        private final DefaultSimulatorClassFileTransformer transformer;
+        private final Matcher matcher;
+
+        Registration(final int order, final DefaultSimulatorClassFileTransformer transformer) {
+            this.order = order;
+            this.transformer = transformer;
+            this.matcher = transformer.getMatcher();
+        }
+    }
+}
@@ -18,6 +18,8 @@ import com.shulie.instrument.simulator.api.ProcessControlEntity;
 import com.shulie.instrument.simulator.api.event.Event;
 import com.shulie.instrument.simulator.api.listener.Destroyed;
 import com.shulie.instrument.simulator.api.listener.EventListener;
+import com.shulie.instrument.simulator.api.listener.EventReusable;
+import com.shulie.instrument.simulator.core.util.ReflectUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,7 +27,7 @@ import org.slf4j.LoggerFactory;
  * @author xiaobin.zfb|xiaobin@shulie.io
  * @since 2021/6/16 11:27 上午
  */
-public class EventListenerWrapper extends EventListener {
+public class EventListenerWrapper extends EventListener implements EventReusable {
     private static final Logger logger = LoggerFactory.getLogger(EventListenerWrapper.class);
     private EventListener eventListener;
     private Destroyed destroyed;
@@ -53,6 +55,11 @@ public class EventListenerWrapper extends EventListener {
         return eventListener.onEvent(event);
     }
 
+    @Override
+    public boolean isEventReusable() {
+        return ReflectUtils.isReusableEventHandler(eventListener);
+    }
+
     @Override
     public void clean() {
         if (destroyed != null) {
@@ -26,6 +26,7 @@ import com.shulie.instrument.simulator.api.event.Event;
 import com.shulie.instrument.simulator.api.event.EventType;
 import com.shulie.instrument.simulator.api.listener.Destroyed;
 import com.shulie.instrument.simulator.api.listener.EventListener;
+import com.shulie.instrument.simulator.api.listener.EventReusable;
 import com.shulie.instrument.simulator.api.listener.InitializingBean;
 import com.shulie.instrument.simulator.api.listener.Interruptable;
 import com.shulie.instrument.simulator.api.listener.Listeners;
@@ -49,7 +50,7 @@ import org.slf4j.LoggerFactory;
  * @author xiaobin.zfb
  * @since 2020/9/18 12:48 上午
  */
-public class LazyEventListenerProxy extends EventListener implements Interruptable {
+public class LazyEventListenerProxy extends EventListener implements Interruptable, EventReusable {
     private final Logger logger = LoggerFactory.getLogger(LazyEventListenerProxy.class.getName());
     private final CoreModule coreModule;
     private final Listeners listeners;
@@ -68,6 +69,11 @@ public class LazyEventListenerProxy extends EventListener implements Interruptab
      */
     private boolean isInterrupt;
 
+    /**
+     * 是否允许复用事件对象，在第一个事件监听器实例创建后确定
+     */
+    private volatile boolean isEventReusable;
+
     /**
      * 监听器耗时
      */
@@ -218,6 +224,7 @@ public class LazyEventListenerProxy extends EventListener implements Interruptab
                         eventListener = new AdviceAdapterListener(adviceListener);
                     }
                     eventListenerWrapper.setEventListener(eventListener);
+                    isEventReusable = ReflectUtils.isReusableEventHandler(eventListener);
 
                     Destroyable destroyable = listener.getClass().getAnnotation(Destroyable.class);
                     if (destroyable != null) {
@@ -242,6 +249,11 @@ public class LazyEventListenerProxy extends EventListener implements Interruptab
         return eventListenerWrapper;
     }
 
+    @Override
+    public boolean isEventReusable() {
+        return isEventReusable;
+    }
+
     @Override
     public boolean isInterrupted() {
         if (isInitInterrupt.get()) {
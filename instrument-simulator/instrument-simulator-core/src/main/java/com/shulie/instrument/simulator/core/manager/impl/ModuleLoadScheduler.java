@@ -0,0 +1,399 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.manager.impl;
+
+import com.shulie.instrument.simulator.api.ModuleSpec;
+import com.shulie.instrument.simulator.core.classloader.ClassLoaderFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 模块并行加载调度器
+ * <p>
+ * 按照模块声明的依赖构建 DAG，没有依赖关系的模块在有界线程池中并行加载，分为三个阶段：
+ * <p>1. 准备：校验模块、复制模块 jar 并创建类加载器，所有模块并行执行</p>
+ * <p>2. 注册：按优先级顺序串行注册模块的类加载器以及导出的类和资源，保证与串行加载时的覆盖顺序一致</p>
+ * <p>3. 加载：依赖的模块全部加载完成后才会调度，ServiceLoader 发现与模块实例化并行执行，
+ * 模块的 onLoad/onActive 及增强通过 {@link #serial(Callable)} 回到调度线程串行执行</p>
+ * <p>
+ * 调度线程即调用 {@link #schedule(List)} 的线程，所有 DAG 状态都只在调度线程上修改
+ */
+class ModuleLoadScheduler {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final boolean isInfoEnabled = logger.isInfoEnabled();
+
+    private final static AtomicInteger SCHEDULER_ID = new AtomicInteger();
+
+    private final int parallelism;
+    private final ModuleLoadHandler handler;
+
+    /**
+     * 需要在调度线程上执行的任务，包括串行屏障内的任务和模块加载完成的通知
+     */
+    private final BlockingQueue<Runnable> serialTasks = new LinkedBlockingQueue<Runnable>();
+
+    private Thread scheduleThread;
+    private ExecutorService executorService;
+    private int pending;
+
+    ModuleLoadScheduler(final int parallelism, final ModuleLoadHandler handler) {
+        this.parallelism = parallelism;
+        this.handler = handler;
+    }
+
+    /**
+     * 调度加载模块，所有模块加载完成后返回
+     *
+     * @param moduleSpecs 已按优先级排序的模块列表
+     */
+    void schedule(final List<ModuleSpec> moduleSpecs) {
+        if (moduleSpecs.isEmpty()) {
+            return;
+        }
+        final long beginTime = System.currentTimeMillis();
+        scheduleThread = Thread.currentThread();
+        executorService = newExecutorService();
+        final List<Node> nodes = new ArrayList<Node>(moduleSpecs.size());
+        try {
+            prepare(moduleSpecs, nodes);
+            load(nodes);
+        } finally {
+            executorService.shutdownNow();
+            scheduleThread = null;
+        }
+        if (isInfoEnabled) {
+            logger.info("SIMULATOR: module load report, modules={}, parallelism={}, cost={}ms{}",
+                    new Object[]{nodes.size(), parallelism, System.currentTimeMillis() - beginTime, report(nodes)});
+        }
+    }
+
+    /**
+     * 在调度线程上串行执行，调度线程以外的线程调用时会阻塞直到执行结束
+     *
+     * @param callable 需要串行执行的任务
+     * @param <T>      返回类型
+     * @return 任务执行结果
+     * @throws Throwable 任务执行异常
+     */
+    <T> T serial(final Callable<T> callable) throws Throwable {
+        if (Thread.currentThread() == scheduleThread) {
+            return callable.call();
+        }
+        final FutureTask<T> task = new FutureTask<T>(callable);
+        serialTasks.add(task);
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void prepare(final List<ModuleSpec> moduleSpecs, final List<Node> nodes) {
+        final List<Future<ClassLoaderFactory>> futures = new ArrayList<Future<ClassLoaderFactory>>(moduleSpecs.size());
+        final List<Node> prepareNodes = new ArrayList<Node>(moduleSpecs.size());
+        for (final ModuleSpec moduleSpec : moduleSpecs) {
+            final Node node = new Node(moduleSpec);
+            prepareNodes.add(node);
+            futures.add(executorService.submit(new Callable<ClassLoaderFactory>() {
+                @Override
+                public ClassLoaderFactory call() throws Exception {
+                    final long beginTime = System.currentTimeMillis();
+                    try {
+                        return handler.prepare(moduleSpec);
+                    } finally {
+                        node.prepareMillis = System.currentTimeMillis() - beginTime;
+                    }
+                }
+            }));
+        }
+
+        /**
+         * 按优先级顺序注册，导出的类和资源先注册的优先
+         */
+        for (int i = 0; i < prepareNodes.size(); i++) {
+            final Node node = prepareNodes.get(i);
+            ClassLoaderFactory classLoaderFactory = null;
+            try {
+                classLoaderFactory = futures.get(i).get();
+            } catch (ExecutionException e) {
+                logger.warn("SIMULATOR: prepare module [{}] fail, set module invalid", node.moduleSpec.getModuleId(), e.getCause());
+                node.moduleSpec.setValid(false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (classLoaderFactory != null && handler.register(node.moduleSpec, classLoaderFactory)) {
+                nodes.add(node);
+            }
+        }
+    }
+
+    private void load(final List<Node> nodes) {
+        final Map<String, Node> nodeMap = new HashMap<String, Node>();
+        for (final Node node : nodes) {
+            nodeMap.put(node.moduleSpec.getModuleId(), node);
+        }
+
+        /**
+         * 依赖只取本批次中的模块，其他依赖仍然由开关回调处理
+         */
+        for (final Node node : nodes) {
+            final Set<String> dependencies = node.moduleSpec.getDependencies();
+            if (dependencies == null) {
+                continue;
+            }
+            for (final String dependency : dependencies) {
+                final Node dependencyNode = nodeMap.get(dependency);
+                if (dependencyNode != null && dependencyNode != node) {
+                    dependencyNode.dependents.add(node);
+                    node.waitDependencies++;
+                }
+            }
+        }
+
+        final List<Node> blockedNodes = findBlockedNodes(nodes);
+        pending = nodes.size() - blockedNodes.size();
+        /**
+         * 先取出没有依赖的模块再调度，依赖未就绪的模块会在 dispatch 中直接完成并调度其依赖方，
+         * 边遍历边调度会把这些依赖方再调度一次
+         */
+        final List<Node> roots = new ArrayList<Node>();
+        for (final Node node : nodes) {
+            if (node.waitDependencies == 0) {
+                roots.add(node);
+            }
+        }
+        for (final Node node : roots) {
+            dispatch(node);
+        }
+
+        while (pending > 0) {
+            final Runnable task;
+            try {
+                task = serialTasks.take();
+            } catch (InterruptedException e) {
+                logger.warn("SIMULATOR: module load scheduler interrupted, {} modules not loaded.", pending);
+                Thread.currentThread().interrupt();
+                return;
+            }
+            task.run();
+        }
+
+        /**
+         * 循环依赖的模块不会被调度，回退给开关回调处理
+         */
+        for (final Node node : blockedNodes) {
+            logger.warn("SIMULATOR: module [{}] has circular dependencies {}, waiting for switch on.",
+                    node.moduleSpec.getModuleId(), node.moduleSpec.getDependencies());
+            handler.isDependenciesReady(node.moduleSpec);
+        }
+    }
+
+    /**
+     * 找出因为循环依赖永远不会被调度的模块
+     */
+    private List<Node> findBlockedNodes(final List<Node> nodes) {
+        final Map<Node, Integer> waits = new HashMap<Node, Integer>();
+        final List<Node> ready = new ArrayList<Node>();
+        for (final Node node : nodes) {
+            waits.put(node, node.waitDependencies);
+            if (node.waitDependencies == 0) {
+                ready.add(node);
+            }
+        }
+        for (int i = 0; i < ready.size(); i++) {
+            for (final Node dependent : ready.get(i).dependents) {
+                final int wait = waits.get(dependent) - 1;
+                waits.put(dependent, wait);
+                if (wait == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        final List<Node> blockedNodes = new ArrayList<Node>();
+        for (final Node node : nodes) {
+            if (waits.get(node) > 0) {
+                blockedNodes.add(node);
+            }
+        }
+        return blockedNodes;
+    }
+
+    private void dispatch(final Node node) {
+        if (!handler.isDependenciesReady(node.moduleSpec)) {
+            complete(node);
+            return;
+        }
+        executorService.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long beginTime = System.currentTimeMillis();
+                try {
+                    handler.load(node.moduleSpec, node);
+                } catch (Throwable e) {
+                    logger.warn("SIMULATOR: load module [{}] fail.", node.moduleSpec.getModuleId(), e);
+                } finally {
+                    node.loadMillis = System.currentTimeMillis() - beginTime;
+                    serialTasks.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            complete(node);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void complete(final Node node) {
+        pending--;
+        for (final Node dependent : node.dependents) {
+            if (--dependent.waitDependencies == 0) {
+                dispatch(dependent);
+            }
+        }
+    }
+
+    private String report(final List<Node> nodes) {
+        final List<Node> sorted = new ArrayList<Node>(nodes);
+        Collections.sort(sorted, new Comparator<Node>() {
+            @Override
+            public int compare(Node o1, Node o2) {
+                final long c1 = o1.prepareMillis + o1.loadMillis;
+                final long c2 = o2.prepareMillis + o2.loadMillis;
+                return c1 < c2 ? 1 : (c1 == c2 ? 0 : -1);
+            }
+        });
+        final StringBuilder builder = new StringBuilder();
+        for (final Node node : sorted) {
+            builder.append("\n    module=").append(node.moduleSpec.getModuleId())
+                    .append(", prepare=").append(node.prepareMillis)
+                    .append("ms, load=").append(node.loadMillis)
+                    .append("ms, attach=").append(node.attachMillis)
+                    .append("ms");
+        }
+        return builder.toString();
+    }
+
+    private ExecutorService newExecutorService() {
+        final int schedulerId = SCHEDULER_ID.incrementAndGet();
+        final AtomicInteger threadId = new AtomicInteger();
+        return new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "simulator-module-loader-" + schedulerId + "-" + threadId.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 模块加载过程中的计时
+     */
+    final class Node {
+        private final ModuleSpec moduleSpec;
+        private final List<Node> dependents = new ArrayList<Node>();
+        private int waitDependencies;
+        private volatile long prepareMillis;
+        private volatile long loadMillis;
+        private volatile long attachMillis;
+
+        private Node(final ModuleSpec moduleSpec) {
+            this.moduleSpec = moduleSpec;
+        }
+
+        /**
+         * 在串行屏障内执行模块的加载和增强，并记录耗时
+         *
+         * @param callable 模块加载
+         * @throws Throwable 加载异常
+         */
+        void attach(final Callable<Void> callable) throws Throwable {
+            serial(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    final long beginTime = System.currentTimeMillis();
+                    try {
+                        return callable.call();
+                    } finally {
+                        attachMillis += System.currentTimeMillis() - beginTime;
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 模块加载处理
+     */
+    interface ModuleLoadHandler {
+
+        /**
+         * 校验模块并创建模块类加载器，在线程池中并行执行
+         *
+         * @param moduleSpec 模块描述
+         * @return 模块类加载器工厂，模块不可用时返回 null
+         * @throws Exception 创建类加载器异常
+         */
+        ClassLoaderFactory prepare(ModuleSpec moduleSpec) throws Exception;
+
+        /**
+         * 注册模块类加载器，在调度线程上按优先级顺序执行
+         *
+         * @param moduleSpec         模块描述
+         * @param classLoaderFactory 模块类加载器工厂
+         * @return 是否注册成功
+         */
+        boolean register(ModuleSpec moduleSpec, ClassLoaderFactory classLoaderFactory);
+
+        /**
+         * 模块依赖的开关是否全部开启，未开启时需要注册开关回调，在调度线程上执行
+         *
+         * @param moduleSpec 模块描述
+         * @return 是否可以立即加载
+         */
+        boolean isDependenciesReady(ModuleSpec moduleSpec);
+
+        /**
+         * 加载模块，在线程池中执行，模块的加载和增强必须通过 {@link Node#attach(Callable)} 串行执行
+         *
+         * @param moduleSpec 模块描述
+         * @param node       调度节点
+         */
+        void load(ModuleSpec moduleSpec, Node node);
+    }
+}
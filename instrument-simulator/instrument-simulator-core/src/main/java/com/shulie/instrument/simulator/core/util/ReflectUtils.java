@@ -15,6 +15,7 @@
 package com.shulie.instrument.simulator.core.util;
 
 import com.shulie.instrument.simulator.api.annotation.Interrupted;
+import com.shulie.instrument.simulator.api.listener.EventReusable;
 import com.shulie.instrument.simulator.api.listener.Interruptable;
 
 import java.lang.reflect.Constructor;
@@ -219,4 +220,17 @@ public class ReflectUtils {
         }
         return false;
     }
+
+    /**
+     * 判断事件处理器是否允许复用事件对象
+     *
+     * @param eventListener 事件监听器
+     * @return TRUE:允许复用;FALSE:不允许复用
+     */
+    public static boolean isReusableEventHandler(final Object eventListener) {
+        if (eventListener instanceof EventReusable) {
+            return ((EventReusable) eventListener).isEventReusable();
+        }
+        return false;
+    }
 }
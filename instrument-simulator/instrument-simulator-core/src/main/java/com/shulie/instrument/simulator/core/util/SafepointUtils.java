@@ -0,0 +1,85 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.util;
+
+import java.lang.reflect.Method;
+
+/**
+ * HotSpot 安全点统计
+ * <p>
+ * 通过 sun.management.HotspotRuntimeMBean 获取，非 HotSpot 虚拟机或者 JDK9 及以上
+ * 未开放 sun.management 包时无法获取，此时返回 -1
+ * </p>
+ */
+public class SafepointUtils {
+
+    private static final Object hotspotRuntime;
+    private static final Method safepointCountMethod;
+    private static final Method totalSafepointTimeMethod;
+
+    static {
+        Object runtime = null;
+        Method countMethod = null;
+        Method timeMethod = null;
+        try {
+            final Class<?> helperClass = Class.forName("sun.management.ManagementFactoryHelper");
+            final Method getHotspotRuntimeMBean = helperClass.getDeclaredMethod("getHotspotRuntimeMBean");
+            getHotspotRuntimeMBean.setAccessible(true);
+            runtime = getHotspotRuntimeMBean.invoke(null);
+            final Class<?> mbeanClass = Class.forName("sun.management.HotspotRuntimeMBean");
+            countMethod = mbeanClass.getMethod("getSafepointCount");
+            timeMethod = mbeanClass.getMethod("getTotalSafepointTime");
+            // 调用一次确认可以访问
+            countMethod.invoke(runtime);
+        } catch (Throwable e) {
+            runtime = null;
+            countMethod = null;
+            timeMethod = null;
+        }
+        hotspotRuntime = runtime;
+        safepointCountMethod = countMethod;
+        totalSafepointTimeMethod = timeMethod;
+    }
+
+    /**
+     * JVM 启动以来进入安全点的次数
+     *
+     * @return 安全点次数，不支持时返回 -1
+     */
+    public static long getSafepointCount() {
+        return invoke(safepointCountMethod);
+    }
+
+    /**
+     * JVM 启动以来处于安全点的总时间
+     *
+     * @return 安全点总时间(毫秒)，不支持时返回 -1
+     */
+    public static long getTotalSafepointTimeMillis() {
+        return invoke(totalSafepointTimeMethod);
+    }
+
+    private static long invoke(final Method method) {
+        if (hotspotRuntime == null || method == null) {
+            return -1;
+        }
+        try {
+            return ((Number) method.invoke(hotspotRuntime)).longValue();
+        } catch (Throwable e) {
+            return -1;
+        }
+    }
+
+}
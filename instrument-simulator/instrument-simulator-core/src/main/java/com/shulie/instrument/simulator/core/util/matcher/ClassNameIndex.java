@@ -0,0 +1,334 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.util.matcher;
+
+import com.shulie.instrument.simulator.api.filter.ClassNamePatterns;
+import com.shulie.instrument.simulator.api.listener.ext.PatternType;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 类名索引
+ * <p>
+ * 根据匹配器的类名匹配模式建立索引：不含通配符的类名放入哈希表，含通配符的模式取通配符之前的字面前缀放入前缀树，
+ * 无法给出模式的匹配器每次都作为候选。查找结果是{@link Matcher#preMatching(String)}可能通过的超集，
+ * 命中后仍然需要进行类名预匹配
+ * </p>
+ * <p>
+ * 查找在类加载线程上并发进行，增删在模块加载时进行，使用读写锁保护
+ * </p>
+ */
+public class ClassNameIndex<T> {
+
+    private final static String REGEX_META_CHARS = ".[]()^$+*?{}|";
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 精确类名 -> 值
+     */
+    private final Map<String, List<T>> exactlyNames = new HashMap<String, List<T>>();
+
+    /**
+     * 类名前缀树
+     */
+    private final Node<T> prefixRoot = new Node<T>();
+
+    /**
+     * 无法建立索引的值
+     */
+    private final List<T> unindexedValues = new ArrayList<T>();
+
+    /**
+     * 值所在的索引位置，用于删除
+     */
+    private final Map<T, Keys> valueKeys = new IdentityHashMap<T, Keys>();
+
+    /**
+     * 添加索引
+     *
+     * @param value   值
+     * @param matcher 值对应的匹配器
+     */
+    public void add(final T value, final Matcher matcher) {
+        final Keys keys = resolveKeys(matcher);
+        lock.writeLock().lock();
+        try {
+            if (valueKeys.containsKey(value)) {
+                return;
+            }
+            valueKeys.put(value, keys);
+            if (keys == null) {
+                unindexedValues.add(value);
+                return;
+            }
+            for (final String name : keys.exactlyNames) {
+                List<T> values = exactlyNames.get(name);
+                if (values == null) {
+                    values = new ArrayList<T>(1);
+                    exactlyNames.put(name, values);
+                }
+                values.add(value);
+            }
+            for (final String prefix : keys.prefixes) {
+                prefixRoot.getOrCreate(prefix).values.add(value);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除索引
+     *
+     * @param value 值
+     */
+    public void remove(final T value) {
+        lock.writeLock().lock();
+        try {
+            if (!valueKeys.containsKey(value)) {
+                return;
+            }
+            final Keys keys = valueKeys.remove(value);
+            if (keys == null) {
+                removeByIdentity(unindexedValues, value);
+                return;
+            }
+            for (final String name : keys.exactlyNames) {
+                final List<T> values = exactlyNames.get(name);
+                if (values != null) {
+                    removeByIdentity(values, value);
+                    if (values.isEmpty()) {
+                        exactlyNames.remove(name);
+                    }
+                }
+            }
+            for (final String prefix : keys.prefixes) {
+                final Node<T> node = prefixRoot.get(prefix);
+                if (node != null) {
+                    removeByIdentity(node.values, value);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 查找类名可能匹配的值
+     *
+     * @param javaClassName 类名
+     * @param found         查找结果，同一个值可能出现多次
+     */
+    public void find(final String javaClassName, final Collection<T> found) {
+        lock.readLock().lock();
+        try {
+            found.addAll(unindexedValues);
+            final List<T> values = exactlyNames.get(javaClassName);
+            if (values != null) {
+                found.addAll(values);
+            }
+            Node<T> node = prefixRoot;
+            int index = 0;
+            while (node != null) {
+                if (!node.values.isEmpty()) {
+                    found.addAll(node.values);
+                }
+                if (index >= javaClassName.length() || node.children == null) {
+                    break;
+                }
+                node = node.children.get(javaClassName.charAt(index++));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 是否为空
+     *
+     * @return TRUE:没有任何索引
+     */
+    public boolean isEmpty() {
+        lock.readLock().lock();
+        try {
+            return valueKeys.isEmpty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static <T> void removeByIdentity(final List<T> values, final T value) {
+        final Iterator<T> it = values.iterator();
+        while (it.hasNext()) {
+            if (it.next() == value) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 解析匹配器的索引键
+     *
+     * @param matcher 匹配器
+     * @return 索引键，无法建立索引时返回 null
+     */
+    static Keys resolveKeys(final Matcher matcher) {
+        final Keys keys = new Keys();
+        return resolveKeys(matcher, keys) ? keys : null;
+    }
+
+    private static boolean resolveKeys(final Matcher matcher, final Keys keys) {
+        if (matcher instanceof GroupMatcher.Or) {
+            for (final Matcher subMatcher : ((GroupMatcher) matcher).matcherArray) {
+                if (!resolveKeys(subMatcher, keys)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (!(matcher instanceof ExtFilterMatcher)
+                || !(((ExtFilterMatcher) matcher).getExtFilter() instanceof ClassNamePatterns)) {
+            return false;
+        }
+        final ClassNamePatterns classNamePatterns = (ClassNamePatterns) ((ExtFilterMatcher) matcher).getExtFilter();
+        final String[] patterns = classNamePatterns.getClassNamePatterns();
+        if (patterns == null) {
+            return false;
+        }
+        final int patternType = classNamePatterns.getClassNamePatternType();
+        for (final String pattern : patterns) {
+            if (pattern == null) {
+                continue;
+            }
+            if (patternType == PatternType.REGEX) {
+                if (!resolveRegexKey(pattern, keys)) {
+                    return false;
+                }
+            } else {
+                resolveWildcardKey(pattern, keys);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 通配符模式中没有 * 时为精确匹配，否则取第一个通配符之前的字面前缀
+     */
+    private static void resolveWildcardKey(final String pattern, final Keys keys) {
+        if (pattern.indexOf('*') == -1) {
+            keys.exactlyNames.add(pattern);
+            return;
+        }
+        int end = 0;
+        while (end < pattern.length()) {
+            final char c = pattern.charAt(end);
+            if (c == '*' || c == '?' || c == '\\') {
+                break;
+            }
+            end++;
+        }
+        keys.prefixes.add(pattern.substring(0, end));
+    }
+
+    /**
+     * 正则表达式是整体匹配，取第一个元字符之前的字面前缀，包含分支(|)时无法确定前缀
+     */
+    private static boolean resolveRegexKey(final String pattern, final Keys keys) {
+        if (pattern.indexOf('|') != -1) {
+            return false;
+        }
+        final StringBuilder prefix = new StringBuilder();
+        int index = 0;
+        if (pattern.startsWith("^")) {
+            index++;
+        }
+        boolean isLiteral = true;
+        while (index < pattern.length()) {
+            final char c = pattern.charAt(index);
+            if (c == '\\') {
+                if (index + 1 < pattern.length() && !Character.isLetterOrDigit(pattern.charAt(index + 1))) {
+                    prefix.append(pattern.charAt(index + 1));
+                    index += 2;
+                    continue;
+                }
+                isLiteral = false;
+                break;
+            }
+            if (REGEX_META_CHARS.indexOf(c) != -1) {
+                if (c == '$' && index == pattern.length() - 1) {
+                    index++;
+                    continue;
+                }
+                // 量词会使前一个字符变为可选
+                if ((c == '*' || c == '?' || c == '{') && prefix.length() > 0) {
+                    prefix.setLength(prefix.length() - 1);
+                }
+                isLiteral = false;
+                break;
+            }
+            prefix.append(c);
+            index++;
+        }
+        if (isLiteral) {
+            keys.exactlyNames.add(prefix.toString());
+        } else {
+            keys.prefixes.add(prefix.toString());
+        }
+        return true;
+    }
+
+    /**
+     * 索引键
+     */
+    static class Keys {
+        final Set<String> exactlyNames = new LinkedHashSet<String>();
+        final Set<String> prefixes = new LinkedHashSet<String>();
+    }
+
+    /**
+     * 前缀树节点
+     */
+    private static class Node<T> {
+        private Map<Character, Node<T>> children;
+        private final List<T> values = new ArrayList<T>(0);
+
+        Node<T> get(final String prefix) {
+            Node<T> node = this;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.children == null ? null : node.children.get(prefix.charAt(i));
+            }
+            return node;
+        }
+
+        Node<T> getOrCreate(final String prefix) {
+            Node<T> node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                if (node.children == null) {
+                    node.children = new HashMap<Character, Node<T>>(4);
+                }
+                Node<T> child = node.children.get(prefix.charAt(i));
+                if (child == null) {
+                    child = new Node<T>();
+                    node.children.put(prefix.charAt(i), child);
+                }
+                node = child;
+            }
+            return node;
+        }
+    }
+}
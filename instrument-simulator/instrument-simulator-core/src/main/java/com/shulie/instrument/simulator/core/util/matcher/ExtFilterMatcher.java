@@ -101,6 +101,10 @@ public class ExtFilterMatcher implements Matcher {
         return false;
     }
 
+    ExtFilter getExtFilter() {
+        return extFilter;
+    }
+
     @Override
     public List<BuildingForListeners> getAllListeners() {
         return extFilter.getAllListeners();
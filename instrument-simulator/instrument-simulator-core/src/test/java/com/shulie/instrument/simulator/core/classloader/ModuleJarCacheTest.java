@@ -0,0 +1,383 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.classloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * 验证 {@link ModuleJarCache} 在并发创建与清理时的正确性，以及其他 JVM 不会清理使用中的副本
+ */
+public class ModuleJarCacheTest {
+
+    static {
+        System.setProperty("pradar.log.config.type", "xml");
+    }
+
+    private final static long HOUR = 60L * 60 * 1000;
+    private final static long EXPIRE_MILLIS = 7 * 24 * HOUR;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File cacheDir;
+    private ExecutorService executorService;
+
+    @Before
+    public void before() throws IOException {
+        cacheDir = new File(folder.getRoot(), "cache");
+        executorService = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void after() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testCacheHitDoesNotCopy() throws Exception {
+        File jar = newJar("module.jar", 1, 64 * 1024);
+        ModuleJarCache cache = new ModuleJarCache(true, cacheDir, EXPIRE_MILLIS, 16);
+        File cached = cache.get(jar);
+        Assert.assertTrue(cache.isCached(cached));
+        Assert.assertTrue(FileUtils.contentEquals(jar, cached));
+        Assert.assertEquals(1, cache.getCopyCount());
+
+        Assert.assertEquals(cached, cache.get(jar));
+        Assert.assertEquals(1, cache.getCopyCount());
+
+        /**
+         * 模拟另一个 JVM 或者重启之后，相同内容的 jar 只计算摘要，不再复制
+         */
+        File sameContent = newJar("other/module.jar", 1, 64 * 1024);
+        ModuleJarCache restarted = new ModuleJarCache(true, cacheDir, EXPIRE_MILLIS, 16);
+        Assert.assertEquals(cached, restarted.get(sameContent));
+        Assert.assertEquals(cached, restarted.get(jar));
+        Assert.assertEquals(0, restarted.getCopyCount());
+        assertCacheFiles(1);
+    }
+
+    @Test
+    public void testChangedJarGetsNewCopy() throws Exception {
+        File jar = newJar("module.jar", 1, 4096);
+        ModuleJarCache cache = new ModuleJarCache(true, cacheDir, EXPIRE_MILLIS, 16);
+        File first = cache.get(jar);
+
+        FileUtils.writeByteArrayToFile(jar, content(2, 8192));
+        Assert.assertTrue(jar.setLastModified(jar.lastModified() + 2000));
+        File second = cache.get(jar);
+        Assert.assertFalse(first.equals(second));
+        Assert.assertTrue(first.exists());
+        Assert.assertTrue(FileUtils.contentEquals(jar, second));
+        assertCacheFiles(2);
+    }
+
+    @Test
+    public void testConcurrentCreate() throws Exception {
+        final File jar = newJar("module.jar", 3, 256 * 1024);
+        final int threads = 8;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        List<Future<File>> futures = new ArrayList<Future<File>>();
+        for (int i = 0; i < threads; i++) {
+            /**
+             * 每个线程一个实例，模拟多个 JVM 同时创建同一个副本
+             */
+            final ModuleJarCache cache = new ModuleJarCache(true, cacheDir, EXPIRE_MILLIS, 16);
+            futures.add(executorService.submit(new Callable<File>() {
+                @Override
+                public File call() throws Exception {
+                    barrier.await();
+                    return cache.get(jar);
+                }
+            }));
+        }
+        Set<File> files = new HashSet<File>();
+        for (Future<File> future : futures) {
+            files.add(future.get());
+        }
+        Assert.assertEquals(1, files.size());
+        Assert.assertTrue(FileUtils.contentEquals(jar, files.iterator().next()));
+        assertCacheFiles(1);
+    }
+
+    @Test
+    public void testCleanExpiredAndPartialFiles() throws Exception {
+        Assert.assertTrue(cacheDir.mkdirs());
+        long now = System.currentTimeMillis();
+        File expired = newFile(new File(cacheDir, "expired.jar"), now - EXPIRE_MILLIS - HOUR);
+        File recent = newFile(new File(cacheDir, "recent.jar"), now - HOUR);
+        File stalePartial = newFile(new File(cacheDir, "instrument_simulator_module_jar_1_1.tmp"), now - 2 * HOUR);
+        File writingPartial = newFile(new File(cacheDir, "instrument_simulator_module_jar_2_1.tmp"), now);
+
+        File jar = newJar("module.jar", 4, 4096);
+        ModuleJarCache cache = new ModuleJarCache(true, cacheDir, EXPIRE_MILLIS, 16);
+        File cached = cache.get(jar);
+
+        Assert.assertFalse(expired.exists());
+        Assert.assertFalse(stalePartial.exists());
+        Assert.assertTrue(recent.exists());
+        Assert.assertTrue("other process is still writing", writingPartial.exists());
+        Assert.assertTrue(cached.exists());
+    }
+
+    @Test
+    public void testCleanKeepsNewestFiles() throws Exception {
+        Assert.assertTrue(cacheDir.mkdirs());
+        long now = System.currentTimeMillis();
+        File oldest = newFile(new File(cacheDir, "oldest.jar"), now - 3 * HOUR);
+        File older = newFile(new File(cacheDir, "older.jar"), now - 2 * HOUR);
+        File newest = newFile(new File(cacheDir, "newest.jar"), now - HOUR);
+
+        ModuleJarCache cache = new ModuleJarCache(true, cacheDir, EXPIRE_MILLIS, 2);
+        File cached = cache.get(newJar("module.jar", 5, 4096));
+
+        Assert.assertFalse(oldest.exists());
+        Assert.assertTrue(older.exists());
+        Assert.assertTrue(newest.exists());
+        Assert.assertTrue(cached.exists());
+    }
+
+    @Test
+    public void testConcurrentCreateAndClean() throws Exception {
+        final int threads = 8;
+        final List<File> jars = new ArrayList<File>();
+        for (int i = 0; i < threads; i++) {
+            jars.add(newJar("module-" + i + ".jar", 10 + i, 32 * 1024 + i));
+        }
+        /**
+         * 先放入一批过期的副本，多个实例同时清理与创建，新创建的副本都必须完整保留
+         */
+        Assert.assertTrue(cacheDir.mkdirs());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 32; i++) {
+            newFile(new File(cacheDir, "expired-" + i + ".jar"), now - EXPIRE_MILLIS - HOUR);
+        }
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        List<Future<File>> futures = new ArrayList<Future<File>>();
+        for (int i = 0; i < threads; i++) {
+            final File jar = jars.get(i);
+            final ModuleJarCache cache = new ModuleJarCache(true, cacheDir, EXPIRE_MILLIS, 64);
+            futures.add(executorService.submit(new Callable<File>() {
+                @Override
+                public File call() throws Exception {
+                    barrier.await();
+                    return cache.get(jar);
+                }
+            }));
+        }
+        for (int i = 0; i < threads; i++) {
+            File cached = futures.get(i).get();
+            Assert.assertTrue(cached.exists());
+            Assert.assertTrue(FileUtils.contentEquals(jars.get(i), cached));
+        }
+        assertCacheFiles(threads);
+    }
+
+    @Test
+    public void testReplaceIncompleteCacheFile() throws Exception {
+        File jar = newJar("module.jar", 7, 4096);
+        /**
+         * 预先放入一个文件名为正确摘要但长度不对的副本，比如复制过程中被中断的文件
+         */
+        Assert.assertTrue(cacheDir.mkdirs());
+        File incomplete = new File(cacheDir, sha256(jar) + ".jar");
+        FileUtils.writeByteArrayToFile(incomplete, content(7, 1024));
+
+        ModuleJarCache cache = new ModuleJarCache(true, cacheDir, EXPIRE_MILLIS, 16);
+        File cached = cache.get(jar);
+        Assert.assertTrue(FileUtils.contentEquals(jar, cached));
+        Assert.assertEquals(1, cache.getCopyCount());
+        assertCacheFiles(1);
+    }
+
+    @Test
+    public void testChecksumFromTheSameRead() throws Exception {
+        File jar = newJar("module.jar", 9, 64 * 1024);
+        ModuleJarCache cache = new ModuleJarCache(true, cacheDir, EXPIRE_MILLIS, 16);
+        Assert.assertEquals(FileUtils.checksumCRC32(jar), cache.checksumCRC32(jar));
+        File cached = cache.get(jar);
+        Assert.assertEquals(FileUtils.checksumCRC32(jar), cache.checksumCRC32(jar));
+        Assert.assertEquals(1, cache.getCopyCount());
+
+        ModuleJarCache restarted = new ModuleJarCache(true, cacheDir, EXPIRE_MILLIS, 16);
+        Assert.assertEquals(FileUtils.checksumCRC32(jar), restarted.checksumCRC32(jar));
+        Assert.assertEquals(cached, restarted.get(jar));
+        Assert.assertEquals(0, restarted.getCopyCount());
+
+        ModuleJarCache disabled = new ModuleJarCache(false, cacheDir, EXPIRE_MILLIS, 16);
+        Assert.assertEquals(FileUtils.checksumCRC32(jar), disabled.checksumCRC32(jar));
+    }
+
+    @Test
+    public void testOtherJvmKeepsFileInUse() throws Exception {
+        File jar = newJar("module.jar", 14, 4096);
+        ModuleJarCache cache = new ModuleJarCache(true, cacheDir, EXPIRE_MILLIS, 16);
+        File cached = cache.get(jar);
+
+        /**
+         * 类加载器会反复打开关闭副本，POSIX 下关闭任何一个文件描述符都会释放当前进程在该文件上的锁，
+         * 副本的共享锁不能因此失效
+         */
+        FileUtils.readFileToByteArray(cached);
+        Assert.assertTrue(cached.setLastModified(System.currentTimeMillis() - EXPIRE_MILLIS - HOUR));
+
+        Assert.assertEquals(0, cleanInOtherJvm());
+        Assert.assertTrue(cached.exists());
+
+        cache.release(cached);
+        Assert.assertEquals(0, cleanInOtherJvm());
+        Assert.assertFalse(cached.exists());
+    }
+
+    @Test
+    public void testCleanSkipsFilesInUse() throws Exception {
+        File jar = newJar("module.jar", 11, 4096);
+        ModuleJarCache cache = new ModuleJarCache(true, cacheDir, EXPIRE_MILLIS, 16);
+        File cached = cache.get(jar);
+        long expired = System.currentTimeMillis() - EXPIRE_MILLIS - HOUR;
+        Assert.assertTrue(cached.setLastModified(expired));
+
+        /**
+         * 另一个实例启动时清理，副本仍然持有共享锁，不能删除
+         */
+        new ModuleJarCache(true, cacheDir, EXPIRE_MILLIS, 16).get(newJar("other.jar", 12, 4096));
+        Assert.assertTrue(cached.exists());
+
+        cache.release(cached);
+        Assert.assertTrue(cached.setLastModified(expired));
+        new ModuleJarCache(true, cacheDir, EXPIRE_MILLIS, 16).get(newJar("third.jar", 13, 4096));
+        Assert.assertFalse(cached.exists());
+    }
+
+    @Test
+    public void testDefaultCacheDirIsPerUser() {
+        String configured = System.getProperty("simulator.module.jar.cache.dir");
+        System.clearProperty("simulator.module.jar.cache.dir");
+        try {
+            File dir = ModuleJarCache.defaultCacheDir();
+            Assert.assertNotNull(dir);
+            Assert.assertTrue(dir.getPath().startsWith(System.getProperty("user.home")));
+            Assert.assertFalse(dir.getPath().startsWith(System.getProperty("java.io.tmpdir")));
+        } finally {
+            if (configured != null) {
+                System.setProperty("simulator.module.jar.cache.dir", configured);
+            }
+        }
+    }
+
+    @Test
+    public void testFallbackToTempFile() throws Exception {
+        File jar = newJar("module.jar", 6, 4096);
+        ModuleJarCache cache = new ModuleJarCache(false, cacheDir, EXPIRE_MILLIS, 16);
+        File copy = cache.get(jar);
+        try {
+            Assert.assertFalse(cache.isCached(copy));
+            Assert.assertTrue(FileUtils.contentEquals(jar, copy));
+        } finally {
+            cache.release(copy);
+        }
+        Assert.assertFalse(copy.exists());
+        Assert.assertFalse(cacheDir.exists());
+    }
+
+    /**
+     * 缓存目录中只有完整的副本及其锁文件，没有遗留的临时文件
+     */
+    private void assertCacheFiles(int expected) {
+        String[] names = cacheDir.list();
+        Assert.assertNotNull(names);
+        int jars = 0;
+        for (String name : names) {
+            Assert.assertTrue("unexpected file " + name + " in " + Arrays.toString(names),
+                    name.endsWith(".jar") || name.endsWith(".lock"));
+            if (name.endsWith(".jar")) {
+                jars++;
+            }
+        }
+        Assert.assertEquals(Arrays.toString(names), expected, jars);
+    }
+
+    /**
+     * 在另一个 JVM 中启动一个缓存实例，触发一次清理
+     */
+    private int cleanInOtherJvm() throws Exception {
+        File other = newJar("other-" + System.nanoTime() + ".jar", 15, 4096);
+        Process process = new ProcessBuilder(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-Dpradar.log.config.type=xml",
+                "-cp", System.getProperty("java.class.path"),
+                OtherJvm.class.getName(),
+                cacheDir.getAbsolutePath(),
+                other.getAbsolutePath())
+                .redirectErrorStream(true)
+                .start();
+        IOUtils.copy(process.getInputStream(), System.out);
+        return process.waitFor();
+    }
+
+    public static class OtherJvm {
+        public static void main(String[] args) throws Exception {
+            new ModuleJarCache(true, new File(args[0]), EXPIRE_MILLIS, 16).get(new File(args[1]));
+        }
+    }
+
+    private File newJar(String name, long seed, int size) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        FileUtils.writeByteArrayToFile(file, content(seed, size));
+        return file;
+    }
+
+    private static String sha256(File file) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(FileUtils.readFileToByteArray(file));
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static byte[] content(long seed, int size) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static File newFile(File file, long lastModified) throws IOException {
+        FileUtils.writeByteArrayToFile(file, new byte[]{1, 2, 3});
+        Assert.assertTrue(file.setLastModified(lastModified));
+        return file;
+    }
+}
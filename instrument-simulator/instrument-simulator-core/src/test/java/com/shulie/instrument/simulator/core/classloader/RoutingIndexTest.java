@@ -0,0 +1,194 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.classloader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 验证 {@link RoutingIndex} 与原有逐条通配符匹配的结果一致
+ */
+public class RoutingIndexTest {
+
+    private final static char[] ALPHABET = new char[]{'a', 'b', '.', '$', '*', '?', '\\', '/'};
+
+    @Test
+    public void testCommonRules() {
+        List<String> rules = Arrays.asList("org.slf4j.*", "*String", "com.shulie.instrument.simulator.api.*Module",
+                "java.util.Map", "com.pamirs.pradar.Pradar$?", "com.?oo", "a\\*b", "*.internal.*");
+        RoutingIndex index = RoutingIndex.compile(rules);
+        String[] names = new String[]{"org.slf4j.Logger", "org.slf4j", "org.slf4jx.Logger", "java.lang.String",
+                "String", "com.shulie.instrument.simulator.api.ExtensionModule", "java.util.Map", "java.util.Map$Entry",
+                "com.pamirs.pradar.Pradar$?", "com.pamirs.pradar.Pradar$1", "com.?oo", "com.foo", "a*b", "a\\*b",
+                "axb", "sun.internal.Foo", "internal", ""};
+        for (String name : names) {
+            Assert.assertEquals(name, legacyIsHit(rules, name), index.isHitClass(name));
+            String resource = name.replace('.', '/');
+            Assert.assertEquals(resource, legacyIsHitResource(rules, resource), index.isHitResource(resource));
+            Assert.assertEquals(resource + ".class", legacyIsHitResource(rules, resource + ".class"),
+                    index.isHitResource(resource + ".class"));
+        }
+        Assert.assertFalse("rules without * must be equal", index.isHitClass("com.pamirs.pradar.Pradar$1"));
+        Assert.assertFalse("rules without * must be equal", index.isHitClass("com.foo"));
+    }
+
+    @Test
+    public void testMatchAll() {
+        for (String rule : new String[]{"*", "**", "***"}) {
+            RoutingIndex index = RoutingIndex.compile(Arrays.asList(rule));
+            Assert.assertTrue(index.isHitClass("any.Class"));
+            Assert.assertTrue(index.isHitClass(""));
+            Assert.assertTrue(index.isHitResource("any/resource.properties"));
+        }
+        RoutingIndex empty = RoutingIndex.compile(null);
+        Assert.assertFalse(empty.isHitClass("any.Class"));
+        Assert.assertFalse(empty.isHitClass(null));
+        Assert.assertFalse(empty.isHitResource(null));
+    }
+
+    @Test
+    public void testRandomRulesSameAsLegacy() {
+        Random random = new Random(20210903L);
+        for (int round = 0; round < 2000; round++) {
+            List<String> rules = new ArrayList<String>();
+            int ruleCount = 1 + random.nextInt(6);
+            for (int i = 0; i < ruleCount; i++) {
+                rules.add(randomString(random, 1 + random.nextInt(6)));
+            }
+            RoutingIndex index = RoutingIndex.compile(rules);
+            for (int i = 0; i < 50; i++) {
+                String name = randomString(random, random.nextInt(8));
+                if (name.indexOf('/') == -1) {
+                    Assert.assertEquals(rules + " class " + name, legacyIsHit(rules, name), index.isHitClass(name));
+                }
+                Assert.assertEquals(rules + " resource " + name,
+                        legacyIsHitResource(rules, name), index.isHitResource(name));
+                Assert.assertEquals(rules + " resource " + name + ".class",
+                        legacyIsHitResource(rules, name + ".class"), index.isHitResource(name + ".class"));
+            }
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 原有的资源匹配：'/' 替换为 '.'，去掉 .class 后缀后按类名匹配
+     */
+    private static boolean legacyIsHitResource(List<String> rules, String resourceName) {
+        String className = resourceName.replace('/', '.');
+        if (className.endsWith(".class")) {
+            className = className.substring(0, className.length() - 6);
+        }
+        return legacyIsHit(rules, className);
+    }
+
+    private static boolean legacyIsHit(List<String> rules, String javaClassName) {
+        for (String rule : rules) {
+            if (legacyMatching(javaClassName, rule)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 原 RoutingURLClassLoader.Routing 中的匹配规则
+     */
+    private static boolean legacyMatching(String string, String wildcard) {
+        if ("*".equals(wildcard)) {
+            return true;
+        }
+        if (wildcard == null || string == null) {
+            return false;
+        }
+        if (wildcard.indexOf("*") == -1) {
+            return wildcard.equals(string);
+        }
+        return legacyMatching(string, wildcard, 0, 0);
+    }
+
+    private static boolean legacyMatching(String string, String wildcard, int stringStartNdx, int patternStartNdx) {
+        int pNdx = patternStartNdx;
+        int sNdx = stringStartNdx;
+        int pLen = wildcard.length();
+        if (pLen == 1) {
+            if (wildcard.charAt(0) == '*') {
+                return true;
+            }
+        }
+        int sLen = string.length();
+        boolean nextIsNotWildcard = false;
+        while (true) {
+            if ((sNdx >= sLen)) {
+                while ((pNdx < pLen) && (wildcard.charAt(pNdx) == '*')) {
+                    pNdx++;
+                }
+                return pNdx >= pLen;
+            }
+            if (pNdx >= pLen) {
+                return false;
+            }
+            char p = wildcard.charAt(pNdx);
+            if (!nextIsNotWildcard) {
+                if (p == '\\') {
+                    pNdx++;
+                    nextIsNotWildcard = true;
+                    continue;
+                }
+                if (p == '?') {
+                    sNdx++;
+                    pNdx++;
+                    continue;
+                }
+                if (p == '*') {
+                    char pnext = 0;
+                    if (pNdx + 1 < pLen) {
+                        pnext = wildcard.charAt(pNdx + 1);
+                    }
+                    if (pnext == '*') {
+                        pNdx++;
+                        continue;
+                    }
+                    int i;
+                    pNdx++;
+                    for (i = string.length(); i >= sNdx; i--) {
+                        if (legacyMatching(string, wildcard, i, pNdx)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            } else {
+                nextIsNotWildcard = false;
+            }
+            if (p != string.charAt(sNdx)) {
+                return false;
+            }
+            sNdx++;
+            pNdx++;
+        }
+    }
+}
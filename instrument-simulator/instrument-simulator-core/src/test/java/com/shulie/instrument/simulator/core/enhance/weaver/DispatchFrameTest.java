@@ -0,0 +1,223 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.enhance.weaver;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.shulie.instrument.simulator.api.ProcessControlEntity;
+import com.shulie.instrument.simulator.api.event.Event;
+import com.shulie.instrument.simulator.api.event.EventType;
+import com.shulie.instrument.simulator.api.guard.SimulatorGuard;
+import com.shulie.instrument.simulator.api.listener.EventListener;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 分发帧槽位回收与失效调用流程清理
+ */
+public class DispatchFrameTest {
+
+    static {
+        System.setProperty("pradar.log.config.type", "xml");
+    }
+
+    private ExecutorService businessThread;
+
+    @Before
+    public void setup() {
+        businessThread = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        businessThread.shutdownNow();
+    }
+
+    @Test
+    public void reuseReleasedSlot() {
+        final int first = DispatchFrame.allocateSlot(100);
+        DispatchFrame.releaseSlot(first);
+        final int second = DispatchFrame.allocateSlot(101);
+        try {
+            Assert.assertEquals(first, second);
+        } finally {
+            DispatchFrame.releaseSlot(second);
+        }
+    }
+
+    @Test
+    public void expungeStaleProcessOnOtherThread() throws Exception {
+        final InvokeProcessor frozen = newProcessor(200);
+        Assert.assertTrue(businessThread.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                frozen.getOrCreate(DispatchFrame.current()).pushInvokeId(1);
+                return DispatchFrame.current().get(frozen.slot) != null;
+            }
+        }).get());
+
+        /**
+         * 在其他线程上冻结监听器，再激活一个监听器复用同一个槽位
+         */
+        frozen.clean();
+        final InvokeProcessor active = newProcessor(201);
+        try {
+            Assert.assertEquals(frozen.slot, active.slot);
+            Assert.assertTrue(businessThread.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    final DispatchFrame frame = DispatchFrame.current();
+                    if (frame.get(active.slot) != null) {
+                        return false;
+                    }
+                    final InvokeProcessor.InvokeProcess process = active.getOrCreate(frame);
+                    return process.isEmptyStack() && process.getListenerId() == 201;
+                }
+            }).get());
+        } finally {
+            active.clean();
+        }
+    }
+
+    @Test
+    public void reuseFrameAndProcessWhileProcessInFlight() throws Exception {
+        final InvokeProcessor outer = newProcessor(300);
+        final InvokeProcessor inner = newProcessor(301);
+        try {
+            Assert.assertTrue(businessThread.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    final DispatchFrame frame = DispatchFrame.current();
+                    final InvokeProcessor.InvokeProcess outerProcess = outer.getOrCreate(frame);
+                    outerProcess.pushInvokeId(1);
+
+                    final InvokeProcessor.InvokeProcess process = inner.getOrCreate(DispatchFrame.current());
+                    process.pushInvokeId(2);
+                    process.markIgnoreProcess();
+                    process.popInvokeId();
+                    inner.cleanIfEmpty(frame);
+                    final boolean attached = SimulatorGuard.getInstance().getState().getAttachment() == frame;
+                    final boolean reset = !process.isIgnoreProcess();
+                    final boolean reused = inner.getOrCreate(DispatchFrame.current()) == process;
+
+                    outerProcess.popInvokeId();
+                    outer.cleanIfEmpty(frame);
+                    return attached && reset && reused;
+                }
+            }).get());
+        } finally {
+            outer.clean();
+            inner.clean();
+        }
+    }
+
+    @Test
+    public void detachFrameWhenProcessEnds() throws Exception {
+        final InvokeProcessor processor = newProcessor(302);
+        try {
+            Assert.assertTrue(businessThread.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    final InvokeProcessor.InvokeProcess process = processor.getOrCreate(DispatchFrame.current());
+                    process.pushInvokeId(1);
+                    process.pushInvokeId(2);
+                    final boolean attached = SimulatorGuard.getInstance().getState().getAttachment() != null;
+                    process.popInvokeId();
+                    final boolean stillAttached = SimulatorGuard.getInstance().getState().getAttachment() != null;
+                    process.popInvokeId();
+                    return attached && stillAttached;
+                }
+            }).get());
+
+            /**
+             * 调用流程结束后业务线程上不应该残留分发帧
+             */
+            Assert.assertTrue(businessThread.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return SimulatorGuard.getInstance().getState().getAttachment() == null;
+                }
+            }).get());
+        } finally {
+            processor.clean();
+        }
+    }
+
+    @Test
+    public void keepFrameInGuardWhileProcessInFlight() throws Exception {
+        final InvokeProcessor processor = newProcessor(303);
+        try {
+            Assert.assertTrue(businessThread.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    final DispatchFrame frame = DispatchFrame.current();
+                    final InvokeProcessor.InvokeProcess process = processor.getOrCreate(frame);
+                    process.pushInvokeId(1);
+                    SimulatorGuard.getInstance().enter();
+                    SimulatorGuard.getInstance().exit();
+                    final boolean same = DispatchFrame.current() == frame;
+                    process.popInvokeId();
+                    return same && DispatchFrame.current() != frame;
+                }
+            }).get());
+        } finally {
+            processor.clean();
+        }
+    }
+
+    @Test
+    public void cleanWithoutFrameDoesNotAttachOne() throws Exception {
+        final InvokeProcessor processor = newProcessor(304);
+        Assert.assertTrue(businessThread.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                final Object state = SimulatorGuard.getInstance().getState();
+                processor.clean();
+                /**
+                 * 清理时不会创建分发帧，查询时创建的守护状态也不会留在线程上
+                 */
+                return SimulatorGuard.getInstance().getState() != state
+                    && SimulatorGuard.getInstance().getState().getAttachment() == null;
+            }
+        }).get());
+    }
+
+    @Test
+    public void cleanDetachesFrameOfInFlightProcess() throws Exception {
+        final InvokeProcessor processor = newProcessor(305);
+        Assert.assertTrue(businessThread.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                processor.getOrCreate(DispatchFrame.current()).pushInvokeId(1);
+                final boolean attached = SimulatorGuard.getInstance().getState().getAttachment() != null;
+                processor.clean();
+                return attached && SimulatorGuard.getInstance().getState().getAttachment() == null;
+            }
+        }).get());
+    }
+
+    private static InvokeProcessor newProcessor(int listenerId) {
+        return new InvokeProcessor(listenerId, new EventListener() {
+            @Override
+            public ProcessControlEntity onEvent(Event event) throws Throwable {
+                return ProcessControlEntity.none();
+            }
+        }, new int[] {EventType.BEFORE, EventType.RETURN}, true);
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.enhance.weaver;
+
+import com.shulie.instrument.simulator.api.ProcessControlEntity;
+import com.shulie.instrument.simulator.api.event.Event;
+import com.shulie.instrument.simulator.api.event.EventType;
+import com.shulie.instrument.simulator.api.listener.EventListener;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 事件处理器表的查找与容量
+ */
+public class InvokeProcessorArrayTest {
+
+    static {
+        System.setProperty("pradar.log.config.type", "xml");
+    }
+
+    @Test
+    public void lookupCollidingListenerIds() {
+        final InvokeProcessorArray array = new InvokeProcessorArray();
+        final int capacity = array.capacity();
+        final InvokeProcessor first = newProcessor(3);
+        final InvokeProcessor second = newProcessor(3 + capacity);
+        try {
+            array.set(first.listenerId, first);
+            array.set(second.listenerId, second);
+            Assert.assertSame(first, array.get(3));
+            Assert.assertSame(second, array.get(3 + capacity));
+            Assert.assertNull(array.get(3 + capacity * 2));
+
+            /**
+             * 移除探测链上靠前的事件处理器后，靠后的仍然能找到
+             */
+            Assert.assertSame(first, array.remove(3));
+            Assert.assertNull(array.get(3));
+            Assert.assertSame(second, array.get(3 + capacity));
+            Assert.assertEquals(1, array.length());
+        } finally {
+            first.clean();
+            second.clean();
+        }
+    }
+
+    @Test
+    public void capacityFollowsRegisteredProcessors() {
+        final InvokeProcessorArray array = new InvokeProcessorArray();
+        final int initial = array.capacity();
+
+        /**
+         * 模拟模块反复加载卸载，监听器ID持续增长
+         */
+        for (int listenerId = 0; listenerId < 10000; listenerId++) {
+            final InvokeProcessor processor = newProcessor(listenerId);
+            array.set(listenerId, processor);
+            Assert.assertSame(processor, array.get(listenerId));
+            Assert.assertSame(processor, array.remove(listenerId));
+            processor.clean();
+        }
+        Assert.assertEquals(0, array.length());
+        Assert.assertEquals(initial, array.capacity());
+
+        final InvokeProcessor[] processors = new InvokeProcessor[200];
+        for (int i = 0; i < processors.length; i++) {
+            processors[i] = newProcessor(20000 + i * 7);
+            array.set(processors[i].listenerId, processors[i]);
+        }
+        try {
+            Assert.assertTrue(array.capacity() >= processors.length * 2);
+            for (InvokeProcessor processor : processors) {
+                Assert.assertSame(processor, array.get(processor.listenerId));
+            }
+            for (InvokeProcessor processor : processors) {
+                array.remove(processor.listenerId);
+            }
+            Assert.assertEquals(initial, array.capacity());
+        } finally {
+            for (InvokeProcessor processor : processors) {
+                processor.clean();
+            }
+        }
+    }
+
+    private static InvokeProcessor newProcessor(int listenerId) {
+        return new InvokeProcessor(listenerId, new EventListener() {
+            @Override
+            public ProcessControlEntity onEvent(Event event) throws Throwable {
+                return ProcessControlEntity.none();
+            }
+        }, new int[] {EventType.BEFORE, EventType.RETURN});
+    }
+}
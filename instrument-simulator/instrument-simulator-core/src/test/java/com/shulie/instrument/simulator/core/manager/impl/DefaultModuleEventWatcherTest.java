@@ -0,0 +1,304 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.manager.impl;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.shulie.instrument.simulator.api.ModuleSpec;
+import com.shulie.instrument.simulator.api.filter.ClassDescriptor;
+import com.shulie.instrument.simulator.api.filter.Filter;
+import com.shulie.instrument.simulator.api.filter.MethodDescriptor;
+import com.shulie.instrument.simulator.api.listener.ext.BuildingForListeners;
+import com.shulie.instrument.simulator.api.listener.ext.Progress;
+import com.shulie.instrument.simulator.api.resource.SimulatorConfig;
+import com.shulie.instrument.simulator.core.CoreModule;
+import com.shulie.instrument.simulator.core.manager.CoreLoadedClassDataSource;
+import com.shulie.instrument.simulator.core.util.matcher.Matcher;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 验证 {@link DefaultModuleEventWatcher} 的批量重新渲染以及 simulator.retransform.batch.size 分批提交
+ */
+public class DefaultModuleEventWatcherTest {
+
+    static {
+        System.setProperty("pradar.log.config.type", "xml");
+    }
+
+    private final static String BATCH_SIZE_KEY = "simulator.retransform.batch.size";
+
+    private final static List<Class<?>> LOADED_CLASSES = Arrays.<Class<?>>asList(
+            String.class, Integer.class, Long.class, Short.class, Byte.class,
+            Double.class, Float.class, Character.class, Boolean.class);
+
+    private final RecordingInstrumentation recorder = new RecordingInstrumentation();
+
+    @After
+    public void after() {
+        System.clearProperty(BATCH_SIZE_KEY);
+    }
+
+    @Test
+    public void testNestedBatchFlushOnOutermostEnd() {
+        final DefaultModuleEventWatcher watcher = newWatcher(64);
+        Assert.assertTrue(watcher.begin());
+        watcher.watch(filter(String.class, Integer.class), null);
+        Assert.assertTrue(watcher.begin());
+        watcher.watch(filter(Integer.class, Long.class), null);
+        watcher.end();
+        Assert.assertTrue(recorder.calls.isEmpty());
+
+        watcher.end();
+        Assert.assertEquals(1, recorder.calls.size());
+        Assert.assertEquals(Arrays.<Class<?>>asList(String.class, Integer.class, Long.class), recorder.calls.get(0));
+
+        /**
+         * 批量结束后的观察立即重新渲染，多余的 end 不会产生影响
+         */
+        watcher.end();
+        watcher.watch(filter(Short.class), null);
+        Assert.assertEquals(2, recorder.calls.size());
+        Assert.assertEquals(Collections.<Class<?>>singletonList(Short.class), recorder.calls.get(1));
+    }
+
+    @Test
+    public void testBatchSizeChunking() {
+        final DefaultModuleEventWatcher watcher = newWatcher(4);
+        watcher.watch(filter(LOADED_CLASSES.toArray(new Class<?>[0])), null);
+        Assert.assertEquals(Arrays.asList(4, 4, 1), callSizes());
+        Assert.assertEquals(LOADED_CLASSES, flatten(recorder.calls));
+    }
+
+    @Test
+    public void testBatchSizeOneDisablesBatch() {
+        final DefaultModuleEventWatcher watcher = newWatcher(1);
+        Assert.assertFalse(watcher.begin());
+        watcher.watch(filter(String.class, Integer.class, Long.class), null);
+        Assert.assertEquals(Arrays.asList(1, 1, 1), callSizes());
+    }
+
+    @Test
+    public void testFailedChunkKeepsRemainingClasses() {
+        final DefaultModuleEventWatcher watcher = newWatcher(3);
+        recorder.failing.add(Integer.class);
+        final RecordingProgress progress = new RecordingProgress();
+        Assert.assertTrue(watcher.begin());
+        watcher.watch(filter(LOADED_CLASSES.toArray(new Class<?>[0])), progress);
+        watcher.end();
+
+        /**
+         * 第一批失败后逐个重试，后面的批次照常提交
+         */
+        Assert.assertEquals(Arrays.asList(3, 1, 1, 1, 3, 3), callSizes());
+        final Set<Class<?>> expected = new HashSet<Class<?>>(LOADED_CLASSES);
+        expected.remove(Integer.class);
+        Assert.assertEquals(expected, recorder.retransformed);
+        Assert.assertEquals(LOADED_CLASSES.size(), progress.total);
+        Assert.assertEquals(Collections.<Class<?>>singletonList(Integer.class), progress.failed);
+        Assert.assertEquals(LOADED_CLASSES.size() - 1, progress.succeed.size());
+        Assert.assertTrue(progress.finished);
+    }
+
+    @Test(timeout = 10000L)
+    public void testOtherThreadNotDeferred() throws InterruptedException {
+        final DefaultModuleEventWatcher watcher = newWatcher(64);
+        Assert.assertTrue(watcher.begin());
+        watcher.watch(filter(String.class), null);
+
+        final List<Boolean> otherBegin = new CopyOnWriteArrayList<Boolean>();
+        final Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                otherBegin.add(watcher.begin());
+                watcher.watch(filter(Long.class), null);
+                watcher.end();
+            }
+        });
+        other.start();
+        other.join();
+
+        Assert.assertEquals(Collections.singletonList(Boolean.FALSE), otherBegin);
+        Assert.assertEquals(1, recorder.calls.size());
+        Assert.assertEquals(Collections.<Class<?>>singletonList(Long.class), recorder.calls.get(0));
+
+        watcher.end();
+        Assert.assertEquals(2, recorder.calls.size());
+        Assert.assertEquals(Collections.<Class<?>>singletonList(String.class), recorder.calls.get(1));
+    }
+
+    private DefaultModuleEventWatcher newWatcher(int batchSize) {
+        System.setProperty(BATCH_SIZE_KEY, String.valueOf(batchSize));
+        final CoreModule coreModule = new CoreModule(new ModuleSpec().setModuleId("test"), null, null, null, null);
+        coreModule.setSimulatorConfig(proxy(SimulatorConfig.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return args != null && args.length == 2 ? args[1] : null;
+            }
+        }));
+        return new DefaultModuleEventWatcher(proxy(Instrumentation.class, recorder), proxy(CoreLoadedClassDataSource.class, new NameDataSource()),
+                coreModule, false, null, null);
+    }
+
+    private List<Integer> callSizes() {
+        final List<Integer> sizes = new ArrayList<Integer>();
+        for (List<Class<?>> call : recorder.calls) {
+            sizes.add(call.size());
+        }
+        return sizes;
+    }
+
+    private static List<Class<?>> flatten(List<List<Class<?>>> calls) {
+        final List<Class<?>> classes = new ArrayList<Class<?>>();
+        for (List<Class<?>> call : calls) {
+            classes.addAll(call);
+        }
+        return classes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(DefaultModuleEventWatcherTest.class.getClassLoader(),
+                new Class<?>[]{type}, handler);
+    }
+
+    private static Filter filter(final Class<?>... classes) {
+        final Set<String> names = new HashSet<String>();
+        for (Class<?> clazz : classes) {
+            names.add(clazz.getName());
+        }
+        return new Filter() {
+            @Override
+            public boolean doClassNameFilter(String javaClassName) {
+                return names.contains(javaClassName);
+            }
+
+            @Override
+            public boolean doClassFilter(ClassDescriptor classDescriptor) {
+                return true;
+            }
+
+            @Override
+            public List<BuildingForListeners> doMethodFilter(MethodDescriptor methodDescriptor) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public List<BuildingForListeners> getAllListeners() {
+                return Collections.emptyList();
+            }
+        };
+    }
+
+    /**
+     * 记录每次 retransformClasses 提交的类，提交的类中包含失败类时整批失败
+     */
+    private static class RecordingInstrumentation implements InvocationHandler {
+        private final List<List<Class<?>>> calls = new CopyOnWriteArrayList<List<Class<?>>>();
+        private final Set<Class<?>> retransformed = Collections.synchronizedSet(new HashSet<Class<?>>());
+        private final Set<Class<?>> failing = new HashSet<Class<?>>();
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("isModifiableClass".equals(method.getName())) {
+                return Boolean.TRUE;
+            }
+            if ("retransformClasses".equals(method.getName())) {
+                final List<Class<?>> classes = Arrays.asList((Class<?>[]) args[0]);
+                calls.add(classes);
+                for (Class<?> clazz : classes) {
+                    if (failing.contains(clazz)) {
+                        throw new UnsupportedOperationException("retransform " + clazz.getName());
+                    }
+                }
+                retransformed.addAll(classes);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 按照类名预匹配从固定的已加载类中检索
+     */
+    private static class NameDataSource implements InvocationHandler {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("findForBatchReTransform".equals(method.getName())) {
+                final Map<Matcher, List<Class<?>>> found = new LinkedHashMap<Matcher, List<Class<?>>>();
+                for (Matcher matcher : (Collection<Matcher>) args[0]) {
+                    found.put(matcher, find(matcher));
+                }
+                return found;
+            }
+            if ("findForReTransform".equals(method.getName()) && args[0] instanceof Matcher) {
+                return find((Matcher) args[0]);
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+
+        private static List<Class<?>> find(Matcher matcher) {
+            final List<Class<?>> classes = new ArrayList<Class<?>>();
+            for (Class<?> clazz : LOADED_CLASSES) {
+                if (matcher.preMatching(clazz.getName())) {
+                    classes.add(clazz);
+                }
+            }
+            return classes;
+        }
+    }
+
+    private static class RecordingProgress implements Progress {
+        private final List<Class<?>> succeed = new ArrayList<Class<?>>();
+        private final List<Class<?>> failed = new ArrayList<Class<?>>();
+        private int total;
+        private boolean finished;
+
+        @Override
+        public void begin(int total) {
+            this.total = total;
+        }
+
+        @Override
+        public void progressOnSuccess(Class<?> clazz, int index) {
+            succeed.add(clazz);
+        }
+
+        @Override
+        public void progressOnFailed(Class<?> clazz, int index, Throwable cause) {
+            failed.add(clazz);
+        }
+
+        @Override
+        public void finish(int cCnt, int mCnt) {
+            finished = true;
+        }
+    }
+}
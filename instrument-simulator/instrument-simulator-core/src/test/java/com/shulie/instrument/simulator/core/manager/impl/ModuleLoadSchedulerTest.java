@@ -0,0 +1,262 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.manager.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.shulie.instrument.simulator.api.ModuleSpec;
+import com.shulie.instrument.simulator.core.classloader.ClassLoaderFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 验证 {@link ModuleLoadScheduler} 按依赖 DAG 调度模块加载
+ */
+public class ModuleLoadSchedulerTest {
+
+    static {
+        System.setProperty("pradar.log.config.type", "xml");
+    }
+
+    @Test(timeout = 10000L)
+    public void testLoadAfterDependencies() {
+        /**
+         * a <- b, a <- c, (b, c) <- d, e 独立，f 依赖本批次之外的模块
+         */
+        List<ModuleSpec> specs = Arrays.asList(
+                spec("a"), spec("b", "a"), spec("c", "a"), spec("d", "b", "c"), spec("e"), spec("f", "other"));
+        RecordingHandler handler = new RecordingHandler();
+        handler.loadDelays.put("a", 50L);
+        handler.loadDelays.put("b", 30L);
+        new ModuleLoadScheduler(4, handler).schedule(specs);
+
+        Assert.assertTrue(handler.errors.toString(), handler.errors.isEmpty());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c", "d", "e", "f")), handler.loaded.keySet());
+        assertBefore(handler.attached, "a", "b");
+        assertBefore(handler.attached, "a", "c");
+        assertBefore(handler.attached, "b", "d");
+        assertBefore(handler.attached, "c", "d");
+    }
+
+    @Test(timeout = 10000L)
+    public void testIndependentModulesLoadInParallel() {
+        final int count = 4;
+        final CountDownLatch allStarted = new CountDownLatch(count);
+        RecordingHandler handler = new RecordingHandler() {
+            @Override
+            void doLoad(ModuleSpec moduleSpec) throws Exception {
+                allStarted.countDown();
+                if (!allStarted.await(5, TimeUnit.SECONDS)) {
+                    errors.add(moduleSpec.getModuleId() + " not loaded in parallel");
+                }
+            }
+        };
+        List<ModuleSpec> specs = new ArrayList<ModuleSpec>();
+        for (int i = 0; i < count; i++) {
+            specs.add(spec("m" + i));
+        }
+        new ModuleLoadScheduler(count, handler).schedule(specs);
+        Assert.assertTrue(handler.errors.toString(), handler.errors.isEmpty());
+        Assert.assertEquals(count, handler.loaded.size());
+    }
+
+    @Test(timeout = 10000L)
+    public void testRegisterInPriorityOrderAndAttachOnScheduleThread() {
+        List<ModuleSpec> specs = Arrays.asList(spec("p0"), spec("p1"), spec("p2"), spec("p3"));
+        RecordingHandler handler = new RecordingHandler();
+        /**
+         * 优先级高的模块准备得更慢，注册顺序仍然与传入顺序一致
+         */
+        handler.prepareDelays.put("p0", 60L);
+        handler.prepareDelays.put("p1", 40L);
+        handler.prepareDelays.put("p2", 20L);
+        new ModuleLoadScheduler(4, handler).schedule(specs);
+
+        Assert.assertEquals(Arrays.asList("p0", "p1", "p2", "p3"), handler.registered);
+        Assert.assertEquals(4, handler.attachThreads.size());
+        for (Thread thread : handler.attachThreads) {
+            Assert.assertSame(Thread.currentThread(), thread);
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void testFailedModulesDoNotBlockDependents() {
+        List<ModuleSpec> specs = Arrays.asList(
+                spec("broken"), spec("unregistered"), spec("failing"), spec("disabled"),
+                spec("x", "broken", "unregistered"), spec("y", "failing"), spec("z", "disabled"));
+        RecordingHandler handler = new RecordingHandler();
+        handler.prepareFailures.add("broken");
+        handler.registerFailures.add("unregistered");
+        handler.loadFailures.add("failing");
+        handler.notReady.add("disabled");
+        new ModuleLoadScheduler(2, handler).schedule(specs);
+
+        Assert.assertFalse(specs.get(0).isValid());
+        Assert.assertFalse(handler.loaded.containsKey("broken"));
+        Assert.assertFalse(handler.loaded.containsKey("unregistered"));
+        Assert.assertFalse(handler.loaded.containsKey("disabled"));
+        Assert.assertTrue(handler.loaded.containsKey("failing"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("x", "y", "z")),
+                intersect(handler.attached, "x", "y", "z"));
+        assertBefore(handler.readyChecked, "disabled", "z");
+        Assert.assertEquals(1, Collections.frequency(handler.readyChecked, "z"));
+    }
+
+    @Test(timeout = 10000L)
+    public void testCircularDependenciesFallBackToSwitch() {
+        List<ModuleSpec> specs = Arrays.asList(
+                spec("c1", "c2"), spec("c2", "c1"), spec("c3", "c1"), spec("free"));
+        RecordingHandler handler = new RecordingHandler();
+        new ModuleLoadScheduler(2, handler).schedule(specs);
+
+        Assert.assertEquals(Collections.singleton("free"), handler.loaded.keySet());
+        Assert.assertTrue(handler.readyChecked.containsAll(Arrays.asList("c1", "c2", "c3")));
+    }
+
+    private static ModuleSpec spec(String moduleId, String... dependencies) {
+        ModuleSpec moduleSpec = new ModuleSpec();
+        moduleSpec.setModuleId(moduleId);
+        moduleSpec.setDependencies(new HashSet<String>(Arrays.asList(dependencies)));
+        return moduleSpec;
+    }
+
+    private static void assertBefore(List<String> order, String first, String second) {
+        int firstIndex = order.indexOf(first);
+        int secondIndex = order.indexOf(second);
+        Assert.assertTrue(first + " missing in " + order, firstIndex >= 0);
+        Assert.assertTrue(second + " missing in " + order, secondIndex >= 0);
+        Assert.assertTrue(first + " should be before " + second + " in " + order, firstIndex < secondIndex);
+    }
+
+    private static Set<String> intersect(List<String> values, String... candidates) {
+        Set<String> result = new HashSet<String>(values);
+        result.retainAll(Arrays.asList(candidates));
+        return result;
+    }
+
+    private static class RecordingHandler implements ModuleLoadScheduler.ModuleLoadHandler {
+        final Map<String, Long> prepareDelays = new HashMap<String, Long>();
+        final Map<String, Long> loadDelays = new HashMap<String, Long>();
+        final Set<String> prepareFailures = new HashSet<String>();
+        final Set<String> registerFailures = new HashSet<String>();
+        final Set<String> loadFailures = new HashSet<String>();
+        final Set<String> notReady = new HashSet<String>();
+
+        final List<String> registered = new CopyOnWriteArrayList<String>();
+        final List<String> readyChecked = new CopyOnWriteArrayList<String>();
+        final List<String> attached = new CopyOnWriteArrayList<String>();
+        final List<Thread> attachThreads = new CopyOnWriteArrayList<Thread>();
+        final List<String> errors = new CopyOnWriteArrayList<String>();
+        /**
+         * 已完成加载的模块
+         */
+        final Map<String, Boolean> loaded = new ConcurrentHashMap<String, Boolean>();
+
+        @Override
+        public ClassLoaderFactory prepare(ModuleSpec moduleSpec) throws Exception {
+            sleep(prepareDelays.get(moduleSpec.getModuleId()));
+            if (prepareFailures.contains(moduleSpec.getModuleId())) {
+                throw new IllegalStateException("prepare " + moduleSpec.getModuleId());
+            }
+            return new ClassLoaderFactory() {
+                @Override
+                public ClassLoader getClassLoader(ClassLoader businessClassLoader) {
+                    return getDefaultClassLoader();
+                }
+
+                @Override
+                public ClassLoader getDefaultClassLoader() {
+                    return ModuleLoadSchedulerTest.class.getClassLoader();
+                }
+
+                @Override
+                public long getChecksumCRC32() {
+                    return 0L;
+                }
+
+                @Override
+                public void release() {
+                }
+            };
+        }
+
+        @Override
+        public boolean register(ModuleSpec moduleSpec, ClassLoaderFactory classLoaderFactory) {
+            if (registerFailures.contains(moduleSpec.getModuleId())) {
+                return false;
+            }
+            registered.add(moduleSpec.getModuleId());
+            return true;
+        }
+
+        @Override
+        public boolean isDependenciesReady(ModuleSpec moduleSpec) {
+            readyChecked.add(moduleSpec.getModuleId());
+            return !notReady.contains(moduleSpec.getModuleId());
+        }
+
+        @Override
+        public void load(final ModuleSpec moduleSpec, ModuleLoadScheduler.Node node) {
+            final String moduleId = moduleSpec.getModuleId();
+            for (String dependency : moduleSpec.getDependencies()) {
+                if (registered.contains(dependency) && !notReady.contains(dependency) && !loaded.containsKey(dependency)) {
+                    errors.add(moduleId + " loaded before " + dependency);
+                }
+            }
+            try {
+                doLoad(moduleSpec);
+                sleep(loadDelays.get(moduleId));
+                if (loadFailures.contains(moduleId)) {
+                    throw new IllegalStateException("load " + moduleId);
+                }
+                node.attach(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        attached.add(moduleId);
+                        attachThreads.add(Thread.currentThread());
+                        return null;
+                    }
+                });
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                errors.add(moduleId + " " + e);
+            } finally {
+                loaded.put(moduleId, Boolean.TRUE);
+            }
+        }
+
+        void doLoad(ModuleSpec moduleSpec) throws Exception {
+        }
+
+        private static void sleep(Long millis) throws InterruptedException {
+            if (millis != null) {
+                Thread.sleep(millis);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.reflect;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import com.shulie.instrument.simulator.api.reflect.FieldAccessor;
+import com.shulie.instrument.simulator.api.reflect.FieldAccessors;
+import com.shulie.instrument.simulator.api.reflect.Reflect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 插件里大量 Reflect.on(obj).get("field") 调用的开销，目标字段声明在父类且为 private，
+ * 需要先 getField 失败再沿父类 getDeclaredField，这是插件中最常见也最慢的情况
+ * <p>
+ * uncachedLookup 还原了改造前 Reflect 的查找方式，每次都会抛出并捕获 NoSuchFieldException；
+ * reflectGet 是插件现在实际走的路径，字段从 {@link FieldAccessors} 的缓存中取出，剩下的是 Reflect 包装对象和缓存查找；
+ * cachedAccessor 由调用方持有 {@link FieldAccessor}，只剩 Field.get 本身。
+ * uncachedMissing 与 cachedMissing 对比字段不存在时的查找，前者会沿整个继承链抛出异常，后者命中缓存的占位
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldAccessBenchmark {
+
+    private static final String FIELD_NAME = "name";
+
+    private static final String MISSING_FIELD_NAME = "missing";
+
+    private Target target;
+
+    private FieldAccessor accessor;
+
+    @Setup
+    public void setup() {
+        target = new Target("simulator");
+        accessor = FieldAccessors.get(Target.class, FIELD_NAME);
+    }
+
+    @Benchmark
+    public Object uncachedLookup() throws Exception {
+        return lookup(target.getClass(), FIELD_NAME).get(target);
+    }
+
+    @Benchmark
+    public Object reflectGet() {
+        return Reflect.on(target).get(FIELD_NAME);
+    }
+
+    @Benchmark
+    public Object cachedAccessor() {
+        return accessor.get(target);
+    }
+
+    @Benchmark
+    public Object uncachedMissing() {
+        return lookup(target.getClass(), MISSING_FIELD_NAME);
+    }
+
+    @Benchmark
+    public Object cachedMissing() {
+        return FieldAccessors.find(target.getClass(), MISSING_FIELD_NAME);
+    }
+
+    /**
+     * 与原先 Reflect.field0 一致的查找方式
+     */
+    private static Field lookup(Class<?> type, String name) {
+        try {
+            return type.getField(name);
+        } catch (NoSuchFieldException e) {
+            do {
+                try {
+                    Field field = type.getDeclaredField(name);
+                    field.setAccessible(true);
+                    return field;
+                } catch (NoSuchFieldException ignore) {
+                }
+                type = type.getSuperclass();
+            } while (type != null);
+            return null;
+        }
+    }
+
+    private static class Base {
+        private final String name;
+
+        Base(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Target extends Base {
+        private int count;
+
+        Target(String name) {
+            super(name);
+        }
+    }
+}
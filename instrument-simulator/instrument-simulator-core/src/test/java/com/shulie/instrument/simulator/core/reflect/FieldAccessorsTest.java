@@ -0,0 +1,137 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.reflect;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+
+import com.shulie.instrument.simulator.api.reflect.FieldAccessor;
+import com.shulie.instrument.simulator.api.reflect.FieldAccessors;
+import com.shulie.instrument.simulator.api.reflect.ReflectException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 验证 {@link FieldAccessors} 的查找、缓存以及不阻止业务类卸载
+ */
+public class FieldAccessorsTest {
+
+    static {
+        System.setProperty("pradar.log.config.type", "xml");
+    }
+
+    @Test
+    public void testFindFields() {
+        Child child = new Child();
+        FieldAccessor publicField = FieldAccessors.get(Child.class, "publicValue");
+        FieldAccessor privateField = FieldAccessors.get(Child.class, "privateValue");
+        FieldAccessor staticField = FieldAccessors.get(Child.class, "STATIC_VALUE");
+        Assert.assertSame(publicField, FieldAccessors.get(Child.class, "publicValue"));
+        Assert.assertEquals("public", publicField.get(child));
+        Assert.assertEquals("private", privateField.get(child));
+        Assert.assertEquals("static", staticField.get(null));
+        Assert.assertTrue(staticField.isStatic());
+
+        privateField.set(child, "changed");
+        Assert.assertEquals("changed", privateField.get(child));
+        Assert.assertEquals(Parent.class, privateField.getField().getDeclaringClass());
+
+        Assert.assertNull(FieldAccessors.find(Child.class, "missing"));
+        Assert.assertNull(FieldAccessors.find(Child.class, "missing"));
+        try {
+            FieldAccessors.get(Child.class, "missing");
+            Assert.fail();
+        } catch (ReflectException e) {
+            Assert.assertTrue(e.getCause() instanceof NoSuchFieldException);
+        }
+    }
+
+    @Test
+    public void testAccessAfterGc() {
+        Child child = new Child();
+        FieldAccessor accessor = FieldAccessors.get(Child.class, "privateValue");
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        /**
+         * 缓存只弱引用 Field，被回收后重新从声明类取出
+         */
+        Assert.assertEquals("private", accessor.get(child));
+        accessor.set(child, "changed");
+        Assert.assertEquals("changed", accessor.get(child));
+        Assert.assertEquals("privateValue", accessor.getField().getName());
+    }
+
+    @Test(timeout = 30000L)
+    public void testCacheDoesNotPinClassLoader() throws Exception {
+        WeakReference<ClassLoader> loaderRef = accessInIsolatedLoader();
+        for (int i = 0; i < 100 && loaderRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10L);
+        }
+        Assert.assertNull("class loader is still reachable from the accessor cache", loaderRef.get());
+        /**
+         * 触发过期 key 的清理，之后仍然可以正常使用
+         */
+        FieldAccessors.get(FieldAccessorsTest.class, "loaded");
+        Assert.assertEquals("public", FieldAccessors.get(Child.class, "publicValue").get(new Child()));
+    }
+
+    private static WeakReference<ClassLoader> accessInIsolatedLoader() throws Exception {
+        IsolatedLoader loader = new IsolatedLoader();
+        Class<?> type = loader.define(Parent.class.getName());
+        Assert.assertNotSame(Parent.class, type);
+        Object target = type.newInstance();
+        Assert.assertEquals("private", FieldAccessors.get(type, "privateValue").get(target));
+        Assert.assertNull(FieldAccessors.find(type, "missing"));
+        return new WeakReference<ClassLoader>(loader);
+    }
+
+    private Object loaded;
+
+    public static class Parent {
+        private String privateValue = "private";
+    }
+
+    public static class Child extends Parent {
+        public static String STATIC_VALUE = "static";
+        public String publicValue = "public";
+    }
+
+    private static class IsolatedLoader extends ClassLoader {
+
+        IsolatedLoader() {
+            super(FieldAccessorsTest.class.getClassLoader());
+        }
+
+        Class<?> define(String name) throws IOException {
+            InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+                byte[] bytes = out.toByteArray();
+                return defineClass(name, bytes, 0, bytes.length);
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
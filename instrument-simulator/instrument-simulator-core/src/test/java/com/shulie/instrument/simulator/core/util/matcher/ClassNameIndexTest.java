@@ -0,0 +1,235 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.core.util.matcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.shulie.instrument.simulator.api.filter.ClassDescriptor;
+import com.shulie.instrument.simulator.api.filter.ClassNamePatterns;
+import com.shulie.instrument.simulator.api.filter.ExtFilter;
+import com.shulie.instrument.simulator.api.filter.MethodDescriptor;
+import com.shulie.instrument.simulator.api.listener.ext.BuildingForListeners;
+import com.shulie.instrument.simulator.api.listener.ext.PatternType;
+import com.shulie.instrument.simulator.api.util.StringUtil;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 类名索引的查找结果必须覆盖所有类名预匹配通过的匹配器
+ */
+public class ClassNameIndexTest {
+
+    static {
+        System.setProperty("pradar.log.config.type", "xml");
+    }
+
+    private static final String[] CLASS_NAMES = {
+            "com.mysql.jdbc.PreparedStatement",
+            "com.mysql.jdbc.ConnectionImpl",
+            "com.mysql.cj.jdbc.ClientPreparedStatement",
+            "org.apache.http.impl.client.CloseableHttpClient",
+            "org.apache.http.impl.client.InternalHttpClient",
+            "org.apache.kafka.clients.producer.KafkaProducer",
+            "redis.clients.jedis.Jedis",
+            "redis.clients.jedis.BinaryJedis",
+            "java.lang.Thread",
+            "java.util.concurrent.ThreadPoolExecutor",
+            "com",
+            "",
+            "org.springframework.web.servlet.DispatcherServlet"
+    };
+
+    private ClassNameIndex<Matcher> index;
+    private List<Matcher> matchers;
+
+    @Before
+    public void setup() {
+        index = new ClassNameIndex<Matcher>();
+        matchers = new ArrayList<Matcher>();
+        register(wildcard("com.mysql.jdbc.PreparedStatement"));
+        register(wildcard("org.apache.http.impl.client.*HttpClient"));
+        register(wildcard("redis.clients.jedis.?edis"));
+        register(wildcard("*Thread*"));
+        register(regex("com\\.mysql\\.cj\\.jdbc\\..*Statement"));
+        register(regex("^java\\.util\\.concurrent\\.ThreadPoolExecutor$"));
+        register(regex("org\\.apache\\.kafka\\.clients\\.producers?\\..*"));
+        register(regex("com\\.mysql\\.jdbc\\.(ConnectionImpl|JDBC4Connection)"));
+        register(regex("redis\\.clients\\.jedis\\.Jedis|redis\\.clients\\.jedis\\.BinaryJedis"));
+        register(new GroupMatcher.Or(wildcard("org.springframework.web.servlet.DispatcherServlet"),
+                regex("org\\.apache\\.kafka\\..*")));
+        register(new GroupMatcher.Or(wildcard("java.lang.Thread"), new ExtFilterMatcher(new NamedFilter("java.lang.Thread"))));
+    }
+
+    @Test
+    public void findCoversPreMatching() {
+        for (final String className : CLASS_NAMES) {
+            final Set<Matcher> found = find(className);
+            for (final Matcher matcher : matchers) {
+                if (matcher.preMatching(className)) {
+                    Assert.assertTrue(className + " must be found", found.contains(matcher));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void exactlyNameIsNotPrefix() {
+        final Matcher exactly = matchers.get(0);
+        Assert.assertTrue(find("com.mysql.jdbc.PreparedStatement").contains(exactly));
+        Assert.assertFalse(find("com.mysql.jdbc.PreparedStatementWrapper").contains(exactly));
+        Assert.assertFalse(find("com.mysql.jdbc.Prepared").contains(exactly));
+    }
+
+    @Test
+    public void prefixNarrowsCandidates() {
+        final Matcher httpClient = matchers.get(1);
+        Assert.assertTrue(find("org.apache.http.impl.client.MinimalHttpClient").contains(httpClient));
+        Assert.assertFalse(find("org.apache.http.impl.conn.PoolingHttpClientConnectionManager").contains(httpClient));
+        Assert.assertFalse(find("com.mysql.jdbc.PreparedStatement").contains(httpClient));
+    }
+
+    @Test
+    public void unindexedAlwaysFound() {
+        final Matcher branch = matchers.get(8);
+        final Matcher unknownFilter = matchers.get(10);
+        Assert.assertTrue(find("any.Other").contains(branch));
+        Assert.assertTrue(find("any.Other").contains(unknownFilter));
+        Assert.assertTrue(find("").contains(branch));
+    }
+
+    @Test
+    public void removeAll() {
+        for (final Matcher matcher : matchers) {
+            Assert.assertFalse(index.isEmpty());
+            index.remove(matcher);
+            for (final String className : CLASS_NAMES) {
+                Assert.assertFalse(find(className).contains(matcher));
+            }
+        }
+        Assert.assertTrue(index.isEmpty());
+        for (final String className : CLASS_NAMES) {
+            Assert.assertTrue(find(className).isEmpty());
+        }
+    }
+
+    @Test
+    public void addTwiceIndexedOnce() {
+        final Matcher exactly = matchers.get(0);
+        index.add(exactly, exactly);
+        final List<Matcher> found = new ArrayList<Matcher>();
+        index.find("com.mysql.jdbc.PreparedStatement", found);
+        Assert.assertEquals(1, Collections.frequency(found, exactly));
+        index.remove(exactly);
+        found.clear();
+        index.find("com.mysql.jdbc.PreparedStatement", found);
+        Assert.assertFalse(found.contains(exactly));
+    }
+
+    private void register(final Matcher matcher) {
+        matchers.add(matcher);
+        index.add(matcher, matcher);
+    }
+
+    private Set<Matcher> find(final String className) {
+        final List<Matcher> found = new ArrayList<Matcher>();
+        index.find(className, found);
+        return new HashSet<Matcher>(found);
+    }
+
+    private static Matcher wildcard(final String pattern) {
+        return new ExtFilterMatcher(new PatternFilter(pattern, PatternType.WILDCARD));
+    }
+
+    private static Matcher regex(final String pattern) {
+        return new ExtFilterMatcher(new PatternFilter(pattern, PatternType.REGEX));
+    }
+
+    /**
+     * 不给出匹配模式的过滤器
+     */
+    private static class NamedFilter implements ExtFilter {
+        private final String javaClassName;
+
+        NamedFilter(final String javaClassName) {
+            this.javaClassName = javaClassName;
+        }
+
+        @Override
+        public boolean isIncludeSubClasses() {
+            return false;
+        }
+
+        @Override
+        public boolean isIncludeBootstrap() {
+            return false;
+        }
+
+        @Override
+        public boolean doClassNameFilter(final String javaClassName) {
+            return this.javaClassName.equals(javaClassName);
+        }
+
+        @Override
+        public boolean doClassFilter(final ClassDescriptor classDescriptor) {
+            return true;
+        }
+
+        @Override
+        public List<BuildingForListeners> doMethodFilter(final MethodDescriptor methodDescriptor) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<BuildingForListeners> getAllListeners() {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 与 ClassMatchBuilder 相同的匹配方式
+     */
+    private static class PatternFilter extends NamedFilter implements ClassNamePatterns {
+        private final String pattern;
+        private final int patternType;
+
+        PatternFilter(final String pattern, final int patternType) {
+            super(pattern);
+            this.pattern = pattern;
+            this.patternType = patternType;
+        }
+
+        @Override
+        public String[] getClassNamePatterns() {
+            return new String[]{pattern};
+        }
+
+        @Override
+        public int getClassNamePatternType() {
+            return patternType;
+        }
+
+        @Override
+        public boolean doClassNameFilter(final String javaClassName) {
+            return patternType == PatternType.WILDCARD
+                    ? StringUtil.matching(javaClassName, pattern)
+                    : javaClassName.matches(pattern);
+        }
+    }
+}
@@ -33,6 +33,8 @@ public class Messager {
 
     // 全局序列
     private static final AtomicInteger sequenceRef = new AtomicInteger(1000);
+    // 全局监听器ID序列
+    private static final AtomicInteger listenerIdRef = new AtomicInteger(0);
     /**
      * 控制Messager是否在发生异常时主动对外抛出
      * T:主动对外抛出，会中断方法
@@ -141,6 +143,17 @@ public class Messager {
         return sequenceRef.getAndIncrement();
     }
 
+    /**
+     * 生成全局唯一的监听器ID
+     * 与 {@link #nextSequence()} 相同，需要规避不同命名空间之间的冲突，监听器ID从0开始连续分配。
+     * 监听器ID会被植入到字节码中，监听器冻结后仍然可能重新激活，所以不会回收，不能直接作为数组下标使用
+     *
+     * @return 全局自增的监听器ID
+     */
+    public static int nextListenerId() {
+        return listenerIdRef.getAndIncrement();
+    }
+
     public static void invokeOnCallBefore(final int lineNumber,
                                           final boolean isInterface,
                                           final String owner,
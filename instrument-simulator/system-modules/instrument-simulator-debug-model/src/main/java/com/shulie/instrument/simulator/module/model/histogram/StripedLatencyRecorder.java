@@ -0,0 +1,161 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.module.model.histogram;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 分段累加的耗时记录器
+ * <p>
+ * 按照线程ID把记录分散到多个分段上，每个分段持有独立的计数和 {@link LatencyHistogram}，
+ * 业务线程只会锁住自己所在的分段，读取时再把所有分段合并，避免热点方法上的 CAS 竞争和对象分配
+ * <p>
+ * 分段在第一次有线程落到上面记录时才创建，只有单个线程调用的方法只会持有一个分段
+ */
+public class StripedLatencyRecorder {
+
+    private final static int MAX_STRIPES = 16;
+
+    private final AtomicReferenceArray<Stripe> stripes;
+    private final int mask;
+
+    public StripedLatencyRecorder() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    StripedLatencyRecorder(int expectStripes) {
+        int size = 1;
+        int expect = Math.min(MAX_STRIPES, expectStripes);
+        while (size < expect) {
+            size <<= 1;
+        }
+        this.stripes = new AtomicReferenceArray<Stripe>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * 记录一次调用
+     *
+     * @param cost    耗时
+     * @param success 是否成功
+     */
+    public void record(long cost, boolean success) {
+        final Stripe stripe = getOrCreateStripe((int) (Thread.currentThread().getId() & mask));
+        synchronized (stripe) {
+            stripe.histogram.record(cost);
+            if (success) {
+                stripe.success++;
+            } else {
+                stripe.fail++;
+            }
+        }
+    }
+
+    /**
+     * 合并所有分段的数据
+     *
+     * @return 数据快照
+     */
+    public Snapshot snapshot() {
+        final Snapshot snapshot = new Snapshot();
+        for (int i = 0; i < stripes.length(); i++) {
+            final Stripe stripe = stripes.get(i);
+            if (stripe == null) {
+                continue;
+            }
+            synchronized (stripe) {
+                snapshot.histogram.merge(stripe.histogram);
+                snapshot.success += stripe.success;
+                snapshot.fail += stripe.fail;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 清空所有分段的数据
+     */
+    public void reset() {
+        for (int i = 0; i < stripes.length(); i++) {
+            final Stripe stripe = stripes.get(i);
+            if (stripe == null) {
+                continue;
+            }
+            synchronized (stripe) {
+                stripe.histogram.reset();
+                stripe.success = 0;
+                stripe.fail = 0;
+            }
+        }
+    }
+
+    /**
+     * 已经创建的分段数
+     *
+     * @return 分段数
+     */
+    int getAllocatedStripes() {
+        int allocated = 0;
+        for (int i = 0; i < stripes.length(); i++) {
+            if (stripes.get(i) != null) {
+                allocated++;
+            }
+        }
+        return allocated;
+    }
+
+    private Stripe getOrCreateStripe(int index) {
+        Stripe stripe = stripes.get(index);
+        if (stripe != null) {
+            return stripe;
+        }
+        stripe = new Stripe();
+        if (stripes.compareAndSet(index, null, stripe)) {
+            return stripe;
+        }
+        return stripes.get(index);
+    }
+
+    private final static class Stripe {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private long success;
+        private long fail;
+    }
+
+    /**
+     * 记录器的数据快照
+     */
+    public final static class Snapshot {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private long success;
+        private long fail;
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        public long getSuccess() {
+            return success;
+        }
+
+        public long getFail() {
+            return fail;
+        }
+
+        public long getCount() {
+            return success + fail;
+        }
+    }
+}
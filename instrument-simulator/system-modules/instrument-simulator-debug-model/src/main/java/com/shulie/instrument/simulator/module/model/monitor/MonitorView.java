@@ -48,6 +48,26 @@ public class MonitorView implements Serializable {
      */
     private long minCost;
 
+    /**
+     * 50分位耗时
+     */
+    private long p50Cost;
+
+    /**
+     * 90分位耗时
+     */
+    private long p90Cost;
+
+    /**
+     * 99分位耗时
+     */
+    private long p99Cost;
+
+    /**
+     * 99.9分位耗时
+     */
+    private long p999Cost;
+
     /**
      * 统计条数
      */
@@ -154,6 +174,38 @@ public class MonitorView implements Serializable {
         this.minCost = minCost;
     }
 
+    public long getP50Cost() {
+        return p50Cost;
+    }
+
+    public void setP50Cost(long p50Cost) {
+        this.p50Cost = p50Cost;
+    }
+
+    public long getP90Cost() {
+        return p90Cost;
+    }
+
+    public void setP90Cost(long p90Cost) {
+        this.p90Cost = p90Cost;
+    }
+
+    public long getP99Cost() {
+        return p99Cost;
+    }
+
+    public void setP99Cost(long p99Cost) {
+        this.p99Cost = p99Cost;
+    }
+
+    public long getP999Cost() {
+        return p999Cost;
+    }
+
+    public void setP999Cost(long p999Cost) {
+        this.p999Cost = p999Cost;
+    }
+
     public long getCount() {
         return count;
     }
@@ -181,7 +233,7 @@ public class MonitorView implements Serializable {
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
-        builder.append("class\tmethod\ttotal\tsuccess\tfail\tmaxCost\tminCost\tavgCost\n");
+        builder.append("class\tmethod\ttotal\tsuccess\tfail\tmaxCost\tminCost\tavgCost\tp50\tp90\tp99\tp999\n");
         builder.append(className)
                 .append('\t').append(methodName)
                 .append('\t').append(count)
@@ -189,7 +241,11 @@ public class MonitorView implements Serializable {
                 .append('\t').append(fail)
                 .append('\t').append(maxCost / 1000000).append("ms")
                 .append('\t').append(minCost / 1000000).append("ms")
-                .append('\t').append(avgCost / 1000000).append("ms");
+                .append('\t').append(avgCost / 1000000).append("ms")
+                .append('\t').append(p50Cost / 1000000).append("ms")
+                .append('\t').append(p90Cost / 1000000).append("ms")
+                .append('\t').append(p99Cost / 1000000).append("ms")
+                .append('\t').append(p999Cost / 1000000).append("ms");
         return builder.toString();
     }
 }
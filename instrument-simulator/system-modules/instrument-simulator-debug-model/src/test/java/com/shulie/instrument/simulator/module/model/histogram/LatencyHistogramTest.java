@@ -0,0 +1,147 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.module.model.histogram;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 校验 {@link LatencyHistogram} 的分桶边界和百分位计算
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testLinearBuckets() {
+        for (long value = 0; value < 32; value++) {
+            Assert.assertEquals(value, LatencyHistogram.indexOf(value));
+            Assert.assertEquals(value, LatencyHistogram.highestValueAt((int) value));
+        }
+        Assert.assertEquals(32, LatencyHistogram.indexOf(32));
+        Assert.assertEquals(32, LatencyHistogram.indexOf(33));
+        Assert.assertEquals(33, LatencyHistogram.indexOf(34));
+        Assert.assertEquals(33, LatencyHistogram.highestValueAt(32));
+    }
+
+    /**
+     * 每个子桶的下界落在新桶上，下界减一落在前一个桶并且正好是前一个桶的上界
+     */
+    @Test
+    public void testSubBucketBoundaries() {
+        int previous = LatencyHistogram.indexOf(31);
+        for (int shift = 1; shift <= 58; shift++) {
+            for (long subBucket = 16; subBucket < 32; subBucket++) {
+                final long lower = subBucket << shift;
+                final int index = LatencyHistogram.indexOf(lower);
+                Assert.assertEquals(lower + "", previous + 1, index);
+                Assert.assertEquals(lower + "", index - 1, LatencyHistogram.indexOf(lower - 1));
+                Assert.assertEquals(lower + "", lower - 1, LatencyHistogram.highestValueAt(index - 1));
+                Assert.assertEquals(lower + "", index, LatencyHistogram.indexOf(lower + 1));
+                final long highest = LatencyHistogram.highestValueAt(index);
+                Assert.assertEquals(lower + "", index, LatencyHistogram.indexOf(highest));
+                Assert.assertTrue(lower + "", highest - lower < (lower >>> 4));
+                previous = index;
+            }
+        }
+    }
+
+    @Test
+    public void testZeroAndMaxValue() {
+        Assert.assertEquals(0, LatencyHistogram.indexOf(0));
+        final int maxIndex = LatencyHistogram.indexOf(Long.MAX_VALUE);
+        Assert.assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueAt(maxIndex));
+        Assert.assertEquals(maxIndex, LatencyHistogram.indexOf(Long.MAX_VALUE - 1));
+
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        Assert.assertEquals(3, histogram.getTotalCount());
+        Assert.assertEquals(0, histogram.getMin());
+        Assert.assertEquals(Long.MAX_VALUE, histogram.getMax());
+        Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testEmpty() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(0, histogram.getMin());
+        Assert.assertEquals(0, histogram.getMax());
+        Assert.assertEquals(0, histogram.getAvg());
+    }
+
+    @Test
+    public void testUniformDistribution() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        Assert.assertEquals(51, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(99, histogram.getValueAtPercentile(99));
+        Assert.assertEquals(100, histogram.getValueAtPercentile(100));
+        Assert.assertEquals(1, histogram.getValueAtPercentile(0));
+        Assert.assertEquals(50, histogram.getAvg());
+
+        histogram.reset();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        Assert.assertEquals(511, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(991, histogram.getValueAtPercentile(99));
+        Assert.assertEquals(1000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testSkewedDistribution() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1);
+        }
+        histogram.record(10000);
+        Assert.assertEquals(1, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(1, histogram.getValueAtPercentile(99));
+        Assert.assertEquals(10000, histogram.getValueAtPercentile(99.9));
+        Assert.assertEquals(10000, histogram.getValueAtPercentile(100));
+
+        histogram.reset();
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(7000);
+        }
+        Assert.assertEquals(7000, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(7000, histogram.getValueAtPercentile(99));
+        Assert.assertEquals(7000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testMerge() {
+        final LatencyHistogram low = new LatencyHistogram();
+        final LatencyHistogram high = new LatencyHistogram();
+        for (long value = 1; value <= 50; value++) {
+            low.record(value);
+            high.record(value + 50);
+        }
+        low.merge(high);
+        low.merge(new LatencyHistogram());
+        low.merge(null);
+        Assert.assertEquals(100, low.getTotalCount());
+        Assert.assertEquals(5050, low.getSum());
+        Assert.assertEquals(1, low.getMin());
+        Assert.assertEquals(100, low.getMax());
+        Assert.assertEquals(51, low.getValueAtPercentile(50));
+        Assert.assertEquals(99, low.getValueAtPercentile(99));
+        Assert.assertEquals(100, low.getValueAtPercentile(100));
+    }
+}
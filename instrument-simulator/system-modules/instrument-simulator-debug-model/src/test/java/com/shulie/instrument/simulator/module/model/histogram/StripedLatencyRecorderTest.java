@@ -0,0 +1,94 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.module.model.histogram;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 校验 {@link StripedLatencyRecorder} 的分段按需创建以及合并结果
+ */
+public class StripedLatencyRecorderTest {
+
+    @Test
+    public void testStripeAllocatedOnRecord() {
+        final StripedLatencyRecorder recorder = new StripedLatencyRecorder(16);
+        Assert.assertEquals(0, recorder.getAllocatedStripes());
+        Assert.assertEquals(0, recorder.snapshot().getCount());
+        recorder.reset();
+
+        for (int i = 0; i < 100; i++) {
+            recorder.record(i, true);
+        }
+        Assert.assertEquals(1, recorder.getAllocatedStripes());
+    }
+
+    @Test
+    public void testMergeStripes() throws InterruptedException {
+        final int threads = 8;
+        final int perThread = 1000;
+        final StripedLatencyRecorder recorder = new StripedLatencyRecorder(16);
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long base = t * perThread;
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 1; i <= perThread; i++) {
+                        recorder.record(base + i, i % 10 != 0);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        Assert.assertTrue(recorder.getAllocatedStripes() >= 1);
+        Assert.assertTrue(recorder.getAllocatedStripes() <= threads);
+        final StripedLatencyRecorder.Snapshot snapshot = recorder.snapshot();
+        final long total = threads * perThread;
+        Assert.assertEquals(total, snapshot.getCount());
+        Assert.assertEquals(total / 10, snapshot.getFail());
+        Assert.assertEquals(total - total / 10, snapshot.getSuccess());
+
+        final LatencyHistogram expected = new LatencyHistogram();
+        for (long value = 1; value <= total; value++) {
+            expected.record(value);
+        }
+        final LatencyHistogram merged = snapshot.getHistogram();
+        Assert.assertEquals(expected.getTotalCount(), merged.getTotalCount());
+        Assert.assertEquals(expected.getSum(), merged.getSum());
+        Assert.assertEquals(1, merged.getMin());
+        Assert.assertEquals(total, merged.getMax());
+        for (double percentile : new double[] {50, 90, 99, 99.9, 100}) {
+            Assert.assertEquals(expected.getValueAtPercentile(percentile), merged.getValueAtPercentile(percentile));
+        }
+
+        recorder.reset();
+        Assert.assertEquals(0, recorder.snapshot().getCount());
+        Assert.assertEquals(0, recorder.snapshot().getHistogram().getTotalCount());
+    }
+}
@@ -16,6 +16,7 @@ package com.shulie.instrument.simulator.module.mgr;
 
 import com.shulie.instrument.simulator.api.*;
 import com.shulie.instrument.simulator.api.annotation.Command;
+import com.shulie.instrument.simulator.api.obj.ModuleAttachInfo;
 import com.shulie.instrument.simulator.api.resource.ModuleManager;
 import com.shulie.instrument.simulator.module.mgr.model.ModuleInf;
 import org.kohsuke.MetaInfServices;
@@ -27,6 +28,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -110,6 +112,31 @@ public class ModuleManagementModule implements ExtensionModule {
         }
     }
 
+    @Command(value = "attach", description = "模块挂载统计")
+    public CommandResponse attach(final Map<String, String> param) {
+        final String moduleId = getParamWithDefault(param, "moduleId", "*");
+        try {
+            List<ModuleAttachInfo> attachInfoList = new ArrayList<ModuleAttachInfo>();
+            long totalAttachTimeMillis = 0;
+            for (final ModuleSpec moduleSpec : searchByModuleId(moduleId)) {
+                try {
+                    ModuleAttachInfo attachInfo = moduleManager.getAttachInfo(moduleSpec.getModuleId());
+                    totalAttachTimeMillis += attachInfo.getAttachTimeMillis();
+                    attachInfoList.add(attachInfo);
+                } catch (ModuleException me) {
+                    logger.warn("SIMULATOR: get attach info of module[id={};] occur error={}.", me.getModuleId(), me.getErrorCode(), me);
+                }
+            }
+            Map<String, Object> result = new HashMap<String, Object>();
+            result.put("totalAttachTimeMillis", totalAttachTimeMillis);
+            result.put("modules", attachInfoList);
+            return CommandResponse.success(result);
+        } catch (Throwable e) {
+            logger.error("SIMULATOR: module management attach err. moduleId:{}", moduleId, e);
+            return CommandResponse.failure(e);
+        }
+    }
+
     @Command(value = "flush", description = "刷新模块")
     public CommandResponse flush(final Map<String, String> param) throws ModuleException {
         try {
@@ -16,27 +16,15 @@ package com.shulie.instrument.simulator.module.monitor;
 
 import com.shulie.instrument.simulator.api.listener.ext.Advice;
 import com.shulie.instrument.simulator.api.listener.ext.AdviceListener;
-import com.shulie.instrument.simulator.module.model.monitor.MonitorView;
 import com.shulie.instrument.simulator.module.util.ThreadLocalWatch;
 
-import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicReference;
-
 public class MonitorListener extends AdviceListener {
     // 监控数据
-    private ConcurrentHashMap<Key, AtomicReference<MonitorView>> monitorData = new ConcurrentHashMap<Key, AtomicReference<MonitorView>>();
+    private final MonitorStatistics statistics;
     private final ThreadLocalWatch threadLocalWatch = new ThreadLocalWatch();
-    private int limits;
-    private CountDownLatch latch;
-    private Queue<MonitorView> views;
 
-    public MonitorListener(CountDownLatch latch, Queue<MonitorView> views, int limits) {
-        this.latch = latch;
-        this.views = views;
-        this.limits = limits;
+    public MonitorListener(MonitorStatistics statistics) {
+        this.statistics = statistics;
     }
 
     @Override
@@ -57,103 +45,6 @@ public class MonitorListener extends AdviceListener {
 
     private void finishing(Advice advice) {
         long cost = threadLocalWatch.cost();
-        final Key key = new Key(advice.getTargetClass().getName(), advice.getBehavior().getName());
-
-        while (true) {
-            AtomicReference<MonitorView> value = monitorData.get(key);
-            if (null == value) {
-                MonitorView monitorView = new MonitorView();
-                monitorView.setClassName(advice.getTargetClass().getName());
-                monitorView.setMethodName(advice.getBehavior().getName());
-                monitorData.putIfAbsent(key, new AtomicReference<MonitorView>(monitorView));
-                continue;
-            }
-
-            while (true) {
-                MonitorView oData = value.get();
-                MonitorView nData = new MonitorView();
-                if (advice.getThrowable() != null) {
-                    nData.fail(oData, cost);
-                } else {
-                    nData.success(oData, cost);
-                }
-                if (value.compareAndSet(oData, nData)) {
-                    break;
-                }
-            }
-            break;
-        }
-        long total = 0;
-        for (Map.Entry<Key, AtomicReference<MonitorView>> entry : monitorData.entrySet()) {
-            AtomicReference<MonitorView> reference = entry.getValue();
-            if (reference.get() == null) {
-                continue;
-            }
-            MonitorView monitorView = reference.get();
-            total += monitorView.getCount();
-        }
-        if (limits != -1 && total >= limits) {
-            for (Map.Entry<Key, AtomicReference<MonitorView>> entry : monitorData.entrySet()) {
-                AtomicReference<MonitorView> reference = entry.getValue();
-                if (reference.get() == null) {
-                    continue;
-                }
-                MonitorView monitorView = reference.get();
-                views.add(monitorView);
-            }
-            if (latch != null) {
-                latch.countDown();
-                monitorData.clear();
-            }
-        }
-    }
-
-    /**
-     * 数据监控用的Key
-     *
-     * @author vlinux
-     */
-    private static class Key {
-        private final String className;
-        private final String methodName;
-
-        Key(String className, String behaviorName) {
-            this.className = className;
-            this.methodName = behaviorName;
-        }
-
-        public String getClassName() {
-            return className;
-        }
-
-        public String getMethodName() {
-            return methodName;
-        }
-
-        @Override
-        public int hashCode() {
-            return className.hashCode() + methodName.hashCode();
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (null == obj
-                    || !(obj instanceof Key)) {
-                return false;
-            }
-            Key okey = (Key) obj;
-            return isEquals(okey.className, className) && isEquals(okey.methodName, methodName);
-        }
-
-        private boolean isEquals(String o1, String o2) {
-            if (o1 == null && o2 == null) {
-                return true;
-            }
-            if ((o1 == null && o2 != null) || (o1 != null && o2 == null)) {
-                return false;
-            }
-            return o1.equals(o2);
-        }
-
+        statistics.record(advice.getTargetClass(), advice.getBehaviorName(), cost, advice.getThrowable() == null);
     }
 }
@@ -31,8 +31,6 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Resource;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -59,6 +57,10 @@ public class MonitorModule extends ParamSupported implements ExtensionModule {
          * 条数限定
          */
         final int limits = ParameterUtils.getInt(args, "limits", 100);
+        /**
+         * 监控数据的发布间隔(毫秒)
+         */
+        final int interval = Math.max(ParameterUtils.getInt(args, "interval", 1000), 100);
 
         if (StringUtil.isEmpty(classPattern)) {
             return CommandResponse.failure("class must not be empty.");
@@ -76,20 +78,31 @@ public class MonitorModule extends ParamSupported implements ExtensionModule {
 
             final CountDownLatch latch = new CountDownLatch(1);
 
-            Queue<Object> traceViews = new ConcurrentLinkedQueue<Object>();
+            final MonitorStatistics statistics = new MonitorStatistics(latch, wait != -1 ? -1 : limits);
             watcher = new EventWatchBuilder(moduleEventWatcher)
                     .onClass(classPattern).includeSubClasses()
                     .onBehavior(methodPattern)
                     .withInvoke().withCall()
-                    .onListener(Listeners.of(MonitorListener.class, new Object[]{latch, traceViews, wait != -1 ? -1 : limits}))
+                    .onListener(Listeners.of(MonitorListener.class, new Object[]{statistics}))
                     .onClass().onWatch();
 
+            /**
+             * 监控数据按照固定的间隔汇总发布，而不是每次调用时汇总
+             */
             if (wait > 0) {
-                latch.await(wait, TimeUnit.SECONDS);
+                final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(wait);
+                long remaining;
+                while ((remaining = deadline - System.currentTimeMillis()) > 0
+                        && !latch.await(Math.min(interval, remaining), TimeUnit.MILLISECONDS)) {
+                    statistics.publish();
+                }
             } else if (limits > 0) {
-                latch.await();
+                while (!latch.await(interval, TimeUnit.MILLISECONDS)) {
+                    statistics.publish();
+                }
             }
-            return CommandResponse.success(traceViews);
+            statistics.publish();
+            return CommandResponse.success(statistics.getViews());
         } catch (Throwable e) {
             logger.error("SIMULATOR: monitor module err! class={}, method={}, limits={}, wait={}",
                     classPattern, methodPattern, limits, wait, e);
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2021 Shulie Technology, Co.Ltd
+ * Email: shulie@shulie.io
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shulie.instrument.simulator.module.monitor;
+
+import com.shulie.instrument.simulator.module.model.histogram.LatencyHistogram;
+import com.shulie.instrument.simulator.module.model.histogram.StripedLatencyRecorder;
+import com.shulie.instrument.simulator.module.model.monitor.MonitorView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 监控数据统计
+ * <p>
+ * 业务线程只负责把耗时记录到方法对应的 {@link StripedLatencyRecorder} 上，
+ * 监控结果由命令线程按照固定的时间间隔汇总发布，条数限定只使用一个计数器判断
+ */
+public class MonitorStatistics {
+
+    /**
+     * 类 -> 方法名 -> 耗时记录器，查找时不需要创建 Key 对象
+     */
+    private final ConcurrentHashMap<Class, ConcurrentHashMap<String, StripedLatencyRecorder>> recorders = new ConcurrentHashMap<Class, ConcurrentHashMap<String, StripedLatencyRecorder>>();
+    private final AtomicLong total = new AtomicLong();
+    private final int limits;
+    private final CountDownLatch latch;
+    private volatile List<MonitorView> views = Collections.emptyList();
+
+    public MonitorStatistics(CountDownLatch latch, int limits) {
+        this.latch = latch;
+        this.limits = limits;
+    }
+
+    /**
+     * 记录一次方法调用，达到条数限定后不再记录
+     *
+     * @param clazz      类
+     * @param methodName 方法名称
+     * @param cost       耗时
+     * @param success    是否成功
+     */
+    public void record(Class clazz, String methodName, long cost, boolean success) {
+        long count = 0;
+        if (limits != -1) {
+            if (total.get() >= limits) {
+                return;
+            }
+            count = total.incrementAndGet();
+            if (count > limits) {
+                return;
+            }
+        }
+        getRecorder(clazz, methodName).record(cost, success);
+        if (count == limits && latch != null) {
+            latch.countDown();
+        }
+    }
+
+    /**
+     * 汇总所有方法的监控数据
+     */
+    public void publish() {
+        List<MonitorView> views = new ArrayList<MonitorView>();
+        for (Map.Entry<Class, ConcurrentHashMap<String, StripedLatencyRecorder>> classEntry : recorders.entrySet()) {
+            for (Map.Entry<String, StripedLatencyRecorder> entry : classEntry.getValue().entrySet()) {
+                views.add(toView(classEntry.getKey().getName(), entry.getKey(), entry.getValue().snapshot()));
+            }
+        }
+        this.views = views;
+    }
+
+    /**
+     * 获取最近一次发布的监控数据
+     *
+     * @return 监控数据
+     */
+    public List<MonitorView> getViews() {
+        return views;
+    }
+
+    private StripedLatencyRecorder getRecorder(Class clazz, String methodName) {
+        ConcurrentHashMap<String, StripedLatencyRecorder> methods = recorders.get(clazz);
+        if (methods == null) {
+            methods = new ConcurrentHashMap<String, StripedLatencyRecorder>();
+            ConcurrentHashMap<String, StripedLatencyRecorder> old = recorders.putIfAbsent(clazz, methods);
+            if (old != null) {
+                methods = old;
+            }
+        }
+        StripedLatencyRecorder recorder = methods.get(methodName);
+        if (recorder == null) {
+            recorder = new StripedLatencyRecorder();
+            StripedLatencyRecorder old = methods.putIfAbsent(methodName, recorder);
+            if (old != null) {
+                recorder = old;
+            }
+        }
+        return recorder;
+    }
+
+    private static MonitorView toView(String className, String methodName, StripedLatencyRecorder.Snapshot snapshot) {
+        LatencyHistogram histogram = snapshot.getHistogram();
+        MonitorView view = new MonitorView();
+        view.setClassName(className);
+        view.setMethodName(methodName);
+        view.setCount(snapshot.getCount());
+        view.setSuccess(snapshot.getSuccess());
+        view.setFail(snapshot.getFail());
+        view.setMaxCost(histogram.getMax());
+        view.setMinCost(histogram.getMin());
+        view.setAvgCost(histogram.getAvg());
+        view.setP50Cost(histogram.getValueAtPercentile(50));
+        view.setP90Cost(histogram.getValueAtPercentile(90));
+        view.setP99Cost(histogram.getValueAtPercentile(99));
+        view.setP999Cost(histogram.getValueAtPercentile(99.9));
+        return view;
+    }
+}